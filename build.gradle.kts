@@ -5,6 +5,7 @@ import java.io.InputStream
 plugins {
     id("java-library")
     id("com.gradleup.shadow") version "9.3.0"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "com.apophisgames.rustyraiding"
@@ -28,6 +29,24 @@ dependencies {
     // SQLite JDBC driver
     implementation("org.xerial:sqlite-jdbc:3.51.1.0")
     implementation("org.slf4j:slf4j-jdk14:2.0.17")
+
+    testImplementation(platform("org.junit:junit-bom:5.11.4"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+// Tests and benchmarks run against the server API too, it is only provided at runtime by the server
+configurations.testImplementation {
+    extendsFrom(configurations.compileOnly.get())
+}
+configurations.jmhImplementation {
+    extendsFrom(configurations.compileOnly.get())
+}
+
+// Benchmarks live in src/jmh/java, run with ./gradlew jmh
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc")
 }
 
 tasks {
@@ -35,6 +54,10 @@ tasks {
         options.encoding = Charsets.UTF_8.name()
     }
 
+    test {
+        useJUnitPlatform()
+    }
+
     shadowJar {
         archiveBaseName.set("RustyRaiding")
         archiveClassifier.set("")
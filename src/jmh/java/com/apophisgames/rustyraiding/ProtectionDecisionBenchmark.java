@@ -0,0 +1,161 @@
+package com.apophisgames.rustyraiding;
+
+import com.apophisgames.rustyraiding.reinforcedblocks.CachedReinforcedBlockRepository;
+import com.apophisgames.rustyraiding.reinforcedblocks.IReinforcedBlockRepository;
+import com.apophisgames.rustyraiding.reinforcedblocks.ReinforcedBlock;
+import com.apophisgames.rustyraiding.reinforcedblocks.SqliteReinforcedBlockRepository;
+import com.apophisgames.rustyraiding.reinforcedblocks.WriteBehindReinforcedBlockRepository;
+import com.apophisgames.rustyraiding.util.PlayerIds;
+import com.apophisgames.rustyraiding.util.RaidingDatabase;
+import com.apophisgames.rustyraiding.util.SerializedRepository;
+import com.apophisgames.rustyraiding.util.WorldIds;
+import com.apophisgames.rustyraiding.zoneauthorizations.CachedZoneAuthorizationRepository;
+import com.apophisgames.rustyraiding.zoneauthorizations.IAuthRepository;
+import com.apophisgames.rustyraiding.zoneauthorizations.SqliteZoneAuthorizationRepository;
+import com.apophisgames.rustyraiding.zones.CachedZoneRepository;
+import com.apophisgames.rustyraiding.zones.IZoneRepository;
+import com.apophisgames.rustyraiding.zones.SqliteZoneRepository;
+import com.apophisgames.rustyraiding.zones.Zone;
+import com.hypixel.hytale.math.util.ChunkUtil;
+import com.hypixel.hytale.math.vector.Vector3d;
+import com.hypixel.hytale.math.vector.Vector3i;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The place, break and use decisions of {@link ZoneBlockProtection}, on the same repository
+ * stack as the plugin in database mode.
+ *
+ * <p>Each benchmark makes the service calls of one handler, for targets spread over the
+ * nine chunks of a base, so with {@code -prof gc} the {@code gc.alloc.rate.norm} column is
+ * the bytes allocated per decision. Once the caches are warm it should be 0 B/op.
+ * {@link #raiderBreak} also makes the reinforcement write that follows an unauthorized hit.
+ * The block type policy is not part of the decision.
+ *
+ * <pre>./gradlew jmh -Pjmh.includes=ProtectionDecisionBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtectionDecisionBenchmark {
+
+    private static final String WORLD = "default";
+    private static final int BASE_CHUNKS = 3;
+    private static final int BASE_SIZE = BASE_CHUNKS * ChunkUtil.SIZE;
+    private static final int TARGETS = 64;
+    private static final int INITIAL_REINFORCEMENT = 10;
+
+    private final UUID owner = UUID.randomUUID();
+    private final UUID raider = UUID.randomUUID();
+
+    private Path dataDirectory;
+    private RaidingDatabase database;
+    private RaidingService service;
+
+    private final int[] xs = new int[TARGETS];
+    private final int[] ys = new int[TARGETS];
+    private final int[] zs = new int[TARGETS];
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        dataDirectory = Files.createTempDirectory("rustyraiding-bench");
+        database = new RaidingDatabase(dataDirectory, RaidingDatabase.Profile.FAST);
+        service = new RaidingService(
+                new CachedZoneRepository(SerializedRepository.wrap(IZoneRepository.class, new SqliteZoneRepository(database), database.getExecutor())),
+                new CachedZoneAuthorizationRepository(SerializedRepository.wrap(IAuthRepository.class, new SqliteZoneAuthorizationRepository(database), database.getExecutor())),
+                new CachedReinforcedBlockRepository(new WriteBehindReinforcedBlockRepository(
+                        SerializedRepository.wrap(IReinforcedBlockRepository.class, new SqliteReinforcedBlockRepository(database), database.getExecutor()),
+                        TimeUnit.SECONDS.toMillis(5), 1000)));
+        service.initialize(null, false);
+
+        Zone base = Zone.create("base", WORLD, new Vector3d(0, 0, 0), new Vector3d(BASE_SIZE, 128, BASE_SIZE));
+        if (service.createZone(base) != RaidingService.CreateResult.SUCCESS)
+            throw new IllegalStateException("could not create the base zone");
+        service.AuthenticatePlayerInZone(base.zoneName(), owner, "owner");
+
+        Random random = new Random(42);
+        for (int i = 0; i < TARGETS; i++) {
+            xs[i] = random.nextInt(BASE_SIZE);
+            ys[i] = random.nextInt(128);
+            zs[i] = random.nextInt(BASE_SIZE);
+            if (i % 2 == 0)
+                service.CreateReinforcedBlock(WORLD, new Vector3i(xs[i], ys[i], zs[i]), INITIAL_REINFORCEMENT);
+        }
+        for (int chunkX = 0; chunkX < BASE_CHUNKS; chunkX++) {
+            for (int chunkZ = 0; chunkZ < BASE_CHUNKS; chunkZ++) {
+                service.onChunkLoaded(WORLD, chunkX, chunkZ);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        service.shutdown();
+        database.close();
+        try (Stream<Path> files = Files.walk(dataDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private AuthorizationDecisionCache.Decision decide(UUID player, int target) {
+        int worldId = WorldIds.of(WORLD);
+        if (!service.isWorldReady(worldId)) return null;
+        return service.getAuthorizationDecision(worldId, PlayerIds.of(player), xs[target], ys[target], zs[target]);
+    }
+
+    private int nextTarget() {
+        return next++ & (TARGETS - 1);
+    }
+
+    @Benchmark
+    public boolean ownerPlace() {
+        AuthorizationDecisionCache.Decision decision = decide(owner, nextTarget());
+        return decision == null || decision.authorized();
+    }
+
+    @Benchmark
+    public int raiderBreak() {
+        int target = nextTarget();
+        AuthorizationDecisionCache.Decision decision = decide(raider, target);
+        if (decision == null || decision.authorized()) return -1;
+
+        // Same writes as BreakBlock: start a block at its initial reinforcement, take one off, break it at 0
+        int worldId = WorldIds.of(WORLD);
+        int current = service.getReinforcementAt(worldId, xs[target], ys[target], zs[target]);
+        int next;
+        if (current == ReinforcedBlock.NOT_REINFORCED) next = INITIAL_REINFORCEMENT - 1;
+        else if (current > 0) next = current - 1;
+        else next = ReinforcedBlock.NOT_REINFORCED;
+        service.setReinforcementAt(worldId, xs[target], ys[target], zs[target], next);
+        return next;
+    }
+
+    @Benchmark
+    public boolean wildernessUse() {
+        int target = nextTarget();
+        int worldId = WorldIds.of(WORLD);
+        if (!service.isWorldReady(worldId)) return false;
+        return service.getAuthorizationDecision(worldId, PlayerIds.of(raider), xs[target] + 1000, ys[target], zs[target]) == null;
+    }
+}
@@ -0,0 +1,110 @@
+package com.apophisgames.rustyraiding.reinforcedblocks;
+
+import com.apophisgames.rustyraiding.util.BlockPositions;
+import com.apophisgames.rustyraiding.util.LongIntHashMap;
+import com.hypixel.hytale.math.vector.Vector3i;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory taken by one world's cached reinforcements, in each layout the cache has used.
+ *
+ * <p>Each benchmark builds the whole layout for {@code blocks} reinforced blocks, so with
+ * {@code -prof gc} the {@code gc.alloc.rate.norm} column is the bytes allocated per layout.
+ * Maps are presized where they can be, leaving little garbage, so that figure is close to
+ * what the layout keeps. Blocks are clustered in bases of 16x16x16, like a real world.
+ *
+ * <pre>./gradlew jmh -Pjmh.includes=ReinforcementFootprintBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ReinforcementFootprintBenchmark {
+
+    private static final String WORLD = "default";
+    private static final int BASE_SIZE = 16;
+
+    @Param({"65536", "1048576"})
+    public int blocks;
+
+    private int[] xs;
+    private int[] ys;
+    private int[] zs;
+
+    @Setup
+    public void setup() {
+        xs = new int[blocks];
+        ys = new int[blocks];
+        zs = new int[blocks];
+
+        Random random = new Random(42);
+        int perBase = BASE_SIZE * BASE_SIZE * BASE_SIZE;
+        int baseX = 0, baseY = 0, baseZ = 0;
+        for (int i = 0; i < blocks; i++) {
+            int offset = i % perBase;
+            if (offset == 0) {
+                baseX = random.nextInt(40_000) - 20_000;
+                baseY = random.nextInt(128);
+                baseZ = random.nextInt(40_000) - 20_000;
+            }
+            xs[i] = baseX + offset % BASE_SIZE;
+            ys[i] = baseY + offset / BASE_SIZE % BASE_SIZE;
+            zs[i] = baseZ + offset / (BASE_SIZE * BASE_SIZE);
+        }
+    }
+
+    /**
+     * The original layout, a record with its id string and position per block.
+     */
+    @Benchmark
+    public Map<String, ReinforcedBlock> recordMap() {
+        Map<String, ReinforcedBlock> map = new HashMap<>(blocks * 4 / 3 + 1);
+        for (int i = 0; i < blocks; i++) {
+            ReinforcedBlock block = ReinforcedBlock.create(WORLD, new Vector3i(xs[i], ys[i], zs[i]), 10);
+            map.put(block.internalId(), block);
+        }
+        return map;
+    }
+
+    /**
+     * One primitive map per world, keyed by packed position.
+     */
+    @Benchmark
+    public LongIntHashMap primitiveMap() {
+        LongIntHashMap map = new LongIntHashMap(blocks);
+        for (int i = 0; i < blocks; i++) {
+            map.put(BlockPositions.pack(xs[i], ys[i], zs[i]), 10);
+        }
+        return map;
+    }
+
+    /**
+     * The current layout, primitive maps per chunk section. Sections grow as they fill,
+     * so this also counts the arrays left behind by resizing.
+     */
+    @Benchmark
+    public ReinforcementStore sectionStore() {
+        ReinforcementStore store = new ReinforcementStore();
+        for (int i = 0; i < blocks; i++) {
+            store.put(xs[i], ys[i], zs[i], 10);
+        }
+        return store;
+    }
+}
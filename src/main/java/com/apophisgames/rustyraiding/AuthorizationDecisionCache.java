@@ -0,0 +1,98 @@
+package com.apophisgames.rustyraiding;
+
+import com.apophisgames.rustyraiding.zones.Zone;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Per-player memo of the last resolved (zone, authorization) decision.
+ *
+ * <p>Players hit, place and use blocks in the same base many times per second. The memo
+ * lets those repeated events skip both the zone lookup and the authorization check, and
+ * allocate nothing. A decision is only built when the player moves into another zone or
+ * after a zone or authorization write.
+ *
+ * <p>A decision is reused only while it is still valid:
+ * <ul>
+ *   <li>the global epoch has not moved. {@link RaidingService} bumps it on every zone or
+ *       authorization change;</li>
+ *   <li>the block is in the same world;</li>
+ *   <li>the block is inside the remembered zone. Zones never overlap, so that zone is
+ *       the zone at the block.</li>
+ * </ul>
+ *
+ * <p>Decisions are immutable and replaced whole, so a racing reader sees either an old
+ * decision (rejected by its epoch) or a complete new one.
+ */
+public class AuthorizationDecisionCache {
+
+    /**
+     * A resolved decision for one player.
+     *
+     * @param epoch The epoch the decision was resolved in
+     * @param worldId The world id of the resolved block
+     * @param zone The zone containing the resolved block
+     * @param authorized Whether the player is authorized in the zone
+     */
+    public record Decision(long epoch, int worldId, @Nonnull Zone zone, boolean authorized) {
+
+        boolean matches(long currentEpoch, int worldId, int x, int y, int z) {
+            return epoch == currentEpoch
+                && this.worldId == worldId
+                && zone.contains(x, y, z);
+        }
+    }
+
+    private volatile long epoch;
+
+    // Player id -> last decision, grown under this
+    private volatile Decision[] decisions = new Decision[64];
+
+    public long currentEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Invalidate every memoized decision.
+     */
+    public synchronized void invalidate() {
+        epoch++;
+    }
+
+    /**
+     * Get the memoized decision of a player, if it still applies to a block.
+     */
+    @Nullable
+    public Decision get(int playerId, int worldId, int x, int y, int z) {
+        Decision[] current = decisions;
+        if (playerId >= current.length) return null;
+
+        Decision decision = current[playerId];
+        return decision != null && decision.matches(epoch, worldId, x, y, z) ? decision : null;
+    }
+
+    public void put(int playerId, Decision decision) {
+        Decision[] current = decisions;
+        if (playerId >= current.length) {
+            current = grow(playerId);
+        }
+        current[playerId] = decision;
+    }
+
+    public synchronized void clear() {
+        decisions = new Decision[64];
+        epoch++;
+    }
+
+    private synchronized Decision[] grow(int playerId) {
+        Decision[] current = decisions;
+        if (playerId < current.length) return current;
+
+        int capacity = current.length;
+        while (capacity <= playerId) capacity *= 2;
+        decisions = Arrays.copyOf(current, capacity);
+        return decisions;
+    }
+}
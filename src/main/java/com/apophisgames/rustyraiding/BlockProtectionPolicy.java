@@ -0,0 +1,131 @@
+package com.apophisgames.rustyraiding;
+
+import com.apophisgames.rustyraiding.config.RaidingConfig;
+import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockBreakingDropType;
+import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockGathering;
+import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockType;
+
+import javax.annotation.Nullable;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Which block types raiders may place and break freely, precomputed per block type.
+ *
+ * <p>The table holds flags for every block type: soft, bypass (gathered like soil) and
+ * allowed, which folds in the ProtectSoftBlocks and ProtectBypassTypeBlocks settings. A check
+ * on a block type is one identity map probe, a check on a block key an index lookup and one
+ * array read. The table is built on first use, reading the config once, and rebuilt after
+ * {@link #invalidate()}, called when block assets reload or the config is replaced.
+ */
+public final class BlockProtectionPolicy {
+
+    private static final List<String> BYPASS_GATHER_TYPES = List.of("Soils");
+
+    private static final byte SOFT = 1;
+    private static final byte BYPASS = 1 << 1;
+    private static final byte ALLOWED = 1 << 2;
+
+    /**
+     * Flags for one config and one set of block types.
+     *
+     * @param flags Flags by block asset index
+     * @param allowedByType Whether each block type is allowed, keyed by the asset instance
+     */
+    private record Table(byte[] flags, IdentityHashMap<BlockType, Boolean> allowedByType) {
+    }
+
+    private static volatile Table table;
+
+    private BlockProtectionPolicy() {
+    }
+
+    /**
+     * @return true if raiders may place and break blocks of this type without authorization
+     */
+    public static boolean isAllowed(@Nullable BlockType blockType) {
+        if (blockType == null) return false;
+        Boolean allowed = current().allowedByType().get(blockType);
+        if (allowed != null) return allowed;
+
+        // Not an asset the table was built from, look it up by id
+        return isAllowed(blockType.getId());
+    }
+
+    /**
+     * @param blockKey The id of a block type, like the block key of an item
+     * @return true if raiders may place and break blocks of this type without authorization
+     */
+    public static boolean isAllowed(@Nullable String blockKey) {
+        if (blockKey == null) return false;
+        int index = BlockType.getAssetMap().getIndex(blockKey);
+        if (index < 0) return false;
+
+        byte[] flags = current().flags();
+        // Block types added since the table was built
+        if (index >= flags.length) flags = rebuild(index + 1).flags();
+        return index < flags.length && (flags[index] & ALLOWED) != 0;
+    }
+
+    /**
+     * Drop the table, so the next check rebuilds it. Call when block assets reload or the config is replaced.
+     */
+    public static synchronized void invalidate() {
+        table = null;
+    }
+
+    private static Table current() {
+        Table current = table;
+        return current != null ? current : rebuild(0);
+    }
+
+    /**
+     * @param minAssetCount The number of block indices the table must cover, or it is rebuilt
+     */
+    private static synchronized Table rebuild(int minAssetCount) {
+        Table current = table;
+        if (current != null && current.flags().length >= minAssetCount)
+            return current;
+
+        RaidingConfig config = RustyRaidingPlugin.CONFIG.get();
+        boolean allowSoftBlocks = !config.getProtectSoftBlocks();
+        boolean allowBypassBlocks = !config.getProtectBypassTypeBlocks();
+
+        BlockType.AssetMap assets = BlockType.getAssetMap();
+        int assetCount = assets.getNextIndex();
+        byte[] flags = new byte[assetCount];
+        IdentityHashMap<BlockType, Boolean> allowedByType = new IdentityHashMap<>(assetCount);
+        for (int index = 0; index < assetCount; index++) {
+            BlockType blockType = assets.getAsset(index);
+            byte blockFlags = classify(blockType);
+            if ((allowSoftBlocks && (blockFlags & SOFT) != 0) || (allowBypassBlocks && (blockFlags & BYPASS) != 0))
+                blockFlags |= ALLOWED;
+            flags[index] = blockFlags;
+            if (blockType != null)
+                allowedByType.put(blockType, (blockFlags & ALLOWED) != 0);
+        }
+
+        current = new Table(flags, allowedByType);
+        table = current;
+        return current;
+    }
+
+    private static byte classify(@Nullable BlockType blockType) {
+        if (blockType == null) return 0;
+        BlockGathering gathering = blockType.getGathering();
+        if (gathering == null) return 0;
+
+        byte flags = 0;
+        if (gathering.isSoft())
+            flags |= SOFT;
+
+        // Certain block breaking types, like soils
+        BlockBreakingDropType breakingDropType = gathering.getBreaking();
+        if (breakingDropType != null) {
+            String gatherType = breakingDropType.getGatherType();
+            if (gatherType != null && BYPASS_GATHER_TYPES.contains(gatherType))
+                flags |= BYPASS;
+        }
+        return flags;
+    }
+}
@@ -0,0 +1,68 @@
+package com.apophisgames.rustyraiding;
+
+import com.hypixel.hytale.component.*;
+import com.hypixel.hytale.component.query.Query;
+import com.hypixel.hytale.component.system.EntityEventSystem;
+import com.hypixel.hytale.server.core.universe.world.chunk.WorldChunk;
+import com.hypixel.hytale.server.core.universe.world.events.ChunkPreLoadProcessEvent;
+import com.hypixel.hytale.server.core.universe.world.events.ecs.ChunkUnloadEvent;
+import com.hypixel.hytale.server.core.universe.world.storage.ChunkStore;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.function.Supplier;
+
+/**
+ * Systems that keep reinforced blocks in memory only while their chunk is loaded.
+ */
+public class ChunkLifecycleSystems {
+
+    private static final Query<ChunkStore> QUERY = Query.and(
+        WorldChunk.getComponentType()
+    );
+
+    /**
+     * Load the reinforced blocks of a chunk as it loads, registered as a global event listener.
+     */
+    public static void onChunkLoad(@Nullable RaidingService raidingService, ChunkPreLoadProcessEvent event) {
+        if (raidingService == null) return;
+
+        WorldChunk worldChunk = event.getChunk();
+        raidingService.onChunkLoaded(worldChunk.getWorld().getName(), worldChunk.getX(), worldChunk.getZ());
+    }
+
+    public static class UnloadChunk extends EntityEventSystem<ChunkStore, ChunkUnloadEvent> {
+        private final Supplier<RaidingService> raidingService;
+
+        public UnloadChunk(Supplier<RaidingService> raidingService) {
+            super(ChunkUnloadEvent.class);
+            this.raidingService = raidingService;
+        }
+
+        @Nonnull
+        @Override
+        public Query<ChunkStore> getQuery() {
+            return QUERY;
+        }
+
+        @Nullable
+        @Override
+        public SystemGroup<ChunkStore> getGroup() {
+            return null;
+        }
+
+        @Override
+        public void handle(int index, @Nonnull ArchetypeChunk<ChunkStore> chunk,
+                           @Nonnull Store<ChunkStore> store, @Nonnull CommandBuffer<ChunkStore> commandBuffer,
+                           @Nonnull ChunkUnloadEvent event) {
+            // Another system may keep the chunk loaded
+            if (event.isCancelled()) return;
+
+            RaidingService service = raidingService.get();
+            if (service == null) return;
+
+            WorldChunk worldChunk = event.getChunk();
+            service.onChunkUnloaded(worldChunk.getWorld().getName(), worldChunk.getX(), worldChunk.getZ());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.apophisgames.rustyraiding;
+
+import com.apophisgames.rustyraiding.util.BlockPositions;
+import com.apophisgames.rustyraiding.util.LongIntHashMap;
+import com.apophisgames.rustyraiding.util.LongObjectHashMap;
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.math.util.ChunkUtil;
+import com.hypixel.hytale.math.vector.Vector3d;
+import com.hypixel.hytale.math.vector.Vector3i;
+import com.hypixel.hytale.protocol.SoundCategory;
+import com.hypixel.hytale.server.core.asset.type.soundevent.config.SoundEvent;
+import com.hypixel.hytale.server.core.universe.world.ParticleUtil;
+import com.hypixel.hytale.server.core.universe.world.SoundUtil;
+import com.hypixel.hytale.server.core.universe.world.World;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Batches the sounds and particles of raid hits, so an autoclicker does not flood nearby clients.
+ *
+ * <p>Effects queued during a tick are played together by one task on the world thread. Hits on
+ * the same block coalesce into one effect, the latest one, and each chunk plays at most
+ * EffectsPerChunkPerTick effects, the rest are dropped. Sound indices are resolved on first use
+ * and kept until sound assets reload.
+ *
+ * <p>Effects are queued and played on the world's thread, each world has its own queue.
+ */
+public final class RaidEffects {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    public enum Effect {
+        REINFORCED_BREAK("SFX_Crystal_Break", "Block_Hit_Crystal", 1.0f),
+        REINFORCEMENT_ADDED("SFX_Metal_Break", "Block_Hit_Metal", 1.0f),
+        REINFORCEMENT_MAXED("SFX_Metal_Hit", null, 0.5f);
+
+        private static final int UNRESOLVED = Integer.MIN_VALUE;
+
+        private final String sound;
+        @Nullable
+        private final String particle;
+        private final float volume;
+        // Resolved on first use, once the assets are loaded, and reset when they reload.
+        // Every world thread resolves the same index.
+        private volatile int soundIndex = UNRESOLVED;
+
+        Effect(String sound, @Nullable String particle, float volume) {
+            this.sound = sound;
+            this.particle = particle;
+            this.volume = volume;
+        }
+
+        private int soundIndex() {
+            int index = soundIndex;
+            if (index == UNRESOLVED) {
+                index = SoundEvent.getAssetMap().getIndex(sound);
+                // A sound missing now may be added by a later asset load, look it up again next time
+                if (index >= 0) soundIndex = index;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Drop the resolved sound indices, so the next effects look them up again. Call when sound assets reload.
+     */
+    public static void invalidateSounds() {
+        for (Effect effect : Effect.values()) {
+            effect.soundIndex = Effect.UNRESOLVED;
+        }
+    }
+
+    /**
+     * The latest effect queued for a block this tick.
+     */
+    private static final class Queued {
+        private Effect effect;
+        private float pitch;
+
+        private Queued(Effect effect, float pitch) {
+            this.effect = effect;
+            this.pitch = pitch;
+        }
+    }
+
+    /**
+     * Effects of one world waiting for its next drain, only touched on the world thread.
+     */
+    private static final class WorldQueue {
+        private final LongObjectHashMap<Queued> blocks = new LongObjectHashMap<>();
+        private boolean drainScheduled;
+    }
+
+    // World id -> queue
+    private static final Map<Integer, WorldQueue> queues = new ConcurrentHashMap<>();
+
+    private RaidEffects() {
+    }
+
+    /**
+     * Queue an effect at a block, played with the rest of this tick's effects. Call on the world thread.
+     *
+     * @param pitch The pitch of the sound
+     */
+    public static void play(World world, Vector3i block, Effect effect, float pitch) {
+        int worldId = ZoneBlockProtection.worldIdOf(world);
+        WorldQueue queue = queues.computeIfAbsent(worldId, id -> new WorldQueue());
+
+        long key = BlockPositions.pack(block.x, block.y, block.z);
+        Queued queued = queue.blocks.get(key);
+        if (queued != null) {
+            queued.effect = effect;
+            queued.pitch = pitch;
+        } else {
+            queue.blocks.put(key, new Queued(effect, pitch));
+        }
+
+        if (!queue.drainScheduled) {
+            queue.drainScheduled = true;
+            world.execute(() -> drain(world, queue));
+        }
+    }
+
+    private static void drain(World world, WorldQueue queue) {
+        queue.drainScheduled = false;
+        if (queue.blocks.isEmpty()) return;
+
+        int budget = RustyRaidingPlugin.CONFIG.get().getEffectsPerChunkPerTick();
+        EntityStore store = world.getEntityStore();
+        LongIntHashMap playedPerChunk = new LongIntHashMap();
+        int[] dropped = new int[1];
+
+        queue.blocks.forEach((key, queued) -> {
+            int x = BlockPositions.unpackX(key), y = BlockPositions.unpackY(key), z = BlockPositions.unpackZ(key);
+            long chunk = ChunkUtil.indexChunkFromBlock(x, z);
+            int played = playedPerChunk.getOrDefault(chunk, 0);
+            if (played >= budget) {
+                dropped[0]++;
+                return;
+            }
+            playedPerChunk.put(chunk, played + 1);
+
+            Vector3d position = new Vector3d(x + 0.5, y + 0.5, z + 0.5);
+            Effect effect = queued.effect;
+            if (effect.particle != null)
+                ParticleUtil.spawnParticleEffect(effect.particle, position, store.getStore());
+            SoundUtil.playSoundEvent3d(effect.soundIndex(), SoundCategory.SFX, position.x, position.y, position.z, effect.volume, queued.pitch, store.getStore());
+        });
+        queue.blocks.clear();
+
+        if (dropped[0] > 0)
+            LOGGER.atFine().log("Dropped %d raid effects over the per-chunk budget in world '%s'".formatted(dropped[0], world.getName()));
+    }
+}
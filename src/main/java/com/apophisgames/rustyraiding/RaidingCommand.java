@@ -3,6 +3,7 @@ package com.apophisgames.rustyraiding;
 import com.apophisgames.rustyraiding.reinforcedblocks.ReinforcedBlock;
 import com.apophisgames.rustyraiding.util.ColorPalette;
 import com.apophisgames.rustyraiding.util.MessageBuilder;
+import com.apophisgames.rustyraiding.zoneauthorizations.ZoneAuthorization;
 import com.apophisgames.rustyraiding.zones.Zone;
 import com.hypixel.hytale.builtin.buildertools.BuilderToolsPlugin;
 import com.hypixel.hytale.builtin.buildertools.PrototypePlayerBuilderToolSettings;
@@ -14,6 +15,7 @@ import com.hypixel.hytale.math.vector.Vector3f;
 import com.hypixel.hytale.math.vector.Vector3i;
 import com.hypixel.hytale.protocol.DebugShape;
 import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.NameMatching;
 import com.hypixel.hytale.server.core.command.system.CommandContext;
 import com.hypixel.hytale.server.core.command.system.arguments.system.OptionalArg;
 import com.hypixel.hytale.server.core.command.system.arguments.system.RequiredArg;
@@ -24,6 +26,7 @@ import com.hypixel.hytale.server.core.entity.entities.Player;
 import com.hypixel.hytale.server.core.modules.debug.DebugUtils;
 import com.hypixel.hytale.server.core.modules.entity.component.TransformComponent;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.Universe;
 import com.hypixel.hytale.server.core.universe.world.World;
 import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 
@@ -31,6 +34,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.logging.Level;
 
 import static com.hypixel.hytale.math.util.MathUtil.lerp;
@@ -396,6 +400,9 @@ public class RaidingCommand extends CommandBase {
     /**
      * /raiding grantplayerauth <zone name> <player display name>
      * Grant a player authorization in a zone
+     *
+     * <p>An offline player has no UUID to resolve, so their authorization is stored by name and
+     * grants nothing until they next connect with that username, when it is migrated to their UUID.
      * */
     public static class GrantPlayerAuthSubCommand extends AbstractPlayerCommand {
         private final RustyRaidingPlugin plugin;
@@ -414,11 +421,16 @@ public class RaidingCommand extends CommandBase {
             String zoneName = zoneNameArg.get(context);
             String playerDisplayName = playerNameArg.get(context);
 
-            RaidingService.CreateResult result = plugin.getZoneService().AuthenticatePlayerInZone(zoneName, playerDisplayName);
+            // Offline players are stored by name and get their UUID attached when they are next seen
+            PlayerRef targetPlayer = Universe.get().getPlayerByUsername(playerDisplayName, NameMatching.EXACT);
+            UUID targetUuid = targetPlayer != null ? targetPlayer.getUuid() : null;
+
+            RaidingService.CreateResult result = plugin.getZoneService().AuthenticatePlayerInZone(zoneName, targetUuid, playerDisplayName);
 
             switch (result) {
                 case SUCCESS -> playerRef.sendMessage(
-                        MessageBuilder.create("Authorization in zone '" + zoneName + "' granted for player '"+playerDisplayName+"'")
+                        MessageBuilder.create("Authorization in zone '" + zoneName + "' granted for player '"+playerDisplayName+"'"
+                                        + (targetUuid == null ? ", it takes effect when they next connect" : ""))
                                 .color(ColorPalette.SUCCESS)
                                 .build());
                 case ALREADY_EXISTS -> playerRef.sendMessage(
@@ -472,14 +484,14 @@ public class RaidingCommand extends CommandBase {
                 return;
             }
 
-            List<String> auths = plugin.getZoneService().getAuthedPlayersByZoneId(zoneName);
+            List<ZoneAuthorization> auths = plugin.getZoneService().getAuthedPlayersByZoneId(zoneName);
 
             playerRef.sendMessage(MessageBuilder.create("Authorizations in Zone" + world.getName() + ":").color(ColorPalette.INFO).build());
             if (auths == null || auths.isEmpty()) {
                 playerRef.sendMessage(MessageBuilder.create("  (None)").color(ColorPalette.MUTED).build());
             } else {
-                for (String auth : auths) {
-                    Message msg = MessageBuilder.create("  - " + auth).color(ColorPalette.WHITE)
+                for (ZoneAuthorization auth : auths) {
+                    Message msg = MessageBuilder.create("  - " + auth.playerName()).color(ColorPalette.WHITE)
                             .build();
                     playerRef.sendMessage(msg);
                 }
@@ -671,7 +683,7 @@ public class RaidingCommand extends CommandBase {
                     return;
                 }
 
-                Map<String, ReinforcedBlock> blockMap = plugin.getZoneService().getReinforcedBlocksInArea(world.getName(), zone.min().toVector3i(), zone.max().toVector3i());
+                Map<String, ReinforcedBlock> blockMap = plugin.getZoneService().getReinforcedBlocksInArea(world.getName(), zone.minBlock(), zone.maxBlock());
 
                 if (blockMap.isEmpty()) {
                     playerRef.sendMessage(MessageBuilder.create("No reinforced blocks found in zone " + zoneName + ".")
@@ -2,9 +2,15 @@ package com.apophisgames.rustyraiding;
 
 import com.apophisgames.rustyraiding.reinforcedblocks.IReinforcedBlockRepository;
 import com.apophisgames.rustyraiding.reinforcedblocks.ReinforcedBlock;
+import com.apophisgames.rustyraiding.util.BlockPositions;
 import com.apophisgames.rustyraiding.util.ColorPalette;
+import com.apophisgames.rustyraiding.util.CopyOnWriteBitSet;
+import com.apophisgames.rustyraiding.util.LongIntHashMap;
 import com.apophisgames.rustyraiding.util.MessageBuilder;
+import com.apophisgames.rustyraiding.util.PlayerIds;
+import com.apophisgames.rustyraiding.util.WorldIds;
 import com.apophisgames.rustyraiding.zoneauthorizations.IAuthRepository;
+import com.apophisgames.rustyraiding.zoneauthorizations.LegacyAuthorizationMigration;
 import com.apophisgames.rustyraiding.zoneauthorizations.ZoneAuthorization;
 import com.apophisgames.rustyraiding.zones.IZoneRepository;
 import com.apophisgames.rustyraiding.zones.Zone;
@@ -17,10 +23,19 @@ import com.hypixel.hytale.server.core.universe.Universe;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 /**
  * Service for managing SafeZones.
@@ -35,10 +50,38 @@ public class RaidingService {
     private final IAuthRepository authRepository;
     private final IReinforcedBlockRepository reinforcedBlockRepository;
 
+    // Runs slow maintenance work (like the preload and legacy data migration) off the world threads
+    private final ExecutorService backgroundExecutor = newDaemonExecutor("RustyRaiding-Background");
+
+    // Loads and unloads chunks' reinforced blocks, in order, never queued behind maintenance work
+    private final ExecutorService chunkExecutor = newDaemonExecutor("RustyRaiding-Chunks");
+
+    // Worlds still being preloaded, see isWorldReady
+    private final CopyOnWriteBitSet loadingWorlds = new CopyOnWriteBitSet();
+    private volatile boolean resolvingWorlds;
+    private volatile boolean ready;
+    private volatile boolean failClosedWhileLoading;
+
+    // Per-player memo of the last zone and authorization decision, invalidated on every zone or auth write
+    private final AuthorizationDecisionCache decisionCache = new AuthorizationDecisionCache();
+
+    // Attaches UUIDs to the authorizations older versions stored by name
+    private final LegacyAuthorizationMigration legacyMigration;
+
     public RaidingService(@Nonnull IZoneRepository zoneRepository, @Nonnull IAuthRepository authRepository, @Nonnull IReinforcedBlockRepository reinforcedBlockRepository) {
         this.zoneRepository = zoneRepository;
         this.authRepository = authRepository;
         this.reinforcedBlockRepository = reinforcedBlockRepository;
+        this.legacyMigration = new LegacyAuthorizationMigration(authRepository, backgroundExecutor,
+                RaidingService::findOnlinePlayerUuid, decisionCache::invalidate);
+    }
+
+    private static ExecutorService newDaemonExecutor(String threadName) {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     // ============================================
@@ -57,11 +100,76 @@ public class RaidingService {
         ERROR
     }
 
+    /**
+     * What damage did to one block, see {@link #applyDamage}.
+     */
+    public enum DamageOutcome {
+        /** Outside every zone */
+        UNPROTECTED(true),
+        /** The breaker is authorized in the zone, any reinforcement is removed */
+        AUTHORIZED(true),
+        /** Not reinforced, and of a type that is never reinforced */
+        UNREINFORCED(true),
+        /** Reinforcement absorbed the damage */
+        ABSORBED(false),
+        /** The damage used up the last of the reinforcement */
+        BROKEN(true),
+        /** The world is still loading or its zones could not be read, fail closed */
+        DENIED(false);
+
+        private final boolean allowsBreak;
+
+        DamageOutcome(boolean allowsBreak) {
+            this.allowsBreak = allowsBreak;
+        }
+
+        /**
+         * @return true if the block should break, false if the break should be cancelled
+         */
+        public boolean allowsBreak() {
+            return allowsBreak;
+        }
+    }
+
+    /**
+     * What reinforcing did to one block, see {@link #reinforce}.
+     */
+    public enum ReinforceOutcome {
+        /** Reinforcement was added */
+        REINFORCED,
+        /** Already at the maximum, nothing was added */
+        AT_MAXIMUM,
+        /** Outside every zone */
+        UNPROTECTED,
+        /** The player is not authorized in the zone */
+        UNAUTHORIZED,
+        /** The world is still loading or its zones could not be read */
+        DENIED
+    }
+
+    /**
+     * Per-block result of a batch, in the order of the positions given.
+     *
+     * @param outcomes What happened to each block
+     * @param reinforcements The reinforcement of each block afterwards, or {@link ReinforcedBlock#NOT_REINFORCED}
+     * @param stored Whether the changes were stored. If not, the outcomes still describe the damage dealt
+     */
+    public record BatchResult<T extends Enum<T>>(T[] outcomes, int[] reinforcements, boolean stored) {
+    }
+
     // ============================================
     // Initialization
     // ============================================
 
-    public void initialize() {
+    /**
+     * Initialize the repositories, then start warming their caches in the background.
+     *
+     * @param preloadWorlds Worlds to preload, empty for every world with stored data, or null to preload none and look zones up in storage
+     * @param failClosedWhileLoading Deny block events in a world until it is preloaded, instead of waiting for its data on the world thread
+     */
+    public void initialize(@Nullable List<String> preloadWorlds, boolean failClosedWhileLoading) {
+        this.failClosedWhileLoading = failClosedWhileLoading;
+
         try {
             zoneRepository.initialize();
         } catch (Exception e) {
@@ -79,6 +187,133 @@ public class RaidingService {
         } catch (Exception e) {
             LOGGER.atSevere().withCause(e).log("Failed to initialize reinforced block repository");
         }
+
+        startPreload(preloadWorlds);
+        legacyMigration.start();
+    }
+
+    // ============================================
+    // Preloading
+    // ============================================
+
+    private void startPreload(@Nullable List<String> preloadWorlds) {
+        if (preloadWorlds == null) {
+            ready = true;
+            return;
+        }
+
+        // Until the preload knows which worlds it loads, every world counts as loading
+        resolvingWorlds = true;
+        backgroundExecutor.execute(() -> {
+            long start = System.nanoTime();
+            List<String> worlds;
+            try {
+                worlds = preloadWorlds.isEmpty() ? findStoredWorlds() : preloadWorlds;
+                for (String worldName : worlds) {
+                    loadingWorlds.add(WorldIds.of(worldName));
+                }
+            } catch (Exception e) {
+                LOGGER.atSevere().withCause(e).log("Failed to list worlds to preload, zones will be looked up in storage");
+                worlds = List.of();
+            } finally {
+                resolvingWorlds = false;
+            }
+
+            for (String worldName : worlds) {
+                if (backgroundExecutor.isShutdown()) break;
+                preloadWorld(worldName);
+            }
+
+            ready = true;
+            LOGGER.atInfo().log("Preloaded %d worlds in %d ms".formatted(worlds.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        });
+    }
+
+    private List<String> findStoredWorlds() throws Exception {
+        // Only zones and authorizations are preloaded, reinforced blocks load with their chunks
+        return zoneRepository.findWorldNames();
+    }
+
+    private void preloadWorld(String worldName) {
+        long start = System.nanoTime();
+        try {
+            int zoneCount = zoneRepository.preloadWorld(worldName);
+            int authCount = 0;
+            for (Zone zone : zoneRepository.findByWorld(worldName)) {
+                authCount += authRepository.preloadZone(zone.zoneName());
+            }
+            // Reinforced blocks are not preloaded, they load with their chunks
+
+            LOGGER.atInfo().log("Preloaded world '%s': %d zones, %d authorizations in %d ms".formatted(
+                    worldName, zoneCount, authCount, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        } catch (Exception e) {
+            // Stop failing closed, its zones are looked up in storage instead
+            LOGGER.atSevere().withCause(e).log("Failed to preload world " + worldName + ", its zones will be looked up in storage");
+        } finally {
+            loadingWorlds.remove(WorldIds.of(worldName));
+        }
+    }
+
+    /**
+     * @return true once the startup preload has finished, or if there is none
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Whether block events in a world can be decided now. False while the world is being
+     * preloaded and events should fail closed. Worlds outside the preload are looked up in storage,
+     * and always count as ready.
+     *
+     * @param worldId The world id, see {@link WorldIds}
+     */
+    public boolean isWorldReady(int worldId) {
+        if (!failClosedWhileLoading) return true;
+        return !resolvingWorlds && !loadingWorlds.contains(worldId);
+    }
+
+    // ============================================
+    // Chunk Lifecycle
+    // ============================================
+
+    /**
+     * Load the reinforced blocks of a chunk in the background when the chunk loads. Chunk work
+     * has its own thread, so it does not wait behind the preload or the legacy migration.
+     * Lookups in the chunk before they are in memory wait for them instead.
+     */
+    public void onChunkLoaded(String worldName, int chunkX, int chunkZ) {
+        int worldId = WorldIds.of(worldName);
+        runChunkTask(() -> {
+            try {
+                reinforcedBlockRepository.loadChunk(worldId, chunkX, chunkZ);
+            } catch (Exception e) {
+                LOGGER.atSevere().withCause(e).log("Failed to load reinforced blocks of chunk %d, %d in world '%s'".formatted(chunkX, chunkZ, worldName));
+            }
+        });
+    }
+
+    /**
+     * Release the reinforced blocks of a chunk in the background when the chunk unloads,
+     * after storing any pending writes to them. Ordered after the chunk's load.
+     */
+    public void onChunkUnloaded(String worldName, int chunkX, int chunkZ) {
+        int worldId = WorldIds.of(worldName);
+        runChunkTask(() -> {
+            try {
+                reinforcedBlockRepository.unloadChunk(worldId, chunkX, chunkZ);
+            } catch (Exception e) {
+                LOGGER.atSevere().withCause(e).log("Failed to unload reinforced blocks of chunk %d, %d in world '%s'".formatted(chunkX, chunkZ, worldName));
+            }
+        });
+    }
+
+    private void runChunkTask(Runnable task) {
+        try {
+            chunkExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, closing the repositories stores every pending write
+        }
     }
 
     // ============================================
@@ -108,48 +343,62 @@ public class RaidingService {
         }
     }
 
+    /**
+     * Find the zone nearest to a position, measured to the closest point of its box.
+     *
+     * @param maxDistance Maximum distance to search, or 0 for no limit
+     */
     @Nullable
     public Zone getClosestZone(String worldName, Vector3d position, double maxDistance) {
-        List<Zone> zones = getZones(worldName);
-        if (zones.isEmpty()) return null;
-
-        Zone closest = null;
-        double closestDistance = Double.MAX_VALUE;
-
-        for (Zone zone : zones) {
-            double distance = distanceToZone(zone, position);
-            if (distance < closestDistance) {
-                closestDistance = distance;
-                closest = zone;
-            }
-        }
-
-        if (maxDistance > 0 && closestDistance > maxDistance) {
+        try {
+            List<Zone> nearest = zoneRepository.findNearest(worldName, position, 1, maxDistance);
+            return nearest.isEmpty() ? null : nearest.get(0);
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Error finding closest zone in world " + worldName);
             return null;
         }
-
-        return closest;
     }
 
+    /**
+     * Distance from a position to the closest point of a zone, 0 if the position is inside it.
+     */
     public static double distanceToZone(Zone zone, Vector3d position) {
-        Vector3d center = new Vector3d(
-            (zone.min().x + zone.max().x) / 2,
-            (zone.min().y + zone.max().y) / 2,
-            (zone.min().z + zone.max().z) / 2
-        );
-        return position.distanceTo(center);
+        return zone.distanceTo(position);
+    }
+
+    @Nullable
+    public List<Zone> getZonesIntersecting(String worldName, Vector3d min, Vector3d max) {
+        try {
+            return zoneRepository.findIntersecting(worldName, min, max);
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Error finding intersecting zones in world " + worldName);
+            return null;
+        }
     }
 
     @Nullable
     public Zone getZoneAt(String worldName, Vector3d position) {
-        List<Zone> zones = getZones(worldName);
-        
-        for (Zone zone : zones) {
-            if (zone.contains(position)) {
-                return zone;
-            }
+        try {
+            return zoneRepository.findAt(worldName, position);
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Error finding zone at position in world " + worldName);
+            return null;
+        }
+    }
+
+    /**
+     * Find the zone containing a block position. Allocation-free when zones are cached.
+     *
+     * @param worldId The world id, see {@link WorldIds}
+     */
+    @Nullable
+    public Zone getZoneAt(int worldId, int x, int y, int z) {
+        try {
+            return zoneRepository.findAt(worldId, x, y, z);
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Error finding zone at position in world " + WorldIds.nameOf(worldId));
+            return null;
         }
-        return null;
     }
 
     // ============================================
@@ -157,18 +406,14 @@ public class RaidingService {
     // ============================================
 
     public CreateResult createZone(Zone zone) {
-        if (zoneExists(zone.worldName(), zone.zoneName())) {
-            return CreateResult.ALREADY_EXISTS;
-        }
-
-        boolean overlappingAnotherZone = getZones(zone.worldName()).stream().anyMatch(zone::checkOverlapWithZone);
-        if (overlappingAnotherZone){
-            LOGGER.atSevere().log("Overlapping zone boundaries detected, cannot create zone.");
-            return CreateResult.ERROR;
+        CreateResult rejection = validateNewZone(zone);
+        if (rejection != null) {
+            return rejection;
         }
 
         try {
             zoneRepository.save(zone);
+            decisionCache.invalidate();
             LOGGER.atInfo().log("Created zone: " + zone.zoneName());
             return CreateResult.SUCCESS;
         } catch (Exception e) {
@@ -177,6 +422,46 @@ public class RaidingService {
         }
     }
 
+    /**
+     * Create a zone without blocking the caller. Validation runs against the cache, the
+     * write runs on the zone I/O thread.
+     *
+     * @return Future of the result, completed on the I/O thread
+     */
+    public CompletableFuture<CreateResult> createZoneAsync(Zone zone) {
+        CreateResult rejection = validateNewZone(zone);
+        if (rejection != null) {
+            return CompletableFuture.completedFuture(rejection);
+        }
+
+        return zoneRepository.saveAsync(zone).handle((ignored, e) -> {
+            if (e != null) {
+                LOGGER.atSevere().withCause(e).log("Failed to create zone: " + zone.zoneName());
+                return CreateResult.ERROR;
+            }
+            decisionCache.invalidate();
+            LOGGER.atInfo().log("Created zone: " + zone.zoneName());
+            return CreateResult.SUCCESS;
+        });
+    }
+
+    /**
+     * @return Why the zone cannot be created, or null if it can
+     */
+    @Nullable
+    private CreateResult validateNewZone(Zone zone) {
+        if (zoneExists(zone.worldName(), zone.zoneName())) {
+            return CreateResult.ALREADY_EXISTS;
+        }
+
+        List<Zone> overlappingZones = getZonesIntersecting(zone.worldName(), zone.min(), zone.max());
+        if (overlappingZones == null || !overlappingZones.isEmpty()){
+            LOGGER.atSevere().log("Overlapping zone boundaries detected, cannot create zone.");
+            return CreateResult.ERROR;
+        }
+        return null;
+    }
+
     public UpdateResult updateZone(String worldName, String zoneName, 
                                    @Nullable Vector3d newMin, @Nullable Vector3d newMax) {
         
@@ -190,19 +475,21 @@ public class RaidingService {
             updated = updated.withBounds(newMin, newMax);
         }
 
-        Zone closestMaxZone = getClosestZone(updated.worldName(), updated.max(), Integer.max(RustyRaidingPlugin.CONFIG.get().getWidth(), RustyRaidingPlugin.CONFIG.get().getHeight()));
-        Zone closestMinZone = getClosestZone(updated.worldName(), updated.min(), Integer.max(RustyRaidingPlugin.CONFIG.get().getWidth(), RustyRaidingPlugin.CONFIG.get().getHeight()));
-        if (closestMaxZone != null && updated.checkOverlapWithZone(closestMaxZone)){
-            LOGGER.atSevere().log("Overlapping updated boundaries detected, cannot create zone.");
+        List<Zone> overlappingZones = getZonesIntersecting(updated.worldName(), updated.min(), updated.max());
+        if (overlappingZones == null) {
             return UpdateResult.ERROR;
         }
-        if (closestMinZone != null && updated.checkOverlapWithZone(closestMinZone)){
-            LOGGER.atSevere().log("Overlapping updated boundaries detected, cannot create zone.");
-            return UpdateResult.ERROR;
+        for (Zone overlapping : overlappingZones) {
+            // The zone being resized will always overlap its old bounds
+            if (!overlapping.internalId().equals(existing.internalId())) {
+                LOGGER.atSevere().log("Overlapping updated boundaries detected, cannot create zone.");
+                return UpdateResult.ERROR;
+            }
         }
 
         try {
             zoneRepository.save(updated);
+            decisionCache.invalidate();
             LOGGER.atInfo().log("Updated zone: " + zoneName);
             return UpdateResult.SUCCESS;
         } catch (Exception e) {
@@ -211,6 +498,16 @@ public class RaidingService {
         }
     }
 
+    /**
+     * Delete a zone together with its authorizations and the reinforced blocks inside it.
+     *
+     * <p>The zone and its authorizations go in one transaction. In database mode the reinforced
+     * blocks cascade in that same transaction. Other reinforcement storage removes them through
+     * {@link IReinforcedBlockRepository#evictInArea} once the zone delete succeeded, separately
+     * from it. Blocks a crash leaves behind are inert, reinforcement only applies inside a zone.
+     * The caches forget the area only after the delete, so a failed delete leaves them, and
+     * any pending reinforcement writes, as they were.
+     */
     public boolean deleteZone(String worldName, String zoneName) {
         Zone existing = getZoneByName(worldName, zoneName);
         if (existing == null) {
@@ -219,6 +516,9 @@ public class RaidingService {
 
         try {
             zoneRepository.delete(existing.internalId());
+            reinforcedBlockRepository.evictInArea(existing.worldName(), existing.minBlock(), existing.maxBlock());
+            authRepository.evictZone(existing.zoneName());
+            decisionCache.invalidate();
             LOGGER.atInfo().log("Deleted zone: " + zoneName);
             return true;
         } catch (Exception e) {
@@ -227,12 +527,38 @@ public class RaidingService {
         }
     }
 
+    /**
+     * Delete a zone together with its authorizations and the reinforced blocks inside it,
+     * without blocking the caller. See {@link #deleteZone} for how the blocks are removed.
+     *
+     * @return Future of whether the zone was deleted, completed on the I/O thread
+     */
+    public CompletableFuture<Boolean> deleteZoneAsync(String worldName, String zoneName) {
+        Zone existing = getZoneByName(worldName, zoneName);
+        if (existing == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return zoneRepository.deleteAsync(existing.internalId()).handle((ignored, e) -> {
+            if (e != null) {
+                LOGGER.atSevere().withCause(e).log("Failed to delete zone: " + zoneName);
+                return false;
+            }
+            // Runs on the I/O thread, evictInArea only queues storage work
+            reinforcedBlockRepository.evictInArea(existing.worldName(), existing.minBlock(), existing.maxBlock());
+            authRepository.evictZone(existing.zoneName());
+            decisionCache.invalidate();
+            LOGGER.atInfo().log("Deleted zone: " + zoneName);
+            return true;
+        });
+    }
+
     // ============================================
     // Auth Query Methods
     // ============================================
 
     @Nullable
-    public List<String> getAuthedPlayersByZoneId(String zoneId) {
+    public List<ZoneAuthorization> getAuthedPlayersByZoneId(String zoneId) {
         try {
             return authRepository.findByZone(zoneId);
         } catch (Exception e) {
@@ -241,45 +567,136 @@ public class RaidingService {
         }
     }
 
-    public boolean playerIsAuthed(String zoneId, String playerId) {
-        if (playerId == null)
+    /**
+     * Get the authorizations of a zone without blocking the caller.
+     *
+     * @return Future of the authorizations, or null on error, completed on the I/O thread
+     */
+    public CompletableFuture<List<ZoneAuthorization>> getAuthedPlayersByZoneIdAsync(String zoneId) {
+        return authRepository.findByZoneAsync(zoneId).exceptionally(e -> {
+            LOGGER.atSevere().withCause(e).log("Error finding zone players by zone name");
+            return null;
+        });
+    }
+
+    /**
+     * Check whether a player is authorized in a zone. A single bit test when the zone is cached.
+     *
+     * @param playerId The player id, see {@link PlayerIds}
+     */
+    public boolean playerIsAuthed(String zoneId, int playerId) {
+        try {
+            return authRepository.isAuthorized(zoneId, playerId);
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Error checking authorization for player: " + PlayerIds.uuidOf(playerId) + " in zone: " + zoneId);
+            return false;
+        }
+    }
+
+    public boolean playerIsAuthed(String zoneId, UUID playerUuid) {
+        if (playerUuid == null)
             return false;
 
-        return getAuthedPlayersByZoneId(zoneId).contains(playerId);
+        return playerIsAuthed(zoneId, PlayerIds.of(playerUuid));
+    }
+
+    @Nullable
+    public List<String> getAuthedZonesByPlayerId(UUID playerUuid) {
+        try {
+            return authRepository.findByPlayer(playerUuid);
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Error finding authorized zones by player");
+            return null;
+        }
+    }
+
+    /**
+     * Resolve the zone at a block and whether a player is authorized in it, reusing the
+     * player's last decision when it still applies (see {@link AuthorizationDecisionCache}).
+     *
+     * @param worldId The world id, see {@link WorldIds}
+     * @param playerId The player id, see {@link PlayerIds}
+     * @return The decision, or null if the block is outside every zone
+     */
+    @Nullable
+    public AuthorizationDecisionCache.Decision getAuthorizationDecision(int worldId, int playerId, int x, int y, int z) {
+        AuthorizationDecisionCache.Decision decision = decisionCache.get(playerId, worldId, x, y, z);
+        if (decision != null) return decision;
+
+        // Read the epoch before resolving, so a write that lands meanwhile invalidates the result
+        long epoch = decisionCache.currentEpoch();
+        try {
+            Zone zone = zoneRepository.findAt(worldId, x, y, z);
+            if (zone == null) return null;
+
+            decision = new AuthorizationDecisionCache.Decision(epoch, worldId, zone, authRepository.isAuthorized(zone.zoneName(), playerId));
+            decisionCache.put(playerId, decision);
+            return decision;
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Error resolving authorization in world " + WorldIds.nameOf(worldId));
+            return null;
+        }
     }
 
     // ============================================
     // Auth Write Methods
     // ============================================
 
-    public CreateResult AuthenticatePlayerInZone(String zoneId, String playerId) {
-        if (playerIsAuthed(zoneId, playerId)) {
+    /**
+     * Authorize a player in a zone.
+     *
+     * @param playerUuid The UUID of the player, or null for a player who is offline. The authorization is then
+     *                   stored under their name and grants nothing until they next connect, when it is migrated
+     *                   to their UUID, see {@link LegacyAuthorizationMigration}.
+     */
+    public CreateResult AuthenticatePlayerInZone(String zoneId, @Nullable UUID playerUuid, String playerName) {
+        if (playerIsAuthed(zoneId, playerUuid)) {
             return CreateResult.ALREADY_EXISTS;
         }
 
         try {
-            authRepository.save(ZoneAuthorization.create(zoneId, playerId));
-            LOGGER.atInfo().log("Created zone authorization in zone: " + zoneId +" for player: "+playerId);
+            authRepository.save(ZoneAuthorization.create(zoneId, playerUuid, playerName));
+            if (playerUuid == null)
+                legacyMigration.addPending(playerName);
+            decisionCache.invalidate();
+            LOGGER.atInfo().log("Created zone authorization in zone: " + zoneId +" for player: "+playerName);
             return CreateResult.SUCCESS;
         } catch (Exception e) {
-            LOGGER.atSevere().withCause(e).log("Failed to authorize player: "+playerId+ " in zone: " + zoneId);
+            LOGGER.atSevere().withCause(e).log("Failed to authorize player: "+playerName+ " in zone: " + zoneId);
             return CreateResult.ERROR;
         }
     }
 
+    /**
+     * Authorize a player in a zone without blocking the caller. A null player UUID is handled
+     * like {@link #AuthenticatePlayerInZone}.
+     *
+     * @return Future of the result, completed on the I/O thread
+     */
+    public CompletableFuture<CreateResult> AuthenticatePlayerInZoneAsync(String zoneId, @Nullable UUID playerUuid, String playerName) {
+        if (playerIsAuthed(zoneId, playerUuid)) {
+            return CompletableFuture.completedFuture(CreateResult.ALREADY_EXISTS);
+        }
+
+        return authRepository.saveAsync(ZoneAuthorization.create(zoneId, playerUuid, playerName)).handle((ignored, e) -> {
+            if (e != null) {
+                LOGGER.atSevere().withCause(e).log("Failed to authorize player: "+playerName+ " in zone: " + zoneId);
+                return CreateResult.ERROR;
+            }
+            if (playerUuid == null)
+                legacyMigration.addPending(playerName);
+            decisionCache.invalidate();
+            LOGGER.atInfo().log("Created zone authorization in zone: " + zoneId +" for player: "+playerName);
+            return CreateResult.SUCCESS;
+        });
+    }
+
     public boolean ClearZoneAuthentications(String zoneId) {
         try {
-            List<String> playerAuths = authRepository.findByZone(zoneId);
-            playerAuths.forEach((playerId) -> {
-                PlayerRef playerRef = Universe.get().getPlayerByUsername(playerId, NameMatching.EXACT);
-                if (playerRef != null){
-                    playerRef.sendMessage(MessageBuilder.create("Your authorization for zone '%s' has been cleared.".formatted(zoneId))
-                            .color(ColorPalette.ERROR)
-                            .build());
-                }
-            });
+            notifyAuthorizationsCleared(zoneId, authRepository.findByZone(zoneId));
 
             authRepository.delete(zoneId);
+            decisionCache.invalidate();
             LOGGER.atInfo().log("Cleared authorizations for zone: " + zoneId);
             return true;
         } catch (Exception e) {
@@ -288,24 +705,103 @@ public class RaidingService {
         }
     }
 
-    public boolean RemoveZoneAuthentication(String zoneId, String playerId){
-        try {
-            PlayerRef playerRef = Universe.get().getPlayerByUsername(playerId, NameMatching.EXACT);
+    /**
+     * Clear every authorization of a zone without blocking the caller.
+     *
+     * @return Future of whether the authorizations were cleared, completed on the I/O thread
+     */
+    public CompletableFuture<Boolean> ClearZoneAuthenticationsAsync(String zoneId) {
+        return authRepository.findByZoneAsync(zoneId)
+                .thenCompose(playerAuths -> {
+                    notifyAuthorizationsCleared(zoneId, playerAuths);
+                    return authRepository.deleteAsync(zoneId);
+                })
+                .handle((ignored, e) -> {
+                    if (e != null) {
+                        LOGGER.atSevere().withCause(e).log("Failed to clear authorizations for zone: " + zoneId);
+                        return false;
+                    }
+                    decisionCache.invalidate();
+                    LOGGER.atInfo().log("Cleared authorizations for zone: " + zoneId);
+                    return true;
+                });
+    }
+
+    private static void notifyAuthorizationsCleared(String zoneId, List<ZoneAuthorization> playerAuths) {
+        playerAuths.forEach((auth) -> {
+            PlayerRef playerRef = findOnlinePlayer(auth);
             if (playerRef != null){
-                playerRef.sendMessage(MessageBuilder.create("Your authorization for zone '%s' has been revoked.".formatted(zoneId))
+                playerRef.sendMessage(MessageBuilder.create("Your authorization for zone '%s' has been cleared.".formatted(zoneId))
                         .color(ColorPalette.ERROR)
                         .build());
             }
+        });
+    }
 
-            authRepository.delete(zoneId, playerId);
-            LOGGER.atInfo().log("Removed Authorization for player '%s' in zone '%s'".formatted(playerId, zoneId));
+    public boolean RemoveZoneAuthentication(ZoneAuthorization auth){
+        String zoneId = auth.zoneId();
+        String playerName = auth.playerName();
+        try {
+            notifyAuthorizationRevoked(auth);
+
+            authRepository.delete(auth);
+            decisionCache.invalidate();
+            LOGGER.atInfo().log("Removed Authorization for player '%s' in zone '%s'".formatted(playerName, zoneId));
             return true;
         } catch (Exception e) {
-            LOGGER.atSevere().withCause(e).log("Failed when trying to remove authorization for player '%s' in zone '%s'".formatted(playerId, zoneId));
+            LOGGER.atSevere().withCause(e).log("Failed when trying to remove authorization for player '%s' in zone '%s'".formatted(playerName, zoneId));
             return false;
         }
     }
 
+    /**
+     * Remove a single authorization without blocking the caller.
+     *
+     * @return Future of whether the authorization was removed, completed on the I/O thread
+     */
+    public CompletableFuture<Boolean> RemoveZoneAuthenticationAsync(ZoneAuthorization auth) {
+        notifyAuthorizationRevoked(auth);
+        return authRepository.deleteAsync(auth).handle((ignored, e) -> {
+            if (e != null) {
+                LOGGER.atSevere().withCause(e).log("Failed when trying to remove authorization for player '%s' in zone '%s'".formatted(auth.playerName(), auth.zoneId()));
+                return false;
+            }
+            decisionCache.invalidate();
+            LOGGER.atInfo().log("Removed Authorization for player '%s' in zone '%s'".formatted(auth.playerName(), auth.zoneId()));
+            return true;
+        });
+    }
+
+    private static void notifyAuthorizationRevoked(ZoneAuthorization auth) {
+        PlayerRef playerRef = findOnlinePlayer(auth);
+        if (playerRef != null){
+            playerRef.sendMessage(MessageBuilder.create("Your authorization for zone '%s' has been revoked.".formatted(auth.zoneId()))
+                    .color(ColorPalette.ERROR)
+                    .build());
+        }
+    }
+
+    /**
+     * Note a player's username when they connect, so legacy authorizations stored under it are
+     * migrated in the background. A volatile read once every legacy authorization is migrated.
+     */
+    public void onPlayerConnected(UUID playerUuid, @Nullable String username) {
+        legacyMigration.playerConnected(playerUuid, username);
+    }
+
+    @Nullable
+    private static UUID findOnlinePlayerUuid(String playerName) {
+        PlayerRef playerRef = Universe.get().getPlayerByUsername(playerName, NameMatching.EXACT);
+        return playerRef != null ? playerRef.getUuid() : null;
+    }
+
+    @Nullable
+    private static PlayerRef findOnlinePlayer(ZoneAuthorization auth) {
+        if (auth.playerUuid() != null)
+            return Universe.get().getPlayer(auth.playerUuid());
+        return Universe.get().getPlayerByUsername(auth.playerName(), NameMatching.EXACT);
+    }
+
     // ============================================
     // Reinforced Block Query Methods
     // ============================================
@@ -319,6 +815,21 @@ public class RaidingService {
         }
     }
 
+    /**
+     * Get the reinforcement of the block at a position. Allocation-free when blocks are cached.
+     *
+     * @param worldId The world id, see {@link WorldIds}
+     * @return The reinforcement, or {@link ReinforcedBlock#NOT_REINFORCED} if the block is not reinforced
+     */
+    public int getReinforcementAt(int worldId, int x, int y, int z) {
+        try {
+            return reinforcedBlockRepository.findReinforcement(worldId, x, y, z);
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Error finding reinforcement by position");
+            return ReinforcedBlock.NOT_REINFORCED;
+        }
+    }
+
     public Map<String, ReinforcedBlock> getReinforcedBlocksInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
         try {
             return reinforcedBlockRepository.findInArea(worldName, boundsMin, boundsMax);
@@ -330,7 +841,7 @@ public class RaidingService {
 
     public Map<String, ReinforcedBlock> getReinforcedBlockInZone(Zone zone) {
         try {
-            return reinforcedBlockRepository.findInArea(zone.worldName(), zone.min().toVector3i(), zone.max().toVector3i());
+            return reinforcedBlockRepository.findInArea(zone.worldName(), zone.minBlock(), zone.maxBlock());
         } catch (Exception e) {
             LOGGER.atSevere().withCause(e).log("Error finding blocks in zone '%s'".formatted(zone.zoneName()));
             return null;
@@ -347,10 +858,8 @@ public class RaidingService {
         }
 
         try {
-            ReinforcedBlock block = ReinforcedBlock.create(worldName, position, reinforcement);
-            LOGGER.atInfo().log("Try Create Reinforced Block"+block.toString());
-            reinforcedBlockRepository.save(block);
-            LOGGER.atInfo().log("Created Reinforced Block in world '%s' at position '%s' with '%s' reinforcement".formatted(worldName, position.toString(), reinforcement));
+            reinforcedBlockRepository.save(ReinforcedBlock.create(worldName, position, reinforcement));
+            LOGGER.atFine().log("Created Reinforced Block in world '%s' at position '%s' with '%s' reinforcement".formatted(worldName, position.toString(), reinforcement));
             return CreateResult.SUCCESS;
         } catch (Exception e) {
             LOGGER.atWarning().log("Failed to create Reinforced Block in world '%s' at position '%s' with '%s' reinforcement: %s".formatted(worldName, position.toString(), reinforcement, e.getMessage()));
@@ -361,23 +870,45 @@ public class RaidingService {
     public boolean UpdateReinforcement(ReinforcedBlock reinforcedBlock, int newReinforcement){
         try {
             reinforcedBlockRepository.save(reinforcedBlock.withNewReinforcement(newReinforcement));
-            LOGGER.atInfo().log("Updated reinforcement of block '%s' to '%s'".formatted(reinforcedBlock.internalId(), newReinforcement));
+            LOGGER.atFine().log("Updated reinforcement of block '%s' to '%s'".formatted(reinforcedBlock.internalId(), newReinforcement));
+            return true;
+        } catch (Exception e) {
+            LOGGER.atWarning().log("Failed to update reinforcement of block '%s' to '%s', current reinforcement: '%s'".formatted(reinforcedBlock.internalId(), newReinforcement, reinforcedBlock.reinforcement()));
+            return false;
+        }
+    }
+
+    /**
+     * Set the reinforcement of the block at a position, or delete its record. Allocation-free
+     * when the block's chunk is cached, for the block events of every raider hit.
+     *
+     * @param worldId The world id, see {@link WorldIds}
+     * @param reinforcement The new reinforcement, or {@link ReinforcedBlock#NOT_REINFORCED} to delete the block
+     * @return true if stored
+     */
+    public boolean setReinforcementAt(int worldId, int x, int y, int z, int reinforcement) {
+        try {
+            reinforcedBlockRepository.setReinforcement(worldId, x, y, z, reinforcement);
             return true;
         } catch (Exception e) {
-            LOGGER.atInfo().log("Failed to update reinforcement of block '%s' to '%s', current reinforcement: '%s'".formatted(reinforcedBlock.internalId(), newReinforcement, reinforcedBlock.reinforcement()));
+            LOGGER.atSevere().withCause(e).log("Failed to set reinforcement of block %d, %d, %d in world '%s' to %d".formatted(x, y, z, WorldIds.nameOf(worldId), reinforcement));
             return false;
         }
     }
 
+    public boolean UpdateReinforcement(String worldName, Vector3i position, int newReinforcement){
+        return UpdateReinforcement(ReinforcedBlock.create(worldName, position, newReinforcement), newReinforcement);
+    }
+
     public boolean DeleteReinforcedBlock(String worldName, Vector3i position){
         try {
             Optional<ReinforcedBlock> reinforcedBlock = reinforcedBlockRepository.findByPosition(worldName, position);
             if (reinforcedBlock.isPresent()){
                 reinforcedBlockRepository.delete(reinforcedBlock.get().internalId());
-                LOGGER.atInfo().log("Deleted Reinforced Block in world '%s' at position '%s'".formatted(worldName, position.toString()));
+                LOGGER.atFine().log("Deleted Reinforced Block in world '%s' at position '%s'".formatted(worldName, position.toString()));
                 return true;
             }
-            LOGGER.atInfo().log("There was no Reinforced Block to delete in world '%s' at position '%s'".formatted(worldName, position.toString()));
+            LOGGER.atFine().log("There was no Reinforced Block to delete in world '%s' at position '%s'".formatted(worldName, position.toString()));
             return false;
         } catch (Exception e) {
             LOGGER.atSevere().withCause(e).log("Failed when trying to delete Reinforced Block in world '%s' at position '%s'".formatted(worldName, position.toString()));
@@ -388,7 +919,7 @@ public class RaidingService {
     public boolean DeleteReinforcedBlock(ReinforcedBlock reinforcedBlock){
         try {
             reinforcedBlockRepository.delete(reinforcedBlock.internalId());
-            LOGGER.atInfo().log("Deleted Reinforced Block '%s'".formatted(reinforcedBlock.internalId()));
+            LOGGER.atFine().log("Deleted Reinforced Block '%s'".formatted(reinforcedBlock.internalId()));
             return true;
 
         } catch (Exception e) {
@@ -408,13 +939,257 @@ public class RaidingService {
         }
     }
 
+    /**
+     * Delete every reinforced block in an area without blocking the caller.
+     *
+     * @return Future of whether the blocks were deleted, completed on the I/O thread
+     */
+    public CompletableFuture<Boolean> DeleteReinforcedBlocksInAreaAsync(String worldName, Vector3i boundsMin, Vector3i boundsMax){
+        return reinforcedBlockRepository.deleteInAreaAsync(worldName, boundsMin, boundsMax).handle((ignored, e) -> {
+            if (e != null) {
+                LOGGER.atSevere().withCause(e).log("Failed when trying to delete Reinforced Blocks in world '%s' area - min:'%s', max:'%s'".formatted(worldName, boundsMin.toString(), boundsMax.toString()));
+                return false;
+            }
+            LOGGER.atInfo().log("Deleted Reinforced Blocks in world '%s' in area - min:'%s', max:'%s'".formatted(worldName, boundsMin.toString(), boundsMax.toString()));
+            return true;
+        });
+    }
+
+    // ============================================
+    // Batch Reinforced Block Methods
+    // ============================================
+
+    /**
+     * Apply damage to many blocks at once, like an explosion or an area tool. Each zone is
+     * looked up and checked for authorization once, and every change is stored in a single
+     * write batch.
+     *
+     * <p>The first unauthorized hit on a block that is not reinforced starts it at
+     * initialReinforcement. Damage is taken off the reinforcement, and a block without enough
+     * left breaks and loses its record. A position listed twice is damaged twice.
+     *
+     * @param playerUuid The player doing the damage, or null if it is not a player
+     * @param amount Reinforcement taken off each block
+     * @param initialReinforcement Reinforcement of a block hit for the first time
+     * @param neverReinforced Blocks that break freely instead of being reinforced, or null if there are none
+     */
+    public BatchResult<DamageOutcome> applyDamage(String worldName, @Nullable UUID playerUuid, List<Vector3i> positions,
+                                                  int amount, int initialReinforcement, @Nullable Predicate<Vector3i> neverReinforced) {
+        int worldId = WorldIds.of(worldName);
+        DamageOutcome[] outcomes = new DamageOutcome[positions.size()];
+        int[] reinforcements = new int[positions.size()];
+        Arrays.fill(reinforcements, ReinforcedBlock.NOT_REINFORCED);
+        if (!isWorldReady(worldId)) {
+            Arrays.fill(outcomes, DamageOutcome.DENIED);
+            return new BatchResult<>(outcomes, reinforcements, true);
+        }
+
+        BatchZones zones = new BatchZones(worldId, playerUuid == null ? -1 : PlayerIds.of(playerUuid));
+        LongIntHashMap changes = new LongIntHashMap();
+        for (int i = 0; i < outcomes.length; i++) {
+            Vector3i position = positions.get(i);
+            ResolvedZone zone;
+            int current;
+            try {
+                zone = zones.find(position.x, position.y, position.z);
+                current = zone == null ? ReinforcedBlock.NOT_REINFORCED : currentReinforcement(changes, worldId, position);
+            } catch (Exception e) {
+                zones.fail(e);
+                outcomes[i] = DamageOutcome.DENIED;
+                continue;
+            }
+
+            long key = BlockPositions.pack(position.x, position.y, position.z);
+            boolean stored = current != ReinforcedBlock.NOT_REINFORCED;
+            if (zone == null) {
+                outcomes[i] = DamageOutcome.UNPROTECTED;
+            } else if (zone.authorized()) {
+                if (stored) changes.put(key, ReinforcedBlock.NOT_REINFORCED);
+                outcomes[i] = DamageOutcome.AUTHORIZED;
+            } else if (!stored && neverReinforced != null && neverReinforced.test(position)) {
+                outcomes[i] = DamageOutcome.UNREINFORCED;
+            } else {
+                int reinforcement = stored ? current : initialReinforcement;
+                if (reinforcement >= amount) {
+                    changes.put(key, reinforcement - amount);
+                    reinforcements[i] = reinforcement - amount;
+                    outcomes[i] = DamageOutcome.ABSORBED;
+                } else {
+                    if (stored) changes.put(key, ReinforcedBlock.NOT_REINFORCED);
+                    outcomes[i] = DamageOutcome.BROKEN;
+                }
+            }
+        }
+
+        zones.logFailure();
+        boolean stored = storeChanges(worldName, changes);
+        LOGGER.atInfo().log("Applied %d damage to %d blocks in world '%s', %d reinforced blocks changed".formatted(amount, outcomes.length, worldName, changes.size()));
+        return new BatchResult<>(outcomes, reinforcements, stored);
+    }
+
+    /**
+     * Add reinforcement to many blocks at once. Each zone is looked up and checked for
+     * authorization once, and every change is stored in a single write batch. A position
+     * listed twice is reinforced twice.
+     *
+     * @param amount Reinforcement added to each block
+     * @param initialReinforcement Reinforcement a block that is not reinforced yet starts from
+     * @param maxReinforcement Reinforcement is capped here
+     */
+    public BatchResult<ReinforceOutcome> reinforce(String worldName, UUID playerUuid, List<Vector3i> positions,
+                                                   int amount, int initialReinforcement, int maxReinforcement) {
+        int worldId = WorldIds.of(worldName);
+        ReinforceOutcome[] outcomes = new ReinforceOutcome[positions.size()];
+        int[] reinforcements = new int[positions.size()];
+        Arrays.fill(reinforcements, ReinforcedBlock.NOT_REINFORCED);
+        if (!isWorldReady(worldId)) {
+            Arrays.fill(outcomes, ReinforceOutcome.DENIED);
+            return new BatchResult<>(outcomes, reinforcements, true);
+        }
+
+        BatchZones zones = new BatchZones(worldId, PlayerIds.of(playerUuid));
+        LongIntHashMap changes = new LongIntHashMap();
+        for (int i = 0; i < outcomes.length; i++) {
+            Vector3i position = positions.get(i);
+            ResolvedZone zone;
+            int current;
+            try {
+                zone = zones.find(position.x, position.y, position.z);
+                current = zone == null ? ReinforcedBlock.NOT_REINFORCED : currentReinforcement(changes, worldId, position);
+            } catch (Exception e) {
+                zones.fail(e);
+                outcomes[i] = ReinforceOutcome.DENIED;
+                continue;
+            }
+
+            reinforcements[i] = current;
+            if (zone == null) {
+                outcomes[i] = ReinforceOutcome.UNPROTECTED;
+            } else if (!zone.authorized()) {
+                outcomes[i] = ReinforceOutcome.UNAUTHORIZED;
+            } else if (current != ReinforcedBlock.NOT_REINFORCED && current >= maxReinforcement) {
+                outcomes[i] = ReinforceOutcome.AT_MAXIMUM;
+            } else {
+                int from = current == ReinforcedBlock.NOT_REINFORCED ? initialReinforcement : current;
+                reinforcements[i] = Integer.min(maxReinforcement, from + amount);
+                changes.put(BlockPositions.pack(position.x, position.y, position.z), reinforcements[i]);
+                outcomes[i] = ReinforceOutcome.REINFORCED;
+            }
+        }
+
+        zones.logFailure();
+        boolean stored = storeChanges(worldName, changes);
+        LOGGER.atInfo().log("Reinforced %d of %d blocks in world '%s'".formatted(changes.size(), outcomes.length, worldName));
+        return new BatchResult<>(outcomes, reinforcements, stored);
+    }
+
+    /**
+     * A zone met during a batch, with the batch player's authorization in it.
+     */
+    private record ResolvedZone(Zone zone, boolean authorized) {
+    }
+
+    /**
+     * Zones of one batch. Zones never overlap, so a block inside a zone already met needs no
+     * lookup, and each zone's authorization is read once.
+     */
+    private final class BatchZones {
+        private final int worldId;
+        private final int playerId;
+        private final List<ResolvedZone> zones = new ArrayList<>();
+        @Nullable
+        private Exception failure;
+
+        /**
+         * @param playerId The player id, see {@link PlayerIds}, or -1 for none
+         */
+        BatchZones(int worldId, int playerId) {
+            this.worldId = worldId;
+            this.playerId = playerId;
+        }
+
+        /**
+         * @return The zone containing a block, or null if there is none
+         */
+        @Nullable
+        ResolvedZone find(int x, int y, int z) throws Exception {
+            for (ResolvedZone resolved : zones) {
+                if (resolved.zone().contains(x, y, z)) return resolved;
+            }
+
+            Zone zone = zoneRepository.findAt(worldId, x, y, z);
+            if (zone == null) return null;
+            ResolvedZone resolved = new ResolvedZone(zone, playerId >= 0 && authRepository.isAuthorized(zone.zoneName(), playerId));
+            zones.add(resolved);
+            return resolved;
+        }
+
+        // Keep the first failure, logged once for the whole batch
+        void fail(Exception e) {
+            if (failure == null) failure = e;
+        }
+
+        void logFailure() {
+            if (failure != null)
+                LOGGER.atSevere().withCause(failure).log("Error resolving zones for a batch in world " + WorldIds.nameOf(worldId) + ", failed blocks were denied");
+        }
+    }
+
+    // The reinforcement of a block, counting changes made earlier in the same batch
+    private int currentReinforcement(LongIntHashMap changes, int worldId, Vector3i position) throws Exception {
+        long key = BlockPositions.pack(position.x, position.y, position.z);
+        if (changes.containsKey(key)) return changes.getOrDefault(key, ReinforcedBlock.NOT_REINFORCED);
+        return reinforcedBlockRepository.findReinforcement(worldId, position.x, position.y, position.z);
+    }
+
+    /**
+     * Store the changes of a batch in one write batch.
+     *
+     * @param changes Packed block position -> new reinforcement, or {@link ReinforcedBlock#NOT_REINFORCED} to delete
+     * @return true if stored, or if there was nothing to store
+     */
+    private boolean storeChanges(String worldName, LongIntHashMap changes) {
+        if (changes.isEmpty()) return true;
+
+        List<ReinforcedBlock> saves = new ArrayList<>();
+        List<String> deletedIds = new ArrayList<>();
+        changes.forEach((key, reinforcement) -> {
+            Vector3i position = new Vector3i(BlockPositions.unpackX(key), BlockPositions.unpackY(key), BlockPositions.unpackZ(key));
+            if (reinforcement == ReinforcedBlock.NOT_REINFORCED) {
+                deletedIds.add(ReinforcedBlock.getInternalIdFromPosition(worldName, position));
+            } else {
+                saves.add(ReinforcedBlock.create(worldName, position, reinforcement));
+            }
+        });
+
+        try {
+            reinforcedBlockRepository.writeBatch(saves, deletedIds);
+            return true;
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Failed to store %d reinforced block changes in world '%s'".formatted(changes.size(), worldName));
+            return false;
+        }
+    }
+
     // ============================================
     // Lifecycle
     // ============================================
 
     public void shutdown() {
+        backgroundExecutor.shutdown();
+        chunkExecutor.shutdown();
+        try {
+            if (!backgroundExecutor.awaitTermination(10, TimeUnit.SECONDS))
+                LOGGER.atWarning().log("Background tasks did not finish before shutdown");
+            if (!chunkExecutor.awaitTermination(10, TimeUnit.SECONDS))
+                LOGGER.atWarning().log("Chunk tasks did not finish before shutdown");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
         zoneRepository.close();
         authRepository.close();
+        decisionCache.clear();
         reinforcedBlockRepository.close();
     }
 }
@@ -4,23 +4,43 @@ import com.apophisgames.rustyraiding.config.RaidingConfig;
 import com.apophisgames.rustyraiding.interactions.ReinforcementKitInteraction;
 import com.apophisgames.rustyraiding.interactions.ToolCupboardInteraction;
 import com.apophisgames.rustyraiding.reinforcedblocks.CachedReinforcedBlockRepository;
+import com.apophisgames.rustyraiding.reinforcedblocks.ChunkComponentReinforcedBlockRepository;
 import com.apophisgames.rustyraiding.reinforcedblocks.IReinforcedBlockRepository;
+import com.apophisgames.rustyraiding.reinforcedblocks.LogReinforcedBlockRepository;
+import com.apophisgames.rustyraiding.reinforcedblocks.RegionFileReinforcedBlockRepository;
+import com.apophisgames.rustyraiding.reinforcedblocks.ReinforcementChunk;
 import com.apophisgames.rustyraiding.reinforcedblocks.SqliteReinforcedBlockRepository;
+import com.apophisgames.rustyraiding.reinforcedblocks.WriteBehindReinforcedBlockRepository;
+import com.apophisgames.rustyraiding.util.PlayerIds;
+import com.apophisgames.rustyraiding.util.RaidingDatabase;
+import com.apophisgames.rustyraiding.util.SerializedRepository;
 import com.apophisgames.rustyraiding.zoneauthorizations.CachedZoneAuthorizationRepository;
 import com.apophisgames.rustyraiding.zoneauthorizations.IAuthRepository;
 import com.apophisgames.rustyraiding.zoneauthorizations.SqliteZoneAuthorizationRepository;
 import com.apophisgames.rustyraiding.zones.CachedZoneRepository;
 import com.apophisgames.rustyraiding.zones.IZoneRepository;
 import com.apophisgames.rustyraiding.zones.SqliteZoneRepository;
+import com.hypixel.hytale.assetstore.event.LoadedAssetsEvent;
+import com.hypixel.hytale.component.ComponentType;
+import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockType;
+import com.hypixel.hytale.server.core.asset.type.soundevent.config.SoundEvent;
+import com.hypixel.hytale.server.core.event.events.player.PlayerConnectEvent;
 import com.hypixel.hytale.server.core.modules.interaction.interaction.config.Interaction;
 import com.hypixel.hytale.server.core.plugin.JavaPlugin;
 import com.hypixel.hytale.server.core.plugin.JavaPluginInit;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.world.events.ChunkPreLoadProcessEvent;
+import com.hypixel.hytale.server.core.universe.world.storage.ChunkStore;
 import com.hypixel.hytale.server.core.util.Config;
 
+import java.util.List;
+
 public class RustyRaidingPlugin extends JavaPlugin {
     
     private static com.apophisgames.rustyraiding.RustyRaidingPlugin instance;
     private RaidingService raidingService;
+    private RaidingDatabase database;
+    private ComponentType<ChunkStore, ReinforcementChunk> reinforcementChunkComponentType;
 
     public static Config<RaidingConfig> CONFIG;
 
@@ -46,17 +66,23 @@ public class RustyRaidingPlugin extends JavaPlugin {
         getLogger().atInfo().log("Setting up Rusty Raiding...");
 
         // Initialize service
-        IZoneRepository zoneSqliteRepo = new SqliteZoneRepository(getDataDirectory());
+        // All tables share one database, only touched by its own I/O thread (see SerializedRepository)
+        RaidingConfig config = CONFIG.get();
+        database = new RaidingDatabase(getDataDirectory(), config.getDatabaseProfile());
+
+        IZoneRepository zoneSqliteRepo = SerializedRepository.wrap(IZoneRepository.class, new SqliteZoneRepository(database), database.getExecutor());
         IZoneRepository zoneCachedRepo = new CachedZoneRepository(zoneSqliteRepo);
 
-        IAuthRepository authSqliteRepo = new SqliteZoneAuthorizationRepository(getDataDirectory());
+        IAuthRepository authSqliteRepo = SerializedRepository.wrap(IAuthRepository.class, new SqliteZoneAuthorizationRepository(database), database.getExecutor());
         IAuthRepository authCachedRepo = new CachedZoneAuthorizationRepository(authSqliteRepo);
 
-        IReinforcedBlockRepository reinforcedBlockSqliteRepo = new SqliteReinforcedBlockRepository(getDataDirectory());
-        IReinforcedBlockRepository reinforcedBlockCachedRepo = new CachedReinforcedBlockRepository(reinforcedBlockSqliteRepo);
+        // Registered whatever the storage mode, so chunks saved in chunk mode still load after switching back
+        reinforcementChunkComponentType = getChunkStoreRegistry().registerComponent(ReinforcementChunk.class,
+                "RustyRaiding_ReinforcementChunk", ReinforcementChunk.CODEC);
 
-        raidingService = new RaidingService(zoneCachedRepo, authCachedRepo, reinforcedBlockCachedRepo);
-        raidingService.initialize();
+        raidingService = new RaidingService(zoneCachedRepo, authCachedRepo, createReinforcedBlockRepository(config));
+        // Warm the caches in the background, block events in a world still loading are denied if fail-closed
+        raidingService.initialize(config.getPreloadOnStartup() ? List.of(config.getPreloadWorlds()) : null, config.getFailClosedWhileLoading());
 
         // Register command
         getCommandRegistry().registerCommand(new RaidingCommand(this));
@@ -67,12 +93,56 @@ public class RustyRaidingPlugin extends JavaPlugin {
         getEntityStoreRegistry().registerSystem(new ZoneBlockProtection.BreakBlock(() -> raidingService));
         getEntityStoreRegistry().registerSystem(new ZoneBlockProtection.UseBlock(() -> raidingService));
 
+        // Block types may change when assets reload, rebuild the protection policy table on next use
+        getEventRegistry().register(LoadedAssetsEvent.class, BlockType.class, event -> BlockProtectionPolicy.invalidate());
+        // Sound indices shift the same way, resolve them again on next use
+        getEventRegistry().register(LoadedAssetsEvent.class, SoundEvent.class, event -> RaidEffects.invalidateSounds());
+
+        // Reinforced blocks are held in memory only while their chunk is loaded
+        getEventRegistry().registerGlobal(ChunkPreLoadProcessEvent.class, event -> ChunkLifecycleSystems.onChunkLoad(raidingService, event));
+        getChunkStoreRegistry().registerSystem(new ChunkLifecycleSystems.UnloadChunk(() -> raidingService));
+
+        // Intern player ids up front, and let the legacy authorization migration match their username
+        getEventRegistry().register(PlayerConnectEvent.class, event -> {
+            PlayerRef playerRef = event.getPlayerRef();
+            PlayerIds.of(playerRef.getUuid());
+            raidingService.onPlayerConnected(playerRef.getUuid(), playerRef.getUsername());
+        });
+
         this.getCodecRegistry(Interaction.CODEC).register("RustyRaiding_ToolCupboard_Interaction", ToolCupboardInteraction.class, ToolCupboardInteraction.CODEC);
         this.getCodecRegistry(Interaction.CODEC).register("RustyRaiding_ReinforcementKit_Interaction", ReinforcementKitInteraction.class, ReinforcementKitInteraction.CODEC);
 
         getLogger().atInfo().log("Rusty Raiding setup complete.");
     }
     
+    private IReinforcedBlockRepository createReinforcedBlockRepository(RaidingConfig config) {
+        switch (config.getReinforcementStorage()) {
+            case CHUNK:
+                // Saved with the chunk data by the engine, nothing to cache or batch on our side
+                return new ChunkComponentReinforcedBlockRepository(reinforcementChunkComponentType);
+            case REGION:
+                // Region files are plain memory behind their lock, no I/O thread needed
+                IReinforcedBlockRepository reinforcedBlockRegionRepo = new RegionFileReinforcedBlockRepository(getDataDirectory().resolve("reinforcements"));
+                return new CachedReinforcedBlockRepository(new WriteBehindReinforcedBlockRepository(reinforcedBlockRegionRepo,
+                        config.getReinforcementFlushIntervalMillis(), config.getReinforcementFlushMaxPendingWrites()));
+            case LOG:
+                // Every block is already in the log's memory, and appends are committed in groups
+                return new LogReinforcedBlockRepository(getDataDirectory().resolve("reinforcement-log"),
+                        config.getReinforcementFlushIntervalMillis(), config.getReinforcementFlushMaxPendingWrites());
+            case DATABASE:
+            default:
+                IReinforcedBlockRepository reinforcedBlockSqliteRepo = SerializedRepository.wrap(IReinforcedBlockRepository.class, new SqliteReinforcedBlockRepository(database), database.getExecutor());
+                // Reinforcement hits are batched to disk behind the cache instead of written one by one
+                IReinforcedBlockRepository reinforcedBlockWriteBehindRepo = new WriteBehindReinforcedBlockRepository(reinforcedBlockSqliteRepo,
+                        config.getReinforcementFlushIntervalMillis(), config.getReinforcementFlushMaxPendingWrites());
+                return new CachedReinforcedBlockRepository(reinforcedBlockWriteBehindRepo);
+        }
+    }
+
+    public ComponentType<ChunkStore, ReinforcementChunk> getReinforcementChunkComponentType() {
+        return reinforcementChunkComponentType;
+    }
+
     @Override
     protected void start() {
         getLogger().atInfo().log("Rusty Raiding started!");
@@ -80,8 +150,12 @@ public class RustyRaidingPlugin extends JavaPlugin {
 
     @Override
     protected void shutdown() {
+        // Closing the repositories drains pending reinforcement writes before the connections close
         if (raidingService != null) {
             raidingService.shutdown();
         }
+        if (database != null) {
+            database.close();
+        }
     }
 }
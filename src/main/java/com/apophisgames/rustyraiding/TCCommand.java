@@ -12,7 +12,6 @@ import com.hypixel.hytale.protocol.DebugShape;
 import com.hypixel.hytale.server.core.command.system.CommandContext;
 import com.hypixel.hytale.server.core.command.system.basecommands.AbstractPlayerCommand;
 import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
-import com.hypixel.hytale.server.core.entity.entities.Player;
 import com.hypixel.hytale.server.core.modules.debug.DebugUtils;
 import com.hypixel.hytale.server.core.modules.entity.component.TransformComponent;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
@@ -93,10 +92,7 @@ public class TCCommand extends CommandBase {
                 return;
             }
 
-            Player player = (Player) store.getComponent(ref, Player.getComponentType());
-            if (player == null) return;
-
-            boolean hasAuth = plugin.getZoneService().playerIsAuthed(closest.zoneName(), player.getDisplayName());
+            boolean hasAuth = plugin.getZoneService().playerIsAuthed(closest.zoneName(), playerRef.getUuid());
             if (!hasAuth){
                 playerRef.sendMessage(MessageBuilder.create("Could not find authorized TC zone, walk closer to an authorized TC and try again")
                         .color(ColorPalette.ERROR)
@@ -1,19 +1,16 @@
 package com.apophisgames.rustyraiding;
 
 import com.apophisgames.rustyraiding.reinforcedblocks.ReinforcedBlock;
+import com.apophisgames.rustyraiding.util.PlayerIds;
+import com.apophisgames.rustyraiding.util.WorldIds;
 import com.apophisgames.rustyraiding.zones.Zone;
 import com.hypixel.hytale.component.*;
 import com.hypixel.hytale.component.query.Query;
 import com.hypixel.hytale.component.system.EntityEventSystem;
 import com.hypixel.hytale.logger.HytaleLogger;
 import com.hypixel.hytale.math.util.ChunkUtil;
-import com.hypixel.hytale.math.vector.Vector3d;
 import com.hypixel.hytale.math.vector.Vector3i;
-import com.hypixel.hytale.protocol.SoundCategory;
-import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockBreakingDropType;
-import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockGathering;
 import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockType;
-import com.hypixel.hytale.server.core.asset.type.soundevent.config.SoundEvent;
 import com.hypixel.hytale.server.core.entity.entities.Player;
 import com.hypixel.hytale.server.core.event.events.ecs.BreakBlockEvent;
 import com.hypixel.hytale.server.core.event.events.ecs.PlaceBlockEvent;
@@ -22,16 +19,16 @@ import com.hypixel.hytale.server.core.inventory.ItemStack;
 import com.hypixel.hytale.server.core.modules.blockhealth.BlockHealthChunk;
 import com.hypixel.hytale.server.core.modules.blockhealth.BlockHealthModule;
 import com.hypixel.hytale.server.core.modules.entity.component.TransformComponent;
-import com.hypixel.hytale.server.core.universe.world.ParticleUtil;
-import com.hypixel.hytale.server.core.universe.world.SoundUtil;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
 import com.hypixel.hytale.server.core.universe.world.World;
 import com.hypixel.hytale.server.core.universe.world.storage.ChunkStore;
 import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 import java.util.function.Supplier;
 
 /**
@@ -41,13 +38,46 @@ public class ZoneBlockProtection {
 
     private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
 
-    private static final List<String> BYPASS_GATHER_TYPES = List.of("Soils");
-
     private static final Query<EntityStore> QUERY = Query.and(
         Player.getComponentType(),
         TransformComponent.getComponentType()
     );
 
+    /**
+     * A world and its id, see {@link #worldIdOf}. The world is weakly held, so a removed world is collected.
+     */
+    private record WorldId(WeakReference<World> world, int id) {
+    }
+
+    // Every world the handlers have seen, replaced whole when one is added
+    private static volatile WorldId[] worldIds = new WorldId[0];
+
+    /**
+     * The id of a world, resolved from its name once per World instance. A scan of the few
+     * worlds seen so far, without hashing the name on every event.
+     */
+    static int worldIdOf(World world) {
+        for (WorldId entry : worldIds) {
+            if (entry.world().get() == world) return entry.id();
+        }
+        return registerWorld(world);
+    }
+
+    private static synchronized int registerWorld(World world) {
+        List<WorldId> entries = new ArrayList<>(worldIds.length + 1);
+        for (WorldId entry : worldIds) {
+            World known = entry.world().get();
+            if (known == world) return entry.id();
+            // Drop worlds that were collected
+            if (known != null) entries.add(entry);
+        }
+
+        int id = WorldIds.of(world.getName());
+        entries.add(new WorldId(new WeakReference<>(world), id));
+        worldIds = entries.toArray(new WorldId[0]);
+        return id;
+    }
+
     public static class PlaceBlock extends EntityEventSystem<EntityStore, PlaceBlockEvent> {
         private final Supplier<RaidingService> raidingService;
 
@@ -75,34 +105,32 @@ public class ZoneBlockProtection {
 
             // Raiders are allowed to bypass protections for certain types of blocks, like soils
             ItemStack itemInHand = event.getItemInHand();
-            if (itemInHand != null) {
-                String blockKey = itemInHand.getBlockKey();
-                if (blockKey != null){
-                    BlockType blockAsset = BlockType.getAssetMap().getAsset(blockKey);
-                    if (IsAllowedBlockType(blockAsset))
-                        return;
-                }
-            }
+            if (itemInHand != null && BlockProtectionPolicy.isAllowed(itemInHand.getBlockKey()))
+                return;
 
             RaidingService service = raidingService.get();
             if (service == null) return;
 
-            Player player = chunk.getComponent(index, Player.getComponentType());
-            if (player == null) return;
+            PlayerRef playerRef = chunk.getComponent(index, PlayerRef.getComponentType());
+            if (playerRef == null) return;
 
             World world = store.getExternalData().getWorld();
+            int worldId = worldIdOf(world);
             TransformComponent transform = chunk.getComponent(index, TransformComponent.getComponentType());
             if (transform == null) return;
 
-            Vector3i target = event.getTargetBlock();
-            Vector3d targetPos = new Vector3d(target.x, target.y, target.z);
+            // Fail closed while the world's protection data is still loading
+            if (!service.isWorldReady(worldId)) {
+                event.setCancelled(true);
+                return;
+            }
 
-            Zone zone = service.getZoneAt(world.getName(), targetPos);
-            if (zone == null) return;
+            Vector3i target = event.getTargetBlock();
 
-            boolean isAuthed = service.playerIsAuthed(zone.zoneName(), player.getDisplayName());
+            AuthorizationDecisionCache.Decision decision = service.getAuthorizationDecision(worldId, PlayerIds.of(playerRef.getUuid()), target.x, target.y, target.z);
+            if (decision == null) return;
 
-            if (!isAuthed)
+            if (!decision.authorized())
                 event.setCancelled(true);
         }
     }
@@ -136,49 +164,58 @@ public class ZoneBlockProtection {
             if (service == null) return;
 
             World world = store.getExternalData().getWorld();
+            int worldId = worldIdOf(world);
+
+            // Fail closed while the world's protection data is still loading
+            if (!service.isWorldReady(worldId)) {
+                event.setCancelled(true);
+                return;
+            }
 
             Vector3i target = event.getTargetBlock();
-            Vector3d targetPos = new Vector3d(target.x, target.y, target.z);
 
-            Zone zone = service.getZoneAt(world.getName(), targetPos);
-            if (zone == null) return;
+            Zone zone;
+            boolean isAuthed = false;
+            PlayerRef playerRef = chunk.getComponent(index, PlayerRef.getComponentType());
+            if (playerRef != null){
+                AuthorizationDecisionCache.Decision decision = service.getAuthorizationDecision(worldId, PlayerIds.of(playerRef.getUuid()), target.x, target.y, target.z);
+                if (decision == null) return;
+                zone = decision.zone();
+                isAuthed = decision.authorized();
+            } else {
+                zone = service.getZoneAt(worldId, target.x, target.y, target.z);
+                if (zone == null) return;
+            }
 
             BlockType blockType = event.getBlockType();
             if (blockType.getId().equals("Bench_Tool_Cupboard")){
-                service.deleteZone(zone.worldName(), zone.zoneName());
-                service.DeleteReinforcedBlocksInArea(zone.worldName(), zone.min().toVector3i(), zone.max().toVector3i());
+                // Removes the zone, its authorizations and its reinforced blocks in one transaction
+                // on the I/O thread, nothing here waits on the result
+                service.deleteZoneAsync(zone.worldName(), zone.zoneName());
                 return;
             }
 
-
-
-            boolean isAuthed = false;
-            Player player = chunk.getComponent(index, Player.getComponentType());
-            if (player != null){
-                isAuthed = service.playerIsAuthed(zone.zoneName(), player.getDisplayName());
-            }
-
-            Optional<ReinforcedBlock> reinforcedBlock = service.getReinforcedBlockAtPosition(world.getName(), target);
+            int currentReinforcement = service.getReinforcementAt(worldId, target.x, target.y, target.z);
+            boolean isReinforced = currentReinforcement != ReinforcedBlock.NOT_REINFORCED;
             if (isAuthed){
-                if (reinforcedBlock.isPresent()){
-                    service.DeleteReinforcedBlock(reinforcedBlock.get());
+                if (isReinforced){
+                    service.setReinforcementAt(worldId, target.x, target.y, target.z, ReinforcedBlock.NOT_REINFORCED);
                 }
             } else {
                 boolean shouldCancelBreak = true;
-                if (reinforcedBlock.isEmpty()){
+                if (!isReinforced){
                     if (IsAllowedBlockType(blockType))
                         return;
                     int startingReinforcement = RustyRaidingPlugin.CONFIG.get().getReinforceBlockAmount()-1;
                     // Create a reinforced block here if it is the first time a block is being broken without authorization (with -1 reinforcement because of this break).
-                    service.CreateReinforcedBlock(world.getName(), target, startingReinforcement);
+                    service.setReinforcementAt(worldId, target.x, target.y, target.z, startingReinforcement);
                     PlayReinforcedBreakEffects(world, target, startingReinforcement);
                 } else {
-                    int currentReinforcement = reinforcedBlock.get().reinforcement();
                     if (currentReinforcement > 0){
-                        service.UpdateReinforcement(reinforcedBlock.get(), currentReinforcement-1);
+                        service.setReinforcementAt(worldId, target.x, target.y, target.z, currentReinforcement-1);
                         PlayReinforcedBreakEffects(world, target, currentReinforcement-1);
                     } else {
-                        service.DeleteReinforcedBlock(reinforcedBlock.get());
+                        service.setReinforcementAt(worldId, target.x, target.y, target.z, ReinforcedBlock.NOT_REINFORCED);
                         shouldCancelBreak = false;
                     }
                 }
@@ -198,12 +235,8 @@ public class ZoneBlockProtection {
     }
 
     private static void PlayReinforcedBreakEffects(World world, Vector3i blockPosition, int reinforcement){
-        Vector3d position = new Vector3d(blockPosition).add(0.5, 0.5, 0.5);
-        EntityStore store = world.getEntityStore();
-        int index = SoundEvent.getAssetMap().getIndex("SFX_Crystal_Break");
         float lerpModifier = 1.5f - ((float) reinforcement / RustyRaidingPlugin.CONFIG.get().getReinforceBlockAmount());
-        ParticleUtil.spawnParticleEffect("Block_Hit_Crystal", position, store.getStore());
-        SoundUtil.playSoundEvent3d(index, SoundCategory.SFX, position.x, position.y, position.z, 1.0F, lerpModifier, store.getStore());
+        RaidEffects.play(world, blockPosition, RaidEffects.Effect.REINFORCED_BREAK, lerpModifier);
     }
 
     public static class UseBlock extends EntityEventSystem<EntityStore, UseBlockEvent.Pre> {
@@ -239,50 +272,32 @@ public class ZoneBlockProtection {
             RaidingService service = raidingService.get();
             if (service == null) return;
 
-            Player player = chunk.getComponent(index, Player.getComponentType());
-            if (player == null) return;
+            PlayerRef playerRef = chunk.getComponent(index, PlayerRef.getComponentType());
+            if (playerRef == null) return;
 
             World world = store.getExternalData().getWorld();
-            
-            Vector3i target = event.getTargetBlock();
-            Vector3d targetPos = new Vector3d(target.x, target.y, target.z);
+            int worldId = worldIdOf(world);
 
-            Zone zone = service.getZoneAt(world.getName(), targetPos);
-            if (zone == null) return;
+            // Fail closed while the world's protection data is still loading
+            if (!service.isWorldReady(worldId)) {
+                event.setCancelled(true);
+                return;
+            }
+
+            Vector3i target = event.getTargetBlock();
 
-            boolean isAuthed = service.playerIsAuthed(zone.zoneName(), player.getDisplayName());
+            AuthorizationDecisionCache.Decision decision = service.getAuthorizationDecision(worldId, PlayerIds.of(playerRef.getUuid()), target.x, target.y, target.z);
+            if (decision == null) return;
 
-            if (!isAuthed)
+            if (!decision.authorized())
                 event.setCancelled(true);
         }
     }
 
+    /**
+     * @return true if raiders may place and break blocks of this type, see BlockProtectionPolicy
+     */
     public static boolean IsAllowedBlockType(BlockType blockType){
-        if (blockType == null)
-            return false;
-
-        boolean allowSoftBlocks = !RustyRaidingPlugin.CONFIG.get().getProtectSoftBlocks();
-        boolean allowBypassBlocks = !RustyRaidingPlugin.CONFIG.get().getProtectBypassTypeBlocks();
-
-        // Raiders are allowed to bypass protections for certain types of blocks
-        BlockGathering gathering = blockType.getGathering();
-        if (gathering != null){
-            // Soft blocks are allowed
-            if (allowSoftBlocks && gathering.isSoft())
-                return true;
-
-            if (allowBypassBlocks){
-                // So are certain block breaking types, like soils
-                BlockBreakingDropType breakingDropType = gathering.getBreaking();
-                if (breakingDropType != null){
-                    String gatherType = breakingDropType.getGatherType();
-                    if(gatherType != null && !gatherType.trim().isEmpty()){
-                        return BYPASS_GATHER_TYPES.contains(gatherType);
-                    }
-                }
-            }
-        }
-
-        return false;
+        return BlockProtectionPolicy.isAllowed(blockType);
     }
 }
@@ -1,5 +1,7 @@
 package com.apophisgames.rustyraiding.config;
 
+import com.apophisgames.rustyraiding.reinforcedblocks.ReinforcementStorage;
+import com.apophisgames.rustyraiding.util.RaidingDatabase;
 import com.hypixel.hytale.codec.Codec;
 import com.hypixel.hytale.codec.KeyedCodec;
 import com.hypixel.hytale.codec.builder.BuilderCodec;
@@ -34,6 +36,38 @@ public class RaidingConfig {
             .append(new KeyedCodec<Boolean>("ProtectBypassTypeBlocks", Codec.BOOLEAN),
                     (findConfig, bool, extraInfo) -> findConfig.ProtectBypassTypeBlocks = bool,
                     (findConfig, extraInfo) -> findConfig.ProtectBypassTypeBlocks).add()
+
+            .append(new KeyedCodec<Integer>("ReinforcementFlushIntervalMillis", Codec.INTEGER),
+                    (findConfig, integer, extraInfo) -> findConfig.ReinforcementFlushIntervalMillis = integer,
+                    (findConfig, extraInfo) -> findConfig.ReinforcementFlushIntervalMillis).add()
+
+            .append(new KeyedCodec<Integer>("ReinforcementFlushMaxPendingWrites", Codec.INTEGER),
+                    (findConfig, integer, extraInfo) -> findConfig.ReinforcementFlushMaxPendingWrites = integer,
+                    (findConfig, extraInfo) -> findConfig.ReinforcementFlushMaxPendingWrites).add()
+
+            .append(new KeyedCodec<String>("DatabaseProfile", Codec.STRING),
+                    (findConfig, string, extraInfo) -> findConfig.DatabaseProfile = string,
+                    (findConfig, extraInfo) -> findConfig.DatabaseProfile).add()
+
+            .append(new KeyedCodec<Boolean>("PreloadOnStartup", Codec.BOOLEAN),
+                    (findConfig, bool, extraInfo) -> findConfig.PreloadOnStartup = bool,
+                    (findConfig, extraInfo) -> findConfig.PreloadOnStartup).add()
+
+            .append(new KeyedCodec<String[]>("PreloadWorlds", Codec.STRING_ARRAY),
+                    (findConfig, strings, extraInfo) -> findConfig.PreloadWorlds = strings,
+                    (findConfig, extraInfo) -> findConfig.PreloadWorlds).add()
+
+            .append(new KeyedCodec<Boolean>("FailClosedWhileLoading", Codec.BOOLEAN),
+                    (findConfig, bool, extraInfo) -> findConfig.FailClosedWhileLoading = bool,
+                    (findConfig, extraInfo) -> findConfig.FailClosedWhileLoading).add()
+
+            .append(new KeyedCodec<String>("ReinforcementStorage", Codec.STRING),
+                    (findConfig, string, extraInfo) -> findConfig.ReinforcementStorageMode = string,
+                    (findConfig, extraInfo) -> findConfig.ReinforcementStorageMode).add()
+
+            .append(new KeyedCodec<Integer>("EffectsPerChunkPerTick", Codec.INTEGER),
+                    (findConfig, integer, extraInfo) -> findConfig.EffectsPerChunkPerTick = integer,
+                    (findConfig, extraInfo) -> findConfig.EffectsPerChunkPerTick).add()
             .build();
 
     private int Height = 15;
@@ -43,6 +77,18 @@ public class RaidingConfig {
     private int MaxReinforcementThreshold = 200;
     private boolean ProtectSoftBlocks = false;
     private boolean ProtectBypassTypeBlocks = false;
+    private int ReinforcementFlushIntervalMillis = 1000;
+    private int ReinforcementFlushMaxPendingWrites = 500;
+    // "Fast" or "Paranoid", see RaidingDatabase.Profile
+    private String DatabaseProfile = "Fast";
+    private boolean PreloadOnStartup = true;
+    // Worlds to preload, empty for every world with stored data
+    private String[] PreloadWorlds = new String[0];
+    private boolean FailClosedWhileLoading = true;
+    // "Database", "Chunk", "Region" or "Log", see ReinforcementStorage
+    private String ReinforcementStorageMode = "Database";
+    // Raid hit sounds and particles played per chunk each tick, the rest are dropped
+    private int EffectsPerChunkPerTick = 4;
 
 
 
@@ -74,4 +120,33 @@ public class RaidingConfig {
     public boolean getProtectBypassTypeBlocks(){
         return ProtectBypassTypeBlocks;
     }
+
+    public int getReinforcementFlushIntervalMillis() {
+        return ReinforcementFlushIntervalMillis;
+    }
+    public int getReinforcementFlushMaxPendingWrites() {
+        return ReinforcementFlushMaxPendingWrites;
+    }
+
+    public RaidingDatabase.Profile getDatabaseProfile() {
+        return RaidingDatabase.Profile.parse(DatabaseProfile);
+    }
+
+    public boolean getPreloadOnStartup() {
+        return PreloadOnStartup;
+    }
+    public String[] getPreloadWorlds() {
+        return PreloadWorlds != null ? PreloadWorlds : new String[0];
+    }
+    public boolean getFailClosedWhileLoading() {
+        return FailClosedWhileLoading;
+    }
+
+    public int getEffectsPerChunkPerTick() {
+        return EffectsPerChunkPerTick;
+    }
+
+    public ReinforcementStorage getReinforcementStorage() {
+        return ReinforcementStorage.parse(ReinforcementStorageMode);
+    }
 }
\ No newline at end of file
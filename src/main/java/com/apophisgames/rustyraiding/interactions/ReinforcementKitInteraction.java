@@ -1,5 +1,7 @@
 package com.apophisgames.rustyraiding.interactions;
 
+import com.apophisgames.rustyraiding.AuthorizationDecisionCache;
+import com.apophisgames.rustyraiding.RaidEffects;
 import com.apophisgames.rustyraiding.RaidingService;
 import com.apophisgames.rustyraiding.RustyRaidingPlugin;
 import com.apophisgames.rustyraiding.ZoneBlockProtection;
@@ -7,20 +9,18 @@ import com.apophisgames.rustyraiding.pages.ToolCupboardPage;
 import com.apophisgames.rustyraiding.reinforcedblocks.ReinforcedBlock;
 import com.apophisgames.rustyraiding.util.ColorPalette;
 import com.apophisgames.rustyraiding.util.MessageBuilder;
-import com.apophisgames.rustyraiding.zones.Zone;
+import com.apophisgames.rustyraiding.util.PlayerIds;
+import com.apophisgames.rustyraiding.util.WorldIds;
 import com.hypixel.hytale.codec.builder.BuilderCodec;
 import com.hypixel.hytale.component.CommandBuffer;
 import com.hypixel.hytale.component.Ref;
 import com.hypixel.hytale.component.Store;
 import com.hypixel.hytale.logger.HytaleLogger;
-import com.hypixel.hytale.math.vector.Vector3d;
 import com.hypixel.hytale.math.vector.Vector3i;
 import com.hypixel.hytale.protocol.GameMode;
 import com.hypixel.hytale.protocol.InteractionState;
 import com.hypixel.hytale.protocol.InteractionType;
-import com.hypixel.hytale.protocol.SoundCategory;
 import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockType;
-import com.hypixel.hytale.server.core.asset.type.soundevent.config.SoundEvent;
 import com.hypixel.hytale.server.core.entity.InteractionContext;
 import com.hypixel.hytale.server.core.entity.entities.Player;
 import com.hypixel.hytale.server.core.inventory.Inventory;
@@ -29,15 +29,12 @@ import com.hypixel.hytale.server.core.inventory.container.ItemContainer;
 import com.hypixel.hytale.server.core.modules.interaction.interaction.CooldownHandler;
 import com.hypixel.hytale.server.core.modules.interaction.interaction.config.client.SimpleBlockInteraction;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
-import com.hypixel.hytale.server.core.universe.world.ParticleUtil;
-import com.hypixel.hytale.server.core.universe.world.SoundUtil;
 import com.hypixel.hytale.server.core.universe.world.World;
 import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 import org.checkerframework.checker.nullness.compatqual.NonNullDecl;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 
 import javax.annotation.Nonnull;
-import java.util.Optional;
 
 import static com.hypixel.hytale.math.util.MathUtil.lerp;
 
@@ -66,12 +63,12 @@ public class ReinforcementKitInteraction extends SimpleBlockInteraction {
             return;
 
         RaidingService raidingService = RustyRaidingPlugin.get().getZoneService();
-        Zone zone = raidingService.getZoneAt(world.getName(), pos.toVector3d());
-        if (zone == null)
+        int worldId = WorldIds.of(world.getName());
+        AuthorizationDecisionCache.Decision decision = raidingService.getAuthorizationDecision(worldId, PlayerIds.of(playerRef.getUuid()), pos.x, pos.y, pos.z);
+        if (decision == null)
             return;
 
-        boolean isAuthed = raidingService.playerIsAuthed(zone.zoneName(), player.getDisplayName());
-        if (!isAuthed){
+        if (!decision.authorized()){
             interactionContext.getState().state = InteractionState.Failed;
             return;
         }
@@ -80,13 +77,12 @@ public class ReinforcementKitInteraction extends SimpleBlockInteraction {
         int maxReinforcementThreshold = RustyRaidingPlugin.CONFIG.get().getMaxReinforcementThreshold();
         int newReinforcement = reinforcementBonus;
 
-        Optional<ReinforcedBlock> reinforcedBlock = raidingService.getReinforcedBlockAtPosition(world.getName(), pos);
-        if (reinforcedBlock.isEmpty()){
+        int currentReinforcement = raidingService.getReinforcementAt(worldId, pos.x, pos.y, pos.z);
+        if (currentReinforcement == ReinforcedBlock.NOT_REINFORCED){
             newReinforcement += RustyRaidingPlugin.CONFIG.get().getReinforceBlockAmount();
             newReinforcement = Integer.min(maxReinforcementThreshold, newReinforcement);
             raidingService.CreateReinforcedBlock(world.getName(), pos, newReinforcement);
         } else {
-            int currentReinforcement = reinforcedBlock.get().reinforcement();
             if (currentReinforcement >= maxReinforcementThreshold){
                 playerRef.sendMessage(MessageBuilder.create("Reinforcement of block at [%s] has reached the maximum limit of: %s".formatted(pos.toString(), maxReinforcementThreshold))
                         .color(ColorPalette.MUTED)
@@ -96,7 +92,7 @@ public class ReinforcementKitInteraction extends SimpleBlockInteraction {
             }
             newReinforcement += currentReinforcement;
             newReinforcement = Integer.min(maxReinforcementThreshold, newReinforcement);
-            raidingService.UpdateReinforcement(reinforcedBlock.get(), newReinforcement);
+            raidingService.UpdateReinforcement(world.getName(), pos, newReinforcement);
         }
 
         PlayReinforcedAddEffects(world, pos, (float) newReinforcement / maxReinforcementThreshold);
@@ -111,18 +107,11 @@ public class ReinforcementKitInteraction extends SimpleBlockInteraction {
     }
 
     private static void PlayReinforcedAddEffects(World world, Vector3i blockPosition, float pitchLerp){
-        Vector3d position = new Vector3d(blockPosition).add(0.5, 0.5, 0.5);
-        EntityStore store = world.getEntityStore();
-        int index = SoundEvent.getAssetMap().getIndex("SFX_Metal_Break");
-        ParticleUtil.spawnParticleEffect("Block_Hit_Metal", position, store.getStore());
-        SoundUtil.playSoundEvent3d(index, SoundCategory.SFX, position.x, position.y, position.z, 1.0f, lerp(1.0f, 2.0f, pitchLerp), store.getStore());
+        RaidEffects.play(world, blockPosition, RaidEffects.Effect.REINFORCEMENT_ADDED, lerp(1.0f, 2.0f, pitchLerp));
     }
 
     private static void PlayMaxedReinforcementEffects(World world, Vector3i blockPosition){
-        Vector3d position = new Vector3d(blockPosition).add(0.5, 0.5, 0.5);
-        EntityStore store = world.getEntityStore();
-        int index = SoundEvent.getAssetMap().getIndex("SFX_Metal_Hit");
-        SoundUtil.playSoundEvent3d(index, SoundCategory.SFX, position.x, position.y, position.z, 0.5f, 0.8F, store.getStore());
+        RaidEffects.play(world, blockPosition, RaidEffects.Effect.REINFORCEMENT_MAXED, 0.8f);
     }
 
     private static void RemoveDurability(@Nonnull Inventory inv, @Nonnull ItemStack tool, @Nonnull PlayerRef playerRef){
@@ -23,6 +23,8 @@ import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 import org.checkerframework.checker.nullness.compatqual.NonNullDecl;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 
+import java.util.concurrent.CompletableFuture;
+
 public class ToolCupboardInteraction extends SimpleBlockInteraction {
 
     private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
@@ -40,8 +42,9 @@ public class ToolCupboardInteraction extends SimpleBlockInteraction {
         String zoneIdFromPosition = Zone.getZoneIdFromPosition(world, pos);
         Zone zone = raidingService.getZoneByName(world.getName(), zoneIdFromPosition);
 
-        // Create a new zone if one does not exist already
+        CompletableFuture<?> ready;
         if (zone == null){
+            // Create a new zone if one does not exist already, and authorize its owner
             int zoneWidth = RustyRaidingPlugin.CONFIG.get().getWidth();
             int zoneHeight = RustyRaidingPlugin.CONFIG.get().getHeight();
 
@@ -49,14 +52,23 @@ public class ToolCupboardInteraction extends SimpleBlockInteraction {
             Vector3d maxBounds = new Vector3d(pos.x + zoneWidth, pos.y + zoneHeight, pos.z + zoneWidth);
 
             Zone createZone = Zone.create(zoneIdFromPosition, world.getName(), minBounds, maxBounds);
-            raidingService.createZone(createZone);
-            raidingService.AuthenticatePlayerInZone(createZone.zoneName(), player.getDisplayName());
-
-            // Try again to fetch the zone, after creating
-            zone = raidingService.getZoneByName(world.getName(), zoneIdFromPosition);
+            ready = raidingService.createZoneAsync(createZone).thenCompose(result -> result == RaidingService.CreateResult.SUCCESS
+                    ? raidingService.AuthenticatePlayerInZoneAsync(createZone.zoneName(), playerRefComponent.getUuid(), player.getDisplayName())
+                    : CompletableFuture.completedFuture(result));
+        } else {
+            ready = CompletableFuture.completedFuture(null);
         }
 
-        player.getPageManager().openCustomPage(ref, store, new ToolCupboardPage(playerRefComponent, raidingService, zone));
+        // Storage runs on the I/O threads, the page is opened back on the world thread
+        ready.thenCompose(ignored -> raidingService.getAuthedPlayersByZoneIdAsync(zoneIdFromPosition))
+                .thenAcceptAsync(authedPlayers -> {
+                    if (!ref.isValid()) return;
+
+                    // Fetch the zone again, it may have just been created
+                    Zone openedZone = raidingService.getZoneByName(world.getName(), zoneIdFromPosition);
+                    ToolCupboardPage page = new ToolCupboardPage(playerRefComponent, raidingService, openedZone, openedZone != null ? authedPlayers : null);
+                    player.getPageManager().openCustomPage(ref, store, page);
+                }, world::execute);
     }
 
     @Override
@@ -1,6 +1,7 @@
 package com.apophisgames.rustyraiding.pages;
 
 import com.apophisgames.rustyraiding.RustyRaidingPlugin;
+import com.apophisgames.rustyraiding.zoneauthorizations.ZoneAuthorization;
 import com.apophisgames.rustyraiding.zones.Zone;
 import com.apophisgames.rustyraiding.RaidingService;
 import com.hypixel.hytale.codec.Codec;
@@ -21,6 +22,7 @@ import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
 import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.*;
 
 public class ToolCupboardPage extends InteractiveCustomUIPage<ToolCupboardPage.ToolCupboardEventData> {
@@ -28,12 +30,19 @@ public class ToolCupboardPage extends InteractiveCustomUIPage<ToolCupboardPage.T
     private final RaidingService raidingService;
     private final Zone zone;
 
+    // Authorizations currently shown, fetched off the world thread and only touched on it
+    private List<ZoneAuthorization> authedPlayers;
+
     private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
 
-    public ToolCupboardPage(@Nonnull PlayerRef playerRef, RaidingService raidingService, Zone zone) {
+    /**
+     * @param authedPlayers The zone's authorizations, fetched ahead so building the page never waits on storage
+     */
+    public ToolCupboardPage(@Nonnull PlayerRef playerRef, RaidingService raidingService, Zone zone, @Nullable List<ZoneAuthorization> authedPlayers) {
         super(playerRef, CustomPageLifetime.CanDismissOrCloseThroughInteraction, ToolCupboardEventData.CODEC);
         this.raidingService = raidingService;
         this.zone = zone;
+        this.authedPlayers = authedPlayers != null ? authedPlayers : new ArrayList<>();
     }
 
     public static class ToolCupboardEventData {
@@ -58,7 +67,6 @@ public class ToolCupboardPage extends InteractiveCustomUIPage<ToolCupboardPage.T
     ) {
         commandBuilder.append("Pages/ToolCupboardPage.ui");
         if (zone != null){
-            List<String> authedPlayers = raidingService.getAuthedPlayersByZoneId(zone.zoneName());
             commandBuilder.set("#ZoneName.Text", zone.zoneName());
             commandBuilder.set("#PlayerCount.Text", "PLAYERS (" + authedPlayers.size() + ")");
             buildPlayerList(commandBuilder, eventBuilder, authedPlayers);
@@ -94,7 +102,7 @@ public class ToolCupboardPage extends InteractiveCustomUIPage<ToolCupboardPage.T
         );
     }
 
-    private void buildPlayerList(UICommandBuilder commandBuilder, UIEventBuilder eventBuilder, List<String> authedPlayers) {
+    private void buildPlayerList(UICommandBuilder commandBuilder, UIEventBuilder eventBuilder, List<ZoneAuthorization> authedPlayers) {
         commandBuilder.clear("#PlayerList");
 
         if (authedPlayers.isEmpty()) {
@@ -103,16 +111,16 @@ public class ToolCupboardPage extends InteractiveCustomUIPage<ToolCupboardPage.T
         }
 
         int i = 0;
-        for (String playerName : authedPlayers) {
+        for (ZoneAuthorization auth : authedPlayers) {
             String selector = "#PlayerList[" + i + "]";
             commandBuilder.append("#PlayerList", "Pages/TCPlayerAuthEntry.ui");
 
-            commandBuilder.set(selector + " #PlayerName.Text", playerName);
+            commandBuilder.set(selector + " #PlayerName.Text", auth.playerName());
 
             eventBuilder.addEventBinding(
                     CustomUIEventBindingType.Activating,
                     selector + " #RemoveButton",
-                    new EventData().append("Action", "RemovePlayerAuth").append("ID", playerName),
+                    new EventData().append("Action", "RemovePlayerAuth").append("ID", auth.internalId()),
                     false
             );
             i++;
@@ -128,29 +136,38 @@ public class ToolCupboardPage extends InteractiveCustomUIPage<ToolCupboardPage.T
         Player player = (Player) store.getComponent(ref, Player.getComponentType());
         RaidingService raidingService = RustyRaidingPlugin.get().getZoneService();
 
+        // Writes run on the I/O threads, the page refreshes once they land
         switch (data.action) {
             case "GrantPlayerAuth":
                 if (zone != null && player != null) {
-                    raidingService.AuthenticatePlayerInZone(zone.zoneName(), player.getDisplayName());
-                    playerRef.sendMessage(Message.raw("Authenticated player '%s' in zone '%s'".formatted(player.getDisplayName(), zone.zoneName())));
+                    String playerName = player.getDisplayName();
+                    raidingService.AuthenticatePlayerInZoneAsync(zone.zoneName(), playerRef.getUuid(), playerName)
+                            .thenRun(() -> playerRef.sendMessage(Message.raw("Authenticated player '%s' in zone '%s'".formatted(playerName, zone.zoneName()))))
+                            .thenRun(() -> refreshPage(ref, store));
+                } else {
+                    refreshPage(ref, store);
                 }
-                refreshPage(ref, store);
                 break;
 
             case "ClearAuth":
                 if (zone != null) {
-                    raidingService.ClearZoneAuthentications(zone.zoneName());
-                    playerRef.sendMessage(Message.raw("Cleared ALL authorizations in zone '%s'".formatted(zone.zoneName())));
+                    raidingService.ClearZoneAuthenticationsAsync(zone.zoneName())
+                            .thenRun(() -> playerRef.sendMessage(Message.raw("Cleared ALL authorizations in zone '%s'".formatted(zone.zoneName()))))
+                            .thenRun(() -> refreshPage(ref, store));
+                } else {
+                    refreshPage(ref, store);
                 }
-                refreshPage(ref, store);
                 break;
 
             case "RemovePlayerAuth":
-                if (zone != null && data.id != null) {
-                    raidingService.RemoveZoneAuthentication(zone.zoneName(), data.id);
-                    playerRef.sendMessage(Message.raw("Removed authentication for player '%s' in zone '%s'".formatted(data.id, zone.zoneName())));
+                ZoneAuthorization auth = zone != null && data.id != null ? findAuthorization(data.id) : null;
+                if (auth != null) {
+                    raidingService.RemoveZoneAuthenticationAsync(auth)
+                            .thenRun(() -> playerRef.sendMessage(Message.raw("Removed authentication for player '%s' in zone '%s'".formatted(auth.playerName(), zone.zoneName()))))
+                            .thenRun(() -> refreshPage(ref, store));
+                } else {
+                    refreshPage(ref, store);
                 }
-                refreshPage(ref, store);
                 break;
 
             case "Refresh":
@@ -166,13 +183,39 @@ public class ToolCupboardPage extends InteractiveCustomUIPage<ToolCupboardPage.T
         }
     }
 
+    /**
+     * Find an authorization shown on this page by internal id.
+     */
+    @Nullable
+    private ZoneAuthorization findAuthorization(String internalId) {
+        for (ZoneAuthorization auth : authedPlayers) {
+            if (auth.internalId().equals(internalId)) return auth;
+        }
+        return null;
+    }
+
+    /**
+     * Fetch the zone's authorizations on the I/O thread, then redraw the list on the world thread.
+     */
     private void refreshPage(Ref<EntityStore> ref, Store<EntityStore> store) {
+        if (zone == null) {
+            sendRefresh(null);
+            return;
+        }
+
+        RaidingService raidingService = RustyRaidingPlugin.get().getZoneService();
+        raidingService.getAuthedPlayersByZoneIdAsync(zone.zoneName())
+                .thenAcceptAsync(fetched -> {
+                    if (ref.isValid()) sendRefresh(fetched);
+                }, store.getExternalData().getWorld()::execute);
+    }
+
+    private void sendRefresh(@Nullable List<ZoneAuthorization> fetched) {
         UICommandBuilder commandBuilder = new UICommandBuilder();
         UIEventBuilder eventBuilder = new UIEventBuilder();
 
-        RaidingService raidingService = RustyRaidingPlugin.get().getZoneService();
+        if (fetched != null) authedPlayers = fetched;
         if (zone != null){
-            List<String> authedPlayers = raidingService.getAuthedPlayersByZoneId(zone.zoneName());
             commandBuilder.set("#ZoneName.Text", zone.zoneName());
             commandBuilder.set("#PlayerCount.Text", "PLAYERS (" + authedPlayers.size() + ")");
             buildPlayerList(commandBuilder, eventBuilder, authedPlayers);
@@ -1,18 +1,37 @@
 package com.apophisgames.rustyraiding.reinforcedblocks;
 
+import com.apophisgames.rustyraiding.util.AsyncLoadingCache;
+import com.apophisgames.rustyraiding.util.BlockPositions;
+import com.apophisgames.rustyraiding.util.WorldIds;
+import com.apophisgames.rustyraiding.util.WorldTable;
 import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.math.util.ChunkUtil;
 import com.hypixel.hytale.math.vector.Vector3i;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Lazy Caching wrapper for IReinforcedBlockRepository.
  *
- * <p>Blocks are loaded from the delegate repository only when requested per world.
- * Writes are updated in memory if the world is currently cached.
+ * <p>Blocks are held in memory per chunk, only while the chunk is loaded: {@link #loadChunk}
+ * reads a chunk's blocks from the delegate when the chunk loads, and {@link #unloadChunk}
+ * drops them. Writes still pending below stay there, and a reload reads them back from the
+ * delegate. A lookup in a chunk that is
+ * not resident loads it first. Memory follows the loaded area of each world, not its history.
+ *
+ * <p>Writes are updated in memory if the chunk is resident, or applied once it loads if it
+ * is loading. Queries over whole worlds, or areas reaching outside resident chunks, are
+ * read through from the delegate.
+ *
+ * <p>Each world's reinforcements are held in a {@link ReinforcementStore}, sectioned by
+ * chunk so area queries and area deletes are served from memory in time proportional to
+ * the result. {@link ReinforcedBlock} records are only built when returned from this
+ * repository.
  */
 public class CachedReinforcedBlockRepository implements IReinforcedBlockRepository {
 
@@ -20,8 +39,18 @@ public class CachedReinforcedBlockRepository implements IReinforcedBlockReposito
 
     private final IReinforcedBlockRepository delegate;
 
-    // WorldName -> reinforced block id -> Reinforced Block
-    private final Map<String, Map<String, ReinforcedBlock>> cache = new ConcurrentHashMap<>();
+    // World id -> reinforcements of the world's resident chunks
+    private final WorldTable<WorldReinforcements> cache = new WorldTable<>();
+
+    /**
+     * Reinforcements of one world. Blocks of every resident chunk share one store, chunk
+     * loads are tracked per chunk index so each chunk loads once and writes to a chunk
+     * still loading are applied after its blocks.
+     */
+    private static final class WorldReinforcements {
+        final ReinforcementStore store = new ReinforcementStore();
+        final AsyncLoadingCache<Long, ReinforcementStore> chunks = new AsyncLoadingCache<>();
+    }
 
     public CachedReinforcedBlockRepository(IReinforcedBlockRepository delegate) {
         this.delegate = delegate;
@@ -35,58 +64,130 @@ public class CachedReinforcedBlockRepository implements IReinforcedBlockReposito
 
     @Override
     public Map<String, Map<String, ReinforcedBlock>> loadAll() throws Exception {
-        // Delegate and populate cache (optional, but good for consistency if someone calls this)
-        Map<String, Map<String, ReinforcedBlock>> blocks = delegate.loadAll();
-        cache.clear();
-        blocks.forEach((world, list) -> cache.put(world, new ConcurrentHashMap<>(list)));
-
-        // Return defensive copy
-        Map<String, Map<String, ReinforcedBlock>> result = new HashMap<>();
-        blocks.forEach((world, list) -> result.put(world, new ConcurrentHashMap<>(list)));
-        return result;
+        // Not cached, chunks load their own blocks
+        return delegate.loadAll();
     }
 
     @Override
     public Map<String, ReinforcedBlock> findByWorld(String worldName) throws Exception {
-        // Double-checked locking via computeIfAbsent is simplest for lazy loading
-        // Note: computeIfAbsent on ConcurrentHashMap behaves correctly (atomic per key)
-
-        // We need to handle checked exceptions from delegate inside the lambda
-        // This wrapper approach propagates the exception out
-        try {
-            return cache.computeIfAbsent(worldName, k -> {
-                try {
-                    Map<String, ReinforcedBlock> blockMap = delegate.findByWorld(k);
-                    return new ConcurrentHashMap<>(blockMap);
-                } catch (RuntimeException e) {
-                    throw e;
-                } catch (Exception e) {
-                    throw new RuntimeException("WrappedException", e);
+        // Whole worlds are never resident, read them through
+        return delegate.findByWorld(worldName);
+    }
+
+    @Override
+    public Optional<ReinforcedBlock> findByPosition(String worldName, Vector3i position) throws Exception {
+        int reinforcement = getChunk(WorldIds.of(worldName), position.x, position.z).get(position.x, position.y, position.z);
+        if (reinforcement == ReinforcedBlock.NOT_REINFORCED) return Optional.empty();
+        return Optional.of(ReinforcedBlock.create(WorldIds.intern(worldName), position, reinforcement));
+    }
+
+    @Override
+    public int findReinforcement(int worldId, int x, int y, int z) throws Exception {
+        return getChunk(worldId, x, z).get(x, y, z);
+    }
+
+    @Override
+    public List<String> findWorldNames() throws Exception {
+        return delegate.findWorldNames();
+    }
+
+    @Override
+    public void loadChunk(int worldId, int chunkX, int chunkZ) throws Exception {
+        getChunk(worldId, chunkX * ChunkUtil.SIZE, chunkZ * ChunkUtil.SIZE);
+    }
+
+    @Override
+    public void unloadChunk(int worldId, int chunkX, int chunkZ) throws Exception {
+        // Writes still pending in the delegate are served back from there if the chunk reloads
+        delegate.unloadChunk(worldId, chunkX, chunkZ);
+
+        WorldReinforcements world = cache.get(worldId);
+        if (world == null) return;
+        synchronized (world.store) {
+            world.chunks.remove(ChunkUtil.indexChunkFromBlock(chunkX * ChunkUtil.SIZE, chunkZ * ChunkUtil.SIZE));
+            world.store.unloadChunk(chunkX, chunkZ);
+        }
+    }
+
+    private WorldReinforcements getWorld(int worldId) throws Exception {
+        return cache.computeIfAbsent(worldId, id -> new WorldReinforcements());
+    }
+
+    /**
+     * Get the store of a world with the chunk holding a block resident, loading the chunk
+     * from the delegate if needed.
+     */
+    private ReinforcementStore getChunk(int worldId, int x, int z) throws Exception {
+        WorldReinforcements world = getWorld(worldId);
+        int chunkX = Math.floorDiv(x, ChunkUtil.SIZE);
+        int chunkZ = Math.floorDiv(z, ChunkUtil.SIZE);
+        long chunkIndex = ChunkUtil.indexChunkFromBlock(x, z);
+
+        while (true) {
+            if (world.store.isResident(x, z)) return world.store;
+
+            world.chunks.get(chunkIndex, index -> readChunk(worldId, world.store, chunkX, chunkZ));
+            synchronized (world.store) {
+                // Resident once its queued writes are applied, unless it was unloaded meanwhile
+                if (world.chunks.getIfPresent(chunkIndex) != null) {
+                    world.store.markResident(chunkX, chunkZ);
+                    return world.store;
                 }
-            });
-        } catch (RuntimeException e) {
-            if ("WrappedException".equals(e.getMessage()) && e.getCause() instanceof Exception) {
-                throw (Exception) e.getCause();
             }
-            throw e;
         }
     }
 
-    @Override
-    public Optional<ReinforcedBlock> findByPosition(String worldName, Vector3i position) throws Exception {
-        // Use findByWorld to leverage the lazy cache
-        Map<String, ReinforcedBlock> blockMap = findByWorld(worldName);
-        String id = ReinforcedBlock.getInternalIdFromPosition(worldName, position);
-        if (blockMap.containsKey(id))
-            return Optional.of(blockMap.get(id));
+    private ReinforcementStore readChunk(int worldId, ReinforcementStore store, int chunkX, int chunkZ) throws Exception {
+        int minX = chunkX * ChunkUtil.SIZE, minZ = chunkZ * ChunkUtil.SIZE;
+        Map<String, ReinforcedBlock> blocks = delegate.findInArea(WorldIds.nameOf(worldId),
+                new Vector3i(minX, BlockPositions.MIN_Y, minZ),
+                new Vector3i(minX + ChunkUtil.SIZE - 1, BlockPositions.MAX_Y, minZ + ChunkUtil.SIZE - 1));
+
+        synchronized (store) {
+            // Replaces blocks left behind by a load that raced an unload of the chunk
+            store.clearChunk(chunkX, chunkZ);
+            for (ReinforcedBlock block : blocks.values()) {
+                Vector3i position = block.position();
+                store.put(position.x, position.y, position.z, block.reinforcement());
+            }
+        }
+        return store;
+    }
 
-        return Optional.empty();
+    private static ReinforcedBlock toRecord(String worldName, int x, int y, int z, int reinforcement) {
+        return ReinforcedBlock.create(worldName, new Vector3i(x, y, z), reinforcement);
     }
 
     @Override
     public Map<String, ReinforcedBlock> findInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) throws Exception {
-        // TODO: Use proper caching with this function
-        return delegate.findInArea(worldName, boundsMin, boundsMax);
+        WorldReinforcements world = cache.get(WorldIds.of(worldName));
+        if (world == null || !isResident(world.store, boundsMin, boundsMax)) {
+            return delegate.findInArea(worldName, boundsMin, boundsMax);
+        }
+
+        String canonicalName = WorldIds.intern(worldName);
+        Map<String, ReinforcedBlock> result = new HashMap<>();
+        world.store.forEachInArea(boundsMin.x, boundsMin.y, boundsMin.z, boundsMax.x, boundsMax.y, boundsMax.z, (x, y, z, reinforcement) -> {
+            ReinforcedBlock block = toRecord(canonicalName, x, y, z, reinforcement);
+            result.put(block.internalId(), block);
+        });
+        return result;
+    }
+
+    /**
+     * @return true if every chunk overlapping the bounds is resident
+     */
+    private static boolean isResident(ReinforcementStore store, Vector3i boundsMin, Vector3i boundsMax) {
+        int minChunkX = Math.floorDiv(boundsMin.x, ChunkUtil.SIZE), maxChunkX = Math.floorDiv(boundsMax.x, ChunkUtil.SIZE);
+        int minChunkZ = Math.floorDiv(boundsMin.z, ChunkUtil.SIZE), maxChunkZ = Math.floorDiv(boundsMax.z, ChunkUtil.SIZE);
+        if ((long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1) > store.residentChunkCount()) return false;
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                if (!store.isResident(chunkX * ChunkUtil.SIZE, chunkZ * ChunkUtil.SIZE)) return false;
+            }
+        }
+        return true;
     }
 
     @Override
@@ -94,12 +195,44 @@ public class CachedReinforcedBlockRepository implements IReinforcedBlockReposito
         // 1. Update Delegate (Source of Truth)
         delegate.save(reinforcedBlock);
 
-        // 2. Update Cache if present (Write-Through)
-        // If not present, we don't load it. Next findByWorld will fetch the new state.
-        cache.computeIfPresent(reinforcedBlock.worldName(), (key, blockMap) -> {
-            blockMap.put(reinforcedBlock.internalId(), reinforcedBlock);
-            return blockMap;
-        });
+        // 2. Update Cache if resident or loading (Write-Through)
+        // If not resident, we don't load it. The chunk reads the new state when it loads.
+        Vector3i position = reinforcedBlock.position();
+        cachePut(reinforcedBlock.worldName(), position.x, position.y, position.z, reinforcedBlock.reinforcement());
+    }
+
+    @Override
+    public void setReinforcement(int worldId, int x, int y, int z, int reinforcement) throws Exception {
+        delegate.setReinforcement(worldId, x, y, z, reinforcement);
+
+        WorldReinforcements world = cache.get(worldId);
+        if (world == null) return;
+        synchronized (world.store) {
+            // A resident chunk has applied its queued writes, so it takes this one directly
+            if (world.store.isResident(x, z)) {
+                set(world.store, x, y, z, reinforcement);
+                return;
+            }
+        }
+        world.chunks.whenLoaded(ChunkUtil.indexChunkFromBlock(x, z), store -> set(store, x, y, z, reinforcement));
+    }
+
+    private static void set(ReinforcementStore store, int x, int y, int z, int reinforcement) {
+        if (reinforcement == ReinforcedBlock.NOT_REINFORCED) store.remove(x, y, z);
+        else store.put(x, y, z, reinforcement);
+    }
+
+    @Override
+    public void writeBatch(Collection<ReinforcedBlock> saves, Collection<String> deletedIds) throws Exception {
+        delegate.writeBatch(saves, deletedIds);
+
+        for (ReinforcedBlock block : saves) {
+            Vector3i position = block.position();
+            cachePut(block.worldName(), position.x, position.y, position.z, block.reinforcement());
+        }
+        for (String id : deletedIds) {
+            cacheRemove(ReinforcedBlock.getWorldNameFromInternalId(id), ReinforcedBlock.getPositionFromInternalId(id));
+        }
     }
 
     @Override
@@ -108,13 +241,8 @@ public class CachedReinforcedBlockRepository implements IReinforcedBlockReposito
         delegate.delete(reinforcedBlockId);
 
         // 2. Update Cache if present
-        // Since we don't know the world, we scan loaded worlds.
-        for (Map<String, ReinforcedBlock> blockMap : cache.values()) {
-            if (blockMap.containsKey(reinforcedBlockId)) {
-                blockMap.remove(reinforcedBlockId);
-                break; // Optimization: ID is unique, so we can stop
-            }
-        }
+        // Ids are derived from the world and position, so they locate the cached entry
+        cacheRemove(ReinforcedBlock.getWorldNameFromInternalId(reinforcedBlockId), ReinforcedBlock.getPositionFromInternalId(reinforcedBlockId));
     }
 
     @Override
@@ -122,30 +250,55 @@ public class CachedReinforcedBlockRepository implements IReinforcedBlockReposito
         // 1. Update Delegate
         delegate.delete(worldName, position);
 
-        String id = ReinforcedBlock.getInternalIdFromPosition(worldName, position);
         // 2. Update Cache if present
-        // Since we don't know the world, we scan loaded worlds.
-        for (Map<String, ReinforcedBlock> blockMap : cache.values()) {
-            if (blockMap.containsKey(id)) {
-                blockMap.remove(id);
-                break; // Optimization: ID is unique, so we can stop
-            }
+        cacheRemove(worldName, position);
+    }
+
+    private void cachePut(String worldName, int x, int y, int z, int reinforcement) {
+        WorldReinforcements world = cache.get(WorldIds.of(worldName));
+        if (world != null) {
+            world.chunks.whenLoaded(ChunkUtil.indexChunkFromBlock(x, z), store -> store.put(x, y, z, reinforcement));
+        }
+    }
+
+    private void cacheRemove(String worldName, Vector3i position) {
+        WorldReinforcements world = cache.get(WorldIds.of(worldName));
+        if (world != null) {
+            world.chunks.whenLoaded(ChunkUtil.indexChunkFromBlock(position.x, position.z), store -> store.remove(position.x, position.y, position.z));
         }
     }
 
     @Override
     public void deleteInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) throws Exception {
-        // Get all the blocks to delete, we will need this to update the cache from
-        Map<String, ReinforcedBlock> blocksToDelete = delegate.findInArea(worldName, boundsMin, boundsMax);
-
         // 1. Update Delegate
         delegate.deleteInArea(worldName, boundsMin, boundsMax);
 
         // 2. Update Cache if present
-        cache.computeIfPresent(worldName, (key, blockMap) -> {
-            blocksToDelete.keySet().forEach((blockId) -> blockMap.remove(blockId));
-            return blockMap;
-        });
+        // The store removes the same bounds itself, no need to ask the delegate what was deleted
+        cacheRemoveInArea(worldName, boundsMin, boundsMax);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteInAreaAsync(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
+        // Update the cache first: writes made after this call must survive it, and the
+        // delegate orders them after the delete
+        cacheRemoveInArea(worldName, boundsMin, boundsMax);
+        return delegate.deleteInAreaAsync(worldName, boundsMin, boundsMax);
+    }
+
+    @Override
+    public void evictInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
+        cacheRemoveInArea(worldName, boundsMin, boundsMax);
+        delegate.evictInArea(worldName, boundsMin, boundsMax);
+    }
+
+    private void cacheRemoveInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
+        WorldReinforcements world = cache.get(WorldIds.of(worldName));
+        if (world == null) return;
+
+        // Chunks still loading may have read the blocks already, remove them again once loaded
+        world.chunks.forEachLoading(store -> store.removeInArea(boundsMin.x, boundsMin.y, boundsMin.z, boundsMax.x, boundsMax.y, boundsMax.z));
+        world.store.removeInArea(boundsMin.x, boundsMin.y, boundsMin.z, boundsMax.x, boundsMax.y, boundsMax.z);
     }
 
     @Override
@@ -154,4 +307,3 @@ public class CachedReinforcedBlockRepository implements IReinforcedBlockReposito
         cache.clear();
     }
 }
-
@@ -0,0 +1,348 @@
+package com.apophisgames.rustyraiding.reinforcedblocks;
+
+import com.apophisgames.rustyraiding.util.BlockPositions;
+import com.apophisgames.rustyraiding.util.LongIntHashMap;
+import com.apophisgames.rustyraiding.util.WorldIds;
+import com.apophisgames.rustyraiding.util.WorldTable;
+import com.hypixel.hytale.component.ComponentType;
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.math.util.ChunkUtil;
+import com.hypixel.hytale.math.vector.Vector3i;
+import com.hypixel.hytale.server.core.universe.Universe;
+import com.hypixel.hytale.server.core.universe.world.World;
+import com.hypixel.hytale.server.core.universe.world.chunk.WorldChunk;
+import com.hypixel.hytale.server.core.universe.world.storage.ChunkStore;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * IReinforcedBlockRepository storing reinforcements in the chunks themselves, as a
+ * {@link ReinforcementChunk} component the engine saves and loads with each chunk.
+ *
+ * <p>There is no database round trip and no cache to keep consistent, the component is the
+ * only copy. It only exists while its chunk is loaded though: reads see, and deletes reach,
+ * the blocks of loaded chunks only. Blocks left in unloaded chunks of a deleted zone are
+ * inert, reinforcement only applies inside a zone.
+ *
+ * <p>Chunk components are only touched on the world's thread. Calls from other threads are
+ * handed to it and wait for the result.
+ */
+public class ChunkComponentReinforcedBlockRepository implements IReinforcedBlockRepository {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    private final ComponentType<ChunkStore, ReinforcementChunk> componentType;
+
+    // World id -> loaded chunks, packed with BlockPositions (y unused), guarded by the map
+    private final WorldTable<LongIntHashMap> loadedChunks = new WorldTable<>();
+
+    public ChunkComponentReinforcedBlockRepository(ComponentType<ChunkStore, ReinforcementChunk> componentType) {
+        this.componentType = componentType;
+    }
+
+    @Override
+    public void initialize() {
+        // Nothing to set up, the engine loads the components with their chunks
+    }
+
+    @Override
+    public Map<String, Map<String, ReinforcedBlock>> loadAll() throws Exception {
+        Map<String, Map<String, ReinforcedBlock>> result = new HashMap<>();
+        for (String worldName : findWorldNames()) {
+            result.put(worldName, findByWorld(worldName));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, ReinforcedBlock> findByWorld(String worldName) throws Exception {
+        World world = Universe.get().getWorld(worldName);
+        if (world == null) return new HashMap<>();
+
+        long[] chunks = loadedChunks(WorldIds.of(worldName));
+        String canonicalName = WorldIds.intern(worldName);
+        return onWorldThread(world, () -> {
+            Map<String, ReinforcedBlock> result = new HashMap<>();
+            for (long chunk : chunks) {
+                int chunkX = BlockPositions.unpackX(chunk), chunkZ = BlockPositions.unpackZ(chunk);
+                ReinforcementChunk component = getComponent(world, chunkX, chunkZ);
+                if (component == null) continue;
+                component.forEach(chunkX, chunkZ, (x, y, z, reinforcement) -> {
+                    ReinforcedBlock block = ReinforcedBlock.create(canonicalName, new Vector3i(x, y, z), reinforcement);
+                    result.put(block.internalId(), block);
+                });
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public List<String> findWorldNames() {
+        return new ArrayList<>(Universe.get().getWorlds().keySet());
+    }
+
+    @Override
+    public Optional<ReinforcedBlock> findByPosition(String worldName, Vector3i position) throws Exception {
+        int reinforcement = findReinforcement(WorldIds.of(worldName), position.x, position.y, position.z);
+        if (reinforcement == ReinforcedBlock.NOT_REINFORCED) return Optional.empty();
+        return Optional.of(ReinforcedBlock.create(WorldIds.intern(worldName), position, reinforcement));
+    }
+
+    @Override
+    public int findReinforcement(int worldId, int x, int y, int z) throws Exception {
+        World world = Universe.get().getWorld(WorldIds.nameOf(worldId));
+        if (world == null) return ReinforcedBlock.NOT_REINFORCED;
+
+        return onWorldThread(world, () -> {
+            ReinforcementChunk component = getComponent(world, Math.floorDiv(x, ChunkUtil.SIZE), Math.floorDiv(z, ChunkUtil.SIZE));
+            return component != null ? component.get(x, y, z) : ReinforcedBlock.NOT_REINFORCED;
+        });
+    }
+
+    @Override
+    public Map<String, ReinforcedBlock> findInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) throws Exception {
+        World world = Universe.get().getWorld(worldName);
+        if (world == null) return new HashMap<>();
+
+        long[] chunks = chunksInArea(WorldIds.of(worldName), boundsMin, boundsMax);
+        String canonicalName = WorldIds.intern(worldName);
+        return onWorldThread(world, () -> {
+            Map<String, ReinforcedBlock> result = new HashMap<>();
+            for (long chunk : chunks) {
+                int chunkX = BlockPositions.unpackX(chunk), chunkZ = BlockPositions.unpackZ(chunk);
+                ReinforcementChunk component = getComponent(world, chunkX, chunkZ);
+                if (component == null) continue;
+                component.forEach(chunkX, chunkZ, (x, y, z, reinforcement) -> {
+                    if (x < boundsMin.x || x > boundsMax.x || y < boundsMin.y || y > boundsMax.y || z < boundsMin.z || z > boundsMax.z) return;
+                    ReinforcedBlock block = ReinforcedBlock.create(canonicalName, new Vector3i(x, y, z), reinforcement);
+                    result.put(block.internalId(), block);
+                });
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public void save(ReinforcedBlock reinforcedBlock) throws Exception {
+        writeBatch(List.of(reinforcedBlock), List.of());
+    }
+
+    @Override
+    public void writeBatch(Collection<ReinforcedBlock> saves, Collection<String> deletedIds) throws Exception {
+        // Grouped by world, so each world's edits take one hop to its thread
+        Map<String, List<Consumer<World>>> editsByWorld = new HashMap<>();
+        for (ReinforcedBlock block : saves) {
+            Vector3i position = block.position();
+            editsByWorld.computeIfAbsent(block.worldName(), k -> new ArrayList<>()).add(world -> editComponent(world, position.x, position.z, true,
+                    component -> component.put(position.x, position.y, position.z, block.reinforcement())));
+        }
+        for (String id : deletedIds) {
+            Vector3i position = ReinforcedBlock.getPositionFromInternalId(id);
+            editsByWorld.computeIfAbsent(ReinforcedBlock.getWorldNameFromInternalId(id), k -> new ArrayList<>()).add(world -> editComponent(world, position.x, position.z, false,
+                    component -> component.remove(position.x, position.y, position.z)));
+        }
+
+        for (Map.Entry<String, List<Consumer<World>>> entry : editsByWorld.entrySet()) {
+            World world = Universe.get().getWorld(entry.getKey());
+            if (world == null) throw new IllegalStateException("World '%s' is not loaded".formatted(entry.getKey()));
+            onWorldThread(world, () -> {
+                for (Consumer<World> edit : entry.getValue()) {
+                    edit.accept(world);
+                }
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void delete(String reinforcedBlockId) throws Exception {
+        writeBatch(List.of(), List.of(reinforcedBlockId));
+    }
+
+    @Override
+    public void delete(String worldName, Vector3i position) throws Exception {
+        writeBatch(List.of(), List.of(ReinforcedBlock.getInternalIdFromPosition(worldName, position)));
+    }
+
+    @Override
+    public void deleteInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) throws Exception {
+        World world = Universe.get().getWorld(worldName);
+        if (world == null) return;
+
+        long[] chunks = chunksInArea(WorldIds.of(worldName), boundsMin, boundsMax);
+        onWorldThread(world, () -> {
+            removeInArea(world, chunks, boundsMin, boundsMax);
+            return null;
+        });
+    }
+
+    @Override
+    public void evictInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
+        // No database cascade removes them for us, the chunks are the storage. Evictions come from
+        // the I/O thread too, which must not wait on a world thread that may be waiting on it.
+        World world = Universe.get().getWorld(worldName);
+        if (world == null) return;
+
+        long[] chunks = chunksInArea(WorldIds.of(worldName), boundsMin, boundsMax);
+        if (world.isInThread()) {
+            removeInArea(world, chunks, boundsMin, boundsMax);
+            return;
+        }
+        world.execute(() -> {
+            try {
+                removeInArea(world, chunks, boundsMin, boundsMax);
+            } catch (RuntimeException e) {
+                LOGGER.atSevere().withCause(e).log("Failed to delete reinforced blocks of a deleted zone in world '%s'".formatted(worldName));
+            }
+        });
+    }
+
+    private void removeInArea(World world, long[] chunks, Vector3i boundsMin, Vector3i boundsMax) {
+        for (long chunk : chunks) {
+            int chunkX = BlockPositions.unpackX(chunk), chunkZ = BlockPositions.unpackZ(chunk);
+            ReinforcementChunk component = getComponent(world, chunkX, chunkZ);
+            if (component != null && component.removeInArea(chunkX, chunkZ,
+                    boundsMin.x, boundsMin.y, boundsMin.z, boundsMax.x, boundsMax.y, boundsMax.z) > 0) {
+                markNeedsSaving(world, chunkX, chunkZ);
+            }
+        }
+    }
+
+    @Override
+    public void loadChunk(int worldId, int chunkX, int chunkZ) throws Exception {
+        LongIntHashMap chunks = loadedChunks.computeIfAbsent(worldId, id -> new LongIntHashMap());
+        synchronized (chunks) {
+            chunks.put(BlockPositions.pack(chunkX, 0, chunkZ), 0);
+        }
+    }
+
+    @Override
+    public void unloadChunk(int worldId, int chunkX, int chunkZ) {
+        // Nothing to write, the engine saves the component with the chunk
+        LongIntHashMap chunks = loadedChunks.get(worldId);
+        if (chunks == null) return;
+        synchronized (chunks) {
+            chunks.remove(BlockPositions.pack(chunkX, 0, chunkZ));
+        }
+    }
+
+    @Override
+    public void close() {
+        loadedChunks.clear();
+    }
+
+    private long[] loadedChunks(int worldId) {
+        LongIntHashMap chunks = loadedChunks.get(worldId);
+        if (chunks == null) return new long[0];
+        synchronized (chunks) {
+            long[] result = new long[chunks.size()];
+            int[] count = {0};
+            chunks.forEach((chunk, unused) -> result[count[0]++] = chunk);
+            return result;
+        }
+    }
+
+    /**
+     * Chunks overlapping inclusive bounds that may be loaded: every chunk in the bounds when
+     * there are fewer of those than loaded chunks, the loaded ones inside the bounds otherwise.
+     */
+    private long[] chunksInArea(int worldId, Vector3i boundsMin, Vector3i boundsMax) {
+        int minChunkX = Math.floorDiv(boundsMin.x, ChunkUtil.SIZE), maxChunkX = Math.floorDiv(boundsMax.x, ChunkUtil.SIZE);
+        int minChunkZ = Math.floorDiv(boundsMin.z, ChunkUtil.SIZE), maxChunkZ = Math.floorDiv(boundsMax.z, ChunkUtil.SIZE);
+        long[] loaded = loadedChunks(worldId);
+
+        long area = (long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+        if (area <= loaded.length) {
+            long[] result = new long[(int) area];
+            int i = 0;
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                    result[i++] = BlockPositions.pack(chunkX, 0, chunkZ);
+                }
+            }
+            return result;
+        }
+
+        int count = 0;
+        for (long chunk : loaded) {
+            int chunkX = BlockPositions.unpackX(chunk), chunkZ = BlockPositions.unpackZ(chunk);
+            if (chunkX >= minChunkX && chunkX <= maxChunkX && chunkZ >= minChunkZ && chunkZ <= maxChunkZ) {
+                loaded[count++] = chunk;
+            }
+        }
+        return Arrays.copyOf(loaded, count);
+    }
+
+    /**
+     * @return The component of a loaded chunk, or null if the chunk is not loaded or has no reinforced blocks
+     */
+    @Nullable
+    private ReinforcementChunk getComponent(World world, int chunkX, int chunkZ) {
+        Ref<ChunkStore> chunkReference = world.getChunkStore().getChunkReference(ChunkUtil.indexChunkFromBlock(chunkX * ChunkUtil.SIZE, chunkZ * ChunkUtil.SIZE));
+        if (chunkReference == null || !chunkReference.isValid()) return null;
+        return world.getChunkStore().getStore().getComponent(chunkReference, componentType);
+    }
+
+    /**
+     * Change the component of the loaded chunk holding a block and have the engine save the chunk.
+     *
+     * @param create Add the component if the chunk has none, otherwise there is nothing to change
+     */
+    private void editComponent(World world, int x, int z, boolean create, Consumer<ReinforcementChunk> edit) {
+        Ref<ChunkStore> chunkReference = world.getChunkStore().getChunkReference(ChunkUtil.indexChunkFromBlock(x, z));
+        if (chunkReference == null || !chunkReference.isValid()) {
+            throw new IllegalStateException("Chunk of block %d, %d in world '%s' is not loaded".formatted(x, z, world.getName()));
+        }
+
+        Store<ChunkStore> store = world.getChunkStore().getStore();
+        ReinforcementChunk component = create ? store.ensureAndGetComponent(chunkReference, componentType) : store.getComponent(chunkReference, componentType);
+        if (component == null) return;
+
+        edit.accept(component);
+        store.getComponent(chunkReference, WorldChunk.getComponentType()).markNeedsSaving();
+    }
+
+    private static void markNeedsSaving(World world, int chunkX, int chunkZ) {
+        Ref<ChunkStore> chunkReference = world.getChunkStore().getChunkReference(ChunkUtil.indexChunkFromBlock(chunkX * ChunkUtil.SIZE, chunkZ * ChunkUtil.SIZE));
+        world.getChunkStore().getStore().getComponent(chunkReference, WorldChunk.getComponentType()).markNeedsSaving();
+    }
+
+    /**
+     * Run a task on the world's thread, where its chunks may be touched, and wait for it.
+     */
+    private static <T> T onWorldThread(World world, WorldTask<T> task) throws Exception {
+        if (world.isInThread()) return task.run();
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        world.execute(() -> {
+            try {
+                future.complete(task.run());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface WorldTask<T> {
+        T run() throws Exception;
+    }
+}
@@ -1,11 +1,16 @@
 package com.apophisgames.rustyraiding.reinforcedblocks;
 
+import com.apophisgames.rustyraiding.util.DatabaseExecutor;
+import com.apophisgames.rustyraiding.util.SerializedRepository;
+import com.apophisgames.rustyraiding.util.WorldIds;
 import com.apophisgames.rustyraiding.zones.Zone;
 import com.hypixel.hytale.math.vector.Vector3i;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Repository for persisting Zones.
@@ -31,6 +36,31 @@ public interface IReinforcedBlockRepository {
      */
     Map<String, ReinforcedBlock> findByWorld(String worldName) throws Exception;
 
+    /**
+     * Find the names of every world with stored reinforced blocks.
+     * @return List of world names
+     */
+    List<String> findWorldNames() throws Exception;
+
+    /**
+     * Load the reinforced blocks of a chunk into memory ahead of their use, when the chunk loads. Storage that does not cache has nothing to do.
+     * @param worldId The world id, see {@link WorldIds}
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     */
+    default void loadChunk(int worldId, int chunkX, int chunkZ) throws Exception {
+    }
+
+    /**
+     * Release the reinforced blocks of a chunk held in memory, when the chunk unloads. Pending writes to them are not
+     * lost, reads keep seeing them until they are stored.
+     * @param worldId The world id, see {@link WorldIds}
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     */
+    default void unloadChunk(int worldId, int chunkX, int chunkZ) throws Exception {
+    }
+
     /**
      * Find a reinforced block by name in a specific world.
      * @param worldName The world name
@@ -39,6 +69,13 @@ public interface IReinforcedBlockRepository {
      */
     Optional<ReinforcedBlock> findByPosition(String worldName, Vector3i position) throws Exception;
 
+    /**
+     * Find the reinforcement of the block at a position, without building a record. Hot path for block events.
+     * @param worldId The world id, see {@link WorldIds}
+     * @return The reinforcement, or {@link ReinforcedBlock#NOT_REINFORCED} if the block is not reinforced
+     */
+    int findReinforcement(int worldId, int x, int y, int z) throws Exception;
+
     /**
      * Find all reinforced blocks in a specific area in a world
      * @param worldName The name of the world
@@ -55,6 +92,25 @@ public interface IReinforcedBlockRepository {
      */
     void save(ReinforcedBlock reinforcedBlock) throws Exception;
 
+    /**
+     * Set the reinforcement of the block at a position, without building a record. Hot path for block events.
+     * @param worldId The world id, see {@link WorldIds}
+     * @param reinforcement The new reinforcement, or {@link ReinforcedBlock#NOT_REINFORCED} to delete the block
+     */
+    default void setReinforcement(int worldId, int x, int y, int z, int reinforcement) throws Exception {
+        String worldName = WorldIds.nameOf(worldId);
+        Vector3i position = new Vector3i(x, y, z);
+        if (reinforcement == ReinforcedBlock.NOT_REINFORCED) delete(worldName, position);
+        else save(ReinforcedBlock.create(worldName, position, reinforcement));
+    }
+
+    /**
+     * Save and delete many reinforced blocks in a single transaction.
+     * @param saves The reinforced blocks to save
+     * @param deletedIds The internal IDs of the reinforced blocks to delete
+     */
+    void writeBatch(Collection<ReinforcedBlock> saves, Collection<String> deletedIds) throws Exception;
+
     /**
      * Delete a reinforced block by id.
      * @param reinforcedBlockId The internal ID of the reinforced block to delete
@@ -76,6 +132,33 @@ public interface IReinforcedBlockRepository {
      */
     void deleteInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) throws Exception;
 
+    /**
+     * Delete all reinforced blocks in a specific area in a world without blocking the caller.
+     * @param worldName The name of the world
+     * @param boundsMin The min corner of the bounded area to delete
+     * @param boundsMax The max corner of the bounded area to delete
+     * @return Future completed once the blocks are deleted, on the storage thread
+     */
+    default CompletableFuture<Void> deleteInAreaAsync(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
+        return DatabaseExecutor.inline(() -> {
+            deleteInArea(worldName, boundsMin, boundsMax);
+            return null;
+        });
+    }
+
+    /**
+     * Forget any state held in memory, cached or pending, for an area whose zone was just
+     * deleted. Storage that cascades the zone delete to its blocks has nothing else to do,
+     * other storage deletes the blocks here. Called on world and I/O threads once the zone
+     * delete succeeded, so slow storage work is handed off rather than waited for.
+     * @param worldName The name of the world
+     * @param boundsMin The min corner of the area
+     * @param boundsMax The max corner of the area
+     */
+    @SerializedRepository.CallerThread
+    default void evictInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
+    }
+
     /**
      * Close any resources (connections, files).
      */
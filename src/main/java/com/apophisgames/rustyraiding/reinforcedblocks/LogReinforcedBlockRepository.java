@@ -0,0 +1,709 @@
+package com.apophisgames.rustyraiding.reinforcedblocks;
+
+import com.apophisgames.rustyraiding.util.BlockPositions;
+import com.apophisgames.rustyraiding.util.WorldIds;
+import com.apophisgames.rustyraiding.util.WorldTable;
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.math.vector.Vector3i;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * Log-structured implementation of IReinforcedBlockRepository, for raids that overwrite
+ * reinforcement faster than SQLite upserts keep up with.
+ *
+ * <p>Every write appends a (position, reinforcement) record to the tail of a segment file,
+ * with a tombstone for deletes. Every block lives in memory, one {@link ReinforcementStore}
+ * per world, which answers all reads and is rebuilt from the log on startup. Residency is
+ * not used, every block is always present.
+ *
+ * <p>Writes return once applied in memory. Records collect in a buffer that the commit thread
+ * writes with one write and one fsync per group, every flush interval, or as soon as the buffer
+ * holds the size threshold. A crash loses at most the last group. On startup a torn record at
+ * the tail is detected by its checksum and cut off.
+ *
+ * <p>Segments are sealed once they reach {@link #SEGMENT_BYTES}. When the log holds several
+ * times more records than there are live blocks, a background compaction writes every live block
+ * to a snapshot that replaces all sealed segments. Recovery reads the latest snapshot, then
+ * the segments after it.
+ *
+ * <p>Each file declares the worlds it uses by name, so world ids never need to be stable
+ * across restarts.
+ */
+public class LogReinforcedBlockRepository implements IReinforcedBlockRepository {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final Pattern FILE_NAME = Pattern.compile("(segment|snapshot)-(\\d+)\\.log");
+
+    private static final long SEGMENT_BYTES = 64L << 20;
+    // Compact once the log holds this many records per live block, and at least MIN_COMPACTION_RECORDS
+    private static final int COMPACTION_RATIO = 4;
+    private static final long MIN_COMPACTION_RECORDS = 1_000_000;
+
+    // Records: type, body, CRC32C of type and body
+    private static final byte BLOCK_RECORD = 1;  // world id, packed position, reinforcement (NOT_REINFORCED to delete)
+    private static final byte WORLD_RECORD = 2;  // world id, name length, UTF-8 name
+    private static final int BLOCK_RECORD_BYTES = 1 + Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final int maxPendingBytes;
+    private final ScheduledExecutorService commitExecutor;
+    private final ExecutorService compactionExecutor;
+
+    // World id -> every block of the world
+    private final WorldTable<ReinforcementStore> stores = new WorldTable<>();
+
+    // Guarded by this: worlds with a store, and the records not yet committed
+    private final BitSet storedWorlds = new BitSet();
+    private ByteBuffer pending = ByteBuffer.allocate(64 << 10);
+    private int pendingRecords;
+    private boolean commitQueued;
+    private final CRC32C checksum = new CRC32C();
+
+    // Guarded by this: the segment pending records go to, and the worlds declared in it so far
+    private long writeSegment;
+    private final BitSet declaredWorlds = new BitSet();
+
+    // Guarded by this: block records per segment still on disk, and in the latest snapshot
+    private final TreeMap<Long, Long> segmentRecords = new TreeMap<>();
+    private long snapshotRecords;
+    private boolean compacting;
+
+    // Only touched by the commit thread, or by close() once it has stopped
+    private final ArrayDeque<Batch> unwritten = new ArrayDeque<>();
+    @Nullable
+    private FileChannel channel;
+    private long channelSegment;
+
+    /**
+     * Records swapped out of the pending buffer, written as one group.
+     *
+     * @param bytes The encoded records
+     * @param segment The segment they belong to
+     * @param seal Whether the segment is closed after them
+     */
+    private record Batch(ByteBuffer bytes, long segment, boolean seal) {
+    }
+
+    /**
+     * @param directory The directory holding the segments and snapshots
+     * @param commitIntervalMillis How often pending records are committed
+     * @param maxPendingWrites Number of pending records that triggers an early commit
+     */
+    public LogReinforcedBlockRepository(@Nonnull Path directory, long commitIntervalMillis, int maxPendingWrites) {
+        this.directory = directory;
+        this.maxPendingBytes = Math.max(1, maxPendingWrites) * BLOCK_RECORD_BYTES;
+        this.commitExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RustyRaiding-LogCommit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RustyRaiding-LogCompaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long interval = Math.max(1, commitIntervalMillis);
+        commitExecutor.scheduleWithFixedDelay(this::commitQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // ============================================
+    // Recovery
+    // ============================================
+
+    @Override
+    public synchronized void initialize() throws Exception {
+        Files.createDirectories(directory);
+
+        long latestSnapshot = -1;
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    // A compaction that never finished
+                    Files.delete(file);
+                    continue;
+                }
+                Matcher matcher = FILE_NAME.matcher(name);
+                if (!matcher.matches()) continue;
+                long number = Long.parseLong(matcher.group(2));
+                if (matcher.group(1).equals("segment")) {
+                    segments.put(number, file);
+                } else {
+                    snapshots.add(file);
+                    latestSnapshot = Math.max(latestSnapshot, number);
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        if (latestSnapshot >= 0) {
+            snapshotRecords = replay(directory.resolve(fileName(SNAPSHOT_PREFIX, latestSnapshot)), false);
+        }
+
+        // Files the latest snapshot replaces, left behind if the server stopped mid-compaction
+        for (Path snapshot : snapshots) {
+            if (!snapshot.getFileName().toString().equals(fileName(SNAPSHOT_PREFIX, latestSnapshot))) Files.delete(snapshot);
+        }
+        for (Path segment : segments.headMap(latestSnapshot, true).values()) {
+            Files.delete(segment);
+        }
+
+        Map<Long, Path> live = segments.tailMap(latestSnapshot, false);
+        for (Map.Entry<Long, Path> segment : live.entrySet()) {
+            // Only the last segment can end in a torn write
+            segmentRecords.put(segment.getKey(), replay(segment.getValue(), segment.getKey().equals(segments.lastKey())));
+        }
+
+        // Appends always start a fresh segment
+        writeSegment = Math.max(latestSnapshot, segments.isEmpty() ? -1 : segments.lastKey()) + 1;
+        channelSegment = writeSegment;
+
+        LOGGER.atInfo().log("Recovered %d reinforced blocks from %d log files in %d ms".formatted(
+                liveRecords(), live.size() + (latestSnapshot >= 0 ? 1 : 0), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    /**
+     * Apply every record of a log file to the stores.
+     *
+     * @param truncate Cut the file at the first invalid record, instead of only skipping the rest
+     * @return The number of block records applied
+     */
+    private long replay(Path file, boolean truncate) throws IOException {
+        Map<Integer, Integer> fileWorlds = new HashMap<>();
+        CRC32C crc = new CRC32C();
+        ByteBuffer record = ByteBuffer.allocate(BLOCK_RECORD_BYTES);
+        long validBytes = 0;
+        long records = 0;
+        String problem = null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (true) {
+                int type = in.read();
+                if (type == -1) break;
+
+                if (type == BLOCK_RECORD) {
+                    record.clear();
+                    record.put((byte) type);
+                    in.readFully(record.array(), 1, BLOCK_RECORD_BYTES - 1);
+                    crc.reset();
+                    crc.update(record.array(), 0, BLOCK_RECORD_BYTES - Integer.BYTES);
+                    if ((int) crc.getValue() != record.getInt(BLOCK_RECORD_BYTES - Integer.BYTES)) {
+                        problem = "checksum mismatch";
+                        break;
+                    }
+
+                    Integer worldId = fileWorlds.get(record.getInt(1));
+                    if (worldId == null) {
+                        problem = "block record for an undeclared world";
+                        break;
+                    }
+                    long position = record.getLong(5);
+                    int reinforcement = record.getInt(13);
+                    ReinforcementStore store = storeFor(worldId);
+                    if (reinforcement == ReinforcedBlock.NOT_REINFORCED) {
+                        store.remove(BlockPositions.unpackX(position), BlockPositions.unpackY(position), BlockPositions.unpackZ(position));
+                    } else {
+                        store.put(BlockPositions.unpackX(position), BlockPositions.unpackY(position), BlockPositions.unpackZ(position), reinforcement);
+                    }
+                    validBytes += BLOCK_RECORD_BYTES;
+                    records++;
+                } else if (type == WORLD_RECORD) {
+                    int fileWorldId = in.readInt();
+                    byte[] name = new byte[in.readUnsignedShort()];
+                    in.readFully(name);
+                    crc.reset();
+                    crc.update(type);
+                    crc.update(ByteBuffer.allocate(Integer.BYTES + Short.BYTES).putInt(fileWorldId).putShort((short) name.length).array());
+                    crc.update(name);
+                    if ((int) crc.getValue() != in.readInt()) {
+                        problem = "checksum mismatch";
+                        break;
+                    }
+
+                    fileWorlds.put(fileWorldId, WorldIds.of(new String(name, StandardCharsets.UTF_8)));
+                    validBytes += 1 + Integer.BYTES + Short.BYTES + name.length + Integer.BYTES;
+                } else {
+                    problem = "unknown record type " + type;
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            problem = "truncated record";
+        }
+
+        if (problem != null) {
+            if (truncate) {
+                LOGGER.atWarning().log("Cutting %s at byte %d after a torn write (%s)".formatted(file.getFileName(), validBytes, problem));
+                try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    out.truncate(validBytes);
+                }
+            } else {
+                LOGGER.atSevere().log("Skipping the rest of %s from byte %d (%s)".formatted(file.getFileName(), validBytes, problem));
+            }
+        }
+        return records;
+    }
+
+    private static String fileName(String prefix, long number) {
+        return prefix + String.format("%016d", number) + ".log";
+    }
+
+    // ============================================
+    // Stores
+    // ============================================
+
+    private synchronized ReinforcementStore storeFor(int worldId) {
+        ReinforcementStore store = stores.get(worldId);
+        if (store == null) {
+            store = new ReinforcementStore();
+            stores.put(worldId, store);
+            storedWorlds.set(worldId);
+        }
+        return store;
+    }
+
+    private synchronized long liveRecords() {
+        long live = 0;
+        for (int worldId = storedWorlds.nextSetBit(0); worldId >= 0; worldId = storedWorlds.nextSetBit(worldId + 1)) {
+            live += stores.get(worldId).size();
+        }
+        return live;
+    }
+
+    // ============================================
+    // Queries
+    // ============================================
+
+    @Override
+    public Map<String, Map<String, ReinforcedBlock>> loadAll() throws Exception {
+        Map<String, Map<String, ReinforcedBlock>> result = new HashMap<>();
+        for (String worldName : findWorldNames()) {
+            result.put(worldName, findByWorld(worldName));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, ReinforcedBlock> findByWorld(String worldName) throws Exception {
+        Map<String, ReinforcedBlock> result = new HashMap<>();
+        ReinforcementStore store = stores.get(WorldIds.of(worldName));
+        if (store != null) {
+            String canonicalName = WorldIds.intern(worldName);
+            store.forEach((x, y, z, reinforcement) -> addBlock(result, canonicalName, x, y, z, reinforcement));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<String> findWorldNames() throws Exception {
+        List<String> result = new ArrayList<>();
+        for (int worldId = storedWorlds.nextSetBit(0); worldId >= 0; worldId = storedWorlds.nextSetBit(worldId + 1)) {
+            if (stores.get(worldId).size() > 0) result.add(WorldIds.nameOf(worldId));
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<ReinforcedBlock> findByPosition(String worldName, Vector3i position) throws Exception {
+        int reinforcement = findReinforcement(WorldIds.of(worldName), position.x, position.y, position.z);
+        if (reinforcement == ReinforcedBlock.NOT_REINFORCED) return Optional.empty();
+        return Optional.of(ReinforcedBlock.create(WorldIds.intern(worldName), position, reinforcement));
+    }
+
+    @Override
+    public int findReinforcement(int worldId, int x, int y, int z) throws Exception {
+        ReinforcementStore store = stores.get(worldId);
+        return store == null ? ReinforcedBlock.NOT_REINFORCED : store.get(x, y, z);
+    }
+
+    @Override
+    public Map<String, ReinforcedBlock> findInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) throws Exception {
+        Map<String, ReinforcedBlock> result = new HashMap<>();
+        ReinforcementStore store = stores.get(WorldIds.of(worldName));
+        if (store != null) {
+            String canonicalName = WorldIds.intern(worldName);
+            store.forEachInArea(boundsMin.x, boundsMin.y, boundsMin.z, boundsMax.x, boundsMax.y, boundsMax.z,
+                    (x, y, z, reinforcement) -> addBlock(result, canonicalName, x, y, z, reinforcement));
+        }
+        return result;
+    }
+
+    private static void addBlock(Map<String, ReinforcedBlock> result, String worldName, int x, int y, int z, int reinforcement) {
+        ReinforcedBlock block = ReinforcedBlock.create(worldName, new Vector3i(x, y, z), reinforcement);
+        result.put(block.internalId(), block);
+    }
+
+    // ============================================
+    // Writes
+    // ============================================
+
+    @Override
+    public void save(ReinforcedBlock reinforcedBlock) {
+        writeBatch(List.of(reinforcedBlock), List.of());
+    }
+
+    @Override
+    public void writeBatch(Collection<ReinforcedBlock> saves, Collection<String> deletedIds) {
+        synchronized (this) {
+            for (ReinforcedBlock block : saves) {
+                Vector3i position = block.position();
+                int worldId = WorldIds.of(block.worldName());
+                storeFor(worldId).put(position.x, position.y, position.z, block.reinforcement());
+                append(worldId, position.x, position.y, position.z, block.reinforcement());
+            }
+            for (String id : deletedIds) {
+                Vector3i position = ReinforcedBlock.getPositionFromInternalId(id);
+                int worldId = WorldIds.of(ReinforcedBlock.getWorldNameFromInternalId(id));
+                ReinforcementStore store = stores.get(worldId);
+                if (store != null && store.remove(position.x, position.y, position.z)) {
+                    append(worldId, position.x, position.y, position.z, ReinforcedBlock.NOT_REINFORCED);
+                }
+            }
+        }
+        requestCommitIfFull();
+    }
+
+    @Override
+    public void delete(String reinforcedBlockId) {
+        writeBatch(List.of(), List.of(reinforcedBlockId));
+    }
+
+    @Override
+    public void delete(String worldName, Vector3i position) {
+        writeBatch(List.of(), List.of(ReinforcedBlock.getInternalIdFromPosition(worldName, position)));
+    }
+
+    @Override
+    public void deleteInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
+        int worldId = WorldIds.of(worldName);
+        synchronized (this) {
+            ReinforcementStore store = stores.get(worldId);
+            if (store == null) return;
+            store.forEachInArea(boundsMin.x, boundsMin.y, boundsMin.z, boundsMax.x, boundsMax.y, boundsMax.z,
+                    (x, y, z, reinforcement) -> append(worldId, x, y, z, ReinforcedBlock.NOT_REINFORCED));
+            store.removeInArea(boundsMin.x, boundsMin.y, boundsMin.z, boundsMax.x, boundsMax.y, boundsMax.z);
+        }
+        requestCommitIfFull();
+    }
+
+    @Override
+    public void evictInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
+        // Nothing removes the blocks of a deleted zone for us, unlike the SQLite zone delete
+        deleteInArea(worldName, boundsMin, boundsMax);
+    }
+
+    /**
+     * Append a block record to the pending buffer, declaring its world first if the segment
+     * has not seen it yet. Caller holds this.
+     */
+    private void append(int worldId, int x, int y, int z, int reinforcement) {
+        if (!declaredWorlds.get(worldId)) {
+            byte[] name = WorldIds.nameOf(worldId).getBytes(StandardCharsets.UTF_8);
+            ensurePending(1 + Integer.BYTES + Short.BYTES + name.length + Integer.BYTES);
+            putWorldRecord(pending, checksum, worldId, name);
+            declaredWorlds.set(worldId);
+        }
+        ensurePending(BLOCK_RECORD_BYTES);
+        putBlockRecord(pending, checksum, worldId, BlockPositions.pack(x, y, z), reinforcement);
+        pendingRecords++;
+    }
+
+    private void ensurePending(int bytes) {
+        if (pending.remaining() >= bytes) return;
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+        pending.flip();
+        grown.put(pending);
+        pending = grown;
+    }
+
+    private static void putBlockRecord(ByteBuffer buffer, CRC32C crc, int worldId, long position, int reinforcement) {
+        int start = buffer.position();
+        buffer.put(BLOCK_RECORD).putInt(worldId).putLong(position).putInt(reinforcement);
+        putChecksum(buffer, crc, start);
+    }
+
+    private static void putWorldRecord(ByteBuffer buffer, CRC32C crc, int worldId, byte[] name) {
+        int start = buffer.position();
+        buffer.put(WORLD_RECORD).putInt(worldId).putShort((short) name.length).put(name);
+        putChecksum(buffer, crc, start);
+    }
+
+    private static void putChecksum(ByteBuffer buffer, CRC32C crc, int start) {
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + start, buffer.position() - start);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    // ============================================
+    // Group Commit
+    // ============================================
+
+    private void requestCommitIfFull() {
+        synchronized (this) {
+            if (pending.position() < maxPendingBytes || commitQueued || commitExecutor.isShutdown()) return;
+            commitQueued = true;
+        }
+        try {
+            commitExecutor.execute(this::commitQuietly);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, close() commits what is left
+        }
+    }
+
+    private void commitQuietly() {
+        synchronized (this) {
+            commitQueued = false;
+        }
+        try {
+            commit(false);
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Failed to commit reinforced block log, will retry");
+            return;
+        }
+        compactIfWorthwhile();
+    }
+
+    /**
+     * Write every pending record with a single write and fsync. Runs on the commit thread.
+     * A group that fails to write is kept, and written ahead of anything newer on the next try.
+     *
+     * @param seal Close the current segment after this group, even if it is not full
+     * @return The number of the segment sealed by this call, or -1 if none was
+     */
+    private long commit(boolean seal) throws IOException {
+        synchronized (this) {
+            if (pending.position() > 0 || seal) {
+                long segment = writeSegment;
+                seal |= channelBytesAfter(pending.position()) >= SEGMENT_BYTES;
+                pending.flip();
+                unwritten.add(new Batch(pending, segment, seal));
+                segmentRecords.merge(segment, (long) pendingRecords, Long::sum);
+
+                pending = ByteBuffer.allocate(Math.max(64 << 10, Math.min(pending.capacity(), maxPendingBytes * 2)));
+                pendingRecords = 0;
+                if (seal) {
+                    // Later records go to the next segment, which declares its worlds again
+                    writeSegment++;
+                    declaredWorlds.clear();
+                }
+            }
+        }
+
+        long sealed = -1;
+        while (!unwritten.isEmpty()) {
+            Batch batch = unwritten.peek();
+            if (batch.bytes().hasRemaining()) {
+                FileChannel out = channel(batch.segment());
+                long size = out.size();
+                try {
+                    while (batch.bytes().hasRemaining()) out.write(batch.bytes());
+                    out.force(false);
+                } catch (IOException e) {
+                    // Drop the partial write so the retry appends the whole group again
+                    batch.bytes().rewind();
+                    out.truncate(size);
+                    throw e;
+                }
+            }
+            if (batch.seal()) {
+                closeChannel();
+                channelSegment = batch.segment() + 1;
+                sealed = batch.segment();
+            }
+            unwritten.poll();
+        }
+        return sealed;
+    }
+
+    // Size of the open segment once a group of this many bytes is written, caller holds this
+    private long channelBytesAfter(int bytes) throws IOException {
+        FileChannel current = channel;
+        boolean sameSegment = current != null && channelSegment == writeSegment && unwritten.isEmpty();
+        return (sameSegment ? current.size() : 0) + bytes;
+    }
+
+    private FileChannel channel(long segment) throws IOException {
+        if (channel == null || channelSegment != segment) {
+            closeChannel();
+            channelSegment = segment;
+            channel = FileChannel.open(directory.resolve(fileName(SEGMENT_PREFIX, segment)),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel == null) return;
+        channel.close();
+        channel = null;
+    }
+
+    // ============================================
+    // Compaction
+    // ============================================
+
+    private void compactIfWorthwhile() {
+        synchronized (this) {
+            if (compacting || compactionExecutor.isShutdown()) return;
+            long logRecords = snapshotRecords;
+            for (long records : segmentRecords.values()) logRecords += records;
+            if (logRecords < MIN_COMPACTION_RECORDS || logRecords < COMPACTION_RATIO * liveRecords()) return;
+            compacting = true;
+        }
+        try {
+            compactionExecutor.execute(this::compactQuietly);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Failed to compact reinforced block log, will retry later");
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    /**
+     * Replace every sealed segment with a snapshot of the live blocks. Runs on the compaction thread.
+     *
+     * <p>The current segment is sealed first, so the snapshot covers everything up to it. Writes
+     * that land while the snapshot is taken go to later segments, which recovery replays on top
+     * of it, so the snapshot may hold them or not.
+     */
+    private void compact() throws Exception {
+        long start = System.nanoTime();
+        long sealed = commitExecutor.submit(() -> commit(true)).get();
+        if (sealed < 0) return;
+
+        List<Integer> worldIds = new ArrayList<>();
+        synchronized (this) {
+            for (int worldId = storedWorlds.nextSetBit(0); worldId >= 0; worldId = storedWorlds.nextSetBit(worldId + 1)) {
+                worldIds.add(worldId);
+            }
+        }
+
+        Path snapshot = directory.resolve(fileName(SNAPSHOT_PREFIX, sealed));
+        Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        long written = 0;
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            CRC32C crc = new CRC32C();
+            for (int worldId : worldIds) {
+                ReinforcementStore store = stores.get(worldId);
+                long[] positions;
+                int[] reinforcements;
+                // Copy out so the world is only held up for the copy, not the write
+                synchronized (store) {
+                    positions = new long[store.size()];
+                    reinforcements = new int[positions.length];
+                    int[] count = new int[1];
+                    store.forEach((x, y, z, reinforcement) -> {
+                        positions[count[0]] = BlockPositions.pack(x, y, z);
+                        reinforcements[count[0]++] = reinforcement;
+                    });
+                }
+                if (positions.length == 0) continue;
+
+                putWorldRecord(buffer, crc, worldId, WorldIds.nameOf(worldId).getBytes(StandardCharsets.UTF_8));
+                for (int i = 0; i < positions.length; i++) {
+                    if (buffer.remaining() < BLOCK_RECORD_BYTES) drain(buffer, out);
+                    putBlockRecord(buffer, crc, worldId, positions[i], reinforcements[i]);
+                }
+                written += positions.length;
+            }
+            drain(buffer, out);
+            out.force(true);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // The snapshot now stands in for every file up to the sealed segment
+        long replaced;
+        synchronized (this) {
+            replaced = segmentRecords.headMap(sealed, true).size();
+            segmentRecords.headMap(sealed, true).clear();
+            snapshotRecords = written;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches() && Long.parseLong(matcher.group(2)) <= sealed && !file.equals(snapshot)) Files.delete(file);
+            }
+        }
+
+        LOGGER.atInfo().log("Compacted %d log segments into a snapshot of %d reinforced blocks in %d ms".formatted(
+                replaced, written, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel out) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) out.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() {
+        compactionExecutor.shutdown();
+        commitExecutor.shutdown();
+        try {
+            if (!compactionExecutor.awaitTermination(30, TimeUnit.SECONDS))
+                LOGGER.atWarning().log("Reinforced block log compaction did not finish before shutdown");
+            if (!commitExecutor.awaitTermination(10, TimeUnit.SECONDS))
+                LOGGER.atWarning().log("Reinforced block log commit did not finish before shutdown");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Commit whatever is left before the files go away
+        try {
+            commit(false);
+            closeChannel();
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Failed to commit pending reinforced block writes on shutdown");
+        }
+    }
+}
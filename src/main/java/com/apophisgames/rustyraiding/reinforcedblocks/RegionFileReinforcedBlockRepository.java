@@ -0,0 +1,287 @@
+package com.apophisgames.rustyraiding.reinforcedblocks;
+
+import com.apophisgames.rustyraiding.util.WorldIds;
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.math.vector.Vector3i;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Region file implementation of IReinforcedBlockRepository, for maps with more reinforced
+ * blocks than SQLite handles comfortably.
+ *
+ * <p>Each world gets a directory, and each region of {@link ReinforcementRegion#REGION_CHUNKS}
+ * by {@link ReinforcementRegion#REGION_CHUNKS} chunks a memory-mapped file in it, named
+ * r.&lt;x&gt;.&lt;z&gt;.bin like the engine's own region files. Lookups and writes are
+ * memory accesses, with no row objects built on the way. Region files are opened on first use
+ * and stay open until {@link #close()}.
+ *
+ * <p>Every write is forced to disk before it returns, a batch once at the end. A crash halfway
+ * through a batch may keep part of it, since each block is written in place.
+ *
+ * <p>Zone deletes do not cascade on their own here, so {@link #evictInArea} deletes the blocks.
+ *
+ * <p>All methods are synchronized, region files are not thread safe.
+ */
+public class RegionFileReinforcedBlockRepository implements IReinforcedBlockRepository {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    private static final Pattern REGION_FILE_NAME = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.bin");
+
+    private final Path directory;
+
+    // World name -> region key -> open region
+    private final Map<String, Map<Long, ReinforcementRegion>> regions = new HashMap<>();
+
+    /**
+     * @param directory The directory holding one directory of region files per world
+     */
+    public RegionFileReinforcedBlockRepository(@Nonnull Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public synchronized void initialize() throws Exception {
+        Files.createDirectories(directory);
+    }
+
+    // ============================================
+    // Regions
+    // ============================================
+
+    private static long regionKey(int regionX, int regionZ) {
+        return ((long) regionX << 32) | (regionZ & 0xFFFFFFFFL);
+    }
+
+    // URL encoding keeps any world name a single, safe path segment
+    private Path worldDirectory(String worldName) {
+        return directory.resolve(URLEncoder.encode(worldName, StandardCharsets.UTF_8).replace(".", "%2E"));
+    }
+
+    /**
+     * @return The region holding a block column, or null if it has no file and create is false
+     */
+    @Nullable
+    private ReinforcementRegion regionAt(String worldName, int x, int z, boolean create) throws IOException {
+        return region(worldName, ReinforcementRegion.regionCoordinate(x), ReinforcementRegion.regionCoordinate(z), create);
+    }
+
+    @Nullable
+    private ReinforcementRegion region(String worldName, int regionX, int regionZ, boolean create) throws IOException {
+        Map<Long, ReinforcementRegion> worldRegions = regions.computeIfAbsent(worldName, k -> new HashMap<>());
+        long key = regionKey(regionX, regionZ);
+        ReinforcementRegion region = worldRegions.get(key);
+        if (region != null) return region;
+
+        Path worldDirectory = worldDirectory(worldName);
+        if (create) Files.createDirectories(worldDirectory);
+        region = ReinforcementRegion.open(worldDirectory.resolve("r." + regionX + "." + regionZ + ".bin"), regionX, regionZ, create);
+        if (region != null) worldRegions.put(key, region);
+        return region;
+    }
+
+    /**
+     * Open every region file stored for a world.
+     */
+    private List<ReinforcementRegion> regionsOf(String worldName) throws IOException {
+        List<ReinforcementRegion> result = new ArrayList<>();
+        Path worldDirectory = worldDirectory(worldName);
+        if (!Files.isDirectory(worldDirectory)) return result;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(worldDirectory)) {
+            for (Path file : files) {
+                Matcher matcher = REGION_FILE_NAME.matcher(file.getFileName().toString());
+                if (!matcher.matches()) continue;
+                ReinforcementRegion region = region(worldName, Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), false);
+                if (region != null) result.add(region);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Visit the regions overlapping an area, skipping those without a file.
+     */
+    private void forEachRegionInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax, RegionTask task) throws IOException {
+        for (int regionX = ReinforcementRegion.regionCoordinate(boundsMin.x); regionX <= ReinforcementRegion.regionCoordinate(boundsMax.x); regionX++) {
+            for (int regionZ = ReinforcementRegion.regionCoordinate(boundsMin.z); regionZ <= ReinforcementRegion.regionCoordinate(boundsMax.z); regionZ++) {
+                ReinforcementRegion region = region(worldName, regionX, regionZ, false);
+                if (region != null) task.run(region);
+            }
+        }
+    }
+
+    private interface RegionTask {
+        void run(ReinforcementRegion region) throws IOException;
+    }
+
+    // ============================================
+    // Queries
+    // ============================================
+
+    @Override
+    public synchronized Map<String, Map<String, ReinforcedBlock>> loadAll() throws Exception {
+        Map<String, Map<String, ReinforcedBlock>> result = new HashMap<>();
+        for (String worldName : findWorldNames()) {
+            result.put(worldName, findByWorld(worldName));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Map<String, ReinforcedBlock> findByWorld(String worldName) throws Exception {
+        String canonicalName = WorldIds.intern(worldName);
+        Map<String, ReinforcedBlock> result = new HashMap<>();
+        for (ReinforcementRegion region : regionsOf(canonicalName)) {
+            region.forEach((x, y, z, reinforcement) -> addBlock(result, canonicalName, x, y, z, reinforcement));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<String> findWorldNames() throws Exception {
+        Set<String> result = new HashSet<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> worlds = Files.newDirectoryStream(directory, Files::isDirectory)) {
+                for (Path world : worlds) {
+                    result.add(WorldIds.intern(URLDecoder.decode(world.getFileName().toString(), StandardCharsets.UTF_8)));
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    @Override
+    public synchronized Optional<ReinforcedBlock> findByPosition(String worldName, Vector3i position) throws Exception {
+        int reinforcement = findReinforcement(worldName, position.x, position.y, position.z);
+        if (reinforcement == ReinforcedBlock.NOT_REINFORCED) return Optional.empty();
+        return Optional.of(ReinforcedBlock.create(WorldIds.intern(worldName), position, reinforcement));
+    }
+
+    @Override
+    public synchronized int findReinforcement(int worldId, int x, int y, int z) throws Exception {
+        return findReinforcement(WorldIds.nameOf(worldId), x, y, z);
+    }
+
+    private int findReinforcement(String worldName, int x, int y, int z) throws IOException {
+        ReinforcementRegion region = regionAt(worldName, x, z, false);
+        return region == null ? ReinforcedBlock.NOT_REINFORCED : region.get(x, y, z);
+    }
+
+    @Override
+    public synchronized Map<String, ReinforcedBlock> findInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) throws Exception {
+        String canonicalName = WorldIds.intern(worldName);
+        Map<String, ReinforcedBlock> result = new HashMap<>();
+        forEachRegionInArea(canonicalName, boundsMin, boundsMax, region -> region.forEachInArea(
+                boundsMin.x, boundsMin.y, boundsMin.z, boundsMax.x, boundsMax.y, boundsMax.z,
+                (x, y, z, reinforcement) -> addBlock(result, canonicalName, x, y, z, reinforcement)));
+        return result;
+    }
+
+    private static void addBlock(Map<String, ReinforcedBlock> result, String worldName, int x, int y, int z, int reinforcement) {
+        ReinforcedBlock block = ReinforcedBlock.create(worldName, new Vector3i(x, y, z), reinforcement);
+        result.put(block.internalId(), block);
+    }
+
+    // ============================================
+    // Writes
+    // ============================================
+
+    @Override
+    public synchronized void save(ReinforcedBlock reinforcedBlock) throws Exception {
+        writeBatch(List.of(reinforcedBlock), List.of());
+    }
+
+    @Override
+    public synchronized void writeBatch(Collection<ReinforcedBlock> saves, Collection<String> deletedIds) throws Exception {
+        Set<ReinforcementRegion> touched = new HashSet<>();
+        try {
+            for (ReinforcedBlock block : saves) {
+                Vector3i position = block.position();
+                ReinforcementRegion region = regionAt(block.worldName(), position.x, position.z, true);
+                region.put(position.x, position.y, position.z, block.reinforcement());
+                touched.add(region);
+            }
+            for (String id : deletedIds) {
+                Vector3i position = ReinforcedBlock.getPositionFromInternalId(id);
+                ReinforcementRegion region = regionAt(ReinforcedBlock.getWorldNameFromInternalId(id), position.x, position.z, false);
+                if (region != null && region.remove(position.x, position.y, position.z)) touched.add(region);
+            }
+        } finally {
+            // Whatever was applied goes to disk, a retry of the batch rewrites the same values
+            forceAll(touched);
+        }
+    }
+
+    @Override
+    public synchronized void delete(String internalId) throws Exception {
+        writeBatch(List.of(), List.of(internalId));
+    }
+
+    @Override
+    public synchronized void delete(String worldName, Vector3i position) throws Exception {
+        writeBatch(List.of(), List.of(ReinforcedBlock.getInternalIdFromPosition(worldName, position)));
+    }
+
+    @Override
+    public synchronized void deleteInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) throws Exception {
+        Set<ReinforcementRegion> touched = new HashSet<>();
+        try {
+            forEachRegionInArea(worldName, boundsMin, boundsMax, region -> {
+                if (region.removeInArea(boundsMin.x, boundsMin.y, boundsMin.z, boundsMax.x, boundsMax.y, boundsMax.z) > 0)
+                    touched.add(region);
+            });
+        } finally {
+            forceAll(touched);
+        }
+    }
+
+    @Override
+    public synchronized void evictInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
+        // Nothing removes the blocks of a deleted zone for us, unlike the SQLite zone delete
+        try {
+            deleteInArea(worldName, boundsMin, boundsMax);
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Failed to delete reinforced blocks of a removed zone in " + worldName);
+        }
+    }
+
+    private static void forceAll(Collection<ReinforcementRegion> touched) {
+        for (ReinforcementRegion region : touched) {
+            region.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Map<Long, ReinforcementRegion> worldRegions : regions.values()) {
+            for (ReinforcementRegion region : worldRegions.values()) {
+                try {
+                    region.close();
+                } catch (IOException e) {
+                    LOGGER.atSevere().withCause(e).log("Failed to close region file " + region.getPath());
+                }
+            }
+        }
+        regions.clear();
+    }
+}
@@ -23,6 +23,11 @@ public record ReinforcedBlock(
         int reinforcement
 ) {
 
+    /**
+     * Returned by position lookups when the block has no reinforcement record.
+     */
+    public static final int NOT_REINFORCED = -1;
+
     public static ReinforcedBlock create(String worldName, Vector3i position, int reinforcement) {
         return new ReinforcedBlock(getInternalIdFromPosition(worldName, position), worldName, position, reinforcement);
     }
@@ -35,12 +40,25 @@ public record ReinforcedBlock(
     }
 
     public static String getInternalIdFromPosition(String worldName, Vector3i position){
-        return "%s|%d|%d|%d".formatted(worldName, position.x, position.y, position.z);
+        return worldName + '|' + position.x + '|' + position.y + '|' + position.z;
     }
 
     public static Vector3i getPositionFromInternalId(String internalId){
-        String[] parts = internalId.split("\\|");
-        return new Vector3i(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+        // Parse from the end, the world name may itself contain separators
+        int zSeparator = internalId.lastIndexOf('|');
+        int ySeparator = internalId.lastIndexOf('|', zSeparator - 1);
+        int xSeparator = internalId.lastIndexOf('|', ySeparator - 1);
+        return new Vector3i(
+                Integer.parseInt(internalId, xSeparator + 1, ySeparator, 10),
+                Integer.parseInt(internalId, ySeparator + 1, zSeparator, 10),
+                Integer.parseInt(internalId, zSeparator + 1, internalId.length(), 10));
+    }
+
+    public static String getWorldNameFromInternalId(String internalId){
+        int zSeparator = internalId.lastIndexOf('|');
+        int ySeparator = internalId.lastIndexOf('|', zSeparator - 1);
+        int xSeparator = internalId.lastIndexOf('|', ySeparator - 1);
+        return internalId.substring(0, xSeparator);
     }
 
     @Override
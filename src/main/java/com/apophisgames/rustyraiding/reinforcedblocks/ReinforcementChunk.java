@@ -0,0 +1,161 @@
+package com.apophisgames.rustyraiding.reinforcedblocks;
+
+import com.apophisgames.rustyraiding.util.BlockPositions;
+import com.hypixel.hytale.codec.Codec;
+import com.hypixel.hytale.codec.KeyedCodec;
+import com.hypixel.hytale.codec.builder.BuilderCodec;
+import com.hypixel.hytale.component.Component;
+import com.hypixel.hytale.math.util.ChunkUtil;
+import com.hypixel.hytale.server.core.universe.world.storage.ChunkStore;
+
+import java.util.Arrays;
+
+/**
+ * Reinforcements of one chunk, kept as a chunk component so the engine saves and loads
+ * them with the chunk itself. See {@link ChunkComponentReinforcedBlockRepository}.
+ *
+ * <p>A sparse map from chunk-local position to reinforcement, held in one array of
+ * {position, reinforcement} pairs sorted by position. Lookups are a binary search, and
+ * the array is saved as is.
+ *
+ * <p>Like every chunk component, only touched on the world's thread.
+ */
+public class ReinforcementChunk implements Component<ChunkStore> {
+
+    public static final BuilderCodec<ReinforcementChunk> CODEC = BuilderCodec.builder(ReinforcementChunk.class, ReinforcementChunk::new)
+            .append(new KeyedCodec<int[]>("Blocks", Codec.INT_ARRAY),
+                    (chunk, blocks, extraInfo) -> chunk.entries = blocks.length % 2 == 0 ? blocks : Arrays.copyOf(blocks, blocks.length - 1),
+                    (chunk, extraInfo) -> chunk.entries).add()
+            .build();
+
+    private static final int[] EMPTY = new int[0];
+    private static final int BITS = Integer.numberOfTrailingZeros(ChunkUtil.SIZE);
+    private static final int MASK = ChunkUtil.SIZE - 1;
+
+    // {position0, reinforcement0, position1, reinforcement1, ...}, sorted by position
+    private int[] entries = EMPTY;
+
+    public ReinforcementChunk() {
+    }
+
+    private ReinforcementChunk(int[] entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * @return The reinforcement, or {@link ReinforcedBlock#NOT_REINFORCED} if the block is not reinforced
+     */
+    public int get(int x, int y, int z) {
+        int index = indexOf(localPosition(x, y, z));
+        return index >= 0 ? entries[2 * index + 1] : ReinforcedBlock.NOT_REINFORCED;
+    }
+
+    public void put(int x, int y, int z, int reinforcement) {
+        int position = localPosition(x, y, z);
+        int index = indexOf(position);
+        if (index >= 0) {
+            entries[2 * index + 1] = reinforcement;
+            return;
+        }
+
+        int insertAt = 2 * -(index + 1);
+        int[] grown = new int[entries.length + 2];
+        System.arraycopy(entries, 0, grown, 0, insertAt);
+        grown[insertAt] = position;
+        grown[insertAt + 1] = reinforcement;
+        System.arraycopy(entries, insertAt, grown, insertAt + 2, entries.length - insertAt);
+        entries = grown;
+    }
+
+    /**
+     * @return true if the block was reinforced
+     */
+    public boolean remove(int x, int y, int z) {
+        int index = indexOf(localPosition(x, y, z));
+        if (index < 0) return false;
+
+        int[] shrunk = new int[entries.length - 2];
+        System.arraycopy(entries, 0, shrunk, 0, 2 * index);
+        System.arraycopy(entries, 2 * index + 2, shrunk, 2 * index, entries.length - 2 * index - 2);
+        entries = shrunk;
+        return true;
+    }
+
+    /**
+     * Remove every reinforced block within inclusive world bounds.
+     *
+     * @param chunkX The x coordinate of this chunk
+     * @param chunkZ The z coordinate of this chunk
+     * @return The number of blocks removed
+     */
+    public int removeInArea(int chunkX, int chunkZ, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        int[] kept = new int[entries.length];
+        int length = 0;
+        for (int i = 0; i < entries.length; i += 2) {
+            int x = worldX(chunkX, entries[i]), y = localY(entries[i]), z = worldZ(chunkZ, entries[i]);
+            if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ) continue;
+            kept[length++] = entries[i];
+            kept[length++] = entries[i + 1];
+        }
+
+        int removed = (entries.length - length) / 2;
+        if (removed > 0) entries = length == 0 ? EMPTY : Arrays.copyOf(kept, length);
+        return removed;
+    }
+
+    /**
+     * Visit every reinforced block, in world coordinates.
+     *
+     * @param chunkX The x coordinate of this chunk
+     * @param chunkZ The z coordinate of this chunk
+     */
+    public void forEach(int chunkX, int chunkZ, ReinforcementStore.Visitor visitor) {
+        for (int i = 0; i < entries.length; i += 2) {
+            visitor.accept(worldX(chunkX, entries[i]), localY(entries[i]), worldZ(chunkZ, entries[i]), entries[i + 1]);
+        }
+    }
+
+    public int size() {
+        return entries.length / 2;
+    }
+
+    public boolean isEmpty() {
+        return entries.length == 0;
+    }
+
+    private int indexOf(int position) {
+        int low = 0, high = entries.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int current = entries[2 * mid];
+            if (current < position) low = mid + 1;
+            else if (current > position) high = mid - 1;
+            else return mid;
+        }
+        return -(low + 1);
+    }
+
+    // Position within the chunk: y in the high bits (unsigned), then x and z
+    private static int localPosition(int x, int y, int z) {
+        return (y - BlockPositions.MIN_Y) << (2 * BITS)
+                | (x & MASK) << BITS
+                | (z & MASK);
+    }
+
+    private static int worldX(int chunkX, int position) {
+        return chunkX * ChunkUtil.SIZE + ((position >> BITS) & MASK);
+    }
+
+    private static int localY(int position) {
+        return (position >>> (2 * BITS)) + BlockPositions.MIN_Y;
+    }
+
+    private static int worldZ(int chunkZ, int position) {
+        return chunkZ * ChunkUtil.SIZE + (position & MASK);
+    }
+
+    @Override
+    public ReinforcementChunk clone() {
+        return new ReinforcementChunk(entries.clone());
+    }
+}
@@ -0,0 +1,313 @@
+package com.apophisgames.rustyraiding.reinforcedblocks;
+
+import com.apophisgames.rustyraiding.util.BlockPositions;
+import com.hypixel.hytale.math.util.ChunkUtil;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * One region file: the reinforcements of a square of {@link #REGION_CHUNKS} by
+ * {@link #REGION_CHUNKS} chunks, accessed through memory maps.
+ *
+ * <p>Fixed layout. A header holds a directory with one slot per chunk section (a chunk's
+ * columns, {@link #SECTION_HEIGHT} blocks high), and each slot holds the number of the page
+ * storing that section, or 0 while the section has no reinforced block yet. A page holds one
+ * int per block, the reinforcement plus one, so a zeroed page reads as not reinforced.
+ * Pages are appended as sections get their first block and are never freed.
+ *
+ * <p>The header and every page are mapped once, so reads and writes are plain memory
+ * accesses. Changes reach the file when the OS writes the pages back, or on {@link #force()}.
+ *
+ * <p>Not thread safe, see {@link RegionFileReinforcedBlockRepository}.
+ */
+public class ReinforcementRegion {
+
+    public static final int REGION_CHUNKS = 32;
+    public static final int SECTION_HEIGHT = 16;
+
+    private static final int MAGIC = 0x52524547; // "RREG"
+    private static final int VERSION = 1;
+
+    private static final int CHUNK_BITS = Integer.numberOfTrailingZeros(ChunkUtil.SIZE);
+    private static final int CHUNK_MASK = ChunkUtil.SIZE - 1;
+    private static final int REGION_BITS = Integer.numberOfTrailingZeros(REGION_CHUNKS);
+    private static final int SECTION_BITS = Integer.numberOfTrailingZeros(SECTION_HEIGHT);
+    private static final int SECTIONS = (BlockPositions.MAX_Y - BlockPositions.MIN_Y + 1) / SECTION_HEIGHT;
+
+    private static final int SLOTS = REGION_CHUNKS * REGION_CHUNKS * SECTIONS;
+    private static final int CELLS = ChunkUtil.SIZE * ChunkUtil.SIZE * SECTION_HEIGHT;
+    private static final int PAGE_BYTES = CELLS * Integer.BYTES;
+
+    // Header: magic, version, page count, then the directory
+    private static final int PAGE_COUNT_OFFSET = 8;
+    private static final int DIRECTORY_OFFSET = 16;
+    // Pages start on a page boundary after the directory
+    private static final long FIRST_PAGE_OFFSET = ((DIRECTORY_OFFSET + (long) SLOTS * Integer.BYTES + PAGE_BYTES - 1) / PAGE_BYTES) * PAGE_BYTES;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final int regionX;
+    private final int regionZ;
+
+    // Page number - 1 -> mapped page, mapped on first use
+    private MappedByteBuffer[] pages;
+    private final BitSet dirtyPages = new BitSet();
+    private boolean headerDirty;
+
+    private ReinforcementRegion(Path path, FileChannel channel, int regionX, int regionZ) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.regionX = regionX;
+        this.regionZ = regionZ;
+
+        boolean created = channel.size() == 0;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, FIRST_PAGE_OFFSET);
+        if (created) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            headerDirty = true;
+        } else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not a reinforcement region file, or an unsupported version: " + path);
+        } else {
+            recoverPageCount();
+        }
+        this.pages = new MappedByteBuffer[Math.max(8, pageCount())];
+    }
+
+    /**
+     * Open a region file, creating it if asked to.
+     *
+     * @return The region, or null if the file does not exist and create is false
+     */
+    public static ReinforcementRegion open(Path path, int regionX, int regionZ, boolean create) throws IOException {
+        FileChannel channel;
+        if (create) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } else {
+            if (!path.toFile().isFile()) return null;
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        try {
+            return new ReinforcementRegion(path, channel, regionX, regionZ);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static int regionCoordinate(int blockCoordinate) {
+        return blockCoordinate >> (CHUNK_BITS + REGION_BITS);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return The reinforcement, or {@link ReinforcedBlock#NOT_REINFORCED} if the block is not reinforced
+     */
+    public int get(int x, int y, int z) throws IOException {
+        if (y < BlockPositions.MIN_Y || y > BlockPositions.MAX_Y) return ReinforcedBlock.NOT_REINFORCED;
+        MappedByteBuffer page = page(slot(x, y, z), false);
+        return page == null ? ReinforcedBlock.NOT_REINFORCED : page.getInt(cell(x, y, z)) - 1;
+    }
+
+    public void put(int x, int y, int z, int reinforcement) throws IOException {
+        if (y < BlockPositions.MIN_Y || y > BlockPositions.MAX_Y)
+            throw new IllegalArgumentException("Block height out of range: " + y);
+        int slot = slot(x, y, z);
+        page(slot, true).putInt(cell(x, y, z), reinforcement + 1);
+        dirtyPages.set(pageNumber(slot) - 1);
+    }
+
+    /**
+     * @return true if the block was reinforced
+     */
+    public boolean remove(int x, int y, int z) throws IOException {
+        if (y < BlockPositions.MIN_Y || y > BlockPositions.MAX_Y) return false;
+        int slot = slot(x, y, z);
+        MappedByteBuffer page = page(slot, false);
+        if (page == null || page.getInt(cell(x, y, z)) == 0) return false;
+        page.putInt(cell(x, y, z), 0);
+        dirtyPages.set(pageNumber(slot) - 1);
+        return true;
+    }
+
+    /**
+     * Visit every reinforced block of this region within inclusive world bounds.
+     */
+    public void forEachInArea(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, ReinforcementStore.Visitor visitor) throws IOException {
+        visitArea(minX, minY, minZ, maxX, maxY, maxZ, false, (page, offset, x, y, z) -> {
+            int value = page.getInt(offset);
+            if (value != 0) visitor.accept(x, y, z, value - 1);
+        });
+    }
+
+    /**
+     * Visit every reinforced block of this region.
+     */
+    public void forEach(ReinforcementStore.Visitor visitor) throws IOException {
+        forEachInArea(Integer.MIN_VALUE, BlockPositions.MIN_Y, Integer.MIN_VALUE, Integer.MAX_VALUE, BlockPositions.MAX_Y, Integer.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Remove every reinforced block of this region within inclusive world bounds.
+     *
+     * @return The number of blocks removed
+     */
+    public int removeInArea(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) throws IOException {
+        int[] removed = new int[1];
+        visitArea(minX, minY, minZ, maxX, maxY, maxZ, true, (page, offset, x, y, z) -> {
+            if (page.getInt(offset) == 0) return;
+            page.putInt(offset, 0);
+            removed[0]++;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Write every changed page and the header back to the file.
+     */
+    public void force() {
+        for (int i = dirtyPages.nextSetBit(0); i >= 0; i = dirtyPages.nextSetBit(i + 1)) {
+            if (pages[i] != null) pages[i].force();
+        }
+        dirtyPages.clear();
+        if (headerDirty) {
+            header.force();
+            headerDirty = false;
+        }
+    }
+
+    public void close() throws IOException {
+        force();
+        // The mappings stay valid until collected, nothing reads them after this
+        pages = new MappedByteBuffer[0];
+        channel.close();
+    }
+
+    // ============================================
+    // Layout
+    // ============================================
+
+    private interface CellVisitor {
+        void accept(MappedByteBuffer page, int offset, int x, int y, int z);
+    }
+
+    /**
+     * Visit every cell of an allocated page within inclusive world bounds, clamped to this region.
+     *
+     * @param writes Whether the visitor may change cells, so the pages visited need writing back
+     */
+    private void visitArea(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, boolean writes, CellVisitor visitor) throws IOException {
+        int regionMinX = regionX << (CHUNK_BITS + REGION_BITS), regionMinZ = regionZ << (CHUNK_BITS + REGION_BITS);
+        int regionSize = REGION_CHUNKS * ChunkUtil.SIZE;
+        int fromX = Math.max(minX, regionMinX), toX = Math.min(maxX, regionMinX + regionSize - 1);
+        int fromZ = Math.max(minZ, regionMinZ), toZ = Math.min(maxZ, regionMinZ + regionSize - 1);
+        int fromY = Math.max(minY, BlockPositions.MIN_Y), toY = Math.min(maxY, BlockPositions.MAX_Y);
+        if (fromX > toX || fromY > toY || fromZ > toZ) return;
+
+        // One page per chunk section, so walk section by section and only scan allocated pages
+        for (int chunkX = fromX >> CHUNK_BITS; chunkX <= toX >> CHUNK_BITS; chunkX++) {
+            for (int chunkZ = fromZ >> CHUNK_BITS; chunkZ <= toZ >> CHUNK_BITS; chunkZ++) {
+                int x0 = Math.max(fromX, chunkX << CHUNK_BITS), x1 = Math.min(toX, (chunkX << CHUNK_BITS) + CHUNK_MASK);
+                int z0 = Math.max(fromZ, chunkZ << CHUNK_BITS), z1 = Math.min(toZ, (chunkZ << CHUNK_BITS) + CHUNK_MASK);
+
+                for (int section = sectionOf(fromY); section <= sectionOf(toY); section++) {
+                    int slot = sectionSlot(chunkX, chunkZ, section);
+                    MappedByteBuffer page = page(slot, false);
+                    if (page == null) continue;
+
+                    int sectionMinY = BlockPositions.MIN_Y + (section << SECTION_BITS);
+                    int y0 = Math.max(fromY, sectionMinY), y1 = Math.min(toY, sectionMinY + SECTION_HEIGHT - 1);
+                    for (int y = y0; y <= y1; y++) {
+                        for (int x = x0; x <= x1; x++) {
+                            for (int z = z0; z <= z1; z++) {
+                                visitor.accept(page, cell(x, y, z), x, y, z);
+                            }
+                        }
+                    }
+                    if (writes) dirtyPages.set(pageNumber(slot) - 1);
+                }
+            }
+        }
+    }
+
+    private static int sectionOf(int y) {
+        return (y - BlockPositions.MIN_Y) >> SECTION_BITS;
+    }
+
+    private static int slot(int x, int y, int z) {
+        return sectionSlot(x >> CHUNK_BITS, z >> CHUNK_BITS, sectionOf(y));
+    }
+
+    // Directory slot of a chunk section: chunk x, then chunk z, then section
+    private static int sectionSlot(int chunkX, int chunkZ, int section) {
+        return ((chunkX & (REGION_CHUNKS - 1)) * REGION_CHUNKS + (chunkZ & (REGION_CHUNKS - 1))) * SECTIONS + section;
+    }
+
+    // Byte offset of a block within its page: y, then x, then z, so a row of z is contiguous
+    private static int cell(int x, int y, int z) {
+        int localY = (y - BlockPositions.MIN_Y) & (SECTION_HEIGHT - 1);
+        return ((localY << (2 * CHUNK_BITS)) | ((x & CHUNK_MASK) << CHUNK_BITS) | (z & CHUNK_MASK)) * Integer.BYTES;
+    }
+
+    private int pageCount() {
+        return header.getInt(PAGE_COUNT_OFFSET);
+    }
+
+    private int pageNumber(int slot) {
+        return header.getInt(DIRECTORY_OFFSET + slot * Integer.BYTES);
+    }
+
+    /**
+     * @return The page of a directory slot, or null if it has none and allocate is false
+     */
+    private MappedByteBuffer page(int slot, boolean allocate) throws IOException {
+        int number = pageNumber(slot);
+        if (number == 0) {
+            if (!allocate) return null;
+            number = allocatePage(slot);
+        }
+
+        if (number > pages.length) pages = Arrays.copyOf(pages, Math.max(number, pages.length * 2));
+        MappedByteBuffer page = pages[number - 1];
+        if (page == null) {
+            // Mapping past the end of the file grows it, the new page reads as zeroes
+            page = channel.map(FileChannel.MapMode.READ_WRITE, FIRST_PAGE_OFFSET + (long) (number - 1) * PAGE_BYTES, PAGE_BYTES);
+            pages[number - 1] = page;
+        }
+        return page;
+    }
+
+    /**
+     * The OS writes mapped pages back in any order, so after a crash a slot may point past the
+     * stored page count. Count from the directory, so a page is never handed out twice.
+     */
+    private void recoverPageCount() {
+        int highest = pageCount();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            highest = Math.max(highest, pageNumber(slot));
+        }
+        if (highest != pageCount()) {
+            header.putInt(PAGE_COUNT_OFFSET, highest);
+            headerDirty = true;
+        }
+    }
+
+    private int allocatePage(int slot) {
+        int number = pageCount() + 1;
+        header.putInt(PAGE_COUNT_OFFSET, number);
+        header.putInt(DIRECTORY_OFFSET + slot * Integer.BYTES, number);
+        headerDirty = true;
+        return number;
+    }
+}
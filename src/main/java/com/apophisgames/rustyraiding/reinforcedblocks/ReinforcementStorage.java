@@ -0,0 +1,34 @@
+package com.apophisgames.rustyraiding.reinforcedblocks;
+
+/**
+ * Where reinforced blocks are stored, chosen by the "ReinforcementStorage" config setting.
+ */
+public enum ReinforcementStorage {
+    /**
+     * The shared SQLite database, behind the write-behind and chunk caches.
+     */
+    DATABASE,
+    /**
+     * A {@link ReinforcementChunk} component in each chunk, saved and loaded by the engine
+     * with the chunk. See {@link ChunkComponentReinforcedBlockRepository}.
+     */
+    CHUNK,
+    /**
+     * Memory-mapped region files, behind the write-behind and chunk caches.
+     * See {@link RegionFileReinforcedBlockRepository}.
+     */
+    REGION,
+    /**
+     * An append-only log with every block held in memory, no cache in front.
+     * See {@link LogReinforcedBlockRepository}.
+     */
+    LOG;
+
+    public static ReinforcementStorage parse(String name) {
+        if (name == null) return DATABASE;
+        for (ReinforcementStorage storage : values()) {
+            if (storage.name().equalsIgnoreCase(name.trim())) return storage;
+        }
+        return DATABASE;
+    }
+}
@@ -0,0 +1,207 @@
+package com.apophisgames.rustyraiding.reinforcedblocks;
+
+import com.apophisgames.rustyraiding.util.BlockPositions;
+import com.apophisgames.rustyraiding.util.LongIntHashMap;
+import com.apophisgames.rustyraiding.util.LongObjectHashMap;
+import com.hypixel.hytale.math.util.ChunkUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory reinforcements of one world, organized by chunk section.
+ *
+ * <p>Blocks are grouped into cubic sections of {@value #SECTION_SIZE} blocks per side, each
+ * holding a primitive map from packed block position to reinforcement. Point lookups are
+ * two probes. Area queries and area deletes only visit the sections that overlap the
+ * bounds, taking whole sections that lie fully inside them, so their cost follows the
+ * result size rather than the size of the world.
+ *
+ * <p>Blocks are only complete for resident chunks, see {@link #isResident}. The caching
+ * repository loads a chunk's blocks when the chunk loads and drops them when it unloads.
+ *
+ * <p>All methods are synchronized on the store.
+ */
+public final class ReinforcementStore {
+
+    private static final int SECTION_BITS = 5;
+    static final int SECTION_SIZE = 1 << SECTION_BITS;
+
+    // Packed section coordinates -> blocks in that section
+    private final LongObjectHashMap<LongIntHashMap> sections = new LongObjectHashMap<>();
+    private int size;
+
+    // Chunk index -> unused, for chunks whose blocks are all in the store
+    private final LongIntHashMap residentChunks = new LongIntHashMap();
+
+    /**
+     * @return The reinforcement, or {@link ReinforcedBlock#NOT_REINFORCED} if the block is not reinforced
+     */
+    public synchronized int get(int x, int y, int z) {
+        LongIntHashMap section = sections.get(sectionKey(x, y, z));
+        if (section == null) return ReinforcedBlock.NOT_REINFORCED;
+        return section.getOrDefault(BlockPositions.pack(x, y, z), ReinforcedBlock.NOT_REINFORCED);
+    }
+
+    public synchronized void put(int x, int y, int z, int reinforcement) {
+        long key = sectionKey(x, y, z);
+        LongIntHashMap section = sections.get(key);
+        if (section == null) {
+            section = new LongIntHashMap();
+            sections.put(key, section);
+        }
+
+        int previousSize = section.size();
+        section.put(BlockPositions.pack(x, y, z), reinforcement);
+        size += section.size() - previousSize;
+    }
+
+    /**
+     * Emptied sections stay allocated, a block broken and reinforced again reuses its section.
+     * Area removes, and so chunk unloads, drop them.
+     *
+     * @return true if the block was reinforced
+     */
+    public synchronized boolean remove(int x, int y, int z) {
+        long key = sectionKey(x, y, z);
+        LongIntHashMap section = sections.get(key);
+        if (section == null || !section.remove(BlockPositions.pack(x, y, z))) return false;
+
+        size--;
+        return true;
+    }
+
+    /**
+     * @return true if the chunk holding the block is resident, so the store has all of its blocks
+     */
+    public synchronized boolean isResident(int x, int z) {
+        return residentChunks.containsKey(ChunkUtil.indexChunkFromBlock(x, z));
+    }
+
+    public synchronized void markResident(int chunkX, int chunkZ) {
+        residentChunks.put(ChunkUtil.indexChunkFromBlock(chunkX * ChunkUtil.SIZE, chunkZ * ChunkUtil.SIZE), 0);
+    }
+
+    public synchronized int residentChunkCount() {
+        return residentChunks.size();
+    }
+
+    /**
+     * Remove every block of a chunk, leaving its residency as is.
+     *
+     * @return The number of blocks removed
+     */
+    public synchronized int clearChunk(int chunkX, int chunkZ) {
+        int minX = chunkX * ChunkUtil.SIZE, minZ = chunkZ * ChunkUtil.SIZE;
+        return removeInArea(minX, BlockPositions.MIN_Y, minZ, minX + ChunkUtil.SIZE - 1, BlockPositions.MAX_Y, minZ + ChunkUtil.SIZE - 1);
+    }
+
+    /**
+     * Drop a chunk from memory: remove its blocks and stop counting it as resident.
+     *
+     * @return The number of blocks removed
+     */
+    public synchronized int unloadChunk(int chunkX, int chunkZ) {
+        residentChunks.remove(ChunkUtil.indexChunkFromBlock(chunkX * ChunkUtil.SIZE, chunkZ * ChunkUtil.SIZE));
+        return clearChunk(chunkX, chunkZ);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void forEach(Visitor visitor) {
+        sections.forEach((key, section) -> visitSection(section, visitor));
+    }
+
+    /**
+     * Visit every reinforced block within inclusive bounds.
+     */
+    public synchronized void forEachInArea(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Visitor visitor) {
+        for (long key : overlappingSections(minX, minY, minZ, maxX, maxY, maxZ)) {
+            LongIntHashMap section = sections.get(key);
+            int originX = BlockPositions.unpackX(key) << SECTION_BITS;
+            int originY = BlockPositions.unpackY(key) << SECTION_BITS;
+            int originZ = BlockPositions.unpackZ(key) << SECTION_BITS;
+
+            // Sections fully inside the bounds need no per-block test
+            if (originX >= minX && originX + SECTION_SIZE - 1 <= maxX
+                    && originY >= minY && originY + SECTION_SIZE - 1 <= maxY
+                    && originZ >= minZ && originZ + SECTION_SIZE - 1 <= maxZ) {
+                visitSection(section, visitor);
+                continue;
+            }
+
+            section.forEach((position, reinforcement) -> {
+                int x = BlockPositions.unpackX(position);
+                int y = BlockPositions.unpackY(position);
+                int z = BlockPositions.unpackZ(position);
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ) {
+                    visitor.accept(x, y, z, reinforcement);
+                }
+            });
+        }
+    }
+
+    /**
+     * Remove every reinforced block within inclusive bounds.
+     *
+     * @return The number of blocks removed
+     */
+    public synchronized int removeInArea(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        List<Long> inside = new ArrayList<>();
+        forEachInArea(minX, minY, minZ, maxX, maxY, maxZ, (x, y, z, reinforcement) -> inside.add(BlockPositions.pack(x, y, z)));
+
+        for (long position : inside) {
+            remove(BlockPositions.unpackX(position), BlockPositions.unpackY(position), BlockPositions.unpackZ(position));
+        }
+        for (long key : overlappingSections(minX, minY, minZ, maxX, maxY, maxZ)) {
+            if (sections.get(key).isEmpty()) sections.remove(key);
+        }
+        return inside.size();
+    }
+
+    /**
+     * Collect the keys of the sections overlapping inclusive bounds, probing section coordinates or
+     * scanning existing sections, whichever visits fewer.
+     */
+    private List<Long> overlappingSections(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        int minSX = minX >> SECTION_BITS, minSY = minY >> SECTION_BITS, minSZ = minZ >> SECTION_BITS;
+        int maxSX = maxX >> SECTION_BITS, maxSY = maxY >> SECTION_BITS, maxSZ = maxZ >> SECTION_BITS;
+        List<Long> result = new ArrayList<>();
+
+        long candidates = (long) (maxSX - minSX + 1) * (maxSY - minSY + 1) * (maxSZ - minSZ + 1);
+        if (candidates <= sections.size()) {
+            for (int sx = minSX; sx <= maxSX; sx++) {
+                for (int sy = minSY; sy <= maxSY; sy++) {
+                    for (int sz = minSZ; sz <= maxSZ; sz++) {
+                        long key = BlockPositions.pack(sx, sy, sz);
+                        if (sections.get(key) != null) result.add(key);
+                    }
+                }
+            }
+        } else {
+            sections.forEach((key, section) -> {
+                int sx = BlockPositions.unpackX(key), sy = BlockPositions.unpackY(key), sz = BlockPositions.unpackZ(key);
+                if (sx >= minSX && sx <= maxSX && sy >= minSY && sy <= maxSY && sz >= minSZ && sz <= maxSZ) {
+                    result.add(key);
+                }
+            });
+        }
+        return result;
+    }
+
+    private static void visitSection(LongIntHashMap section, Visitor visitor) {
+        section.forEach((position, reinforcement) -> visitor.accept(
+                BlockPositions.unpackX(position), BlockPositions.unpackY(position), BlockPositions.unpackZ(position), reinforcement));
+    }
+
+    private static long sectionKey(int x, int y, int z) {
+        return BlockPositions.pack(x >> SECTION_BITS, y >> SECTION_BITS, z >> SECTION_BITS);
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        void accept(int x, int y, int z, int reinforcement);
+    }
+}
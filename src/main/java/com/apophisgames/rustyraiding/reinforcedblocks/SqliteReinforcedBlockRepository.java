@@ -1,239 +1,563 @@
 package com.apophisgames.rustyraiding.reinforcedblocks;
 
+import com.apophisgames.rustyraiding.util.MortonCode;
+import com.apophisgames.rustyraiding.util.RaidingDatabase;
+import com.apophisgames.rustyraiding.util.WorldIds;
 import com.hypixel.hytale.logger.HytaleLogger;
 import com.hypixel.hytale.math.vector.Vector3i;
 
 import javax.annotation.Nonnull;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import javax.annotation.Nullable;
 import java.sql.*;
 import java.util.*;
 
 /**
- * SQLite implementation of IZoneRepository.
+ * SQLite implementation of IReinforcedBlockRepository.
+ *
+ * <p>Blocks are stored in a WITHOUT ROWID table keyed by (world_id, morton), where world_id
+ * refers to the worlds table and morton is the block's {@link MortonCode} key. Area queries
+ * and deletes become a few contiguous range scans of the primary key.
+ *
+ * <p>Databases from older versions keep their blocks in the reinforcedblocks table, keyed by
+ * "world|x|y|z" text ids. Those rows are moved over in the background in small batches, one
+ * transaction per batch, while the server keeps running. Until the move finishes, reads fall
+ * back to the old table and deletes remove from both. PRAGMA user_version records that the
+ * move is done.
  */
 public class SqliteReinforcedBlockRepository implements IReinforcedBlockRepository {
 
     private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
 
-    private final Path dataDirectory;
-    private Connection connection;
+    // PRAGMA user_version once the old reinforcedblocks table has been migrated away
+    private static final int SCHEMA_VERSION = 1;
+    private static final int MIGRATION_BATCH_SIZE = 2000;
 
-    public SqliteReinforcedBlockRepository(@Nonnull Path dataDirectory) {
-        this.dataDirectory = dataDirectory;
+    private static final String UPSERT_SQL = """
+            INSERT INTO reinforcements (world_id, morton, reinforcement)
+            VALUES (?, ?, ?)
+            ON CONFLICT(world_id, morton) DO UPDATE SET
+                reinforcement=excluded.reinforcement
+            """;
+    private static final String DELETE_SQL = "DELETE FROM reinforcements WHERE world_id = ? AND morton = ?";
+    private static final String LEGACY_DELETE_BY_ID_SQL = "DELETE FROM reinforcedblocks WHERE id = ?";
+
+    private final RaidingDatabase database;
+
+    // Persistent world ids, both directions, only touched on the I/O thread
+    private final Map<String, Long> worldIds = new HashMap<>();
+    private final Map<Long, String> worldNames = new HashMap<>();
+
+    // True while rows are still being moved out of the old table
+    private boolean migrating;
+    private boolean closed;
+
+    public SqliteReinforcedBlockRepository(@Nonnull RaidingDatabase database) {
+        this.database = database;
     }
 
     @Override
     public void initialize() throws Exception {
-        Files.createDirectories(dataDirectory);
-        openDatabase();
         createSchema();
-    }
-
-    private void openDatabase() throws SQLException {
-        if (connection != null && !connection.isClosed()) {
-            return;
-        }
+        loadWorldIds();
+        database.addZoneDeleteCascade(this::deleteInArea);
 
-        try {
-            Class.forName("org.sqlite.JDBC");
-            Path dbPath = dataDirectory.resolve("reinforcedblocks.db");
-            String url = "jdbc:sqlite:" + dbPath.toAbsolutePath().toString();
-            connection = DriverManager.getConnection(url);
-            LOGGER.atInfo().log("Connected to reinforced blocks database: " + dbPath);
-        } catch (ClassNotFoundException e) {
-            throw new SQLException("SQLite JDBC driver not found", e);
+        if (getUserVersion() < SCHEMA_VERSION) {
+            createLegacySchema();
+            database.importLegacyTable("reinforcedblocks.db", "reinforcedblocks");
+            migrating = true;
+            // Queued behind initialization, each batch re-queues the next so other queries interleave
+            database.getExecutor().execute(this::migrateBatch);
         }
     }
 
     private Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            openDatabase();
-        }
-        return connection;
+        return database.getConnection();
     }
 
     private void createSchema() throws SQLException {
-        String sql = """
-            CREATE TABLE IF NOT EXISTS reinforcedblocks (
-                id TEXT PRIMARY KEY,
-                world_name TEXT NOT NULL,
-                reinforcement INTEGER NOT NULL,
-                pos_x INTEGER NOT NULL,
-                pos_y INTEGER NOT NULL,
-                pos_z INTEGER NOT NULL
-            )
-            """;
+        try (Statement stmt = getConnection().createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS worlds (
+                    world_id INTEGER PRIMARY KEY,
+                    world_name TEXT NOT NULL UNIQUE
+                )
+                """);
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS reinforcements (
+                    world_id INTEGER NOT NULL,
+                    morton INTEGER NOT NULL,
+                    reinforcement INTEGER NOT NULL,
+                    PRIMARY KEY (world_id, morton)
+                ) WITHOUT ROWID
+                """);
+
+            // Older versions cascaded zone deletes from triggers that called the morton functions,
+            // which other SQLite tools don't have. Zone deletes now call deleteInArea instead.
+            stmt.execute("DROP TRIGGER IF EXISTS reinforcements_zone_cascade");
+            stmt.execute("DROP TRIGGER IF EXISTS reinforcedblocks_zone_cascade");
+        }
+    }
 
+    /**
+     * The table older versions stored blocks in. Only exists until its rows are migrated.
+     */
+    private void createLegacySchema() throws SQLException {
         try (Statement stmt = getConnection().createStatement()) {
-            stmt.execute(sql);
-            // Index for faster lookups by world name
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS reinforcedblocks (
+                    id TEXT PRIMARY KEY,
+                    world_name TEXT NOT NULL,
+                    reinforcement INTEGER NOT NULL,
+                    pos_x INTEGER NOT NULL,
+                    pos_y INTEGER NOT NULL,
+                    pos_z INTEGER NOT NULL
+                )
+                """);
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_reinforced_worlds ON reinforcedblocks(world_name)");
         }
     }
 
+    private int getUserVersion() throws SQLException {
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // ============================================
+    // World Ids
+    // ============================================
+
+    private void loadWorldIds() throws SQLException {
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT world_id, world_name FROM worlds")) {
+            while (rs.next()) {
+                rememberWorld(rs.getLong("world_id"), rs.getString("world_name"));
+            }
+        }
+    }
+
+    private void rememberWorld(long worldId, String worldName) {
+        String canonicalName = WorldIds.intern(worldName);
+        worldIds.put(canonicalName, worldId);
+        worldNames.put(worldId, canonicalName);
+    }
+
+    /**
+     * Roll back a transaction, forgetting any world registered in it.
+     */
+    private void rollback(Connection conn) throws SQLException {
+        conn.rollback();
+        worldIds.clear();
+        worldNames.clear();
+        loadWorldIds();
+    }
+
+    /**
+     * @return The stored id of a world, or null if nothing was ever saved in it
+     */
+    @Nullable
+    private Long findWorldId(String worldName) {
+        return worldIds.get(worldName);
+    }
+
+    private long getOrCreateWorldId(String worldName) throws SQLException {
+        Long worldId = worldIds.get(worldName);
+        if (worldId != null) return worldId;
+
+        PreparedStatement insert = database.prepare("INSERT OR IGNORE INTO worlds (world_name) VALUES (?)");
+        insert.setString(1, worldName);
+        insert.executeUpdate();
+
+        PreparedStatement select = database.prepare("SELECT world_id FROM worlds WHERE world_name = ?");
+        select.setString(1, worldName);
+        try (ResultSet rs = select.executeQuery()) {
+            if (!rs.next()) throw new SQLException("Could not register world " + worldName);
+            rememberWorld(rs.getLong(1), worldName);
+            return rs.getLong(1);
+        }
+    }
+
+    // ============================================
+    // Queries
+    // ============================================
+
     @Override
     public Map<String, Map<String, ReinforcedBlock>> loadAll() throws Exception {
         Map<String, Map<String, ReinforcedBlock>> result = new HashMap<>();
-        String sql = "SELECT * FROM reinforcedblocks";
+        String sql = "SELECT world_id, morton, reinforcement FROM reinforcements";
 
         try (Statement stmt = getConnection().createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
             while (rs.next()) {
-                ReinforcedBlock block = mapToReinforcedBlock(rs);
+                ReinforcedBlock block = mapToReinforcedBlock(worldNames.get(rs.getLong("world_id")), rs);
                 result.computeIfAbsent(block.worldName(), k -> new HashMap<>()).put(block.internalId(), block);
             }
         }
+
+        if (migrating) {
+            try (Statement stmt = getConnection().createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT * FROM reinforcedblocks")) {
+                while (rs.next()) {
+                    ReinforcedBlock block = mapLegacyToReinforcedBlock(rs);
+                    result.computeIfAbsent(block.worldName(), k -> new HashMap<>()).putIfAbsent(block.internalId(), block);
+                }
+            }
+        }
         return result;
     }
 
     @Override
     public Map<String, ReinforcedBlock> findByWorld(String worldName) throws Exception {
-        String sql = "SELECT * FROM reinforcedblocks WHERE world_name = ?";
         Map<String, ReinforcedBlock> result = new HashMap<>();
 
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, worldName);
+        Long worldId = findWorldId(worldName);
+        if (worldId != null) {
+            PreparedStatement stmt = database.prepare("SELECT morton, reinforcement FROM reinforcements WHERE world_id = ?");
+            stmt.setLong(1, worldId);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    ReinforcedBlock block = mapToReinforcedBlock(rs);
+                    ReinforcedBlock block = mapToReinforcedBlock(worldNames.get(worldId), rs);
                     result.put(block.internalId(), block);
                 }
             }
         }
+
+        if (migrating) {
+            PreparedStatement stmt = database.prepare("SELECT * FROM reinforcedblocks WHERE world_name = ?");
+            stmt.setString(1, worldName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ReinforcedBlock block = mapLegacyToReinforcedBlock(rs);
+                    result.putIfAbsent(block.internalId(), block);
+                }
+            }
+        }
         return result;
     }
 
+    @Override
+    public List<String> findWorldNames() throws Exception {
+        Set<String> result = new LinkedHashSet<>(worldIds.keySet());
+        if (migrating) {
+            PreparedStatement stmt = database.prepare("SELECT DISTINCT world_name FROM reinforcedblocks");
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(WorldIds.intern(rs.getString("world_name")));
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
     @Override
     public Optional<ReinforcedBlock> findByPosition(String worldName, Vector3i position) throws Exception {
-        String sql = "SELECT * FROM reinforcedblocks WHERE world_name = ? AND pos_x = ? AND pos_y = ? AND pos_z = ?";
+        int reinforcement = findReinforcement(worldName, position.x, position.y, position.z);
+        if (reinforcement == ReinforcedBlock.NOT_REINFORCED) return Optional.empty();
+        return Optional.of(ReinforcedBlock.create(WorldIds.intern(worldName), position, reinforcement));
+    }
+
+    @Override
+    public int findReinforcement(int worldId, int x, int y, int z) throws Exception {
+        return findReinforcement(WorldIds.nameOf(worldId), x, y, z);
+    }
+
+    private int findReinforcement(String worldName, int x, int y, int z) throws SQLException {
+        Long worldId = findWorldId(worldName);
+        if (worldId != null) {
+            PreparedStatement stmt = database.prepare("SELECT reinforcement FROM reinforcements WHERE world_id = ? AND morton = ?");
+            stmt.setLong(1, worldId);
+            stmt.setLong(2, MortonCode.encode(x, y, z));
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt("reinforcement");
+                }
+            }
+        }
 
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+        if (migrating) {
+            PreparedStatement stmt = database.prepare("SELECT reinforcement FROM reinforcedblocks WHERE world_name = ? AND pos_x = ? AND pos_y = ? AND pos_z = ?");
             stmt.setString(1, worldName);
-            stmt.setInt(2, position.x);
-            stmt.setInt(3, position.y);
-            stmt.setInt(4, position.z);
+            stmt.setInt(2, x);
+            stmt.setInt(3, y);
+            stmt.setInt(4, z);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return Optional.of(mapToReinforcedBlock(rs));
+                    return rs.getInt("reinforcement");
                 }
             }
         }
-        return Optional.empty();
+        return ReinforcedBlock.NOT_REINFORCED;
     }
 
     @Override
     public Map<String, ReinforcedBlock> findInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) throws Exception {
-        String sql = """
-            SELECT * FROM reinforcedblocks WHERE world_name = ?
-            AND pos_x BETWEEN ? AND ?
-            AND pos_y BETWEEN ? AND ?
-            AND pos_z BETWEEN ? AND ?
-            """;
         Map<String, ReinforcedBlock> result = new HashMap<>();
 
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, worldName);
-            stmt.setInt(2, boundsMin.x);
-            stmt.setInt(3, boundsMax.x);
-            stmt.setInt(4, boundsMin.y);
-            stmt.setInt(5, boundsMax.y);
-            stmt.setInt(6, boundsMin.z);
-            stmt.setInt(7, boundsMax.z);
+        Long worldId = findWorldId(worldName);
+        if (worldId != null) {
+            long[] ranges = MortonCode.ranges(boundsMin.x, boundsMin.y, boundsMin.z, boundsMax.x, boundsMax.y, boundsMax.z);
+            PreparedStatement stmt = database.prepare("SELECT morton, reinforcement FROM reinforcements WHERE world_id = ? AND morton BETWEEN ? AND ?");
+            for (int i = 0; i < ranges.length; i += 2) {
+                stmt.setLong(1, worldId);
+                stmt.setLong(2, ranges[i]);
+                stmt.setLong(3, ranges[i + 1]);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        // Ranges may run slightly past the bounds
+                        if (!isInArea(rs.getLong("morton"), boundsMin, boundsMax)) continue;
+                        ReinforcedBlock block = mapToReinforcedBlock(worldNames.get(worldId), rs);
+                        result.put(block.internalId(), block);
+                    }
+                }
+            }
+        }
 
+        if (migrating) {
+            String sql = """
+                SELECT * FROM reinforcedblocks WHERE world_name = ?
+                AND pos_x BETWEEN ? AND ?
+                AND pos_y BETWEEN ? AND ?
+                AND pos_z BETWEEN ? AND ?
+                """;
+            PreparedStatement stmt = database.prepare(sql);
+            bindArea(stmt, worldName, boundsMin, boundsMax);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    ReinforcedBlock block = mapToReinforcedBlock(rs);
-                    result.put(block.internalId(), block);
+                    ReinforcedBlock block = mapLegacyToReinforcedBlock(rs);
+                    result.putIfAbsent(block.internalId(), block);
                 }
             }
         }
         return result;
     }
 
+    private static boolean isInArea(long morton, Vector3i boundsMin, Vector3i boundsMax) {
+        int x = MortonCode.decodeX(morton), y = MortonCode.decodeY(morton), z = MortonCode.decodeZ(morton);
+        return x >= boundsMin.x && x <= boundsMax.x
+            && y >= boundsMin.y && y <= boundsMax.y
+            && z >= boundsMin.z && z <= boundsMax.z;
+    }
+
+    // ============================================
+    // Writes
+    // ============================================
+
     @Override
     public void save(ReinforcedBlock reinforcedBlock) throws Exception {
-        // Upsert logic (Insert or Replace)
-        String sql = """
-            INSERT INTO reinforcedblocks (id, world_name, reinforcement, pos_x, pos_y, pos_z)
-            VALUES (?, ?, ?, ?, ?, ?)
-            ON CONFLICT(id) DO UPDATE SET
-                world_name=excluded.world_name,
-                reinforcement=excluded.reinforcement,
-                pos_x=excluded.pos_x,
-                pos_y=excluded.pos_y,
-                pos_z=excluded.pos_z
-            """;
+        // A row left in the old table is shadowed by this one, and skipped when migrated
+        PreparedStatement stmt = database.prepare(UPSERT_SQL);
+        bindUpsert(stmt, reinforcedBlock);
+        stmt.executeUpdate();
+    }
 
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, reinforcedBlock.internalId());
-            stmt.setString(2, reinforcedBlock.worldName());
-            stmt.setInt(3, reinforcedBlock.reinforcement());
-            stmt.setInt(4, reinforcedBlock.position().x);
-            stmt.setInt(5, reinforcedBlock.position().y);
-            stmt.setInt(6, reinforcedBlock.position().z);
+    @Override
+    public void writeBatch(Collection<ReinforcedBlock> saves, Collection<String> deletedIds) throws Exception {
+        Connection conn = getConnection();
+        conn.setAutoCommit(false);
+        try {
+            if (!saves.isEmpty()) {
+                PreparedStatement stmt = database.prepare(UPSERT_SQL);
+                for (ReinforcedBlock block : saves) {
+                    bindUpsert(stmt, block);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            if (!deletedIds.isEmpty()) {
+                PreparedStatement stmt = database.prepare(DELETE_SQL);
+                for (String id : deletedIds) {
+                    Long worldId = findWorldId(ReinforcedBlock.getWorldNameFromInternalId(id));
+                    if (worldId == null) continue;
+                    Vector3i position = ReinforcedBlock.getPositionFromInternalId(id);
+                    stmt.setLong(1, worldId);
+                    stmt.setLong(2, MortonCode.encode(position.x, position.y, position.z));
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
 
-            stmt.executeUpdate();
+                if (migrating) {
+                    PreparedStatement legacyStmt = database.prepare(LEGACY_DELETE_BY_ID_SQL);
+                    for (String id : deletedIds) {
+                        legacyStmt.setString(1, id);
+                        legacyStmt.addBatch();
+                    }
+                    legacyStmt.executeBatch();
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            rollback(conn);
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
         }
     }
 
+    private void bindUpsert(PreparedStatement stmt, ReinforcedBlock reinforcedBlock) throws SQLException {
+        Vector3i position = reinforcedBlock.position();
+        stmt.setLong(1, getOrCreateWorldId(reinforcedBlock.worldName()));
+        stmt.setLong(2, MortonCode.encode(position.x, position.y, position.z));
+        stmt.setInt(3, reinforcedBlock.reinforcement());
+    }
+
+    private static void bindArea(PreparedStatement stmt, String worldName, Vector3i boundsMin, Vector3i boundsMax) throws SQLException {
+        stmt.setString(1, worldName);
+        stmt.setInt(2, boundsMin.x);
+        stmt.setInt(3, boundsMax.x);
+        stmt.setInt(4, boundsMin.y);
+        stmt.setInt(5, boundsMax.y);
+        stmt.setInt(6, boundsMin.z);
+        stmt.setInt(7, boundsMax.z);
+    }
+
     @Override
     public void delete(String internalId) throws Exception {
-        String sql = "DELETE FROM reinforcedblocks WHERE id = ?";
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, internalId);
-            stmt.executeUpdate();
-        }
+        delete(ReinforcedBlock.getWorldNameFromInternalId(internalId), ReinforcedBlock.getPositionFromInternalId(internalId));
     }
 
     @Override
     public void delete(String worldName, Vector3i position) throws Exception {
-        String sql = "DELETE FROM reinforcedblocks WHERE world_name = ? AND pos_x = ? AND pos_y = ? AND pos_z = ?";
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, worldName);
-            stmt.setInt(2, position.x);
-            stmt.setInt(3, position.y);
-            stmt.setInt(4, position.z);
+        Long worldId = findWorldId(worldName);
+        if (worldId != null) {
+            PreparedStatement stmt = database.prepare(DELETE_SQL);
+            stmt.setLong(1, worldId);
+            stmt.setLong(2, MortonCode.encode(position.x, position.y, position.z));
+            stmt.executeUpdate();
+        }
+
+        if (migrating) {
+            PreparedStatement stmt = database.prepare(LEGACY_DELETE_BY_ID_SQL);
+            stmt.setString(1, ReinforcedBlock.getInternalIdFromPosition(worldName, position));
             stmt.executeUpdate();
         }
     }
 
     @Override
     public void deleteInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) throws Exception {
-        String sql = """
-            DELETE FROM reinforcedblocks WHERE world_name = ?
-            AND pos_x BETWEEN ? AND ?
-            AND pos_y BETWEEN ? AND ?
-            AND pos_z BETWEEN ? AND ?
-            """;
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, worldName);
-            stmt.setInt(2, boundsMin.x);
-            stmt.setInt(3, boundsMax.x);
-            stmt.setInt(4, boundsMin.y);
-            stmt.setInt(5, boundsMax.y);
-            stmt.setInt(6, boundsMin.z);
-            stmt.setInt(7, boundsMax.z);
+        Long worldId = findWorldId(worldName);
+        if (worldId != null) {
+            long[] ranges = MortonCode.ranges(boundsMin.x, boundsMin.y, boundsMin.z, boundsMax.x, boundsMax.y, boundsMax.z);
+            PreparedStatement stmt = database.prepare("""
+                DELETE FROM reinforcements WHERE world_id = ? AND morton BETWEEN ? AND ?
+                AND morton_in_box(morton, ?, ?, ?, ?, ?, ?)
+                """);
+            for (int i = 0; i < ranges.length; i += 2) {
+                stmt.setLong(1, worldId);
+                stmt.setLong(2, ranges[i]);
+                stmt.setLong(3, ranges[i + 1]);
+                stmt.setInt(4, boundsMin.x);
+                stmt.setInt(5, boundsMin.y);
+                stmt.setInt(6, boundsMin.z);
+                stmt.setInt(7, boundsMax.x);
+                stmt.setInt(8, boundsMax.y);
+                stmt.setInt(9, boundsMax.z);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+
+        if (migrating) {
+            String sql = """
+                DELETE FROM reinforcedblocks WHERE world_name = ?
+                AND pos_x BETWEEN ? AND ?
+                AND pos_y BETWEEN ? AND ?
+                AND pos_z BETWEEN ? AND ?
+                """;
+            PreparedStatement stmt = database.prepare(sql);
+            bindArea(stmt, worldName, boundsMin, boundsMax);
             stmt.executeUpdate();
         }
     }
 
-    @Override
-    public void close() {
-        if (connection != null) {
+    // ============================================
+    // Migration
+    // ============================================
+
+    /**
+     * Move one batch of rows out of the old table, then queue the next batch. Rows already
+     * written to the new table are newer and win. Runs on the I/O thread.
+     */
+    private void migrateBatch() {
+        if (closed || !migrating) return;
+
+        Connection conn;
+        int moved = 0;
+        try {
+            conn = getConnection();
+            conn.setAutoCommit(false);
             try {
-                connection.close();
+                long lastRowId = -1;
+                PreparedStatement select = database.prepare("""
+                    SELECT rowid, world_name, reinforcement, pos_x, pos_y, pos_z
+                    FROM reinforcedblocks ORDER BY rowid LIMIT ?
+                    """);
+                PreparedStatement insert = database.prepare("INSERT OR IGNORE INTO reinforcements (world_id, morton, reinforcement) VALUES (?, ?, ?)");
+                select.setInt(1, MIGRATION_BATCH_SIZE);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        lastRowId = rs.getLong("rowid");
+                        insert.setLong(1, getOrCreateWorldId(rs.getString("world_name")));
+                        insert.setLong(2, MortonCode.encode(rs.getInt("pos_x"), rs.getInt("pos_y"), rs.getInt("pos_z")));
+                        insert.setInt(3, rs.getInt("reinforcement"));
+                        insert.addBatch();
+                        moved++;
+                    }
+                }
+
+                if (moved > 0) {
+                    insert.executeBatch();
+                    // Nothing is inserted into the old table any more, so everything up to here was just copied
+                    PreparedStatement delete = database.prepare("DELETE FROM reinforcedblocks WHERE rowid <= ?");
+                    delete.setLong(1, lastRowId);
+                    delete.executeUpdate();
+                } else {
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute("DROP TABLE reinforcedblocks");
+                        stmt.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+                    }
+                }
+                conn.commit();
             } catch (SQLException e) {
-                LOGGER.atWarning().log("Error closing reinforcedblocks db: " + e.getMessage());
+                rollback(conn);
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Failed to migrate reinforced blocks, the old table stays in use until the next start");
+            return;
         }
+
+        if (moved == 0) {
+            migrating = false;
+            LOGGER.atInfo().log("Finished migrating reinforced blocks to the compact table");
+            return;
+        }
+        LOGGER.atFine().log("Migrated %d reinforced blocks".formatted(moved));
+        database.getExecutor().execute(this::migrateBatch);
+    }
+
+    @Override
+    public void close() {
+        // Stops the migration, it resumes on the next start. The shared connection is closed by RaidingDatabase.
+        closed = true;
+    }
+
+    private ReinforcedBlock mapToReinforcedBlock(String worldName, ResultSet rs) throws SQLException {
+        long morton = rs.getLong("morton");
+        return ReinforcedBlock.create(
+                worldName,
+                new Vector3i(MortonCode.decodeX(morton), MortonCode.decodeY(morton), MortonCode.decodeZ(morton)),
+                rs.getInt("reinforcement")
+        );
     }
 
-    private ReinforcedBlock mapToReinforcedBlock(ResultSet rs) throws SQLException {
+    private ReinforcedBlock mapLegacyToReinforcedBlock(ResultSet rs) throws SQLException {
         return new ReinforcedBlock(
                 rs.getString("id"),
-                rs.getString("world_name"),
+                WorldIds.intern(rs.getString("world_name")),
                 new Vector3i(rs.getInt("pos_x"), rs.getInt("pos_y"), rs.getInt("pos_z")),
                 rs.getInt("reinforcement")
         );
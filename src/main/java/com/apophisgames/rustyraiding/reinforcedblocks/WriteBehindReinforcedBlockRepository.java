@@ -0,0 +1,493 @@
+package com.apophisgames.rustyraiding.reinforcedblocks;
+
+import com.apophisgames.rustyraiding.util.BlockPositions;
+import com.apophisgames.rustyraiding.util.LongIntHashMap;
+import com.apophisgames.rustyraiding.util.WorldIds;
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.math.vector.Vector3i;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind wrapper for IReinforcedBlockRepository.
+ *
+ * <p>Saves and deletes of single blocks are not written through. They are recorded in a
+ * dirty set keyed by world id and packed block position, where repeated writes to the same
+ * block coalesce into the latest one, and flushed to the delegate in one batched transaction.
+ * A flush runs every flush interval, or as soon as the dirty set reaches the size threshold.
+ * Wrap this in {@link CachedReinforcedBlockRepository} so reads see every change immediately.
+ *
+ * <p>Reads of a block or an area, like a chunk loading, lay the pending writes over what the
+ * delegate returns, so they never see stale rows and do not force a flush. The batch a flush
+ * is writing stays readable until it is stored, so reads never wait for a flush, and go to
+ * the delegate concurrently with it. Whole-world reads and area deletes flush first, so they
+ * never race a pending write. {@link #close()} drains the dirty set before the delegate is
+ * closed.
+ *
+ * <p>{@link #evictInArea} only drops pending writes on the caller's thread. The area is then
+ * deleted from the delegate by the flush thread, ahead of any write made after the eviction.
+ *
+ * <p>Delegate writes are serialized on one lock, the flush thread included. Reads do not take
+ * it, the delegate must serialize its own calls, like {@link com.apophisgames.rustyraiding.util.SerializedRepository} does.
+ */
+public class WriteBehindReinforcedBlockRepository implements IReinforcedBlockRepository {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    // Returned by PendingWrites.get for a block without a pending write
+    private static final int NO_WRITE = Integer.MIN_VALUE;
+    private static final PendingWrites NONE = new PendingWrites();
+
+    private final IReinforcedBlockRepository delegate;
+    private final int maxPendingWrites;
+    private final ScheduledExecutorService flushExecutor;
+
+    // Guards every delegate write
+    private final Object delegateLock = new Object();
+
+    // Latest pending write per block, guarded by this
+    private PendingWrites dirty = new PendingWrites();
+    // Areas evicted since the last flush, deleted from the delegate before the next batch, guarded by this
+    private List<Area> evictedAreas = new ArrayList<>();
+    // What the running flush is writing, still read until it is stored, guarded by this
+    private PendingWrites inFlight = NONE;
+    private List<Area> inFlightAreas = List.of();
+    // Finished flushes, so an area read can tell a flush ended while it read the delegate
+    private long flushes;
+    private boolean flushQueued;
+
+    /**
+     * Coalesced writes, by world id then packed block position, see {@link BlockPositions}.
+     * The value is the block's new reinforcement, or {@link ReinforcedBlock#NOT_REINFORCED}
+     * to delete it. Guarded by the repository.
+     */
+    private static final class PendingWrites {
+        private LongIntHashMap[] worlds = new LongIntHashMap[0];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * @return The pending reinforcement, or NO_WRITE if the block has no pending write
+         */
+        int get(int worldId, long key) {
+            if (worldId >= worlds.length || worlds[worldId] == null) return NO_WRITE;
+            return worlds[worldId].getOrDefault(key, NO_WRITE);
+        }
+
+        void put(int worldId, long key, int reinforcement) {
+            if (worldId >= worlds.length) worlds = Arrays.copyOf(worlds, Math.max(worldId + 1, worlds.length * 2));
+            LongIntHashMap writes = worlds[worldId];
+            if (writes == null) writes = worlds[worldId] = new LongIntHashMap();
+            int before = writes.size();
+            writes.put(key, reinforcement);
+            size += writes.size() - before;
+        }
+
+        void putIfAbsent(int worldId, long key, int reinforcement) {
+            if (get(worldId, key) == NO_WRITE) put(worldId, key, reinforcement);
+        }
+
+        void removeInArea(Area area) {
+            if (area.worldId() >= worlds.length || worlds[area.worldId()] == null) return;
+            LongIntHashMap writes = worlds[area.worldId()];
+            List<Long> removed = new ArrayList<>();
+            writes.forEach((key, reinforcement) -> {
+                if (area.contains(key)) removed.add(key);
+            });
+            for (long key : removed) {
+                writes.remove(key);
+            }
+            size -= removed.size();
+        }
+
+        void forEach(Consumer consumer) {
+            for (int worldId = 0; worldId < worlds.length; worldId++) {
+                if (worlds[worldId] == null) continue;
+                int id = worldId;
+                worlds[worldId].forEach((key, reinforcement) -> consumer.accept(id, key, reinforcement));
+            }
+        }
+
+        void forEachInWorld(int worldId, LongIntHashMap.Consumer consumer) {
+            if (worldId < worlds.length && worlds[worldId] != null) worlds[worldId].forEach(consumer);
+        }
+
+        @FunctionalInterface
+        interface Consumer {
+            void accept(int worldId, long key, int reinforcement);
+        }
+    }
+
+    /**
+     * An evicted area waiting to be deleted from the delegate.
+     */
+    private record Area(int worldId, Vector3i boundsMin, Vector3i boundsMax) {
+        boolean contains(long key) {
+            int x = BlockPositions.unpackX(key), y = BlockPositions.unpackY(key), z = BlockPositions.unpackZ(key);
+            return x >= boundsMin.x && x <= boundsMax.x
+                && y >= boundsMin.y && y <= boundsMax.y
+                && z >= boundsMin.z && z <= boundsMax.z;
+        }
+
+        boolean contains(Vector3i position) {
+            return contains(BlockPositions.pack(position.x, position.y, position.z));
+        }
+    }
+
+    /**
+     * @param flushIntervalMillis How often pending writes are flushed
+     * @param maxPendingWrites Number of pending writes that triggers an early flush
+     */
+    public WriteBehindReinforcedBlockRepository(IReinforcedBlockRepository delegate, long flushIntervalMillis, int maxPendingWrites) {
+        this.delegate = delegate;
+        this.maxPendingWrites = Math.max(1, maxPendingWrites);
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RustyRaiding-WriteBehind");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long interval = Math.max(1, flushIntervalMillis);
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void initialize() throws Exception {
+        synchronized (delegateLock) {
+            delegate.initialize();
+        }
+    }
+
+    @Override
+    public Map<String, Map<String, ReinforcedBlock>> loadAll() throws Exception {
+        flush();
+        synchronized (delegateLock) {
+            return delegate.loadAll();
+        }
+    }
+
+    @Override
+    public Map<String, ReinforcedBlock> findByWorld(String worldName) throws Exception {
+        flush();
+        synchronized (delegateLock) {
+            return delegate.findByWorld(worldName);
+        }
+    }
+
+    @Override
+    public List<String> findWorldNames() throws Exception {
+        flush();
+        synchronized (delegateLock) {
+            return delegate.findWorldNames();
+        }
+    }
+
+    @Override
+    public Optional<ReinforcedBlock> findByPosition(String worldName, Vector3i position) throws Exception {
+        int pending = findPending(WorldIds.of(worldName), BlockPositions.pack(position.x, position.y, position.z));
+        if (pending == NO_WRITE) return delegate.findByPosition(worldName, position);
+        if (pending == ReinforcedBlock.NOT_REINFORCED) return Optional.empty();
+        return Optional.of(ReinforcedBlock.create(WorldIds.intern(worldName), position, pending));
+    }
+
+    @Override
+    public int findReinforcement(int worldId, int x, int y, int z) throws Exception {
+        // Without a pending write the delegate's row is the latest, even if a flush is storing others
+        int pending = findPending(worldId, BlockPositions.pack(x, y, z));
+        if (pending != NO_WRITE) return pending;
+        return delegate.findReinforcement(worldId, x, y, z);
+    }
+
+    @Override
+    public Map<String, ReinforcedBlock> findInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) throws Exception {
+        // Chunk loads land here, so no flush: the pending writes are laid over the delegate's rows
+        int worldId = WorldIds.of(worldName);
+        while (true) {
+            long flushesBefore;
+            synchronized (this) {
+                flushesBefore = flushes;
+            }
+            Map<String, ReinforcedBlock> result = delegate.findInArea(worldName, boundsMin, boundsMax);
+            synchronized (this) {
+                // A flush that ended meanwhile took its batch out of the overlay, and the rows may predate it
+                if (flushes != flushesBefore) continue;
+                overlay(result, worldId, boundsMin, boundsMax);
+                return result;
+            }
+        }
+    }
+
+    /**
+     * The pending write to a block, newest first: the dirty set, then areas evicted since the
+     * last flush, then the batch being flushed and the areas it deletes.
+     *
+     * @return The pending reinforcement, NOT_REINFORCED for a pending delete, or NO_WRITE if there is none
+     */
+    private synchronized int findPending(int worldId, long key) {
+        int pending = dirty.get(worldId, key);
+        if (pending != NO_WRITE) return pending;
+        if (isInAny(evictedAreas, worldId, key)) return ReinforcedBlock.NOT_REINFORCED;
+        pending = inFlight.get(worldId, key);
+        if (pending != NO_WRITE) return pending;
+        return isInAny(inFlightAreas, worldId, key) ? ReinforcedBlock.NOT_REINFORCED : NO_WRITE;
+    }
+
+    /**
+     * Apply what the delegate has not stored yet to its rows in an area, oldest first.
+     */
+    private void overlay(Map<String, ReinforcedBlock> result, int worldId, Vector3i boundsMin, Vector3i boundsMax) {
+        Area area = new Area(worldId, boundsMin, boundsMax);
+        String worldName = WorldIds.nameOf(worldId);
+        overlay(result, worldName, area, inFlightAreas, inFlight);
+        overlay(result, worldName, area, evictedAreas, dirty);
+    }
+
+    private static void overlay(Map<String, ReinforcedBlock> result, String worldName, Area area, List<Area> evicted, PendingWrites writes) {
+        for (Area evictedArea : evicted) {
+            if (evictedArea.worldId() == area.worldId())
+                result.values().removeIf(block -> evictedArea.contains(block.position()));
+        }
+        writes.forEachInWorld(area.worldId(), (key, reinforcement) -> {
+            if (!area.contains(key)) return;
+            Vector3i position = new Vector3i(BlockPositions.unpackX(key), BlockPositions.unpackY(key), BlockPositions.unpackZ(key));
+            if (reinforcement != ReinforcedBlock.NOT_REINFORCED) {
+                ReinforcedBlock block = ReinforcedBlock.create(worldName, position, reinforcement);
+                result.put(block.internalId(), block);
+            } else {
+                result.remove(ReinforcedBlock.getInternalIdFromPosition(worldName, position));
+            }
+        });
+    }
+
+    @Override
+    public void save(ReinforcedBlock reinforcedBlock) {
+        Vector3i position = reinforcedBlock.position();
+        enqueue(WorldIds.of(reinforcedBlock.worldName()), position.x, position.y, position.z, reinforcedBlock.reinforcement());
+    }
+
+    @Override
+    public void setReinforcement(int worldId, int x, int y, int z, int reinforcement) {
+        enqueue(worldId, x, y, z, reinforcement);
+    }
+
+    @Override
+    public void writeBatch(Collection<ReinforcedBlock> saves, Collection<String> deletedIds) {
+        synchronized (this) {
+            for (ReinforcedBlock block : saves) {
+                Vector3i position = block.position();
+                dirty.put(WorldIds.of(block.worldName()), BlockPositions.pack(position.x, position.y, position.z), block.reinforcement());
+            }
+            for (String id : deletedIds) {
+                Vector3i position = ReinforcedBlock.getPositionFromInternalId(id);
+                dirty.put(WorldIds.of(ReinforcedBlock.getWorldNameFromInternalId(id)), BlockPositions.pack(position.x, position.y, position.z), ReinforcedBlock.NOT_REINFORCED);
+            }
+        }
+        requestFlushIfFull();
+    }
+
+    @Override
+    public void delete(String reinforcedBlockId) {
+        delete(ReinforcedBlock.getWorldNameFromInternalId(reinforcedBlockId), ReinforcedBlock.getPositionFromInternalId(reinforcedBlockId));
+    }
+
+    @Override
+    public void delete(String worldName, Vector3i position) {
+        enqueue(WorldIds.of(worldName), position.x, position.y, position.z, ReinforcedBlock.NOT_REINFORCED);
+    }
+
+    @Override
+    public void deleteInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) throws Exception {
+        // Flush first so no pending save lands after the delete and brings a block back
+        flush();
+        synchronized (delegateLock) {
+            delegate.deleteInArea(worldName, boundsMin, boundsMax);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteInAreaAsync(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
+        // Pending writes inside the area are superseded by the delete. Holding the delegate
+        // lock means no batch is in flight, so the delete is queued ahead of every later flush.
+        synchronized (delegateLock) {
+            synchronized (this) {
+                dirty.removeInArea(new Area(WorldIds.of(worldName), boundsMin, boundsMax));
+            }
+            return delegate.deleteInAreaAsync(worldName, boundsMin, boundsMax);
+        }
+    }
+
+    @Override
+    public void evictInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
+        // Called on world and I/O threads, so no delegate call here. Pending writes are dropped so
+        // a later flush does not bring the removed blocks back, and the flush thread deletes the
+        // area from the delegate. That delete also removes whatever a flush wrote there after
+        // the zone was deleted, before this call, which storage that cascades would miss.
+        Area area = new Area(WorldIds.of(worldName), boundsMin, boundsMax);
+        synchronized (this) {
+            dirty.removeInArea(area);
+            evictedAreas.add(area);
+        }
+        requestFlush();
+    }
+
+    @Override
+    public void unloadChunk(int worldId, int chunkX, int chunkZ) throws Exception {
+        // The chunk's writes stay in the dirty set and go out with the next flush. Reloading
+        // the chunk before then reads them back through findInArea.
+        synchronized (delegateLock) {
+            delegate.unloadChunk(worldId, chunkX, chunkZ);
+        }
+    }
+
+    /**
+     * Delete the evicted areas from the delegate, then write every pending change to it in one
+     * transaction. On failure the areas and changes are put back, unless the block was written
+     * again or its area evicted since.
+     */
+    public void flush() throws Exception {
+        synchronized (delegateLock) {
+            PendingWrites batch;
+            List<Area> areas;
+            synchronized (this) {
+                if (dirty.isEmpty() && evictedAreas.isEmpty()) return;
+                batch = dirty;
+                dirty = new PendingWrites();
+                areas = evictedAreas;
+                evictedAreas = new ArrayList<>();
+                inFlight = batch;
+                inFlightAreas = areas;
+            }
+
+            try {
+                // Writes in the batch were made after these evictions, so they land after the deletes
+                for (int i = 0; i < areas.size(); i++) {
+                    Area area = areas.get(i);
+                    try {
+                        delegate.deleteInArea(WorldIds.nameOf(area.worldId()), area.boundsMin(), area.boundsMax());
+                    } catch (Exception e) {
+                        restore(areas.subList(i, areas.size()), batch);
+                        throw e;
+                    }
+                }
+
+                List<ReinforcedBlock> saves = new ArrayList<>();
+                List<String> deletedIds = new ArrayList<>();
+                batch.forEach((worldId, key, reinforcement) -> {
+                    String worldName = WorldIds.nameOf(worldId);
+                    Vector3i position = new Vector3i(BlockPositions.unpackX(key), BlockPositions.unpackY(key), BlockPositions.unpackZ(key));
+                    if (reinforcement != ReinforcedBlock.NOT_REINFORCED) saves.add(ReinforcedBlock.create(worldName, position, reinforcement));
+                    else deletedIds.add(ReinforcedBlock.getInternalIdFromPosition(worldName, position));
+                });
+
+                try {
+                    delegate.writeBatch(saves, deletedIds);
+                } catch (Exception e) {
+                    restore(List.of(), batch);
+                    throw e;
+                }
+            } finally {
+                synchronized (this) {
+                    inFlight = NONE;
+                    inFlightAreas = List.of();
+                    flushes++;
+                }
+            }
+        }
+    }
+
+    private synchronized void restore(List<Area> areas, PendingWrites batch) {
+        // Writes inside an area evicted during the flush were superseded by it
+        batch.forEach((worldId, key, reinforcement) -> {
+            if (!isInAny(evictedAreas, worldId, key)) dirty.putIfAbsent(worldId, key, reinforcement);
+        });
+
+        // The batch was written after the areas that failed, so they go back ahead of everything
+        List<Area> restoredAreas = new ArrayList<>(areas);
+        restoredAreas.addAll(evictedAreas);
+        evictedAreas = restoredAreas;
+    }
+
+    private static boolean isInAny(List<Area> areas, int worldId, long key) {
+        for (int i = 0; i < areas.size(); i++) {
+            Area area = areas.get(i);
+            if (area.worldId() == worldId && area.contains(key)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        flushExecutor.shutdown();
+        try {
+            if (!flushExecutor.awaitTermination(10, TimeUnit.SECONDS))
+                LOGGER.atWarning().log("Write-behind flush did not finish before shutdown");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Drain whatever is left before the connection goes away
+        try {
+            flush();
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Failed to flush pending reinforced block writes on shutdown");
+        }
+
+        synchronized (delegateLock) {
+            delegate.close();
+        }
+    }
+
+    private void enqueue(int worldId, int x, int y, int z, int reinforcement) {
+        synchronized (this) {
+            dirty.put(worldId, BlockPositions.pack(x, y, z), reinforcement);
+        }
+        requestFlushIfFull();
+    }
+
+    private void requestFlushIfFull() {
+        synchronized (this) {
+            if (dirty.size() < maxPendingWrites) return;
+        }
+        requestFlush();
+    }
+
+    private void requestFlush() {
+        synchronized (this) {
+            if (flushQueued || flushExecutor.isShutdown()) return;
+            flushQueued = true;
+        }
+        try {
+            flushExecutor.execute(this::flushQuietly);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, close() drains the dirty set
+        }
+    }
+
+    private void flushQuietly() {
+        synchronized (this) {
+            flushQueued = false;
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            LOGGER.atSevere().withCause(e).log("Failed to flush pending reinforced block writes, will retry");
+        }
+    }
+}
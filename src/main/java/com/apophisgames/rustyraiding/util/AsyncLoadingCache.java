@@ -0,0 +1,194 @@
+package com.apophisgames.rustyraiding.util;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Cache that loads missing values on demand, holding one loading future per key.
+ *
+ * <p>The first caller for a key runs the load on its own thread. Later callers for the same
+ * key wait on that load's future, callers for other keys are never blocked by it. No lock is
+ * held while loading.
+ *
+ * <p>A failed load is not cached as a value. Its error is handed to every caller until a
+ * backoff passes, doubling with each consecutive failure of that key, then the next caller
+ * retries the load.
+ *
+ * <p>Writes to a value still loading are queued with {@link #whenLoaded} and applied, in
+ * order, as soon as it loads, so they are not lost to a load that read storage before them.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public final class AsyncLoadingCache<K, V> {
+
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * One key's load, and its failure history when it failed.
+     */
+    private static final class Entry<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        final int failures;
+        volatile long retryAtNanos;
+
+        // Writes waiting for the load, guarded by this
+        @Nullable List<Consumer<? super V>> pending = new ArrayList<>();
+
+        Entry(int failures) {
+            this.failures = failures;
+        }
+
+        static <V> Entry<V> loaded(V value) {
+            Entry<V> entry = new Entry<>(0);
+            entry.pending = null;
+            entry.future.complete(value);
+            return entry;
+        }
+
+        boolean failed() {
+            return future.isCompletedExceptionally();
+        }
+    }
+
+    /**
+     * @return The loaded value, or null if the key is absent, loading or failed
+     */
+    @Nullable
+    public V getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || !entry.future.isDone() || entry.failed()) return null;
+        return entry.future.join();
+    }
+
+    /**
+     * Get the value of a key, loading it on the calling thread if no load is running,
+     * or waiting for the running one.
+     *
+     * @throws Exception The load's error, also while its retry is backing off
+     */
+    public V get(K key, Loader<K, V> loader) throws Exception {
+        while (true) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                Entry<V> loading = new Entry<>(0);
+                if (entries.putIfAbsent(key, loading) == null) return load(key, loading, loader);
+                continue;
+            }
+
+            if (entry.failed() && System.nanoTime() - entry.retryAtNanos >= 0) {
+                Entry<V> retry = new Entry<>(entry.failures);
+                if (entries.replace(key, entry, retry)) return load(key, retry, loader);
+                continue;
+            }
+
+            try {
+                return entry.future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) throw cause;
+                throw e;
+            }
+        }
+    }
+
+    private V load(K key, Entry<V> entry, Loader<K, V> loader) throws Exception {
+        V value;
+        try {
+            value = loader.load(key);
+        } catch (Exception e) {
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(entry.failures, 16));
+            Entry<V> failed = new Entry<>(entry.failures + 1);
+            failed.pending = null;
+            failed.retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff);
+            failed.future.completeExceptionally(e);
+            // Queued writes are dropped with the load, the retry reads them back from storage
+            entries.replace(key, entry, failed);
+            synchronized (entry) {
+                entry.pending = null;
+                entry.future.completeExceptionally(e);
+            }
+            throw e;
+        }
+
+        // Apply queued writes before anyone else sees the value. The future completes under
+        // the same lock, so a writer never finds the queue closed and the value not yet set.
+        synchronized (entry) {
+            for (Consumer<? super V> write : entry.pending) {
+                write.accept(value);
+            }
+            entry.pending = null;
+            entry.future.complete(value);
+        }
+        return value;
+    }
+
+    /**
+     * Apply a write to the value of a key now if it is loaded, or as soon as it loads if it
+     * is loading. Does nothing if the key is absent or failed, its next load reads storage.
+     */
+    public void whenLoaded(K key, Consumer<? super V> write) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null) apply(entry, write);
+    }
+
+    /**
+     * Apply a write to every value, loaded or still loading, like {@link #whenLoaded}.
+     */
+    public void forEach(Consumer<? super V> write) {
+        for (Entry<V> entry : entries.values()) {
+            apply(entry, write);
+        }
+    }
+
+    /**
+     * Queue a write for every value still loading, applied as soon as it loads. Loaded values
+     * are left alone, for writes the caller applies to them directly.
+     */
+    public void forEachLoading(Consumer<? super V> write) {
+        for (Entry<V> entry : entries.values()) {
+            synchronized (entry) {
+                if (entry.pending != null) entry.pending.add(write);
+            }
+        }
+    }
+
+    private void apply(Entry<V> entry, Consumer<? super V> write) {
+        synchronized (entry) {
+            if (entry.pending != null) {
+                entry.pending.add(write);
+                return;
+            }
+        }
+        // No queue means the load is over, the future is already complete
+        if (!entry.failed()) write.accept(entry.future.join());
+    }
+
+    public void put(K key, V value) {
+        entries.put(key, Entry.loaded(value));
+    }
+
+    /**
+     * Forget a key. A load still running for it completes for its waiters but is not kept.
+     */
+    public void remove(K key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    @FunctionalInterface
+    public interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
+}
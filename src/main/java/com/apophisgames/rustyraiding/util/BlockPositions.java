@@ -0,0 +1,35 @@
+package com.apophisgames.rustyraiding.util;
+
+/**
+ * Packs integer block coordinates into a single long key.
+ *
+ * <p>Layout: x in the top 26 bits, z in the next 26 bits and y in the low 12 bits,
+ * each stored as two's complement so negative coordinates round-trip.
+ */
+public final class BlockPositions {
+
+    public static final int MIN_Y = -(1 << 11);
+    public static final int MAX_Y = (1 << 11) - 1;
+
+    private static final long XZ_MASK = (1L << 26) - 1;
+    private static final long Y_MASK = (1L << 12) - 1;
+
+    private BlockPositions() {
+    }
+
+    public static long pack(int x, int y, int z) {
+        return (x & XZ_MASK) << 38 | (z & XZ_MASK) << 12 | (y & Y_MASK);
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> 38);
+    }
+
+    public static int unpackY(long packed) {
+        return (int) (packed << 52 >> 52);
+    }
+
+    public static int unpackZ(long packed) {
+        return (int) (packed << 26 >> 38);
+    }
+}
@@ -0,0 +1,54 @@
+package com.apophisgames.rustyraiding.util;
+
+import java.util.Arrays;
+
+/**
+ * Thread-safe bitset over non-negative ints, optimized for reads.
+ *
+ * <p>{@link #contains(int)} is a lock-free bit test against the last published words.
+ * Writes copy the words under a lock and publish the copy, which is cheap for the small,
+ * rarely changing sets this is used for.
+ */
+public final class CopyOnWriteBitSet {
+
+    private volatile long[] words = new long[1];
+
+    public boolean contains(int index) {
+        long[] current = words;
+        int word = index >>> 6;
+        return word < current.length && (current[word] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return true if the bit was not already set
+     */
+    public synchronized boolean add(int index) {
+        if (contains(index)) return false;
+
+        int word = index >>> 6;
+        long[] copy = Arrays.copyOf(words, Math.max(words.length, word + 1));
+        copy[word] |= 1L << index;
+        words = copy;
+        return true;
+    }
+
+    /**
+     * @return true if the bit was set
+     */
+    public synchronized boolean remove(int index) {
+        if (!contains(index)) return false;
+
+        long[] copy = words.clone();
+        copy[index >>> 6] &= ~(1L << index);
+        words = copy;
+        return true;
+    }
+
+    public int size() {
+        int size = 0;
+        for (long word : words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+}
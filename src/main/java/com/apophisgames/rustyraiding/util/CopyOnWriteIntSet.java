@@ -0,0 +1,58 @@
+package com.apophisgames.rustyraiding.util;
+
+import java.util.Arrays;
+
+/**
+ * Thread-safe set of ints, held as a sorted array and optimized for reads.
+ *
+ * <p>{@link #contains(int)} is a lock-free binary search over the last published array.
+ * Writes copy the array under a lock and publish the copy. Memory follows the number of
+ * members rather than the largest one, so sets of ids drawn from a large, growing range
+ * stay small.
+ */
+public final class CopyOnWriteIntSet {
+
+    private static final int[] EMPTY = new int[0];
+
+    private volatile int[] values = EMPTY;
+
+    public boolean contains(int value) {
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+
+    /**
+     * @return true if the value was not already in the set
+     */
+    public synchronized boolean add(int value) {
+        int[] current = values;
+        int index = Arrays.binarySearch(current, value);
+        if (index >= 0) return false;
+
+        int insertAt = -index - 1;
+        int[] copy = new int[current.length + 1];
+        System.arraycopy(current, 0, copy, 0, insertAt);
+        copy[insertAt] = value;
+        System.arraycopy(current, insertAt, copy, insertAt + 1, current.length - insertAt);
+        values = copy;
+        return true;
+    }
+
+    /**
+     * @return true if the value was in the set
+     */
+    public synchronized boolean remove(int value) {
+        int[] current = values;
+        int index = Arrays.binarySearch(current, value);
+        if (index < 0) return false;
+
+        int[] copy = new int[current.length - 1];
+        System.arraycopy(current, 0, copy, 0, index);
+        System.arraycopy(current, index + 1, copy, index, current.length - index - 1);
+        values = copy;
+        return true;
+    }
+
+    public int size() {
+        return values.length;
+    }
+}
@@ -0,0 +1,123 @@
+package com.apophisgames.rustyraiding.util;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The single thread that owns a database connection.
+ *
+ * <p>Every statement against a database runs on its executor, so one connection is never
+ * used from two threads and writes land in the order they were submitted. Async callers
+ * get a {@link CompletableFuture} completed on the I/O thread, and should hop back to the
+ * world thread with {@code world::execute} before touching game state. Sync callers block
+ * until their task has run, tasks submitted from the I/O thread itself run inline.
+ */
+public final class DatabaseExecutor {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    private final String name;
+    private final ExecutorService executor;
+    private volatile Thread thread;
+
+    public DatabaseExecutor(String name) {
+        this.name = name;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread ioThread = new Thread(runnable, name);
+            ioThread.setDaemon(true);
+            thread = ioThread;
+            return ioThread;
+        });
+    }
+
+    /**
+     * Run a task on the I/O thread and wait for its result.
+     */
+    public <T> T call(Callable<T> task) throws Exception {
+        if (Thread.currentThread() == thread) return task.call();
+
+        Future<T> future = executor.submit(task);
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Run a task on the I/O thread and wait for it to finish.
+     */
+    public void run(Task task) throws Exception {
+        call(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Queue a task on the I/O thread.
+     * @return Future completed with the task's result on the I/O thread
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Queue a task without a result on the I/O thread.
+     */
+    public CompletableFuture<Void> execute(Task task) {
+        return submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run a task on the calling thread, as a future. Sync fallback for the async repository methods.
+     */
+    public static <T> CompletableFuture<T> inline(Callable<T> task) {
+        try {
+            return CompletableFuture.completedFuture(task.call());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Stop accepting tasks and wait for the queued ones to finish.
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS))
+                LOGGER.atWarning().log("Database tasks on '%s' did not finish before shutdown".formatted(name));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+}
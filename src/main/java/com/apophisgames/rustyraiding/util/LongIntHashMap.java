@@ -0,0 +1,168 @@
+package com.apophisgames.rustyraiding.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive long keys to primitive int values.
+ *
+ * <p>Entries live in two flat arrays (12 bytes per slot) with linear probing, so neither
+ * lookups nor updates box or allocate. Key 0 marks a free slot, so an entry with key 0 is
+ * kept in a dedicated field. Not thread-safe, callers guard access.
+ */
+public final class LongIntHashMap {
+
+    private static final long FREE = 0L;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, (int) Math.min(1 << 30, expectedSize * 4L / 3 + 1) - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == FREE) return hasZeroKey;
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return The value of the key, or defaultValue if the key is absent
+     */
+    public int getOrDefault(long key, int defaultValue) {
+        if (key == FREE) return hasZeroKey ? zeroValue : defaultValue;
+        int slot = indexOf(key);
+        return slot >= 0 ? values[slot] : defaultValue;
+    }
+
+    public void put(long key, int value) {
+        if (key == FREE) {
+            if (!hasZeroKey) size++;
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+
+        int slot = mix(key) & mask;
+        long existing;
+        while ((existing = keys[slot]) != FREE) {
+            if (existing == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        // Resize past a 0.75 load factor
+        if (++size * 4 > keys.length * 3) resize(keys.length * 2);
+    }
+
+    /**
+     * @return true if the key was present
+     */
+    public boolean remove(long key) {
+        if (key == FREE) {
+            if (!hasZeroKey) return false;
+            hasZeroKey = false;
+            size--;
+            return true;
+        }
+
+        int slot = indexOf(key);
+        if (slot < 0) return false;
+        shiftBack(slot);
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    public void forEach(Consumer consumer) {
+        if (hasZeroKey) consumer.accept(FREE, zeroValue);
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE) consumer.accept(keys[slot], values[slot]);
+        }
+    }
+
+    private int indexOf(long key) {
+        int slot = mix(key) & mask;
+        long existing;
+        while ((existing = keys[slot]) != FREE) {
+            if (existing == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Close the gap left by a removed slot so later probe chains stay intact.
+     */
+    private void shiftBack(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = mix(keys[next]) & mask;
+            // Move the entry back if its home slot is not within (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = FREE;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == FREE) continue;
+            int slot = mix(oldKeys[i]) & mask;
+            while (keys[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long key, int value);
+    }
+}
@@ -0,0 +1,150 @@
+package com.apophisgames.rustyraiding.util;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive long keys to non-null values.
+ *
+ * <p>Lookups neither box the key nor allocate. Not thread-safe, callers guard access.
+ *
+ * @param <V> Value type
+ */
+public final class LongObjectHashMap<V> {
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    public LongObjectHashMap() {
+        this(16);
+    }
+
+    public LongObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = mix(key) & mask;
+        Object value;
+        while ((value = values[slot]) != null) {
+            if (keys[slot] == key) return (V) value;
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * @return The previous value, or null if there was none
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        int slot = mix(key) & mask;
+        Object existing;
+        while ((existing = values[slot]) != null) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return (V) existing;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > values.length) resize(values.length * 2);
+        return null;
+    }
+
+    /**
+     * @return The removed value, or null if the key was absent
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int slot = mix(key) & mask;
+        Object existing;
+        while ((existing = values[slot]) != null) {
+            if (keys[slot] == key) {
+                shiftBack(slot);
+                size--;
+                return (V) existing;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> consumer) {
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) consumer.accept(keys[slot], (V) values[slot]);
+        }
+    }
+
+    /**
+     * Close the gap left by a removed slot so later probe chains stay intact.
+     */
+    private void shiftBack(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = mix(keys[next]) & mask;
+            // Move the entry back if its home slot is not within (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) continue;
+            int slot = mix(oldKeys[i]) & mask;
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @FunctionalInterface
+    public interface Consumer<V> {
+        void accept(long key, V value);
+    }
+}
@@ -0,0 +1,180 @@
+package com.apophisgames.rustyraiding.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Z-order (Morton) keys for block positions, ordered so that nearby blocks get nearby keys.
+ *
+ * <p>Coordinates have the same ranges as {@link BlockPositions}: 26 bits for x and z, 12 for y.
+ * The low 12 bits of all three axes are interleaved into the low 36 bits of the key, the high
+ * 14 bits of x and z into the rest. Coordinates are biased to unsigned and the top bit of the
+ * key is flipped, so signed key order is Z-order and an axis-aligned box is covered by a
+ * handful of contiguous key ranges, see {@link #ranges}.
+ */
+public final class MortonCode {
+
+    private static final int XZ_BIAS = 1 << 25;
+    private static final int Y_BIAS = 1 << 11;
+
+    // Levels of the Z-order tree: the bottom 12 split all three axes, the top 14 only x and z
+    private static final int LEVELS = 26;
+    private static final int LEVELS_3D = 12;
+    private static final long LOW_MASK = (1L << (3 * LEVELS_3D)) - 1;
+
+    /**
+     * Upper bound on the ranges {@link #ranges} returns before it starts over-covering.
+     */
+    public static final int MAX_RANGES = 64;
+
+    private MortonCode() {
+    }
+
+    public static long encode(int x, int y, int z) {
+        long ux = (x + XZ_BIAS) & 0x3FFFFFFL;
+        long uy = (y + Y_BIAS) & 0xFFFL;
+        long uz = (z + XZ_BIAS) & 0x3FFFFFFL;
+        long low = (spreadBy2(ux & 0xFFF) << 2) | (spreadBy2(uy) << 1) | spreadBy2(uz & 0xFFF);
+        long high = (spreadBy1(ux >>> 12) << 1) | spreadBy1(uz >>> 12);
+        return ((high << (3 * LEVELS_3D)) | low) ^ Long.MIN_VALUE;
+    }
+
+    public static int decodeX(long key) {
+        long u = key ^ Long.MIN_VALUE;
+        long ux = (compactBy1(u >>> (3 * LEVELS_3D + 1)) << 12) | compactBy2((u & LOW_MASK) >>> 2);
+        return (int) ux - XZ_BIAS;
+    }
+
+    public static int decodeY(long key) {
+        long u = key ^ Long.MIN_VALUE;
+        return (int) compactBy2((u & LOW_MASK) >>> 1) - Y_BIAS;
+    }
+
+    public static int decodeZ(long key) {
+        long u = key ^ Long.MIN_VALUE;
+        long uz = (compactBy1(u >>> (3 * LEVELS_3D)) << 12) | compactBy2(u & LOW_MASK);
+        return (int) uz - XZ_BIAS;
+    }
+
+    /**
+     * Cover an inclusive box with sorted, disjoint key ranges.
+     *
+     * <p>The ranges hold every key inside the box. To stay within {@link #MAX_RANGES} they may
+     * also hold keys just outside it, so callers must still test decoded positions against the box.
+     *
+     * @return Pairs of inclusive bounds: {start0, end0, start1, end1, ...}
+     */
+    public static long[] ranges(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        long[] box = {
+                Math.max(0, (long) minX + XZ_BIAS), Math.max(0, (long) minY + Y_BIAS), Math.max(0, (long) minZ + XZ_BIAS),
+                Math.min(0x3FFFFFFL, (long) maxX + XZ_BIAS), Math.min(0xFFFL, (long) maxY + Y_BIAS), Math.min(0x3FFFFFFL, (long) maxZ + XZ_BIAS)
+        };
+        if (box[0] > box[3] || box[1] > box[4] || box[2] > box[5]) return new long[0];
+
+        // Start from the finest level that leaves roughly a cell per side, coarsen until few enough ranges
+        long minSide = Math.min(box[3] - box[0], Math.min(box[4] - box[1], box[5] - box[2])) + 1;
+        int cutoff = Math.max(0, 62 - Long.numberOfLeadingZeros(minSide));
+        while (true) {
+            List<long[]> ranges = new ArrayList<>();
+            // The root spans the whole key space, start from its four children
+            for (int child = 0; child < 4; child++) {
+                long ox = (long) ((child >> 1) & 1) << (LEVELS - 1);
+                long oz = (long) (child & 1) << (LEVELS - 1);
+                cover(LEVELS - 1, ox, 0, oz, (long) child << 62, box, cutoff, ranges);
+            }
+            if (ranges.size() <= MAX_RANGES || cutoff >= LEVELS) {
+                long[] result = new long[ranges.size() * 2];
+                for (int i = 0; i < ranges.size(); i++) {
+                    result[2 * i] = ranges.get(i)[0] ^ Long.MIN_VALUE;
+                    result[2 * i + 1] = ranges.get(i)[1] ^ Long.MIN_VALUE;
+                }
+                return result;
+            }
+            cutoff++;
+        }
+    }
+
+    /**
+     * Add the key ranges of one tree node, in unsigned key space, merging with the previous range
+     * when they touch.
+     */
+    private static void cover(int level, long ox, long oy, long oz, long base, long[] box, int cutoff, List<long[]> ranges) {
+        long side = 1L << level;
+        long ySide = level >= LEVELS_3D ? 1L << LEVELS_3D : side;
+        long maxX = ox + side - 1, maxY = oy + ySide - 1, maxZ = oz + side - 1;
+        if (maxX < box[0] || ox > box[3] || maxY < box[1] || oy > box[4] || maxZ < box[2] || oz > box[5]) return;
+
+        boolean inside = ox >= box[0] && maxX <= box[3] && oy >= box[1] && maxY <= box[4] && oz >= box[2] && maxZ <= box[5];
+        if (inside || level <= cutoff) {
+            long end = base + (span(level) - 1);
+            if (!ranges.isEmpty() && ranges.get(ranges.size() - 1)[1] + 1 == base) {
+                ranges.get(ranges.size() - 1)[1] = end;
+            } else {
+                ranges.add(new long[]{base, end});
+            }
+            return;
+        }
+
+        int childLevel = level - 1;
+        long childSpan = span(childLevel);
+        long half = side >> 1;
+        if (level > LEVELS_3D) {
+            for (int child = 0; child < 4; child++) {
+                cover(childLevel, ox + ((child >> 1) & 1) * half, oy, oz + (child & 1) * half, base + child * childSpan, box, cutoff, ranges);
+            }
+        } else {
+            for (int child = 0; child < 8; child++) {
+                cover(childLevel, ox + ((child >> 2) & 1) * half, oy + ((child >> 1) & 1) * half, oz + (child & 1) * half,
+                        base + child * childSpan, box, cutoff, ranges);
+            }
+        }
+    }
+
+    /**
+     * Number of keys under a node of the given level.
+     */
+    private static long span(int level) {
+        if (level <= LEVELS_3D) return 1L << (3 * level);
+        return 1L << (3 * LEVELS_3D + 2 * (level - LEVELS_3D));
+    }
+
+    private static long spreadBy2(long v) {
+        v &= 0x1FFFFFL;
+        v = (v | v << 32) & 0x1F00000000FFFFL;
+        v = (v | v << 16) & 0x1F0000FF0000FFL;
+        v = (v | v << 8) & 0x100F00F00F00F00FL;
+        v = (v | v << 4) & 0x10C30C30C30C30C3L;
+        v = (v | v << 2) & 0x1249249249249249L;
+        return v;
+    }
+
+    private static long compactBy2(long v) {
+        v &= 0x1249249249249249L;
+        v = (v ^ (v >>> 2)) & 0x10C30C30C30C30C3L;
+        v = (v ^ (v >>> 4)) & 0x100F00F00F00F00FL;
+        v = (v ^ (v >>> 8)) & 0x1F0000FF0000FFL;
+        v = (v ^ (v >>> 16)) & 0x1F00000000FFFFL;
+        v = (v ^ (v >>> 32)) & 0x1FFFFFL;
+        return v;
+    }
+
+    private static long spreadBy1(long v) {
+        v &= 0xFFFFFFFFL;
+        v = (v | v << 16) & 0x0000FFFF0000FFFFL;
+        v = (v | v << 8) & 0x00FF00FF00FF00FFL;
+        v = (v | v << 4) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | v << 2) & 0x3333333333333333L;
+        v = (v | v << 1) & 0x5555555555555555L;
+        return v;
+    }
+
+    private static long compactBy1(long v) {
+        v &= 0x5555555555555555L;
+        v = (v ^ (v >>> 1)) & 0x3333333333333333L;
+        v = (v ^ (v >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v ^ (v >>> 4)) & 0x00FF00FF00FF00FFL;
+        v = (v ^ (v >>> 8)) & 0x0000FFFF0000FFFFL;
+        v = (v ^ (v >>> 16)) & 0xFFFFFFFFL;
+        return v;
+    }
+}
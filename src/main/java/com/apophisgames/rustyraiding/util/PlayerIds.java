@@ -0,0 +1,62 @@
+package com.apophisgames.rustyraiding.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry that interns player UUIDs into dense int ids.
+ *
+ * <p>Players are registered when they connect, so the lookup on block events is a single
+ * map probe. Ids are never reused for the lifetime of the server, which lets per-zone
+ * membership be stored as a set of ids (see {@link CopyOnWriteIntSet}).
+ */
+public final class PlayerIds {
+
+    private static final Map<UUID, Integer> ids = new ConcurrentHashMap<>();
+
+    // Id -> UUID, guarded by PlayerIds.class for writes
+    private static volatile UUID[] uuids = new UUID[64];
+    private static int count;
+
+    private PlayerIds() {
+    }
+
+    /**
+     * Get the id of a player, registering it on first use.
+     */
+    public static int of(UUID playerUuid) {
+        Integer id = ids.get(playerUuid);
+        return id != null ? id : register(playerUuid);
+    }
+
+    /**
+     * Get the UUID of a registered player.
+     */
+    public static UUID uuidOf(int playerId) {
+        UUID[] current = uuids;
+        if (playerId < 0 || playerId >= current.length || current[playerId] == null) {
+            throw new IllegalArgumentException("Unknown player id: " + playerId);
+        }
+        return current[playerId];
+    }
+
+    private static synchronized int register(UUID playerUuid) {
+        Integer existing = ids.get(playerUuid);
+        if (existing != null) return existing;
+
+        int id = count++;
+        UUID[] grown = uuids;
+        if (id >= grown.length) {
+            grown = Arrays.copyOf(grown, grown.length * 2);
+        } else {
+            grown = grown.clone();
+        }
+        grown[id] = playerUuid;
+        // Publish the UUID before the id so readers never see an id without its UUID
+        uuids = grown;
+        ids.put(playerUuid, id);
+        return id;
+    }
+}
@@ -0,0 +1,259 @@
+package com.apophisgames.rustyraiding.util;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.math.vector.Vector3i;
+import org.sqlite.Function;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The plugin's single SQLite database, shared by every repository.
+ *
+ * <p>Zones, authorizations and reinforced blocks live in one file, so a zone can be torn
+ * down together with its authorizations and reinforcements in a single transaction. The
+ * connection must only be used on {@link #getExecutor()}, which {@link SerializedRepository}
+ * routes every repository call through.
+ *
+ * <p>The connection is tuned by a {@link Profile} when it is opened, and keeps one
+ * prepared statement per query for as long as it is open.
+ */
+public class RaidingDatabase {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    private static final String FILE_NAME = "rustyraiding.db";
+
+    private final Path dataDirectory;
+    private final Profile profile;
+    private final DatabaseExecutor io = new DatabaseExecutor("RustyRaiding-Database-IO");
+    private Connection connection;
+
+    // SQL -> statement prepared on the current connection, only touched on the I/O thread
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    // Run inside every zone delete, only touched on the I/O thread
+    private final List<ZoneDeleteCascade> zoneDeleteCascades = new ArrayList<>();
+
+    /**
+     * Removes a table's rows inside a zone that is being deleted.
+     */
+    @FunctionalInterface
+    public interface ZoneDeleteCascade {
+        /**
+         * @param boundsMin The lowest block of the zone (inclusive)
+         * @param boundsMax The highest block of the zone (inclusive)
+         */
+        void deleteInZone(String worldName, Vector3i boundsMin, Vector3i boundsMax) throws Exception;
+    }
+
+    /**
+     * How the connection trades durability for speed.
+     */
+    public enum Profile {
+        /**
+         * WAL journal with synchronous=NORMAL, plus a memory-mapped file and a larger page cache.
+         * A power loss can drop the last commits, but never corrupts the file.
+         */
+        FAST,
+        /**
+         * SQLite's defaults: rollback journal with a full sync on every commit.
+         */
+        PARANOID;
+
+        /**
+         * @return The profile named by a config value, or FAST if it is not recognized
+         */
+        public static Profile parse(String name) {
+            if (name != null && name.trim().equalsIgnoreCase("paranoid")) return PARANOID;
+            return FAST;
+        }
+    }
+
+    public RaidingDatabase(@Nonnull Path dataDirectory, @Nonnull Profile profile) {
+        this.dataDirectory = dataDirectory;
+        this.profile = profile;
+    }
+
+    /**
+     * The single thread allowed to use the connection.
+     */
+    public DatabaseExecutor getExecutor() {
+        return io;
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            openDatabase();
+        }
+        return connection;
+    }
+
+    private void openDatabase() throws SQLException {
+        try {
+            Files.createDirectories(dataDirectory);
+            Class.forName("org.sqlite.JDBC");
+            Path dbPath = dataDirectory.resolve(FILE_NAME);
+            String url = "jdbc:sqlite:" + dbPath.toAbsolutePath().toString();
+            connection = DriverManager.getConnection(url);
+            statements.clear();
+            applyProfile(connection);
+            registerFunctions(connection);
+            LOGGER.atInfo().log("Connected to database: " + dbPath + " (" + profile + " profile)");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite JDBC driver not found", e);
+        } catch (IOException e) {
+            throw new SQLException("Could not create data directory " + dataDirectory, e);
+        }
+    }
+
+    private void applyProfile(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            switch (profile) {
+                case FAST -> {
+                    stmt.execute("PRAGMA journal_mode=WAL");
+                    stmt.execute("PRAGMA synchronous=NORMAL");
+                    stmt.execute("PRAGMA mmap_size=268435456"); // 256 MiB
+                    stmt.execute("PRAGMA cache_size=-16384"); // 16 MiB
+                    stmt.execute("PRAGMA temp_store=MEMORY");
+                }
+                case PARANOID -> {
+                    stmt.execute("PRAGMA journal_mode=DELETE");
+                    stmt.execute("PRAGMA synchronous=FULL");
+                }
+            }
+        }
+    }
+
+    /**
+     * SQL functions over {@link MortonCode} keys, used by the reinforced block queries.
+     * They only exist on this connection, so triggers must not call them, or the tables
+     * could no longer be edited from other SQLite tools.
+     */
+    private static void registerFunctions(Connection conn) throws SQLException {
+        // morton_in_box(key, min_x, min_y, min_z, max_x, max_y, max_z), inclusive bounds
+        Function.create(conn, "morton_in_box", new Function() {
+            @Override
+            protected void xFunc() throws SQLException {
+                long key = value_long(0);
+                int x = MortonCode.decodeX(key), y = MortonCode.decodeY(key), z = MortonCode.decodeZ(key);
+                boolean inside = x >= value_double(1) && y >= value_double(2) && z >= value_double(3)
+                        && x <= value_double(4) && y <= value_double(5) && z <= value_double(6);
+                result(inside ? 1 : 0);
+            }
+        }, Function.FLAG_DETERMINISTIC);
+    }
+
+    /**
+     * The statement for a query, prepared once and reused until the connection closes.
+     * Must only be called on {@link #getExecutor()}, and must not be closed by the caller.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        // Reopening the connection drops every statement prepared on the old one
+        Connection conn = getConnection();
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null) {
+            stmt = conn.prepareStatement(sql);
+            statements.put(sql, stmt);
+        } else {
+            // Drop whatever a failed batch left behind
+            stmt.clearBatch();
+        }
+        return stmt;
+    }
+
+    /**
+     * Register a table to clear when a zone is deleted. Zone deletes run every cascade in
+     * their own transaction, rather than leaving it to triggers that need this connection's
+     * functions. Must only be called on {@link #getExecutor()}.
+     */
+    public void addZoneDeleteCascade(ZoneDeleteCascade cascade) {
+        zoneDeleteCascades.add(cascade);
+    }
+
+    /**
+     * Run every registered cascade for a deleted zone. Must only be called on
+     * {@link #getExecutor()}, inside the transaction that deletes the zone.
+     */
+    public void cascadeZoneDelete(String worldName, Vector3i boundsMin, Vector3i boundsMax) throws Exception {
+        for (ZoneDeleteCascade cascade : zoneDeleteCascades) {
+            cascade.deleteInZone(worldName, boundsMin, boundsMax);
+        }
+    }
+
+    /**
+     * Copy a table out of the separate database file older versions kept it in, then set
+     * that file aside. Columns missing from the old file are left to their defaults.
+     *
+     * @param legacyFileName The old database file, e.g. zones.db
+     * @param table The table to copy, which must already exist in this database
+     */
+    public void importLegacyTable(String legacyFileName, String table) throws SQLException {
+        Path legacyPath = dataDirectory.resolve(legacyFileName);
+        if (!Files.exists(legacyPath)) return;
+
+        Connection conn = getConnection();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ATTACH DATABASE '" + legacyPath.toAbsolutePath().toString().replace("'", "''") + "' AS legacy");
+            try {
+                Set<String> columns = columnsOf(stmt, "main", table);
+                columns.retainAll(columnsOf(stmt, "legacy", table));
+                if (!columns.isEmpty()) {
+                    String columnList = String.join(", ", columns);
+                    int imported = stmt.executeUpdate("INSERT OR IGNORE INTO main.%s (%s) SELECT %s FROM legacy.%s".formatted(table, columnList, columnList, table));
+                    LOGGER.atInfo().log("Imported %d rows of '%s' from %s".formatted(imported, table, legacyFileName));
+                }
+            } finally {
+                stmt.execute("DETACH DATABASE legacy");
+            }
+        }
+
+        try {
+            Files.move(legacyPath, legacyPath.resolveSibling(legacyFileName + ".migrated"));
+        } catch (IOException e) {
+            LOGGER.atWarning().log("Imported %s but could not set it aside, it will be imported again: %s".formatted(legacyFileName, e.getMessage()));
+        }
+    }
+
+    private static Set<String> columnsOf(Statement stmt, String schema, String table) throws SQLException {
+        Set<String> columns = new LinkedHashSet<>();
+        try (ResultSet rs = stmt.executeQuery("PRAGMA %s.table_info(%s)".formatted(schema, table))) {
+            while (rs.next()) {
+                columns.add(rs.getString("name"));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Close the connection once every queued statement has run.
+     */
+    public void close() {
+        try {
+            io.run(() -> {
+                for (PreparedStatement stmt : statements.values()) {
+                    stmt.close();
+                }
+                statements.clear();
+                if (connection != null) connection.close();
+            });
+        } catch (Exception e) {
+            LOGGER.atWarning().log("Error closing database: " + e.getMessage());
+        }
+        io.close();
+    }
+}
@@ -0,0 +1,106 @@
+package com.apophisgames.rustyraiding.util;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Single-writer wrapper for any repository interface.
+ *
+ * <p>Every call to the delegate runs on the database's {@link DatabaseExecutor} thread,
+ * so the connection is only ever touched by that thread. Sync calls wait for their turn.
+ * Calls returning a {@link CompletableFuture} are queued instead, the delegate's version
+ * runs on the I/O thread and the future completes there. Methods marked {@link CallerThread}
+ * only touch memory and run on the calling thread.
+ *
+ * <p>One proxy serves every repository, so a method added to an interface is serialized
+ * without a wrapper to update.
+ */
+public final class SerializedRepository implements InvocationHandler {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    /**
+     * Marks a repository method that runs on the calling thread rather than the I/O thread.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.METHOD)
+    public @interface CallerThread {
+    }
+
+    private final Class<?> type;
+    private final Object delegate;
+    private final DatabaseExecutor io;
+
+    private SerializedRepository(Class<?> type, Object delegate, DatabaseExecutor io) {
+        this.type = type;
+        this.delegate = delegate;
+        this.io = io;
+    }
+
+    /**
+     * @param type The repository interface
+     * @param delegate The repository to serialize
+     * @param io The executor of the database the delegate uses, see {@link RaidingDatabase#getExecutor()}
+     */
+    public static <T> T wrap(Class<T> type, T delegate, DatabaseExecutor io) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new SerializedRepository(type, delegate, io)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return switch (method.getName()) {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                default -> "Serialized" + delegate;
+            };
+        }
+
+        if (method.isAnnotationPresent(CallerThread.class)) {
+            return invokeDelegate(method, args);
+        }
+
+        if (method.getReturnType() == CompletableFuture.class) {
+            // The delegate's version runs inline, see DatabaseExecutor#inline
+            return io.submit(() -> {
+                try {
+                    return ((CompletableFuture<?>) invokeDelegate(method, args)).join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof Exception cause) throw cause;
+                    throw e;
+                }
+            });
+        }
+
+        try {
+            return io.call(() -> invokeDelegate(method, args));
+        } catch (Exception e) {
+            // Methods without checked exceptions, like close, log their failure instead
+            if (method.getExceptionTypes().length == 0 && method.getReturnType() == void.class) {
+                LOGGER.atSevere().withCause(e).log("Failed to call %s on %s".formatted(method.getName(), type.getSimpleName()));
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private Object invokeDelegate(Method method, Object[] args) throws Exception {
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            if (e.getCause() instanceof Error error) throw error;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.apophisgames.rustyraiding.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry that interns world names into dense int ids.
+ *
+ * <p>Ids start at 0 and are never reused for the lifetime of the server, so per-world
+ * state can live in arrays indexed by id (see {@link WorldTable}) instead of maps keyed
+ * by name. Every name also gets one canonical String instance, shared by all records
+ * loaded for that world.
+ */
+public final class WorldIds {
+
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    // Id -> canonical name, guarded by WorldIds.class for writes
+    private static volatile String[] names = new String[8];
+    private static int count;
+
+    private WorldIds() {
+    }
+
+    /**
+     * Get the id of a world, registering it on first use.
+     */
+    public static int of(String worldName) {
+        Integer id = ids.get(worldName);
+        return id != null ? id : register(worldName);
+    }
+
+    /**
+     * Get the name of a registered world.
+     */
+    public static String nameOf(int worldId) {
+        String[] current = names;
+        if (worldId < 0 || worldId >= current.length || current[worldId] == null) {
+            throw new IllegalArgumentException("Unknown world id: " + worldId);
+        }
+        return current[worldId];
+    }
+
+    /**
+     * Get the canonical instance of a world name, registering it on first use.
+     */
+    public static String intern(String worldName) {
+        return nameOf(of(worldName));
+    }
+
+    private static synchronized int register(String worldName) {
+        Integer existing = ids.get(worldName);
+        if (existing != null) return existing;
+
+        int id = count++;
+        String[] grown = names;
+        if (id >= grown.length) {
+            grown = Arrays.copyOf(grown, grown.length * 2);
+        } else {
+            grown = grown.clone();
+        }
+        grown[id] = worldName;
+        // Publish the name before the id so readers never see an id without its name
+        names = grown;
+        ids.put(worldName, id);
+        return id;
+    }
+}
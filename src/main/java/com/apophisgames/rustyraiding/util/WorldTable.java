@@ -0,0 +1,100 @@
+package com.apophisgames.rustyraiding.util;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Per-world state indexed by {@link WorldIds} id.
+ *
+ * <p>Reads are a bounds check and an array load. Values are owned by an {@link AsyncLoadingCache},
+ * the array mirrors the loaded ones. Loads hold no lock, so a slow world never blocks another,
+ * and writes to a world still loading are applied once it loads, see {@link #whenLoaded}.
+ *
+ * @param <V> Value type
+ */
+public final class WorldTable<V> {
+
+    private final AsyncLoadingCache<Integer, V> loads = new AsyncLoadingCache<>();
+    private volatile AtomicReferenceArray<V> slots = new AtomicReferenceArray<>(8);
+
+    @Nullable
+    public V get(int worldId) {
+        AtomicReferenceArray<V> current = slots;
+        return worldId < current.length() ? current.get(worldId) : null;
+    }
+
+    public synchronized void put(int worldId, V value) {
+        loads.put(worldId, value);
+        ensureCapacity(worldId);
+        slots.set(worldId, value);
+    }
+
+    /**
+     * @return The removed value, or null if there was none
+     */
+    @Nullable
+    public synchronized V remove(int worldId) {
+        loads.remove(worldId);
+        AtomicReferenceArray<V> current = slots;
+        return worldId < current.length() ? current.getAndSet(worldId, null) : null;
+    }
+
+    /**
+     * Get the value of a world, loading it on first use. Concurrent callers for the same
+     * world wait for its load, callers for other worlds do not. A failed load is retried
+     * after a backoff, see {@link AsyncLoadingCache}.
+     */
+    public V computeIfAbsent(int worldId, Loader<V> loader) throws Exception {
+        V value = get(worldId);
+        if (value != null) return value;
+
+        value = loads.get(worldId, loader::load);
+        synchronized (this) {
+            // Only publish if the world was not removed or replaced during the load
+            if (loads.getIfPresent(worldId) == value) {
+                ensureCapacity(worldId);
+                slots.set(worldId, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Apply a write to the value of a world if it is loaded, or as soon as it loads if it is
+     * loading. Does nothing for a world not in the table, its load reads the write from storage.
+     */
+    public void whenLoaded(int worldId, Consumer<? super V> write) {
+        loads.whenLoaded(worldId, write);
+    }
+
+    /**
+     * Apply a write to every value, loaded or still loading, like {@link #whenLoaded}.
+     */
+    public void forEach(Consumer<? super V> write) {
+        loads.forEach(write);
+    }
+
+    public synchronized void clear() {
+        loads.clear();
+        slots = new AtomicReferenceArray<>(8);
+    }
+
+    private void ensureCapacity(int worldId) {
+        AtomicReferenceArray<V> current = slots;
+        if (worldId < current.length()) return;
+
+        int capacity = current.length();
+        while (capacity <= worldId) capacity *= 2;
+        AtomicReferenceArray<V> grown = new AtomicReferenceArray<>(capacity);
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        slots = grown;
+    }
+
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load(int worldId) throws Exception;
+    }
+}
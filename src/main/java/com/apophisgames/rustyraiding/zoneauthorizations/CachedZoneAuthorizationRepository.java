@@ -1,19 +1,32 @@
 package com.apophisgames.rustyraiding.zoneauthorizations;
 
+import com.apophisgames.rustyraiding.util.AsyncLoadingCache;
+import com.apophisgames.rustyraiding.util.CopyOnWriteIntSet;
+import com.apophisgames.rustyraiding.util.PlayerIds;
 import com.hypixel.hytale.logger.HytaleLogger;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * Lazy Caching wrapper for IZoneRepository.
+ * Lazy Caching wrapper for IAuthRepository.
  *
- * <p>Zones are loaded from the delegate repository only when requested per world.
- * Writes are updated in memory if the world is currently cached.
+ * <p>Authorizations are loaded from the delegate repository only when requested, per zone
+ * and per player. Writes are updated in memory for whichever zones and players are cached,
+ * or applied once they load if they are loading.
+ *
+ * <p>Each zone's members are held as a sorted set of {@link PlayerIds}, so a membership
+ * check on block events is a binary search over the zone's own members, and memory follows
+ * the member count rather than the number of players the server has seen. Full authorization
+ * records (with display names) are only needed by the UI and commands, so they are read
+ * through from the delegate.
  */
 public class CachedZoneAuthorizationRepository implements IAuthRepository {
 
@@ -21,8 +34,11 @@ public class CachedZoneAuthorizationRepository implements IAuthRepository {
 
     private final IAuthRepository delegate;
 
-    // Map of zone ids to player ids
-    private final Map<String, CopyOnWriteArrayList<String>> cache = new ConcurrentHashMap<>();
+    // Map of zone ids to the player ids authorized in them
+    private final AsyncLoadingCache<String, CopyOnWriteIntSet> cache = new AsyncLoadingCache<>();
+
+    // Reverse index: map of player UUIDs to the zone ids they are authorized in
+    private final AsyncLoadingCache<UUID, Set<String>> zonesByPlayer = new AsyncLoadingCache<>();
 
     public CachedZoneAuthorizationRepository(IAuthRepository delegate) {
         this.delegate = delegate;
@@ -35,43 +51,80 @@ public class CachedZoneAuthorizationRepository implements IAuthRepository {
     }
 
     @Override
-    public Map<String, List<String>> loadAll() throws Exception {
+    public Map<String, List<ZoneAuthorization>> loadAll() throws Exception {
         // Delegate and populate cache (optional, but good for consistency if someone calls this)
-        Map<String, List<String>> zoneAuths = delegate.loadAll();
+        Map<String, List<ZoneAuthorization>> zoneAuths = delegate.loadAll();
         cache.clear();
-        zoneAuths.forEach((zoneId, playerIds) -> cache.put(zoneId, new CopyOnWriteArrayList<>(playerIds)));
+        zonesByPlayer.clear();
+        Map<UUID, Set<String>> players = new HashMap<>();
+        zoneAuths.forEach((zoneId, auths) -> {
+            cache.put(zoneId, toMemberSet(auths));
+            for (ZoneAuthorization auth : auths) {
+                if (auth.playerUuid() != null)
+                    players.computeIfAbsent(auth.playerUuid(), k -> ConcurrentHashMap.newKeySet()).add(zoneId);
+            }
+        });
+        players.forEach(zonesByPlayer::put);
 
         // Return defensive copy
-        Map<String, List<String>> result = new HashMap<>();
-        zoneAuths.forEach((zoneId, playerIds) -> result.put(zoneId, new ArrayList<>(playerIds)));
+        Map<String, List<ZoneAuthorization>> result = new HashMap<>();
+        zoneAuths.forEach((zoneId, auths) -> result.put(zoneId, new ArrayList<>(auths)));
         return result;
     }
 
+    @Override
+    public List<ZoneAuthorization> findByZone(String zoneId) throws Exception {
+        // Records are only needed for UI and commands, read them through
+        return delegate.findByZone(zoneId);
+    }
 
     @Override
-    public List<String> findByZone(String zoneId) throws Exception {
-        // Double-checked locking via computeIfAbsent is simplest for lazy loading
-        // Note: computeIfAbsent on ConcurrentHashMap behaves correctly (atomic per key)
-
-        // We need to handle checked exceptions from delegate inside the lambda
-        // This wrapper approach propagates the exception out
-        try {
-            return cache.computeIfAbsent(zoneId, k -> {
-                try {
-                    List<String> playerIds = delegate.findByZone(k);
-                    return new CopyOnWriteArrayList<>(playerIds);
-                } catch (RuntimeException e) {
-                    throw e;
-                } catch (Exception e) {
-                    throw new RuntimeException("WrappedException", e);
-                }
-            });
-        } catch (RuntimeException e) {
-            if ("WrappedException".equals(e.getMessage()) && e.getCause() instanceof Exception) {
-                throw (Exception) e.getCause();
-            }
-            throw e;
+    public CompletableFuture<List<ZoneAuthorization>> findByZoneAsync(String zoneId) {
+        return delegate.findByZoneAsync(zoneId);
+    }
+
+    @Override
+    public List<String> findByPlayer(UUID playerUuid) throws Exception {
+        return new ArrayList<>(getPlayer(playerUuid));
+    }
+
+    @Override
+    public int preloadZone(String zoneId) throws Exception {
+        return getZone(zoneId).size();
+    }
+
+    @Override
+    public boolean isAuthorized(String zoneId, int playerId) throws Exception {
+        return getZone(zoneId).contains(playerId);
+    }
+
+    private CopyOnWriteIntSet getZone(String zoneId) throws Exception {
+        // Fast path: avoid allocating the loader lambda once the zone is cached
+        CopyOnWriteIntSet cached = cache.getIfPresent(zoneId);
+        if (cached != null) return cached;
+
+        return cache.get(zoneId, k -> toMemberSet(delegate.findByZone(k)));
+    }
+
+    private Set<String> getPlayer(UUID playerUuid) throws Exception {
+        Set<String> cached = zonesByPlayer.getIfPresent(playerUuid);
+        if (cached != null) return cached;
+
+        return zonesByPlayer.get(playerUuid, k -> {
+            Set<String> zoneIds = ConcurrentHashMap.newKeySet();
+            zoneIds.addAll(delegate.findByPlayer(k));
+            return zoneIds;
+        });
+    }
+
+    private static CopyOnWriteIntSet toMemberSet(Collection<ZoneAuthorization> auths) {
+        CopyOnWriteIntSet members = new CopyOnWriteIntSet();
+        for (ZoneAuthorization auth : auths) {
+            // Legacy rows without a UUID only count once the player connects and they are migrated
+            if (auth.playerUuid() != null)
+                members.add(PlayerIds.of(auth.playerUuid()));
         }
+        return members;
     }
 
     @Override
@@ -80,12 +133,23 @@ public class CachedZoneAuthorizationRepository implements IAuthRepository {
         delegate.save(zoneAuthorization);
 
         // 2. Update Cache if present (Write-Through)
-        // If not present, we don't load it. Next findByWorld will fetch the new state.
-        cache.computeIfPresent(zoneAuthorization.zoneId(), (key, playerIds) -> {
-            if (!playerIds.contains(zoneAuthorization.playerId()))
-                playerIds.add(zoneAuthorization.playerId());
-            return playerIds;
-        });
+        cacheSaved(zoneAuthorization);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(ZoneAuthorization zoneAuthorization) {
+        // Cache follows once the delegate has stored the authorization
+        return delegate.saveAsync(zoneAuthorization).thenRun(() -> cacheSaved(zoneAuthorization));
+    }
+
+    private void cacheSaved(ZoneAuthorization zoneAuthorization) {
+        // If not present, we don't load it. Next lookup will fetch the new state.
+        UUID playerUuid = zoneAuthorization.playerUuid();
+        if (playerUuid == null) return;
+
+        int playerId = PlayerIds.of(playerUuid);
+        cache.whenLoaded(zoneAuthorization.zoneId(), members -> members.add(playerId));
+        zonesByPlayer.whenLoaded(playerUuid, zoneIds -> zoneIds.add(zoneAuthorization.zoneId()));
     }
 
     @Override
@@ -94,26 +158,77 @@ public class CachedZoneAuthorizationRepository implements IAuthRepository {
         delegate.delete(zoneId);
 
         // 2. Update the Cache
-        if (cache.containsKey(zoneId))
-            cache.remove(zoneId);
+        cacheZoneDeleted(zoneId);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(String zoneId) {
+        return delegate.deleteAsync(zoneId).thenRun(() -> cacheZoneDeleted(zoneId));
     }
 
     @Override
-    public void delete(String zoneId, String playerId) throws Exception {
+    public void evictZone(String zoneId) {
+        delegate.evictZone(zoneId);
+        // Storage keeps the authorizations while a zone in another world has the same name,
+        // so read them back rather than assume they are gone
+        cache.remove(zoneId);
+        zonesByPlayer.clear();
+    }
+
+    private void cacheZoneDeleted(String zoneId) {
+        cache.remove(zoneId);
+        // The zone may not have been cached, so clear it from every cached or loading player
+        zonesByPlayer.forEach(zoneIds -> zoneIds.remove(zoneId));
+    }
+
+    @Override
+    public void delete(ZoneAuthorization zoneAuthorization) throws Exception {
         // 1. Update Delegate
-        delegate.delete(zoneId, playerId);
+        delegate.delete(zoneAuthorization);
 
         // 2. Update the Cache
-        cache.computeIfPresent(zoneId, (key, playerIds) -> {
-            if (playerIds.contains(playerId))
-                playerIds.remove(playerId);
-            return playerIds;
-        });
+        cacheDeleted(zoneAuthorization);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(ZoneAuthorization zoneAuthorization) {
+        return delegate.deleteAsync(zoneAuthorization).thenRun(() -> cacheDeleted(zoneAuthorization));
+    }
+
+    private void cacheDeleted(ZoneAuthorization zoneAuthorization) {
+        UUID playerUuid = zoneAuthorization.playerUuid();
+        if (playerUuid == null) return;
+
+        int playerId = PlayerIds.of(playerUuid);
+        cache.whenLoaded(zoneAuthorization.zoneId(), members -> members.remove(playerId));
+        zonesByPlayer.whenLoaded(playerUuid, zoneIds -> zoneIds.remove(zoneAuthorization.zoneId()));
+    }
+
+    @Override
+    public List<String> findLegacyPlayerNames() throws Exception {
+        // Legacy rows are not cached, they grant nothing until migrated
+        return delegate.findLegacyPlayerNames();
+    }
+
+    @Override
+    public List<String> migrateLegacy(UUID playerUuid, String playerName) throws Exception {
+        // 1. Update Delegate
+        List<String> migratedZoneIds = delegate.migrateLegacy(playerUuid, playerName);
+
+        // 2. Update the Cache
+        int playerId = PlayerIds.of(playerUuid);
+        for (String zoneId : migratedZoneIds) {
+            cache.whenLoaded(zoneId, members -> members.add(playerId));
+        }
+        zonesByPlayer.whenLoaded(playerUuid, zoneIds -> zoneIds.addAll(migratedZoneIds));
+
+        return migratedZoneIds;
     }
 
     @Override
     public void close() {
         delegate.close();
         cache.clear();
+        zonesByPlayer.clear();
     }
 }
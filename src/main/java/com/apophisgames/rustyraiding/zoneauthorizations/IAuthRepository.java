@@ -1,7 +1,13 @@
 package com.apophisgames.rustyraiding.zoneauthorizations;
 
+import com.apophisgames.rustyraiding.util.DatabaseExecutor;
+import com.apophisgames.rustyraiding.util.SerializedRepository;
+import com.apophisgames.rustyraiding.util.PlayerIds;
+
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Repository for persisting Zone Authorizations.
@@ -14,16 +20,40 @@ public interface IAuthRepository {
 
     /**
      * Load all zones authorizations from storage.
-     * @return Map of zone names to player Ids
+     * @return Map of zone names to authorizations
+     */
+    Map<String, List<ZoneAuthorization>> loadAll() throws Exception;
+
+    /**
+     * Find the authorizations in a Zone
+     * @param zoneId The id of the Zone
+     * @return List of authorizations in the zone
+     */
+    List<ZoneAuthorization> findByZone(String zoneId) throws Exception;
+
+    /**
+     * Find the zones a player is authorized in
+     * @param playerUuid The UUID of the player
+     * @return List of zone ids the player is authed in
+     */
+    List<String> findByPlayer(UUID playerUuid) throws Exception;
+
+    /**
+     * Load the authorizations of a Zone ahead of their first use. Storage that does not load lazily has nothing to do.
+     * @param zoneId The id of the Zone
+     * @return The number of players authorized in the zone
      */
-    Map<String, List<String>> loadAll() throws Exception;
+    default int preloadZone(String zoneId) throws Exception {
+        return findByZone(zoneId).size();
+    }
 
     /**
-     * Find a list of authorized player ids in a Zone
+     * Check whether a player is authorized in a Zone. Hot path for block events.
      * @param zoneId The id of the Zone
-     * @return List of player ids that are authed in the zone
+     * @param playerId The player id, see {@link PlayerIds}
+     * @return true if the player is authed in the zone
      */
-    List<String> findByZone(String zoneId) throws Exception;
+    boolean isAuthorized(String zoneId, int playerId) throws Exception;
 
     /**
      * Save (create or update) a zone authorization.
@@ -32,11 +62,10 @@ public interface IAuthRepository {
     void save(ZoneAuthorization zoneAuthorization) throws Exception;
 
     /**
-     * Delete a zone authorization in a specific zone
-     * @param zoneId The id of the zone to delete the authorization from
-     * @param playerId The id of the player to remove
+     * Delete a single zone authorization
+     * @param zoneAuthorization The zone authorization to delete
      */
-    void delete(String zoneId, String playerId) throws Exception;
+    void delete(ZoneAuthorization zoneAuthorization) throws Exception;
 
     /**
      * Delete all zone authorizations for a specific zone
@@ -44,6 +73,75 @@ public interface IAuthRepository {
      */
     void delete(String zoneId) throws Exception;
 
+    /**
+     * Find the names legacy authorizations without a UUID are stored under.
+     * @return The distinct names, see {@link LegacyAuthorizationMigration}
+     */
+    List<String> findLegacyPlayerNames() throws Exception;
+
+    /**
+     * Attach a player's UUID to the legacy authorizations stored under one of their names.
+     * @param playerUuid The UUID of the player
+     * @param playerName The name the legacy rows were stored under, a display name or username
+     * @return List of zone ids whose authorization was migrated
+     */
+    List<String> migrateLegacy(UUID playerUuid, String playerName) throws Exception;
+
+    /**
+     * Find the authorizations in a Zone without blocking the caller.
+     * @param zoneId The id of the Zone
+     * @return Future of the authorizations in the zone, completed on the storage thread
+     */
+    default CompletableFuture<List<ZoneAuthorization>> findByZoneAsync(String zoneId) {
+        return DatabaseExecutor.inline(() -> findByZone(zoneId));
+    }
+
+    /**
+     * Save (create or update) a zone authorization without blocking the caller.
+     * @param zoneAuthorization The zone authorization to save
+     * @return Future completed once the authorization is stored, on the storage thread
+     */
+    default CompletableFuture<Void> saveAsync(ZoneAuthorization zoneAuthorization) {
+        return DatabaseExecutor.inline(() -> {
+            save(zoneAuthorization);
+            return null;
+        });
+    }
+
+    /**
+     * Delete a single zone authorization without blocking the caller.
+     * @param zoneAuthorization The zone authorization to delete
+     * @return Future completed once the authorization is deleted, on the storage thread
+     */
+    default CompletableFuture<Void> deleteAsync(ZoneAuthorization zoneAuthorization) {
+        return DatabaseExecutor.inline(() -> {
+            delete(zoneAuthorization);
+            return null;
+        });
+    }
+
+    /**
+     * Delete all zone authorizations for a specific zone without blocking the caller.
+     * @param zoneId The id of the zone
+     * @return Future completed once the authorizations are deleted, on the storage thread
+     */
+    default CompletableFuture<Void> deleteAsync(String zoneId) {
+        return DatabaseExecutor.inline(() -> {
+            delete(zoneId);
+            return null;
+        });
+    }
+
+    /**
+     * Forget any state held in memory for a zone whose authorizations storage may have removed
+     * itself, when the zone was deleted. They are kept while a zone of the same name is left in
+     * another world, so the next lookup reads them back from storage.
+     * @param zoneId The id of the deleted zone
+     */
+    @SerializedRepository.CallerThread
+    default void evictZone(String zoneId) {
+    }
+
     /**
      * Close any resources (connections, files).
      */
@@ -0,0 +1,146 @@
+package com.apophisgames.rustyraiding.zoneauthorizations;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Background migration of the authorizations older versions stored under a player's name.
+ *
+ * <p>Legacy rows only carry a name: the display name the player had when authorized, or the
+ * name /raiding grantplayerauth was given for an offline player. A name is only tied to a UUID
+ * by the username a player connects with, never by a display name, which another player could
+ * share. The migration runs on the background executor in two parts. At startup it loads the
+ * names still waiting and migrates those of players already online. After that, the username
+ * of every player who connects is checked against the names still waiting, and migrated on the
+ * background executor when it matches. Rows stored under a display name that is not also the
+ * player's username stay unmigrated until the authorization is granted again.
+ *
+ * <p>Once no names are left, seeing a player costs a volatile read. Legacy rows grant nothing
+ * until migrated, authorization checks only test UUIDs.
+ */
+public final class LegacyAuthorizationMigration {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    private final IAuthRepository authRepository;
+    private final Executor executor;
+    private final Function<String, UUID> findOnlinePlayer;
+    private final Runnable onMigrated;
+
+    // Names with legacy rows left to migrate
+    private final Set<String> pendingNames = ConcurrentHashMap.newKeySet();
+    // Usernames of players who connected before the pending names were loaded, checked once they are
+    private final Set<String> connectedWhileLoading = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded;
+    private volatile boolean finished;
+
+    /**
+     * @param executor The executor migrations run on, single threaded so a connect runs after the startup load
+     * @param findOnlinePlayer Finds the UUID of an online player by username, or null if none is online
+     * @param onMigrated Called after authorizations were migrated, to drop decisions made without them
+     */
+    public LegacyAuthorizationMigration(IAuthRepository authRepository, Executor executor,
+                                        Function<String, UUID> findOnlinePlayer, Runnable onMigrated) {
+        this.authRepository = authRepository;
+        this.executor = executor;
+        this.findOnlinePlayer = findOnlinePlayer;
+        this.onMigrated = onMigrated;
+    }
+
+    /**
+     * Load the names with legacy rows, and migrate those of players already online.
+     */
+    public void start() {
+        executor.execute(() -> {
+            try {
+                pendingNames.addAll(authRepository.findLegacyPlayerNames());
+            } catch (Exception e) {
+                // Without the names nothing can be matched, the next start tries again
+                LOGGER.atSevere().withCause(e).log("Failed to load legacy authorizations, they will migrate after a restart");
+                loaded = true;
+                finished = true;
+                return;
+            }
+            loaded = true;
+            connectedWhileLoading.clear();
+
+            synchronized (this) {
+                if (pendingNames.isEmpty()) {
+                    finished = true;
+                    return;
+                }
+            }
+            LOGGER.atInfo().log("Migrating legacy authorizations of %d players as they connect".formatted(pendingNames.size()));
+
+            for (String name : List.copyOf(pendingNames)) {
+                UUID playerUuid = findOnlinePlayer.apply(name);
+                if (playerUuid != null) migrate(playerUuid, name);
+            }
+        });
+    }
+
+    /**
+     * Note the username of a player who connected, and migrate the legacy authorizations stored under it.
+     */
+    public void playerConnected(UUID playerUuid, @Nullable String name) {
+        if (finished || name == null) return;
+
+        if (!loaded) {
+            // The names are still loading, check this player once they are
+            if (connectedWhileLoading.add(name))
+                executor.execute(() -> migrate(playerUuid, name));
+            return;
+        }
+        if (pendingNames.contains(name))
+            executor.execute(() -> migrate(playerUuid, name));
+    }
+
+    /**
+     * Track a name a legacy row was just stored under, for a player who was offline.
+     */
+    public synchronized void addPending(String name) {
+        pendingNames.add(name);
+        finished = false;
+    }
+
+    /**
+     * @return true once no legacy rows are left to migrate
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    private void migrate(UUID playerUuid, String name) {
+        // Only one connect migrates a name
+        if (!pendingNames.remove(name)) return;
+
+        try {
+            List<String> zoneIds = authRepository.migrateLegacy(playerUuid, name);
+            if (!zoneIds.isEmpty()) {
+                onMigrated.run();
+                LOGGER.atInfo().log("Migrated %d legacy authorizations for player '%s'".formatted(zoneIds.size(), name));
+            }
+        } catch (Exception e) {
+            // Try again the next time the player connects
+            pendingNames.add(name);
+            LOGGER.atSevere().withCause(e).log("Failed to migrate legacy authorizations for player: " + name);
+        }
+
+        finishIfDone();
+    }
+
+    // Synchronized with addPending, so a name added meanwhile is not left behind
+    private synchronized void finishIfDone() {
+        if (!finished && pendingNames.isEmpty()) {
+            finished = true;
+            LOGGER.atInfo().log("Finished migrating legacy authorizations");
+        }
+    }
+}
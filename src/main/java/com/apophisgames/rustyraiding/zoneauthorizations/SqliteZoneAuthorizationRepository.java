@@ -1,15 +1,16 @@
 package com.apophisgames.rustyraiding.zoneauthorizations;
 
+import com.apophisgames.rustyraiding.util.RaidingDatabase;
+import com.apophisgames.rustyraiding.util.PlayerIds;
 import com.hypixel.hytale.logger.HytaleLogger;
 
 import javax.annotation.Nonnull;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * SQLite implementation of IZoneRepository.
@@ -18,64 +19,65 @@ public class SqliteZoneAuthorizationRepository implements IAuthRepository {
 
     private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
 
-    private final Path dataDirectory;
-    private Connection connection;
+    private final RaidingDatabase database;
 
-    public SqliteZoneAuthorizationRepository(@Nonnull Path dataDirectory) {
-        this.dataDirectory = dataDirectory;
+    public SqliteZoneAuthorizationRepository(@Nonnull RaidingDatabase database) {
+        this.database = database;
     }
 
     @Override
     public void initialize() throws Exception {
-        Files.createDirectories(dataDirectory);
-        openDatabase();
         createSchema();
-    }
-
-    private void openDatabase() throws SQLException {
-        if (connection != null && !connection.isClosed()) {
-            return;
-        }
-
-        try {
-            Class.forName("org.sqlite.JDBC");
-            Path dbPath = dataDirectory.resolve("zoneauths.db");
-            String url = "jdbc:sqlite:" + dbPath.toAbsolutePath().toString();
-            connection = DriverManager.getConnection(url);
-            LOGGER.atInfo().log("Connected to zone authorizations database: " + dbPath);
-        } catch (ClassNotFoundException e) {
-            throw new SQLException("SQLite JDBC driver not found", e);
-        }
+        database.importLegacyTable("zoneauths.db", "zoneauths");
     }
 
     private Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            openDatabase();
-        }
-        return connection;
+        return database.getConnection();
     }
 
     private void createSchema() throws SQLException {
+        // player_id holds the display name the player had when authorized,
+        // player_uuid identifies the player and is null for legacy rows until they are migrated
         String sql = """
             CREATE TABLE IF NOT EXISTS zoneauths (
                 id TEXT PRIMARY KEY,
                 zone_id TEXT NOT NULL,
                 player_id TEXT NOT NULL,
-                
+                player_uuid TEXT,
+
                 UNIQUE(zone_id, player_id)
             )
             """;
 
         try (Statement stmt = getConnection().createStatement()) {
             stmt.execute(sql);
+            if (!hasColumn("zoneauths", "player_uuid")) {
+                stmt.execute("ALTER TABLE zoneauths ADD COLUMN player_uuid TEXT");
+                LOGGER.atInfo().log("Added player_uuid column to zoneauths, legacy rows migrate in the background as players are seen");
+            }
             // Index for faster lookups by zone id
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_zone_auths ON zoneauths(zone_id)");
+            // Index for faster lookups by player, replaces the old display name index
+            stmt.execute("DROP INDEX IF EXISTS idx_zone_auths_player");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_zone_auths_player_uuid ON zoneauths(player_uuid)");
+            // A player can only be authorized once per zone (NULL legacy uuids do not conflict)
+            stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_zone_auths_zone_uuid ON zoneauths(zone_id, player_uuid)");
         }
     }
 
+    private boolean hasColumn(String table, String column) throws SQLException {
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equals(rs.getString("name"))) return true;
+            }
+        }
+        return false;
+    }
+
     @Override
-    public Map<String, List<String>> loadAll() throws Exception {
-        Map<String, List<String>> result = new HashMap<>();
+    public Map<String, List<ZoneAuthorization>> loadAll() throws Exception {
+        Map<String, List<ZoneAuthorization>> result = new HashMap<>();
         String sql = "SELECT * FROM zoneauths";
 
         try (Statement stmt = getConnection().createStatement();
@@ -83,82 +85,156 @@ public class SqliteZoneAuthorizationRepository implements IAuthRepository {
 
             while (rs.next()) {
                 ZoneAuthorization auth = mapToZoneAuthorization(rs);
-                result.computeIfAbsent(auth.zoneId(), k -> new ArrayList<>()).add(auth.playerId());
+                result.computeIfAbsent(auth.zoneId(), k -> new ArrayList<>()).add(auth);
             }
         }
         return result;
     }
 
     @Override
-    public List<String> findByZone(String zoneId) throws Exception {
+    public List<ZoneAuthorization> findByZone(String zoneId) throws Exception {
         String sql = "SELECT * FROM zoneauths WHERE zone_id = ?";
+        List<ZoneAuthorization> result = new ArrayList<>();
+
+        PreparedStatement stmt = database.prepare(sql);
+        stmt.setString(1, zoneId);
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                result.add(mapToZoneAuthorization(rs));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> findByPlayer(UUID playerUuid) throws Exception {
+        String sql = "SELECT zone_id FROM zoneauths WHERE player_uuid = ?";
         List<String> result = new ArrayList<>();
 
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, zoneId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    result.add(mapToZoneAuthorization(rs).playerId());
-                }
+        PreparedStatement stmt = database.prepare(sql);
+        stmt.setString(1, playerUuid.toString());
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                result.add(rs.getString("zone_id"));
             }
         }
         return result;
     }
 
+    @Override
+    public boolean isAuthorized(String zoneId, int playerId) throws Exception {
+        String sql = "SELECT 1 FROM zoneauths WHERE zone_id = ? AND player_uuid = ? LIMIT 1";
+
+        PreparedStatement stmt = database.prepare(sql);
+        stmt.setString(1, zoneId);
+        stmt.setString(2, PlayerIds.uuidOf(playerId).toString());
+        try (ResultSet rs = stmt.executeQuery()) {
+            return rs.next();
+        }
+    }
+
     @Override
     public void save(ZoneAuthorization zoneAuthorization) throws Exception {
         // Upsert logic (Insert or Replace)
         String sql = """
-            INSERT INTO zoneauths (id, zone_id, player_id)
-            VALUES (?, ?, ?)
+            INSERT INTO zoneauths (id, zone_id, player_id, player_uuid)
+            VALUES (?, ?, ?, ?)
             ON CONFLICT(id) DO UPDATE SET
                 zone_id=excluded.zone_id,
-                player_id=excluded.player_id
+                player_id=excluded.player_id,
+                player_uuid=excluded.player_uuid
             """;
 
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, zoneAuthorization.internalId());
-            stmt.setString(2, zoneAuthorization.zoneId());
-            stmt.setString(3, zoneAuthorization.playerId());
+        PreparedStatement stmt = database.prepare(sql);
+        stmt.setString(1, zoneAuthorization.internalId());
+        stmt.setString(2, zoneAuthorization.zoneId());
+        stmt.setString(3, zoneAuthorization.playerName());
+        stmt.setString(4, zoneAuthorization.playerUuid() != null ? zoneAuthorization.playerUuid().toString() : null);
 
-            stmt.executeUpdate();
-        }
+        stmt.executeUpdate();
     }
 
     @Override
     public void delete(String zoneId) throws Exception {
         String sql = "DELETE FROM zoneauths WHERE zone_id = ?";
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, zoneId);
-            stmt.executeUpdate();
-        }
+        PreparedStatement stmt = database.prepare(sql);
+        stmt.setString(1, zoneId);
+        stmt.executeUpdate();
     }
 
     @Override
-    public void delete(String zoneId, String playerId) throws Exception {
-        String sql = "DELETE FROM zoneauths WHERE zone_id = ? AND player_id = ?";
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, zoneId);
-            stmt.setString(2, playerId);
-            stmt.executeUpdate();
+    public void delete(ZoneAuthorization zoneAuthorization) throws Exception {
+        String sql = "DELETE FROM zoneauths WHERE id = ?";
+        PreparedStatement stmt = database.prepare(sql);
+        stmt.setString(1, zoneAuthorization.internalId());
+        stmt.executeUpdate();
+    }
+
+    @Override
+    public List<String> findLegacyPlayerNames() throws Exception {
+        String sql = "SELECT DISTINCT player_id FROM zoneauths WHERE player_uuid IS NULL";
+        List<String> result = new ArrayList<>();
+
+        PreparedStatement stmt = database.prepare(sql);
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                result.add(rs.getString("player_id"));
+            }
         }
+        return result;
     }
 
     @Override
-    public void close() {
-        if (connection != null) {
-            try {
-                connection.close();
-            } catch (SQLException e) {
-                LOGGER.atWarning().log("Error closing zoneauths db: " + e.getMessage());
+    public List<String> migrateLegacy(UUID playerUuid, String playerName) throws Exception {
+        List<String> zoneIds = new ArrayList<>();
+        Connection conn = getConnection();
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT zone_id FROM zoneauths WHERE player_uuid IS NULL AND player_id = ?")) {
+                stmt.setString(1, playerName);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        zoneIds.add(rs.getString("zone_id"));
+                    }
+                }
+            }
+
+            if (!zoneIds.isEmpty()) {
+                // Skip zones where the player already has a UUID row, then drop those leftover duplicates
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "UPDATE OR IGNORE zoneauths SET player_uuid = ? WHERE player_uuid IS NULL AND player_id = ?")) {
+                    stmt.setString(1, playerUuid.toString());
+                    stmt.setString(2, playerName);
+                    stmt.executeUpdate();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "DELETE FROM zoneauths WHERE player_uuid IS NULL AND player_id = ?")) {
+                    stmt.setString(1, playerName);
+                    stmt.executeUpdate();
+                }
             }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
         }
+        return zoneIds;
+    }
+
+    @Override
+    public void close() {
+        // The shared connection is closed by RaidingDatabase
     }
 
     private ZoneAuthorization mapToZoneAuthorization(ResultSet rs) throws SQLException {
+        String playerUuid = rs.getString("player_uuid");
         return new ZoneAuthorization(
                 rs.getString("id"),
                 rs.getString("zone_id"),
+                playerUuid != null ? UUID.fromString(playerUuid) : null,
                 rs.getString("player_id")
         );
     }
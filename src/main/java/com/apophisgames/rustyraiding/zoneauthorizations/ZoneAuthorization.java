@@ -1,32 +1,35 @@
 package com.apophisgames.rustyraiding.zoneauthorizations;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.UUID;
 
 /**
- * Represents a defined zone in a world.
+ * Represents a player's authorization in a zone.
  *
  * @param internalId Auto-generated UUID, database primary key
  * @param zoneId Name of the zone the player is authorized in
- * @param playerId Id of the player, however that is defined...
+ * @param playerUuid UUID of the player, null for legacy rows that have not been migrated yet
+ * @param playerName Display name of the player when they were authorized
  */
 public record ZoneAuthorization(
         @Nonnull String internalId,
         @Nonnull String zoneId,
-        @Nonnull String playerId
+        @Nullable UUID playerUuid,
+        @Nonnull String playerName
 
 ) {
     /**
-     * Create a new zone with auto-generated internal ID and default safezone flags (all disabled).
+     * Create a new zone authorization with auto-generated internal ID.
      */
-    public static ZoneAuthorization create(String zoneId, String playerId) {
-        return new ZoneAuthorization(UUID.randomUUID().toString(), zoneId, playerId);
+    public static ZoneAuthorization create(String zoneId, UUID playerUuid, String playerName) {
+        return new ZoneAuthorization(UUID.randomUUID().toString(), zoneId, playerUuid, playerName);
     }
 
     /**
      * Create a copy with updated Ids.
      */
-    public ZoneAuthorization withIds(String zoneId, String playerId) {
-        return new ZoneAuthorization(internalId, zoneId, playerId);
+    public ZoneAuthorization withIds(String zoneId, UUID playerUuid) {
+        return new ZoneAuthorization(internalId, zoneId, playerUuid, playerName);
     }
 }
@@ -1,19 +1,27 @@
 package com.apophisgames.rustyraiding.zones;
 
+import com.apophisgames.rustyraiding.util.WorldIds;
+import com.apophisgames.rustyraiding.util.WorldTable;
 import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.math.vector.Vector3d;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Lazy Caching wrapper for IZoneRepository.
  * 
- * <p>Zones are loaded from the delegate repository only when requested per world.
+ * <p>A world becomes resident when all of its zones are read, through {@link #findByWorld} or
+ * {@link #preloadWorld}. {@link com.apophisgames.rustyraiding.RaidingService} preloads the
+ * configured worlds at startup. Lookups in a resident world are answered from memory.
+ * Lookups in any other world go to the delegate's spatial index, so worlds that are not
+ * preloaded are never loaded whole just to find one zone.
  * Writes are updated in memory if the world is currently cached.
  */
 public class CachedZoneRepository implements IZoneRepository {
@@ -21,9 +29,9 @@ public class CachedZoneRepository implements IZoneRepository {
     private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
 
     private final IZoneRepository delegate;
-    
-    // WorldName -> List of Zones
-    private final Map<String, CopyOnWriteArrayList<Zone>> cache = new ConcurrentHashMap<>();
+
+    // World id -> Zones of that world, with their spatial indexes
+    private final WorldTable<WorldZones> cache = new WorldTable<>();
 
     public CachedZoneRepository(IZoneRepository delegate) {
         this.delegate = delegate;
@@ -40,8 +48,8 @@ public class CachedZoneRepository implements IZoneRepository {
         // Delegate and populate cache (optional, but good for consistency if someone calls this)
         Map<String, List<Zone>> zones = delegate.loadAll();
         cache.clear();
-        zones.forEach((world, list) -> cache.put(world, new CopyOnWriteArrayList<>(list)));
-        
+        zones.forEach((world, list) -> cache.put(WorldIds.of(world), new WorldZones(list)));
+
         // Return defensive copy
         Map<String, List<Zone>> result = new HashMap<>();
         zones.forEach((world, list) -> result.put(world, new ArrayList<>(list)));
@@ -50,36 +58,30 @@ public class CachedZoneRepository implements IZoneRepository {
 
     @Override
     public List<Zone> findByWorld(String worldName) throws Exception {
-        // Double-checked locking via computeIfAbsent is simplest for lazy loading
-        // Note: computeIfAbsent on ConcurrentHashMap behaves correctly (atomic per key)
-        
-        // We need to handle checked exceptions from delegate inside the lambda
-        // This wrapper approach propagates the exception out
-        try {
-            return cache.computeIfAbsent(worldName, k -> {
-                try {
-                    List<Zone> zones = delegate.findByWorld(k);
-                    return new CopyOnWriteArrayList<>(zones);
-                } catch (RuntimeException e) {
-                    throw e;
-                } catch (Exception e) {
-                    throw new RuntimeException("WrappedException", e);
-                }
-            });
-        } catch (RuntimeException e) {
-            if ("WrappedException".equals(e.getMessage()) && e.getCause() instanceof Exception) {
-                throw (Exception) e.getCause();
-            }
-            throw e;
-        }
+        return getWorld(WorldIds.of(worldName)).zones;
+    }
+
+    @Override
+    public List<String> findWorldNames() throws Exception {
+        return delegate.findWorldNames();
+    }
+
+    /**
+     * Get the cached zones of a world, loading them from the delegate on first use.
+     */
+    private WorldZones getWorld(int worldId) throws Exception {
+        // Checked first so lookups in a loaded world do not build the loader, it captures this
+        WorldZones zones = cache.get(worldId);
+        if (zones != null) return zones;
+        return cache.computeIfAbsent(worldId, id -> new WorldZones(delegate.findByWorld(WorldIds.nameOf(id))));
     }
 
     @Override
     public Optional<Zone> findByName(String worldName, String zoneName) throws Exception {
-        // Use findByWorld to leverage the lazy cache
-        List<Zone> zones = findByWorld(worldName);
-        
-        for (Zone zone : zones) {
+        WorldZones world = cache.get(WorldIds.of(worldName));
+        if (world == null) return delegate.findByName(worldName, zoneName);
+
+        for (Zone zone : world.zones) {
             if (zone.zoneName().equals(zoneName)) {
                 return Optional.of(zone);
             }
@@ -87,18 +89,55 @@ public class CachedZoneRepository implements IZoneRepository {
         return Optional.empty();
     }
 
+    @Override
+    @Nullable
+    public Zone findAt(String worldName, Vector3d position) throws Exception {
+        WorldZones world = cache.get(WorldIds.of(worldName));
+        if (world == null) return delegate.findAt(worldName, position);
+        return world.index.find(position.x, position.y, position.z);
+    }
+
+    @Override
+    @Nullable
+    public Zone findAt(int worldId, int x, int y, int z) throws Exception {
+        WorldZones world = cache.get(worldId);
+        if (world == null) return delegate.findAt(worldId, x, y, z);
+        return world.index.find(x, y, z);
+    }
+
+    @Override
+    public List<Zone> findIntersecting(String worldName, Vector3d min, Vector3d max) throws Exception {
+        WorldZones world = cache.get(WorldIds.of(worldName));
+        if (world == null) return delegate.findIntersecting(worldName, min, max);
+        return world.tree.findIntersecting(min.x, min.y, min.z, max.x, max.y, max.z);
+    }
+
+    @Override
+    public List<Zone> findNearest(String worldName, Vector3d position, int count, double maxDistance) throws Exception {
+        WorldZones world = cache.get(WorldIds.of(worldName));
+        if (world == null) return delegate.findNearest(worldName, position, count, maxDistance);
+        return world.tree.findNearest(position.x, position.y, position.z, count, maxDistance);
+    }
+
     @Override
     public void save(Zone zone) throws Exception {
         // 1. Update Delegate (Source of Truth)
         delegate.save(zone);
 
         // 2. Update Cache if present (Write-Through)
+        cacheSaved(zone);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync(Zone zone) {
+        // Cache follows once the delegate has stored the zone
+        return delegate.saveAsync(zone).thenRun(() -> cacheSaved(zone));
+    }
+
+    private void cacheSaved(Zone zone) {
         // If not present, we don't load it. Next findByWorld will fetch the new state.
-        cache.computeIfPresent(zone.worldName(), (key, zones) -> {
-            zones.removeIf(z -> z.internalId().equals(zone.internalId()));
-            zones.add(zone);
-            return zones;
-        });
+        // A world still loading takes the zone once it has loaded
+        cache.whenLoaded(WorldIds.of(zone.worldName()), world -> world.put(zone));
     }
 
     @Override
@@ -107,11 +146,17 @@ public class CachedZoneRepository implements IZoneRepository {
         delegate.delete(zoneId);
 
         // 2. Update Cache if present
-        // Since we don't know the world, we scan loaded worlds.
-        for (List<Zone> zones : cache.values()) {
-            boolean removed = zones.removeIf(z -> z.internalId().equals(zoneId));
-            if (removed) break; // Optimization: ID is unique, so we can stop
-        }
+        cacheDeleted(zoneId);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(String zoneId) {
+        return delegate.deleteAsync(zoneId).thenRun(() -> cacheDeleted(zoneId));
+    }
+
+    private void cacheDeleted(String zoneId) {
+        // Since we don't know the world, we scan loaded and loading worlds. IDs are unique, so at most one matches.
+        cache.forEach(world -> world.remove(zoneId));
     }
 
     @Override
@@ -119,4 +164,34 @@ public class CachedZoneRepository implements IZoneRepository {
         delegate.close();
         cache.clear();
     }
+
+    /**
+     * Cached zones of one world. Writes go through the synchronized methods so the list,
+     * chunk index and R-tree always describe the same set of zones.
+     */
+    private static final class WorldZones {
+        final CopyOnWriteArrayList<Zone> zones;
+        final ZoneChunkIndex index;
+        volatile ZoneRTree tree;
+
+        WorldZones(List<Zone> initialZones) {
+            this.zones = new CopyOnWriteArrayList<>(initialZones);
+            this.index = new ZoneChunkIndex(initialZones);
+            this.tree = ZoneRTree.build(initialZones);
+        }
+
+        synchronized void put(Zone zone) {
+            zones.removeIf(z -> z.internalId().equals(zone.internalId()));
+            zones.add(zone);
+            index.put(zone);
+            tree = ZoneRTree.build(zones);
+        }
+
+        synchronized void remove(String zoneId) {
+            if (zones.removeIf(z -> z.internalId().equals(zoneId))) {
+                index.remove(zoneId);
+                tree = ZoneRTree.build(zones);
+            }
+        }
+    }
 }
@@ -1,8 +1,14 @@
 package com.apophisgames.rustyraiding.zones;
 
+import com.apophisgames.rustyraiding.util.DatabaseExecutor;
+import com.apophisgames.rustyraiding.util.WorldIds;
+import com.hypixel.hytale.math.vector.Vector3d;
+
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Repository for persisting Zones.
@@ -28,6 +34,21 @@ public interface IZoneRepository {
      */
     List<Zone> findByWorld(String worldName) throws Exception;
 
+    /**
+     * Find the names of every world with stored zones.
+     * @return List of world names
+     */
+    List<String> findWorldNames() throws Exception;
+
+    /**
+     * Load the zones of a world ahead of their first use. Storage that does not load lazily has nothing to do.
+     * @param worldName The name of the world
+     * @return The number of zones in the world
+     */
+    default int preloadWorld(String worldName) throws Exception {
+        return findByWorld(worldName).size();
+    }
+
     /**
      * Find a zone by name in a specific world.
      * @param worldName The world name
@@ -36,6 +57,42 @@ public interface IZoneRepository {
      */
     Optional<Zone> findByName(String worldName, String zoneName) throws Exception;
 
+    /**
+     * Find the zone containing a position.
+     * @param worldName The world name
+     * @param position The position to check
+     * @return The containing zone, or null if the position is outside every zone
+     */
+    @Nullable
+    Zone findAt(String worldName, Vector3d position) throws Exception;
+
+    /**
+     * Find the zone containing a block position. Hot path for block events.
+     * @param worldId The world id, see {@link WorldIds}
+     * @return The containing zone, or null if the block is outside every zone
+     */
+    @Nullable
+    Zone findAt(int worldId, int x, int y, int z) throws Exception;
+
+    /**
+     * Find all zones whose bounds intersect a box (touching counts as intersecting).
+     * @param worldName The world name
+     * @param min The minimum corner of the box
+     * @param max The maximum corner of the box
+     * @return List of intersecting zones
+     */
+    List<Zone> findIntersecting(String worldName, Vector3d min, Vector3d max) throws Exception;
+
+    /**
+     * Find the zones nearest to a position, measured to the closest point of each zone's box.
+     * @param worldName The world name
+     * @param position The position to measure from
+     * @param count Maximum number of zones to return
+     * @param maxDistance Maximum distance to search, or 0 for no limit
+     * @return List of up to count zones, nearest first
+     */
+    List<Zone> findNearest(String worldName, Vector3d position, int count, double maxDistance) throws Exception;
+
     /**
      * Save (create or update) a zone.
      * @param zone The zone to save
@@ -48,6 +105,30 @@ public interface IZoneRepository {
      */
     void delete(String zoneId) throws Exception;
 
+    /**
+     * Save (create or update) a zone without blocking the caller.
+     * @param zone The zone to save
+     * @return Future completed once the zone is stored, on the storage thread
+     */
+    default CompletableFuture<Void> saveAsync(Zone zone) {
+        return DatabaseExecutor.inline(() -> {
+            save(zone);
+            return null;
+        });
+    }
+
+    /**
+     * Delete a zone without blocking the caller.
+     * @param zoneId The internal ID of the zone to delete
+     * @return Future completed once the zone is deleted, on the storage thread
+     */
+    default CompletableFuture<Void> deleteAsync(String zoneId) {
+        return DatabaseExecutor.inline(() -> {
+            delete(zoneId);
+            return null;
+        });
+    }
+
     /**
      * Close any resources (connections, files).
      */
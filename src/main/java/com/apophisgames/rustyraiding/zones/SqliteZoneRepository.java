@@ -1,11 +1,12 @@
 package com.apophisgames.rustyraiding.zones;
 
+import com.apophisgames.rustyraiding.util.RaidingDatabase;
+import com.apophisgames.rustyraiding.util.WorldIds;
 import com.hypixel.hytale.logger.HytaleLogger;
 import com.hypixel.hytale.math.vector.Vector3d;
 
 import javax.annotation.Nonnull;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import javax.annotation.Nullable;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -15,46 +16,34 @@ import java.util.Optional;
 
 /**
  * SQLite implementation of IZoneRepository.
+ *
+ * <p>Zone bounds are mirrored into the zones_rtree R*Tree table, keyed by the zone's rowid and
+ * kept in sync by triggers. Spatial queries search the tree and only read the zones it returns,
+ * so they never scan a whole world.
  */
 public class SqliteZoneRepository implements IZoneRepository {
 
     private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
 
-    private final Path dataDirectory;
-    private Connection connection;
+    // First radius findNearest searches, and the radius beyond which it searches the whole world
+    private static final double NEAREST_START_RADIUS = 64;
+    private static final double NEAREST_MAX_RADIUS = 1 << 26;
 
-    public SqliteZoneRepository(@Nonnull Path dataDirectory) {
-        this.dataDirectory = dataDirectory;
+    private final RaidingDatabase database;
+
+    public SqliteZoneRepository(@Nonnull RaidingDatabase database) {
+        this.database = database;
     }
 
     @Override
     public void initialize() throws Exception {
-        Files.createDirectories(dataDirectory);
-        openDatabase();
         createSchema();
-    }
-
-    private void openDatabase() throws SQLException {
-        if (connection != null && !connection.isClosed()) {
-            return;
-        }
-
-        try {
-            Class.forName("org.sqlite.JDBC");
-            Path dbPath = dataDirectory.resolve("zones.db");
-            String url = "jdbc:sqlite:" + dbPath.toAbsolutePath().toString();
-            connection = DriverManager.getConnection(url);
-            LOGGER.atInfo().log("Connected to zones database: " + dbPath);
-        } catch (ClassNotFoundException e) {
-            throw new SQLException("SQLite JDBC driver not found", e);
-        }
+        database.importLegacyTable("zones.db", "zones");
+        rebuildSpatialIndex();
     }
 
     private Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            openDatabase();
-        }
-        return connection;
+        return database.getConnection();
     }
 
     private void createSchema() throws SQLException {
@@ -77,6 +66,62 @@ public class SqliteZoneRepository implements IZoneRepository {
             stmt.execute(sql);
             // Index for faster lookups by world
             stmt.execute("CREATE INDEX IF NOT EXISTS idx_zones_world ON zones(world_name)");
+
+            // Cascade a zone delete to its authorizations. The trigger runs in the delete's own
+            // transaction, so a zone is never half removed. The reinforced blocks inside the zone
+            // are cascaded from delete, see RaidingDatabase#cascadeZoneDelete.
+            // Authorizations are keyed by zone name, which a zone in another world may share, so
+            // they only go with the last zone of that name.
+            // Recreated on every start, older versions also deleted reinforced blocks from here.
+            stmt.execute("DROP TRIGGER IF EXISTS zones_cascade_delete");
+            stmt.execute("""
+                CREATE TRIGGER zones_cascade_delete AFTER DELETE ON zones
+                BEGIN
+                    DELETE FROM zoneauths WHERE zone_id = OLD.zone_name
+                        AND NOT EXISTS (SELECT 1 FROM zones WHERE zone_name = OLD.zone_name);
+                END
+                """);
+
+            // Spatial index over zone bounds, one entry per zone rowid
+            stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS zones_rtree USING rtree(id, min_x, max_x, min_y, max_y, min_z, max_z)");
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS zones_rtree_insert AFTER INSERT ON zones
+                BEGIN
+                    INSERT OR REPLACE INTO zones_rtree VALUES (NEW.rowid, NEW.min_x, NEW.max_x, NEW.min_y, NEW.max_y, NEW.min_z, NEW.max_z);
+                END
+                """);
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS zones_rtree_update AFTER UPDATE ON zones
+                BEGIN
+                    DELETE FROM zones_rtree WHERE id = OLD.rowid;
+                    INSERT OR REPLACE INTO zones_rtree VALUES (NEW.rowid, NEW.min_x, NEW.max_x, NEW.min_y, NEW.max_y, NEW.min_z, NEW.max_z);
+                END
+                """);
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS zones_rtree_delete AFTER DELETE ON zones
+                BEGIN
+                    DELETE FROM zones_rtree WHERE id = OLD.rowid;
+                END
+                """);
+        }
+    }
+
+    /**
+     * Refill the spatial index from the zones table. Rowids of zones can change when the
+     * file is vacuumed, so the index is rebuilt on every start rather than trusted.
+     */
+    private void rebuildSpatialIndex() throws SQLException {
+        Connection conn = getConnection();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM zones_rtree");
+            stmt.execute("INSERT INTO zones_rtree SELECT rowid, min_x, max_x, min_y, max_y, min_z, max_z FROM zones");
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
         }
     }
 
@@ -101,12 +146,23 @@ public class SqliteZoneRepository implements IZoneRepository {
         String sql = "SELECT * FROM zones WHERE world_name = ?";
         List<Zone> result = new ArrayList<>();
 
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, worldName);
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    result.add(mapToZone(rs));
-                }
+        PreparedStatement stmt = database.prepare(sql);
+        stmt.setString(1, worldName);
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                result.add(mapToZone(rs));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> findWorldNames() throws Exception {
+        List<String> result = new ArrayList<>();
+        PreparedStatement stmt = database.prepare("SELECT DISTINCT world_name FROM zones");
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                result.add(WorldIds.intern(rs.getString("world_name")));
             }
         }
         return result;
@@ -116,16 +172,132 @@ public class SqliteZoneRepository implements IZoneRepository {
     public Optional<Zone> findByName(String worldName, String zoneName) throws Exception {
         String sql = "SELECT * FROM zones WHERE world_name = ? AND zone_name = ?";
         
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, worldName);
-            stmt.setString(2, zoneName);
+        PreparedStatement stmt = database.prepare(sql);
+        stmt.setString(1, worldName);
+        stmt.setString(2, zoneName);
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                return Optional.of(mapToZone(rs));
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    @Nullable
+    public Zone findAt(String worldName, Vector3d position) throws Exception {
+        return findAt(worldName, position.x, position.y, position.z);
+    }
+
+    @Override
+    @Nullable
+    public Zone findAt(int worldId, int x, int y, int z) throws Exception {
+        return findAt(WorldIds.nameOf(worldId), x, y, z);
+    }
+
+    @Nullable
+    private Zone findAt(String worldName, double x, double y, double z) throws Exception {
+        // The tree stores bounds rounded outwards, so it narrows the candidates and the zone columns decide
+        String sql = """
+            SELECT z.* FROM zones_rtree r JOIN zones z ON z.rowid = r.id
+            WHERE r.min_x <= ? AND r.max_x >= ?
+            AND r.min_y <= ? AND r.max_y >= ?
+            AND r.min_z <= ? AND r.max_z >= ?
+            AND z.world_name = ?
+            AND z.min_x <= ? AND z.max_x > ?
+            AND z.min_y <= ? AND z.max_y > ?
+            AND z.min_z <= ? AND z.max_z > ?
+            LIMIT 1
+            """;
+
+        PreparedStatement stmt = database.prepare(sql);
+        bindPoint(stmt, 1, x, y, z);
+        stmt.setString(7, worldName);
+        bindPoint(stmt, 8, x, y, z);
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                return mapToZone(rs);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<Zone> findIntersecting(String worldName, Vector3d min, Vector3d max) throws Exception {
+        String sql = """
+            SELECT z.* FROM zones_rtree r JOIN zones z ON z.rowid = r.id
+            WHERE r.min_x <= ? AND r.max_x >= ?
+            AND r.min_y <= ? AND r.max_y >= ?
+            AND r.min_z <= ? AND r.max_z >= ?
+            AND z.world_name = ?
+            AND z.min_x <= ? AND z.max_x >= ?
+            AND z.min_y <= ? AND z.max_y >= ?
+            AND z.min_z <= ? AND z.max_z >= ?
+            """;
+        List<Zone> result = new ArrayList<>();
+
+        PreparedStatement stmt = database.prepare(sql);
+        bindBox(stmt, 1, min, max);
+        stmt.setString(7, worldName);
+        bindBox(stmt, 8, min, max);
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                result.add(mapToZone(rs));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Zone> findNearest(String worldName, Vector3d position, int count, double maxDistance) throws Exception {
+        // Per-axis gap between the point and the box, 0 when the point is within the box on that axis.
+        // Only zones the tree finds within a radius of the point are measured.
+        String sql = """
+            SELECT * FROM (
+                SELECT z.*,
+                    MAX(z.min_x - ?, 0, ? - z.max_x) AS dx,
+                    MAX(z.min_y - ?, 0, ? - z.max_y) AS dy,
+                    MAX(z.min_z - ?, 0, ? - z.max_z) AS dz
+                FROM zones_rtree r JOIN zones z ON z.rowid = r.id
+                WHERE r.min_x <= ? AND r.max_x >= ?
+                AND r.min_y <= ? AND r.max_y >= ?
+                AND r.min_z <= ? AND r.max_z >= ?
+                AND z.world_name = ?
+            )
+            WHERE dx * dx + dy * dy + dz * dz <= ?
+            ORDER BY dx * dx + dy * dy + dz * dz
+            LIMIT ?
+            """;
+        PreparedStatement stmt = database.prepare(sql);
+
+        // Widen the radius until it holds enough zones. Every zone within the radius is
+        // found, so the nearest ones inside it are the nearest overall.
+        double limit = maxDistance > 0 ? maxDistance : Double.POSITIVE_INFINITY;
+        double radius = Math.min(limit, NEAREST_START_RADIUS);
+        while (true) {
+            List<Zone> result = new ArrayList<>();
+            stmt.setDouble(1, position.x);
+            stmt.setDouble(2, position.x);
+            stmt.setDouble(3, position.y);
+            stmt.setDouble(4, position.y);
+            stmt.setDouble(5, position.z);
+            stmt.setDouble(6, position.z);
+            bindBox(stmt, 7,
+                    new Vector3d(position.x - radius, position.y - radius, position.z - radius),
+                    new Vector3d(position.x + radius, position.y + radius, position.z + radius));
+            stmt.setString(13, worldName);
+            stmt.setDouble(14, radius * radius);
+            stmt.setInt(15, count);
             try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return Optional.of(mapToZone(rs));
+                while (rs.next()) {
+                    result.add(mapToZone(rs));
                 }
             }
+
+            if (result.size() >= count || radius >= limit) return result;
+            // Past the extent of a world the box holds everything
+            radius = radius * 4 >= NEAREST_MAX_RADIUS ? limit : Math.min(limit, radius * 4);
         }
-        return Optional.empty();
     }
 
     @Override
@@ -145,46 +317,81 @@ public class SqliteZoneRepository implements IZoneRepository {
                 max_z=excluded.max_z
             """;
 
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, zone.internalId());
-            stmt.setString(2, zone.zoneName());
-            stmt.setString(3, zone.worldName());
-            stmt.setDouble(4, zone.min().x);
-            stmt.setDouble(5, zone.min().y);
-            stmt.setDouble(6, zone.min().z);
-            stmt.setDouble(7, zone.max().x);
-            stmt.setDouble(8, zone.max().y);
-            stmt.setDouble(9, zone.max().z);
+        PreparedStatement stmt = database.prepare(sql);
+        stmt.setString(1, zone.internalId());
+        stmt.setString(2, zone.zoneName());
+        stmt.setString(3, zone.worldName());
+        stmt.setDouble(4, zone.min().x);
+        stmt.setDouble(5, zone.min().y);
+        stmt.setDouble(6, zone.min().z);
+        stmt.setDouble(7, zone.max().x);
+        stmt.setDouble(8, zone.max().y);
+        stmt.setDouble(9, zone.max().z);
 
-            stmt.executeUpdate();
-        }
+        stmt.executeUpdate();
     }
 
     @Override
     public void delete(String zoneId) throws Exception {
-        String sql = "DELETE FROM zones WHERE id = ?";
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+        PreparedStatement select = database.prepare("SELECT * FROM zones WHERE id = ?");
+        select.setString(1, zoneId);
+        Zone zone;
+        try (ResultSet rs = select.executeQuery()) {
+            if (!rs.next()) return;
+            zone = mapToZone(rs);
+        }
+
+        // The zone, its authorizations and the blocks inside it go in one transaction
+        Connection conn = getConnection();
+        conn.setAutoCommit(false);
+        try {
+            PreparedStatement stmt = database.prepare("DELETE FROM zones WHERE id = ?");
             stmt.setString(1, zoneId);
             stmt.executeUpdate();
+            database.cascadeZoneDelete(zone.worldName(), zone.minBlock(), zone.maxBlock());
+            conn.commit();
+        } catch (Exception e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
         }
     }
 
     @Override
     public void close() {
-        if (connection != null) {
-            try {
-                connection.close();
-            } catch (SQLException e) {
-                LOGGER.atWarning().log("Error closing zones db: " + e.getMessage());
-            }
-        }
+        // The shared connection is closed by RaidingDatabase
+    }
+
+    /**
+     * Bind a point as the six bounds of a box intersection test, see {@link #bindBox}.
+     */
+    private static void bindPoint(PreparedStatement stmt, int firstIndex, double x, double y, double z) throws SQLException {
+        stmt.setDouble(firstIndex, x);
+        stmt.setDouble(firstIndex + 1, x);
+        stmt.setDouble(firstIndex + 2, y);
+        stmt.setDouble(firstIndex + 3, y);
+        stmt.setDouble(firstIndex + 4, z);
+        stmt.setDouble(firstIndex + 5, z);
+    }
+
+    /**
+     * Bind the six bounds of a box intersection test, written as min_col <= ? AND max_col >= ? per axis.
+     */
+    private static void bindBox(PreparedStatement stmt, int firstIndex, Vector3d min, Vector3d max) throws SQLException {
+        stmt.setDouble(firstIndex, max.x);
+        stmt.setDouble(firstIndex + 1, min.x);
+        stmt.setDouble(firstIndex + 2, max.y);
+        stmt.setDouble(firstIndex + 3, min.y);
+        stmt.setDouble(firstIndex + 4, max.z);
+        stmt.setDouble(firstIndex + 5, min.z);
     }
 
     private Zone mapToZone(ResultSet rs) throws SQLException {
         return new Zone(
             rs.getString("id"),
             rs.getString("zone_name"),
-            rs.getString("world_name"),
+            WorldIds.intern(rs.getString("world_name")),
             new Vector3d(rs.getDouble("min_x"), rs.getDouble("min_y"), rs.getDouble("min_z")),
             new Vector3d(rs.getDouble("max_x"), rs.getDouble("max_y"), rs.getDouble("max_z"))
         );
@@ -49,9 +49,57 @@ public record Zone(
      * @return true if the position is inside the zone
      */
     public boolean contains(Vector3d position) {
-        return position.x >= min.x && position.x < max.x &&
-               position.y >= min.y && position.y < max.y &&
-               position.z >= min.z && position.z < max.z;
+        return contains(position.x, position.y, position.z);
+    }
+
+    /**
+     * Check if a position is within this zone.
+     */
+    public boolean contains(double x, double y, double z) {
+        return x >= min.x && x < max.x &&
+               y >= min.y && y < max.y &&
+               z >= min.z && z < max.z;
+    }
+
+    /**
+     * Check if a block position is within this zone.
+     */
+    public boolean contains(int x, int y, int z) {
+        return x >= min.x && x < max.x &&
+               y >= min.y && y < max.y &&
+               z >= min.z && z < max.z;
+    }
+
+    /**
+     * The lowest block this zone's box touches.
+     */
+    public Vector3i minBlock() {
+        return new Vector3i((int) Math.floor(min.x), (int) Math.floor(min.y), (int) Math.floor(min.z));
+    }
+
+    /**
+     * The highest block this zone's box touches, inclusive.
+     */
+    public Vector3i maxBlock() {
+        return new Vector3i((int) Math.floor(max.x), (int) Math.floor(max.y), (int) Math.floor(max.z));
+    }
+
+    /**
+     * Squared distance from a position to the closest point of this zone's box.
+     *
+     * @return 0 if the position is inside the zone
+     */
+    public double distanceSquaredTo(double x, double y, double z) {
+        return ZoneRTree.distanceSquared(min.x, min.y, min.z, max.x, max.y, max.z, x, y, z);
+    }
+
+    /**
+     * Distance from a position to the closest point of this zone's box.
+     *
+     * @return 0 if the position is inside the zone
+     */
+    public double distanceTo(Vector3d position) {
+        return Math.sqrt(distanceSquaredTo(position.x, position.y, position.z));
     }
 
     public static String getZoneIdFromPosition(World world, Vector3i position){
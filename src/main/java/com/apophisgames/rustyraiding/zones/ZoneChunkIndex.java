@@ -0,0 +1,178 @@
+package com.apophisgames.rustyraiding.zones;
+
+import com.hypixel.hytale.math.util.ChunkUtil;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chunk-grid spatial index over the zones of a single world.
+ *
+ * <p>Every zone is registered in each chunk column its bounds touch, keyed by
+ * {@link ChunkUtil#indexChunkFromBlock(int, int)}. A point lookup is one probe into an
+ * immutable open-addressing table followed by a containment check of the few zones in
+ * that chunk, so positions outside any zone are rejected immediately.
+ *
+ * <p>Reads are lock-free against the last published table. Writes are rare (zone
+ * create/update/delete), so they rebuild the table under a lock and publish it.
+ */
+public class ZoneChunkIndex {
+
+    /**
+     * Zones covering more chunk columns than this are kept out of the grid and checked
+     * directly, so a huge admin zone cannot blow up the table.
+     */
+    private static final int MAX_INDEXED_CHUNKS = 4096;
+
+    // Zone internal id -> Zone, guarded by this
+    private final Map<String, Zone> zones = new HashMap<>();
+
+    private volatile Table table = Table.EMPTY;
+
+    public ZoneChunkIndex(Collection<Zone> initialZones) {
+        for (Zone zone : initialZones) {
+            zones.put(zone.internalId(), zone);
+        }
+        rebuild();
+    }
+
+    /**
+     * Find the zone containing a position.
+     *
+     * @return The containing zone, or null if the position is outside every zone
+     */
+    @Nullable
+    public Zone find(double x, double y, double z) {
+        Table current = table;
+
+        Zone[] candidates = current.get(ChunkUtil.indexChunkFromBlock((int) Math.floor(x), (int) Math.floor(z)));
+        if (candidates != null) {
+            for (Zone zone : candidates) {
+                if (zone.contains(x, y, z)) return zone;
+            }
+        }
+
+        for (Zone zone : current.oversized) {
+            if (zone.contains(x, y, z)) return zone;
+        }
+        return null;
+    }
+
+    /**
+     * Find the zone containing a block position.
+     *
+     * @return The containing zone, or null if the block is outside every zone
+     */
+    @Nullable
+    public Zone find(int x, int y, int z) {
+        Table current = table;
+
+        Zone[] candidates = current.get(ChunkUtil.indexChunkFromBlock(x, z));
+        if (candidates != null) {
+            for (Zone zone : candidates) {
+                if (zone.contains(x, y, z)) return zone;
+            }
+        }
+
+        for (Zone zone : current.oversized) {
+            if (zone.contains(x, y, z)) return zone;
+        }
+        return null;
+    }
+
+    /**
+     * Add or replace a zone (matched by internal id).
+     */
+    public synchronized void put(Zone zone) {
+        zones.put(zone.internalId(), zone);
+        rebuild();
+    }
+
+    /**
+     * Remove a zone by internal id.
+     *
+     * @return true if the zone was indexed
+     */
+    public synchronized boolean remove(String zoneId) {
+        if (zones.remove(zoneId) == null) return false;
+        rebuild();
+        return true;
+    }
+
+    private synchronized void rebuild() {
+        Map<Long, List<Zone>> buckets = new HashMap<>();
+        List<Zone> oversized = new ArrayList<>();
+
+        for (Zone zone : zones.values()) {
+            int minChunkX = Math.floorDiv((int) Math.floor(zone.min().x), ChunkUtil.SIZE);
+            int minChunkZ = Math.floorDiv((int) Math.floor(zone.min().z), ChunkUtil.SIZE);
+            int maxChunkX = Math.floorDiv((int) Math.floor(zone.max().x), ChunkUtil.SIZE);
+            int maxChunkZ = Math.floorDiv((int) Math.floor(zone.max().z), ChunkUtil.SIZE);
+
+            long chunkCount = (long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+            if (chunkCount > MAX_INDEXED_CHUNKS) {
+                oversized.add(zone);
+                continue;
+            }
+
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                    long key = ChunkUtil.indexChunkFromBlock(chunkX * ChunkUtil.SIZE, chunkZ * ChunkUtil.SIZE);
+                    buckets.computeIfAbsent(key, k -> new ArrayList<>(1)).add(zone);
+                }
+            }
+        }
+
+        table = new Table(buckets, oversized.toArray(new Zone[0]));
+    }
+
+    /**
+     * Immutable open-addressing table of chunk key -> zones touching that chunk.
+     */
+    private static final class Table {
+        static final Table EMPTY = new Table(Map.of(), new Zone[0]);
+
+        final long[] keys;
+        final Zone[][] values;
+        final int mask;
+        final Zone[] oversized;
+
+        Table(Map<Long, List<Zone>> buckets, Zone[] oversized) {
+            // Keep the load factor at or below 0.5 so probe chains stay short
+            int capacity = Integer.highestOneBit(Math.max(4, buckets.size() * 2 - 1)) << 1;
+            this.keys = new long[capacity];
+            this.values = new Zone[capacity][];
+            this.mask = capacity - 1;
+            this.oversized = oversized;
+
+            buckets.forEach((key, list) -> {
+                int slot = mix(key) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = list.toArray(new Zone[0]);
+            });
+        }
+
+        @Nullable
+        Zone[] get(long key) {
+            int slot = mix(key) & mask;
+            Zone[] value;
+            while ((value = values[slot]) != null) {
+                if (keys[slot] == key) return value;
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.apophisgames.rustyraiding.zones;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable, bulk-loaded R-tree over the zones of a single world.
+ *
+ * <p>The tree is packed with Sort-Tile-Recursive (STR) loading and flattened into
+ * parallel arrays, with the children of every node stored contiguously. Bounding boxes
+ * of inner nodes adapt to whatever they hold, so tiny tool cupboard zones and huge admin
+ * zones mix without degrading to a linear scan.
+ *
+ * <p>Zone changes are rare compared to queries, so the owner rebuilds the tree with
+ * {@link #build(Collection)} after each write instead of updating it in place.
+ */
+public class ZoneRTree {
+
+    private static final int NODE_CAPACITY = 8;
+
+    // Node bounds, indexed by node id. The root is node 0.
+    private final double[] minX, minY, minZ, maxX, maxY, maxZ;
+    // First child and child count. Children of a leaf are zones, otherwise nodes.
+    private final int[] firstChild, childCount;
+    private final boolean[] leaf;
+    private final Zone[] zones;
+    private final int height;
+
+    private ZoneRTree(int nodeCount, int zoneCount, int height) {
+        this.minX = new double[nodeCount];
+        this.minY = new double[nodeCount];
+        this.minZ = new double[nodeCount];
+        this.maxX = new double[nodeCount];
+        this.maxY = new double[nodeCount];
+        this.maxZ = new double[nodeCount];
+        this.firstChild = new int[nodeCount];
+        this.childCount = new int[nodeCount];
+        this.leaf = new boolean[nodeCount];
+        this.zones = new Zone[zoneCount];
+        this.height = height;
+    }
+
+    /**
+     * Number of zones in the tree.
+     */
+    public int size() {
+        return zones.length;
+    }
+
+    /**
+     * Find all zones whose bounds intersect a box. Touching boxes count as intersecting,
+     * matching {@link Zone#checkOverlapWithZone(Zone)}.
+     *
+     * @return List of intersecting zones (empty if none)
+     */
+    public List<Zone> findIntersecting(double qMinX, double qMinY, double qMinZ,
+                                       double qMaxX, double qMaxY, double qMaxZ) {
+        List<Zone> result = new ArrayList<>();
+        if (zones.length == 0) return result;
+
+        int[] stack = new int[height * NODE_CAPACITY + 1];
+        int top = 0;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            int node = stack[--top];
+            if (!intersects(minX[node], minY[node], minZ[node], maxX[node], maxY[node], maxZ[node],
+                    qMinX, qMinY, qMinZ, qMaxX, qMaxY, qMaxZ)) {
+                continue;
+            }
+
+            int first = firstChild[node];
+            int end = first + childCount[node];
+            if (leaf[node]) {
+                for (int i = first; i < end; i++) {
+                    Zone zone = zones[i];
+                    if (intersects(zone.min().x, zone.min().y, zone.min().z, zone.max().x, zone.max().y, zone.max().z,
+                            qMinX, qMinY, qMinZ, qMaxX, qMaxY, qMaxZ)) {
+                        result.add(zone);
+                    }
+                }
+            } else {
+                for (int i = first; i < end; i++) {
+                    stack[top++] = i;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the k zones nearest to a point, by distance from the point to each zone's box.
+     * Zones containing the point have distance 0.
+     *
+     * <p>Runs a depth-first branch-and-bound search that prunes every node farther away
+     * than the current k-th best, using only fixed-size scratch arrays per query.
+     *
+     * @param k Maximum number of zones to return
+     * @param maxDistance Maximum distance to search, or {@code <= 0} for no limit
+     * @return Up to k zones, nearest first
+     */
+    public List<Zone> findNearest(double x, double y, double z, int k, double maxDistance) {
+        if (zones.length == 0 || k <= 0) return new ArrayList<>();
+
+        k = Math.min(k, zones.length);
+        double[] bestDistances = new double[k];
+        Zone[] bestZones = new Zone[k];
+        int found = 0;
+        double limit = maxDistance > 0 ? maxDistance * maxDistance : Double.POSITIVE_INFINITY;
+
+        int[] stack = new int[height * NODE_CAPACITY + 1];
+        int top = 0;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            int node = stack[--top];
+            double bound = found == k ? bestDistances[k - 1] : limit;
+            if (distanceSquared(minX[node], minY[node], minZ[node], maxX[node], maxY[node], maxZ[node], x, y, z) > bound) {
+                continue;
+            }
+
+            int first = firstChild[node];
+            int end = first + childCount[node];
+            if (!leaf[node]) {
+                for (int i = first; i < end; i++) {
+                    stack[top++] = i;
+                }
+                continue;
+            }
+
+            for (int i = first; i < end; i++) {
+                double distance = zones[i].distanceSquaredTo(x, y, z);
+                bound = found == k ? bestDistances[k - 1] : limit;
+                if (distance > bound) continue;
+
+                // Insertion into the sorted best list, dropping the current k-th if full
+                int slot = found < k ? found++ : k - 1;
+                while (slot > 0 && bestDistances[slot - 1] > distance) {
+                    bestDistances[slot] = bestDistances[slot - 1];
+                    bestZones[slot] = bestZones[slot - 1];
+                    slot--;
+                }
+                bestDistances[slot] = distance;
+                bestZones[slot] = zones[i];
+            }
+        }
+
+        List<Zone> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            result.add(bestZones[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Squared distance from a point to a box, 0 if the point is inside.
+     */
+    static double distanceSquared(double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+                                  double x, double y, double z) {
+        double dx = Math.max(Math.max(minX - x, 0), x - maxX);
+        double dy = Math.max(Math.max(minY - y, 0), y - maxY);
+        double dz = Math.max(Math.max(minZ - z, 0), z - maxZ);
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static boolean intersects(double aMinX, double aMinY, double aMinZ, double aMaxX, double aMaxY, double aMaxZ,
+                                      double bMinX, double bMinY, double bMinZ, double bMaxX, double bMaxY, double bMaxZ) {
+        return aMinX <= bMaxX && aMaxX >= bMinX
+            && aMinY <= bMaxY && aMaxY >= bMinY
+            && aMinZ <= bMaxZ && aMaxZ >= bMinZ;
+    }
+
+    // ============================================
+    // Bulk Loading
+    // ============================================
+
+    /**
+     * Bulk-load a tree from a set of zones.
+     */
+    public static ZoneRTree build(Collection<Zone> source) {
+        // Level 0: one entry per zone
+        List<BuildNode> level = new ArrayList<>(source.size());
+        for (Zone zone : source) {
+            level.add(BuildNode.ofZone(zone));
+        }
+
+        // Pack levels until a single root remains
+        int height = 1;
+        level = pack(level);
+        while (level.size() > 1) {
+            level = pack(level);
+            height++;
+        }
+        BuildNode root = level.isEmpty() ? BuildNode.emptyLeaf() : level.get(0);
+
+        List<BuildNode> order = new ArrayList<>();
+        order.add(root);
+        for (int i = 0; i < order.size(); i++) {
+            BuildNode node = order.get(i);
+            if (!node.isLeaf()) order.addAll(node.children);
+        }
+        ZoneRTree tree = new ZoneRTree(order.size(), source.size(), height);
+
+        // Flatten breadth-first, so each node's children land in a contiguous range
+        int nextNode = 1;
+        int nextZone = 0;
+        for (int id = 0; id < order.size(); id++) {
+            BuildNode node = order.get(id);
+            tree.minX[id] = node.minX;
+            tree.minY[id] = node.minY;
+            tree.minZ[id] = node.minZ;
+            tree.maxX[id] = node.maxX;
+            tree.maxY[id] = node.maxY;
+            tree.maxZ[id] = node.maxZ;
+            tree.leaf[id] = node.isLeaf();
+
+            if (node.isLeaf()) {
+                tree.firstChild[id] = nextZone;
+                tree.childCount[id] = node.children.size();
+                for (BuildNode child : node.children) {
+                    tree.zones[nextZone++] = child.zone;
+                }
+            } else {
+                tree.firstChild[id] = nextNode;
+                tree.childCount[id] = node.children.size();
+                nextNode += node.children.size();
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Group one level of entries into parent nodes using Sort-Tile-Recursive packing.
+     */
+    private static List<BuildNode> pack(List<BuildNode> entries) {
+        List<BuildNode> parents = new ArrayList<>();
+        if (entries.isEmpty()) return parents;
+
+        BuildNode[] sorted = entries.toArray(new BuildNode[0]);
+        int pageCount = (sorted.length + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int slices = (int) Math.ceil(Math.cbrt(pageCount));
+        int sliceSize = NODE_CAPACITY * slices * slices;
+        int runSize = NODE_CAPACITY * slices;
+
+        Arrays.sort(sorted, Comparator.comparingDouble(BuildNode::centerX));
+        for (int sliceStart = 0; sliceStart < sorted.length; sliceStart += sliceSize) {
+            int sliceEnd = Math.min(sliceStart + sliceSize, sorted.length);
+            Arrays.sort(sorted, sliceStart, sliceEnd, Comparator.comparingDouble(BuildNode::centerY));
+
+            for (int runStart = sliceStart; runStart < sliceEnd; runStart += runSize) {
+                int runEnd = Math.min(runStart + runSize, sliceEnd);
+                Arrays.sort(sorted, runStart, runEnd, Comparator.comparingDouble(BuildNode::centerZ));
+
+                for (int pageStart = runStart; pageStart < runEnd; pageStart += NODE_CAPACITY) {
+                    int pageEnd = Math.min(pageStart + NODE_CAPACITY, runEnd);
+                    parents.add(BuildNode.ofChildren(Arrays.asList(sorted).subList(pageStart, pageEnd)));
+                }
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * Temporary node used while bulk loading. Either wraps a zone or groups children.
+     */
+    private static final class BuildNode {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        Zone zone;
+        List<BuildNode> children = List.of();
+
+        static BuildNode ofZone(Zone zone) {
+            BuildNode node = new BuildNode();
+            node.zone = zone;
+            node.minX = zone.min().x;
+            node.minY = zone.min().y;
+            node.minZ = zone.min().z;
+            node.maxX = zone.max().x;
+            node.maxY = zone.max().y;
+            node.maxZ = zone.max().z;
+            return node;
+        }
+
+        static BuildNode ofChildren(List<BuildNode> children) {
+            BuildNode node = new BuildNode();
+            node.children = new ArrayList<>(children);
+            for (BuildNode child : children) {
+                node.minX = Math.min(node.minX, child.minX);
+                node.minY = Math.min(node.minY, child.minY);
+                node.minZ = Math.min(node.minZ, child.minZ);
+                node.maxX = Math.max(node.maxX, child.maxX);
+                node.maxY = Math.max(node.maxY, child.maxY);
+                node.maxZ = Math.max(node.maxZ, child.maxZ);
+            }
+            return node;
+        }
+
+        static BuildNode emptyLeaf() {
+            return ofChildren(List.of());
+        }
+
+        boolean isLeaf() {
+            return children.isEmpty() || children.get(0).zone != null;
+        }
+
+        double centerX() { return (minX + maxX) / 2; }
+        double centerY() { return (minY + maxY) / 2; }
+        double centerZ() { return (minZ + maxZ) / 2; }
+    }
+}
@@ -0,0 +1,395 @@
+package com.apophisgames.rustyraiding;
+
+import com.apophisgames.rustyraiding.RaidingService.BatchResult;
+import com.apophisgames.rustyraiding.RaidingService.DamageOutcome;
+import com.apophisgames.rustyraiding.RaidingService.ReinforceOutcome;
+import com.apophisgames.rustyraiding.reinforcedblocks.MemoryReinforcedBlockRepository;
+import com.apophisgames.rustyraiding.reinforcedblocks.ReinforcedBlock;
+import com.apophisgames.rustyraiding.util.BlockPositions;
+import com.apophisgames.rustyraiding.util.WorldIds;
+import com.apophisgames.rustyraiding.zoneauthorizations.IAuthRepository;
+import com.apophisgames.rustyraiding.zoneauthorizations.ZoneAuthorization;
+import com.apophisgames.rustyraiding.zones.IZoneRepository;
+import com.apophisgames.rustyraiding.zones.Zone;
+import com.hypixel.hytale.math.vector.Vector3d;
+import com.hypixel.hytale.math.vector.Vector3i;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RaidingServiceTest {
+
+    private static final String WORLD = "default";
+    private static final UUID PLAYER = UUID.randomUUID();
+
+    // Zones are half-open boxes, blocks 0..9 and 100..109 on every axis
+    private static final Zone OWN_BASE = Zone.create("own", WORLD, new Vector3d(0, 0, 0), new Vector3d(10, 10, 10));
+    private static final Zone ENEMY_BASE = Zone.create("enemy", WORLD, new Vector3d(100, 100, 100), new Vector3d(110, 110, 110));
+
+    private static final int INITIAL = 10;
+    private static final int MAX = 20;
+
+    /**
+     * Zones in a list, counting lookups. A lookup at a failing position throws.
+     */
+    private static final class ZoneList implements IZoneRepository {
+        final List<Zone> zones = new ArrayList<>(List.of(OWN_BASE, ENEMY_BASE));
+        // Packed positions, see BlockPositions
+        final Set<Long> failing = new HashSet<>();
+        // Preloading a world waits until this is counted down
+        final CountDownLatch preload = new CountDownLatch(1);
+        int lookups;
+
+        @Override
+        public Zone findAt(int worldId, int x, int y, int z) {
+            lookups++;
+            if (failing.contains(BlockPositions.pack(x, y, z))) throw new IllegalStateException("database is locked");
+            for (Zone zone : zones) {
+                if (WorldIds.of(zone.worldName()) == worldId && zone.contains(x, y, z)) return zone;
+            }
+            return null;
+        }
+
+        @Override
+        public void initialize() {
+        }
+
+        @Override
+        public Map<String, List<Zone>> loadAll() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Zone> findByWorld(String worldName) throws InterruptedException {
+            preload.await();
+            return zones.stream().filter(zone -> zone.worldName().equals(worldName)).toList();
+        }
+
+        @Override
+        public List<String> findWorldNames() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Optional<Zone> findByName(String worldName, String zoneName) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Zone findAt(String worldName, Vector3d position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Zone> findIntersecting(String worldName, Vector3d min, Vector3d max) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Zone> findNearest(String worldName, Vector3d position, int count, double maxDistance) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void save(Zone zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void delete(String zoneId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * The test player is authorized in their own base only, checks are counted per zone.
+     */
+    private static final class OwnBaseAuthorizations implements IAuthRepository {
+        final Map<String, Integer> checks = new HashMap<>();
+
+        @Override
+        public boolean isAuthorized(String zoneId, int playerId) {
+            checks.merge(zoneId, 1, Integer::sum);
+            return zoneId.equals(OWN_BASE.zoneName());
+        }
+
+        @Override
+        public void initialize() {
+        }
+
+        @Override
+        public Map<String, List<ZoneAuthorization>> loadAll() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<ZoneAuthorization> findByZone(String zoneId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<String> findByPlayer(UUID playerUuid) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void save(ZoneAuthorization zoneAuthorization) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void delete(ZoneAuthorization zoneAuthorization) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void delete(String zoneId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<String> findLegacyPlayerNames() {
+            return List.of();
+        }
+
+        @Override
+        public List<String> migrateLegacy(UUID playerUuid, String playerName) {
+            return List.of();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final ZoneList zones = new ZoneList();
+    private final OwnBaseAuthorizations authorizations = new OwnBaseAuthorizations();
+    private final MemoryReinforcedBlockRepository blocks = new MemoryReinforcedBlockRepository();
+    private final RaidingService service = new RaidingService(zones, authorizations, blocks);
+
+    @AfterEach
+    void shutdown() {
+        zones.preload.countDown();
+        service.shutdown();
+    }
+
+    private static Vector3i at(int x, int y, int z) {
+        return new Vector3i(x, y, z);
+    }
+
+    private boolean isStored(int x, int y, int z) {
+        return blocks.blocks.containsKey(ReinforcedBlock.getInternalIdFromPosition(WORLD, at(x, y, z)));
+    }
+
+    private long writeBatches() {
+        return blocks.calls.stream().filter("writeBatch"::equals).count();
+    }
+
+    @Test
+    void damageDecidesEachBlockOnItsOwn() {
+        blocks.put(WORLD, 1, 1, 1, 5);       // own base, reinforced
+        blocks.put(WORLD, 101, 101, 101, 7); // enemy base, absorbs the hit
+        blocks.put(WORLD, 102, 102, 102, 2); // enemy base, too weak to absorb it
+
+        List<Vector3i> positions = List.of(
+                at(1, 1, 1),
+                at(2, 2, 2),
+                at(101, 101, 101),
+                at(102, 102, 102),
+                at(103, 103, 103),
+                at(104, 104, 104),
+                at(50, 50, 50));
+
+        BatchResult<DamageOutcome> result = service.applyDamage(WORLD, PLAYER, positions, 3, INITIAL,
+                position -> position.x == 104);
+
+        assertArrayEquals(new DamageOutcome[]{
+                DamageOutcome.AUTHORIZED,
+                DamageOutcome.AUTHORIZED,
+                DamageOutcome.ABSORBED,
+                DamageOutcome.BROKEN,
+                DamageOutcome.ABSORBED,
+                DamageOutcome.UNREINFORCED,
+                DamageOutcome.UNPROTECTED
+        }, result.outcomes());
+        assertArrayEquals(new int[]{
+                ReinforcedBlock.NOT_REINFORCED,
+                ReinforcedBlock.NOT_REINFORCED,
+                4,
+                ReinforcedBlock.NOT_REINFORCED,
+                INITIAL - 3,
+                ReinforcedBlock.NOT_REINFORCED,
+                ReinforcedBlock.NOT_REINFORCED
+        }, result.reinforcements());
+        assertTrue(result.stored());
+
+        // Authorized and broken blocks lose their record, a first hit creates one
+        assertFalse(isStored(1, 1, 1));
+        assertEquals(4, blocks.get(WORLD, 101, 101, 101));
+        assertFalse(isStored(102, 102, 102));
+        assertEquals(INITIAL - 3, blocks.get(WORLD, 103, 103, 103));
+        assertFalse(isStored(104, 104, 104));
+        assertFalse(isStored(2, 2, 2));
+        assertEquals(1, writeBatches());
+    }
+
+    @Test
+    void damageResolvesEachZoneOnce() {
+        List<Vector3i> positions = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            positions.add(at(i, i, i));
+            positions.add(at(100 + i, 100 + i, 100 + i));
+        }
+
+        service.applyDamage(WORLD, PLAYER, positions, 1, INITIAL, null);
+
+        assertEquals(Map.of(OWN_BASE.zoneName(), 1, ENEMY_BASE.zoneName(), 1), authorizations.checks);
+        assertEquals(2, zones.lookups);
+    }
+
+    @Test
+    void damageWithoutPlayerIsNeverAuthorized() {
+        blocks.put(WORLD, 1, 1, 1, 5);
+
+        BatchResult<DamageOutcome> result = service.applyDamage(WORLD, null, List.of(at(1, 1, 1)), 3, INITIAL, null);
+
+        assertEquals(DamageOutcome.ABSORBED, result.outcomes()[0]);
+        assertEquals(2, blocks.get(WORLD, 1, 1, 1));
+        assertTrue(authorizations.checks.isEmpty());
+    }
+
+    @Test
+    void duplicatePositionsAreDamagedInTurn() {
+        blocks.put(WORLD, 101, 101, 101, 5);
+        Vector3i block = at(101, 101, 101);
+
+        BatchResult<DamageOutcome> result = service.applyDamage(WORLD, PLAYER, List.of(block, block, block), 2, INITIAL, null);
+
+        assertArrayEquals(new DamageOutcome[]{DamageOutcome.ABSORBED, DamageOutcome.ABSORBED, DamageOutcome.BROKEN}, result.outcomes());
+        assertArrayEquals(new int[]{3, 1, ReinforcedBlock.NOT_REINFORCED}, result.reinforcements());
+        assertFalse(isStored(101, 101, 101));
+        assertEquals(1, writeBatches());
+    }
+
+    @Test
+    void brokenBlockIsDeletedNotStoredAsSentinel() {
+        blocks.put(WORLD, 101, 101, 101, 1);
+        blocks.put(WORLD, 1, 1, 1, 1);
+
+        service.applyDamage(WORLD, PLAYER, List.of(at(101, 101, 101), at(1, 1, 1)), 5, INITIAL, null);
+
+        // NOT_REINFORCED in the batch's changes means delete, it must never reach storage as a value
+        assertTrue(blocks.blocks.values().stream().noneMatch(block -> block.reinforcement() == ReinforcedBlock.NOT_REINFORCED));
+        assertTrue(blocks.blocks.isEmpty());
+    }
+
+    @Test
+    void failedZoneLookupDeniesOnlyThatBlock() {
+        zones.failing.add(BlockPositions.pack(50, 50, 50));
+
+        BatchResult<DamageOutcome> result = service.applyDamage(WORLD, PLAYER, List.of(at(50, 50, 50), at(101, 101, 101)), 3, INITIAL, null);
+
+        assertArrayEquals(new DamageOutcome[]{DamageOutcome.DENIED, DamageOutcome.ABSORBED}, result.outcomes());
+        assertFalse(result.outcomes()[0].allowsBreak());
+        assertEquals(INITIAL - 3, blocks.get(WORLD, 101, 101, 101));
+    }
+
+    @Test
+    void failedStoreIsReportedWithOutcomes() {
+        blocks.failuresLeft = 1;
+
+        BatchResult<DamageOutcome> result = service.applyDamage(WORLD, PLAYER, List.of(at(101, 101, 101)), 3, INITIAL, null);
+
+        assertFalse(result.stored());
+        assertEquals(DamageOutcome.ABSORBED, result.outcomes()[0]);
+        assertFalse(isStored(101, 101, 101));
+    }
+
+    @Test
+    void reinforceDecidesEachBlockOnItsOwn() {
+        blocks.put(WORLD, 1, 1, 1, MAX);      // already maxed
+        blocks.put(WORLD, 2, 2, 2, MAX - 1);  // capped at the maximum
+        blocks.put(WORLD, 3, 3, 3, 12);
+
+        List<Vector3i> positions = List.of(
+                at(1, 1, 1),
+                at(2, 2, 2),
+                at(3, 3, 3),
+                at(4, 4, 4),
+                at(101, 101, 101),
+                at(50, 50, 50));
+
+        BatchResult<ReinforceOutcome> result = service.reinforce(WORLD, PLAYER, positions, 5, INITIAL, MAX);
+
+        assertArrayEquals(new ReinforceOutcome[]{
+                ReinforceOutcome.AT_MAXIMUM,
+                ReinforceOutcome.REINFORCED,
+                ReinforceOutcome.REINFORCED,
+                ReinforceOutcome.REINFORCED,
+                ReinforceOutcome.UNAUTHORIZED,
+                ReinforceOutcome.UNPROTECTED
+        }, result.outcomes());
+        assertArrayEquals(new int[]{MAX, MAX, 17, INITIAL + 5, ReinforcedBlock.NOT_REINFORCED, ReinforcedBlock.NOT_REINFORCED},
+                result.reinforcements());
+        assertTrue(result.stored());
+
+        assertEquals(MAX, blocks.get(WORLD, 2, 2, 2));
+        assertEquals(17, blocks.get(WORLD, 3, 3, 3));
+        assertEquals(INITIAL + 5, blocks.get(WORLD, 4, 4, 4));
+        assertFalse(isStored(101, 101, 101));
+        assertEquals(1, writeBatches());
+        assertEquals(Map.of(OWN_BASE.zoneName(), 1, ENEMY_BASE.zoneName(), 1), authorizations.checks);
+    }
+
+    @Test
+    void duplicatePositionsAreReinforcedInTurn() {
+        Vector3i block = at(1, 1, 1);
+
+        BatchResult<ReinforceOutcome> result = service.reinforce(WORLD, PLAYER, List.of(block, block, block, block), 4, INITIAL, MAX);
+
+        assertArrayEquals(new ReinforceOutcome[]{
+                ReinforceOutcome.REINFORCED, ReinforceOutcome.REINFORCED, ReinforceOutcome.REINFORCED, ReinforceOutcome.AT_MAXIMUM
+        }, result.outcomes());
+        assertArrayEquals(new int[]{14, 18, MAX, MAX}, result.reinforcements());
+        assertEquals(MAX, blocks.get(WORLD, 1, 1, 1));
+        assertEquals(1, writeBatches());
+    }
+
+    @Test
+    void batchWithoutChangesWritesNothing() {
+        BatchResult<ReinforceOutcome> result = service.reinforce(WORLD, PLAYER, List.of(at(50, 50, 50), at(101, 101, 101)), 5, INITIAL, MAX);
+
+        assertTrue(result.stored());
+        assertEquals(0, writeBatches());
+    }
+
+    @Test
+    void chunksLoadWhileWorldsPreload() throws Exception {
+        service.initialize(List.of(WORLD), true);
+        service.onChunkLoaded(WORLD, 0, 0);
+
+        // The preload waits on the zones, the chunk's blocks load regardless
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!blocks.calls.contains("loadChunk") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(blocks.calls.contains("loadChunk"), "chunk load queued behind the preload");
+        assertFalse(service.isReady());
+    }
+}
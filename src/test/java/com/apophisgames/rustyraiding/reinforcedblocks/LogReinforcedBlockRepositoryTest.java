@@ -0,0 +1,142 @@
+package com.apophisgames.rustyraiding.reinforcedblocks;
+
+import com.apophisgames.rustyraiding.util.WorldIds;
+import com.hypixel.hytale.math.vector.Vector3i;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogReinforcedBlockRepositoryTest {
+
+    private static final String WORLD = "default";
+    private static final String OTHER_WORLD = "nether|2";
+
+    @TempDir
+    Path directory;
+
+    private final List<LogReinforcedBlockRepository> opened = new ArrayList<>();
+
+    @AfterEach
+    void close() {
+        opened.forEach(LogReinforcedBlockRepository::close);
+    }
+
+    // Commits only on close, so each test decides what reaches the disk
+    private LogReinforcedBlockRepository open() throws Exception {
+        LogReinforcedBlockRepository repository = new LogReinforcedBlockRepository(directory, TimeUnit.HOURS.toMillis(1), 1_000_000);
+        opened.add(repository);
+        repository.initialize();
+        return repository;
+    }
+
+    private static int reinforcement(LogReinforcedBlockRepository repository, String worldName, int x, int y, int z) throws Exception {
+        return repository.findReinforcement(WorldIds.of(worldName), x, y, z);
+    }
+
+    private Path lastSegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-"))
+                    .max(Path::compareTo)
+                    .orElseThrow();
+        }
+    }
+
+    @Test
+    void replaysWritesAndDeletesAfterRestart() throws Exception {
+        LogReinforcedBlockRepository repository = open();
+        repository.save(ReinforcedBlock.create(WORLD, new Vector3i(1, 2, 3), 10));
+        repository.save(ReinforcedBlock.create(WORLD, new Vector3i(1, 2, 3), 20));
+        repository.save(ReinforcedBlock.create(WORLD, new Vector3i(-5, -64, -7), 30));
+        repository.save(ReinforcedBlock.create(OTHER_WORLD, new Vector3i(1, 2, 3), 40));
+        repository.save(ReinforcedBlock.create(WORLD, new Vector3i(9, 9, 9), 50));
+        repository.delete(WORLD, new Vector3i(9, 9, 9));
+        repository.close();
+
+        LogReinforcedBlockRepository reopened = open();
+        assertEquals(20, reinforcement(reopened, WORLD, 1, 2, 3));
+        assertEquals(30, reinforcement(reopened, WORLD, -5, -64, -7));
+        assertEquals(40, reinforcement(reopened, OTHER_WORLD, 1, 2, 3));
+        assertEquals(ReinforcedBlock.NOT_REINFORCED, reinforcement(reopened, WORLD, 9, 9, 9));
+    }
+
+    @Test
+    void replaysAreaDeletes() throws Exception {
+        LogReinforcedBlockRepository repository = open();
+        repository.save(ReinforcedBlock.create(WORLD, new Vector3i(1, 1, 1), 10));
+        repository.save(ReinforcedBlock.create(WORLD, new Vector3i(50, 1, 1), 10));
+        repository.deleteInArea(WORLD, new Vector3i(0, 0, 0), new Vector3i(10, 10, 10));
+        repository.close();
+
+        LogReinforcedBlockRepository reopened = open();
+        assertEquals(ReinforcedBlock.NOT_REINFORCED, reinforcement(reopened, WORLD, 1, 1, 1));
+        assertEquals(10, reinforcement(reopened, WORLD, 50, 1, 1));
+    }
+
+    @Test
+    void tornTailIsCutOff() throws Exception {
+        LogReinforcedBlockRepository repository = open();
+        repository.save(ReinforcedBlock.create(WORLD, new Vector3i(1, 1, 1), 10));
+        repository.save(ReinforcedBlock.create(WORLD, new Vector3i(2, 2, 2), 20));
+        repository.close();
+
+        // A crash mid-write leaves the start of a block record behind
+        Path segment = lastSegment();
+        long validSize = Files.size(segment);
+        Files.write(segment, new byte[]{1, 0, 0, 0, 0, 0, 0}, StandardOpenOption.APPEND);
+
+        LogReinforcedBlockRepository reopened = open();
+        assertEquals(10, reinforcement(reopened, WORLD, 1, 1, 1));
+        assertEquals(20, reinforcement(reopened, WORLD, 2, 2, 2));
+        assertEquals(validSize, Files.size(segment));
+    }
+
+    @Test
+    void corruptLastRecordIsDropped() throws Exception {
+        LogReinforcedBlockRepository repository = open();
+        repository.save(ReinforcedBlock.create(WORLD, new Vector3i(1, 1, 1), 10));
+        repository.save(ReinforcedBlock.create(WORLD, new Vector3i(2, 2, 2), 20));
+        repository.close();
+
+        // Flip a bit in the last record's reinforcement, its checksum no longer matches
+        Path segment = lastSegment();
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 5] ^= 1;
+        Files.write(segment, bytes);
+
+        LogReinforcedBlockRepository reopened = open();
+        assertEquals(10, reinforcement(reopened, WORLD, 1, 1, 1));
+        assertEquals(ReinforcedBlock.NOT_REINFORCED, reinforcement(reopened, WORLD, 2, 2, 2));
+        assertEquals(bytes.length - 21, Files.size(segment));
+    }
+
+    @Test
+    void writesAfterRecoveryGoToANewSegment() throws Exception {
+        LogReinforcedBlockRepository repository = open();
+        repository.save(ReinforcedBlock.create(WORLD, new Vector3i(1, 1, 1), 10));
+        repository.close();
+        Path first = lastSegment();
+        Files.write(first, new byte[]{1, 0, 0}, StandardOpenOption.APPEND);
+
+        LogReinforcedBlockRepository reopened = open();
+        reopened.save(ReinforcedBlock.create(WORLD, new Vector3i(2, 2, 2), 20));
+        reopened.save(ReinforcedBlock.create(WORLD, new Vector3i(1, 1, 1), 15));
+        reopened.close();
+        assertNotEquals(first, lastSegment());
+
+        // The new segment declares its worlds again, and replays over the old one
+        LogReinforcedBlockRepository again = open();
+        assertEquals(15, reinforcement(again, WORLD, 1, 1, 1));
+        assertEquals(20, reinforcement(again, WORLD, 2, 2, 2));
+    }
+}
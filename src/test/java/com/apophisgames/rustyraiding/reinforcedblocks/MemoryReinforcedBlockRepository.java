@@ -0,0 +1,150 @@
+package com.apophisgames.rustyraiding.reinforcedblocks;
+
+import com.apophisgames.rustyraiding.util.WorldIds;
+import com.hypixel.hytale.math.vector.Vector3i;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * In-memory repository for tests, recording the calls that reach it.
+ */
+public class MemoryReinforcedBlockRepository implements IReinforcedBlockRepository {
+
+    public final Map<String, ReinforcedBlock> blocks = new HashMap<>();
+    public final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+
+    // When set, writeBatch counts down writing and waits for release
+    volatile CountDownLatch writing;
+    volatile CountDownLatch release;
+    public volatile int failuresLeft;
+
+    public void put(String worldName, int x, int y, int z, int reinforcement) {
+        ReinforcedBlock block = ReinforcedBlock.create(worldName, new Vector3i(x, y, z), reinforcement);
+        blocks.put(block.internalId(), block);
+    }
+
+    public synchronized int get(String worldName, int x, int y, int z) {
+        ReinforcedBlock block = blocks.get(ReinforcedBlock.getInternalIdFromPosition(worldName, new Vector3i(x, y, z)));
+        return block != null ? block.reinforcement() : ReinforcedBlock.NOT_REINFORCED;
+    }
+
+    private static boolean inArea(Vector3i position, Vector3i boundsMin, Vector3i boundsMax) {
+        return position.x >= boundsMin.x && position.x <= boundsMax.x
+            && position.y >= boundsMin.y && position.y <= boundsMax.y
+            && position.z >= boundsMin.z && position.z <= boundsMax.z;
+    }
+
+    @Override
+    public void initialize() {
+    }
+
+    @Override
+    public synchronized Map<String, Map<String, ReinforcedBlock>> loadAll() {
+        Map<String, Map<String, ReinforcedBlock>> result = new HashMap<>();
+        for (ReinforcedBlock block : blocks.values()) {
+            result.computeIfAbsent(block.worldName(), k -> new HashMap<>()).put(block.internalId(), block);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Map<String, ReinforcedBlock> findByWorld(String worldName) {
+        return loadAll().getOrDefault(worldName, new HashMap<>());
+    }
+
+    @Override
+    public synchronized List<String> findWorldNames() {
+        return new ArrayList<>(loadAll().keySet());
+    }
+
+    @Override
+    public void loadChunk(int worldId, int chunkX, int chunkZ) {
+        calls.add("loadChunk");
+    }
+
+    @Override
+    public void unloadChunk(int worldId, int chunkX, int chunkZ) {
+        calls.add("unloadChunk");
+    }
+
+    @Override
+    public synchronized Optional<ReinforcedBlock> findByPosition(String worldName, Vector3i position) {
+        return Optional.ofNullable(blocks.get(ReinforcedBlock.getInternalIdFromPosition(worldName, position)));
+    }
+
+    @Override
+    public synchronized int findReinforcement(int worldId, int x, int y, int z) {
+        calls.add("findReinforcement");
+        return get(WorldIds.nameOf(worldId), x, y, z);
+    }
+
+    @Override
+    public synchronized Map<String, ReinforcedBlock> findInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
+        calls.add("findInArea");
+        Map<String, ReinforcedBlock> result = new HashMap<>();
+        for (ReinforcedBlock block : blocks.values()) {
+            if (block.worldName().equals(worldName) && inArea(block.position(), boundsMin, boundsMax))
+                result.put(block.internalId(), block);
+        }
+        return result;
+    }
+
+    @Override
+    public void save(ReinforcedBlock reinforcedBlock) throws Exception {
+        writeBatch(List.of(reinforcedBlock), List.of());
+    }
+
+    @Override
+    public void writeBatch(Collection<ReinforcedBlock> saves, Collection<String> deletedIds) throws Exception {
+        calls.add("writeBatch");
+        CountDownLatch writing = this.writing;
+        if (writing != null) {
+            writing.countDown();
+            release.await();
+        }
+        synchronized (this) {
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                throw new IllegalStateException("database is locked");
+            }
+            for (ReinforcedBlock block : saves) {
+                blocks.put(block.internalId(), block);
+            }
+            for (String id : deletedIds) {
+                blocks.remove(id);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void delete(String reinforcedBlockId) {
+        blocks.remove(reinforcedBlockId);
+    }
+
+    @Override
+    public synchronized void delete(String worldName, Vector3i position) {
+        blocks.remove(ReinforcedBlock.getInternalIdFromPosition(worldName, position));
+    }
+
+    @Override
+    public synchronized void deleteInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
+        calls.add("deleteInArea");
+        blocks.values().removeIf(block -> block.worldName().equals(worldName) && inArea(block.position(), boundsMin, boundsMax));
+    }
+
+    @Override
+    public void evictInArea(String worldName, Vector3i boundsMin, Vector3i boundsMax) {
+        calls.add("evictInArea");
+    }
+
+    @Override
+    public void close() {
+    }
+}
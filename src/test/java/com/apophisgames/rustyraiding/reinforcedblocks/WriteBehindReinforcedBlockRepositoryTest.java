@@ -0,0 +1,228 @@
+package com.apophisgames.rustyraiding.reinforcedblocks;
+
+import com.apophisgames.rustyraiding.util.WorldIds;
+import com.hypixel.hytale.math.vector.Vector3i;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindReinforcedBlockRepositoryTest {
+
+    private static final String WORLD = "default";
+    private static final Vector3i AREA_MIN = new Vector3i(0, 0, 0);
+    private static final Vector3i AREA_MAX = new Vector3i(10, 10, 10);
+
+    private final MemoryReinforcedBlockRepository delegate = new MemoryReinforcedBlockRepository();
+    // Flushes only when a test asks for one, or an eviction queues one
+    private final WriteBehindReinforcedBlockRepository repository =
+            new WriteBehindReinforcedBlockRepository(delegate, TimeUnit.HOURS.toMillis(1), 1_000);
+
+    @AfterEach
+    void close() {
+        delegate.writing = null;
+        repository.close();
+    }
+
+    private static ReinforcedBlock block(int x, int y, int z, int reinforcement) {
+        return ReinforcedBlock.create(WORLD, new Vector3i(x, y, z), reinforcement);
+    }
+
+    @Test
+    void writesAreCoalescedUntilFlushed() throws Exception {
+        repository.save(block(1, 1, 1, 10));
+        repository.save(block(1, 1, 1, 20));
+        repository.delete(WORLD, new Vector3i(2, 2, 2));
+        assertTrue(delegate.calls.isEmpty());
+
+        repository.flush();
+        assertEquals(List.of("writeBatch"), delegate.calls);
+        assertEquals(20, delegate.get(WORLD, 1, 1, 1));
+    }
+
+    @Test
+    void areaReadsSeePendingWritesWithoutFlushing() throws Exception {
+        delegate.put(WORLD, 1, 1, 1, 50);
+        delegate.put(WORLD, 2, 2, 2, 50);
+        delegate.put(WORLD, 4, 4, 4, 50);
+        repository.save(block(1, 1, 1, 10));
+        repository.delete(WORLD, new Vector3i(2, 2, 2));
+        repository.save(block(3, 3, 3, 5));
+        repository.save(block(30, 3, 3, 5));
+
+        Map<String, ReinforcedBlock> blocks = repository.findInArea(WORLD, AREA_MIN, AREA_MAX);
+
+        assertEquals(3, blocks.size());
+        assertEquals(10, blocks.get(block(1, 1, 1, 0).internalId()).reinforcement());
+        assertEquals(5, blocks.get(block(3, 3, 3, 0).internalId()).reinforcement());
+        assertEquals(50, blocks.get(block(4, 4, 4, 0).internalId()).reinforcement());
+        assertFalse(delegate.calls.contains("writeBatch"));
+    }
+
+    @Test
+    void blockReadsSeePendingWritesWithoutFlushing() throws Exception {
+        delegate.put(WORLD, 1, 1, 1, 50);
+        delegate.put(WORLD, 2, 2, 2, 50);
+        repository.save(block(1, 1, 1, 10));
+        repository.delete(WORLD, new Vector3i(2, 2, 2));
+        int worldId = WorldIds.of(WORLD);
+
+        assertEquals(10, repository.findReinforcement(worldId, 1, 1, 1));
+        assertEquals(ReinforcedBlock.NOT_REINFORCED, repository.findReinforcement(worldId, 2, 2, 2));
+        assertTrue(repository.findByPosition(WORLD, new Vector3i(2, 2, 2)).isEmpty());
+        assertFalse(delegate.calls.contains("writeBatch"));
+    }
+
+    @Test
+    void unloadingChunkKeepsWritesPending() throws Exception {
+        repository.save(block(1, 1, 1, 10));
+        repository.unloadChunk(WorldIds.of(WORLD), 0, 0);
+
+        assertEquals(List.of("unloadChunk"), delegate.calls);
+        // Reloading the chunk reads the pending write back
+        assertEquals(10, repository.findInArea(WORLD, AREA_MIN, AREA_MAX).get(block(1, 1, 1, 0).internalId()).reinforcement());
+
+        repository.flush();
+        assertEquals(10, delegate.get(WORLD, 1, 1, 1));
+    }
+
+    @Test
+    void readsHideEvictedAreaButNotLaterWrites() throws Exception {
+        delegate.put(WORLD, 1, 1, 1, 50);
+        repository.evictInArea(WORLD, AREA_MIN, AREA_MAX);
+        repository.save(block(3, 3, 3, 5));
+
+        // Whether or not the queued flush ran yet, reads see the area emptied then rewritten
+        Map<String, ReinforcedBlock> blocks = repository.findInArea(WORLD, AREA_MIN, AREA_MAX);
+        assertEquals(1, blocks.size());
+        assertEquals(5, blocks.get(block(3, 3, 3, 0).internalId()).reinforcement());
+        assertEquals(ReinforcedBlock.NOT_REINFORCED, repository.findReinforcement(WorldIds.of(WORLD), 1, 1, 1));
+    }
+
+    @Test
+    void evictionDeletesAreaBeforeLaterWrites() throws Exception {
+        delegate.put(WORLD, 1, 1, 1, 50);
+        delegate.put(WORLD, 20, 1, 1, 50);
+        repository.save(block(2, 2, 2, 50));
+
+        repository.evictInArea(WORLD, AREA_MIN, AREA_MAX);
+        repository.save(block(3, 3, 3, 10));
+        repository.flush();
+
+        assertEquals(ReinforcedBlock.NOT_REINFORCED, delegate.get(WORLD, 1, 1, 1));
+        assertEquals(ReinforcedBlock.NOT_REINFORCED, delegate.get(WORLD, 2, 2, 2), "write made before the eviction came back");
+        assertEquals(10, delegate.get(WORLD, 3, 3, 3), "write made after the eviction was lost");
+        assertEquals(50, delegate.get(WORLD, 20, 1, 1));
+        assertTrue(delegate.calls.indexOf("deleteInArea") < delegate.calls.lastIndexOf("writeBatch"));
+    }
+
+    @Test
+    void evictionDoesNotWaitForFlushInProgress() throws Exception {
+        repository.save(block(1, 1, 1, 10));
+        delegate.writing = new CountDownLatch(1);
+        delegate.release = new CountDownLatch(1);
+
+        Thread flusher = new Thread(() -> {
+            try {
+                repository.flush();
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        flusher.start();
+        assertTrue(delegate.writing.await(5, TimeUnit.SECONDS));
+
+        // The flush holds the delegate, the eviction must still return at once
+        Thread evicting = new Thread(() -> repository.evictInArea(WORLD, AREA_MIN, AREA_MAX));
+        evicting.start();
+        evicting.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(evicting.isAlive(), "eviction blocked on the flush");
+        assertFalse(delegate.calls.contains("deleteInArea"));
+
+        delegate.writing = null;
+        delegate.release.countDown();
+        flusher.join();
+        repository.flush();
+
+        // The block written by the earlier batch is removed by the queued delete
+        assertEquals(ReinforcedBlock.NOT_REINFORCED, delegate.get(WORLD, 1, 1, 1));
+    }
+
+    @Test
+    void readsDoNotWaitForFlushInProgress() throws Exception {
+        delegate.put(WORLD, 2, 2, 2, 50);
+        repository.save(block(1, 1, 1, 10));
+        repository.delete(WORLD, new Vector3i(2, 2, 2));
+        delegate.writing = new CountDownLatch(1);
+        delegate.release = new CountDownLatch(1);
+
+        Thread flusher = new Thread(() -> {
+            try {
+                repository.flush();
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        flusher.start();
+        assertTrue(delegate.writing.await(5, TimeUnit.SECONDS));
+
+        // The batch being written is still read back, without waiting for it to be stored
+        int[] reinforcements = new int[2];
+        List<Map<String, ReinforcedBlock>> areas = new ArrayList<>();
+        Thread reading = new Thread(() -> {
+            try {
+                reinforcements[0] = repository.findReinforcement(WorldIds.of(WORLD), 1, 1, 1);
+                reinforcements[1] = repository.findReinforcement(WorldIds.of(WORLD), 2, 2, 2);
+                areas.add(repository.findInArea(WORLD, AREA_MIN, AREA_MAX));
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        boolean blocked;
+        try {
+            reading.start();
+            reading.join(TimeUnit.SECONDS.toMillis(5));
+            blocked = reading.isAlive();
+        } finally {
+            delegate.writing = null;
+            delegate.release.countDown();
+            flusher.join();
+        }
+
+        assertFalse(blocked, "read blocked on the flush");
+        assertEquals(10, reinforcements[0]);
+        assertEquals(ReinforcedBlock.NOT_REINFORCED, reinforcements[1]);
+        assertEquals(1, areas.get(0).size());
+        assertEquals(10, areas.get(0).get(block(1, 1, 1, 0).internalId()).reinforcement());
+        assertEquals(10, repository.findReinforcement(WorldIds.of(WORLD), 1, 1, 1));
+        assertEquals(ReinforcedBlock.NOT_REINFORCED, repository.findReinforcement(WorldIds.of(WORLD), 2, 2, 2));
+    }
+
+    @Test
+    void failedBatchDoesNotBringBackEvictedBlocks() throws Exception {
+        repository.save(block(1, 1, 1, 10));
+        repository.save(block(20, 1, 1, 10));
+        delegate.failuresLeft = 1;
+        delegate.writing = new CountDownLatch(1);
+        delegate.release = new CountDownLatch(1);
+
+        Thread flusher = new Thread(() -> assertThrows(IllegalStateException.class, repository::flush));
+        flusher.start();
+        assertTrue(delegate.writing.await(5, TimeUnit.SECONDS));
+
+        repository.evictInArea(WORLD, AREA_MIN, AREA_MAX);
+        delegate.writing = null;
+        delegate.release.countDown();
+        flusher.join();
+
+        repository.flush();
+        assertEquals(ReinforcedBlock.NOT_REINFORCED, delegate.get(WORLD, 1, 1, 1), "evicted write was put back");
+        assertEquals(10, delegate.get(WORLD, 20, 1, 1), "write outside the area was lost");
+    }
+}
@@ -0,0 +1,170 @@
+package com.apophisgames.rustyraiding.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncLoadingCacheTest {
+
+    private static List<String> newValue() {
+        return Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @Test
+    void loadsOnceForConcurrentCallers() throws Exception {
+        AsyncLoadingCache<String, List<String>> cache = new AsyncLoadingCache<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread loader = new Thread(() -> assertDoesNotThrowChecked(() -> cache.get("k", key -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return newValue();
+        })));
+        loader.start();
+        loading.await();
+
+        AtomicReference<List<String>> waited = new AtomicReference<>();
+        Thread waiter = new Thread(() -> assertDoesNotThrowChecked(() -> waited.set(cache.get("k", key -> {
+            loads.incrementAndGet();
+            return newValue();
+        }))));
+        waiter.start();
+
+        assertNull(cache.getIfPresent("k"));
+        release.countDown();
+        loader.join();
+        waiter.join();
+
+        assertEquals(1, loads.get());
+        assertSame(cache.getIfPresent("k"), waited.get());
+    }
+
+    @Test
+    void writesQueuedWhileLoadingAreAppliedInOrder() throws Exception {
+        AsyncLoadingCache<String, List<String>> cache = new AsyncLoadingCache<>();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread loader = new Thread(() -> assertDoesNotThrowChecked(() -> cache.get("k", key -> {
+            loading.countDown();
+            release.await();
+            return newValue();
+        })));
+        loader.start();
+        loading.await();
+
+        cache.whenLoaded("k", value -> value.add("a"));
+        cache.forEach(value -> value.add("b"));
+        cache.forEachLoading(value -> value.add("c"));
+        release.countDown();
+        loader.join();
+
+        assertEquals(List.of("a", "b", "c"), cache.getIfPresent("k"));
+
+        // Once loaded, writes apply immediately, and forEachLoading leaves the value alone
+        cache.whenLoaded("k", value -> value.add("d"));
+        cache.forEachLoading(value -> value.add("e"));
+        assertEquals(List.of("a", "b", "c", "d"), cache.getIfPresent("k"));
+    }
+
+    @Test
+    void writeRacingLoadCompletionIsNotLost() throws Exception {
+        for (int round = 0; round < 500; round++) {
+            AsyncLoadingCache<String, List<String>> cache = new AsyncLoadingCache<>();
+            CountDownLatch loading = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicReference<Thread> writer = new AtomicReference<>();
+
+            Thread loader = new Thread(() -> assertDoesNotThrowChecked(() -> cache.get("k", key -> {
+                loading.countDown();
+                release.await();
+                return newValue();
+            })));
+            loader.start();
+            loading.await();
+
+            // The queued write runs while the load applies its queue. It starts a second writer
+            // and waits until that writer is blocked on the entry, so the second write arrives
+            // exactly while the load is closing the queue and completing the value.
+            cache.whenLoaded("k", value -> {
+                value.add("queued");
+                Thread racing = new Thread(() -> cache.whenLoaded("k", v -> v.add("racing")));
+                writer.set(racing);
+                racing.start();
+                while (racing.getState() != Thread.State.BLOCKED && racing.isAlive()) {
+                    Thread.onSpinWait();
+                }
+            });
+
+            release.countDown();
+            loader.join();
+            writer.get().join();
+
+            assertEquals(List.of("queued", "racing"), cache.getIfPresent("k"), "round " + round);
+        }
+    }
+
+    @Test
+    void failedLoadDropsQueuedWritesAndBacksOff() throws Exception {
+        AsyncLoadingCache<String, List<String>> cache = new AsyncLoadingCache<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        Exception thrown = assertThrows(IllegalStateException.class, () -> cache.get("k", key -> {
+            loads.incrementAndGet();
+            cache.whenLoaded("k", value -> value.add("lost"));
+            throw new IllegalStateException("storage down");
+        }));
+        assertEquals("storage down", thrown.getMessage());
+
+        // Still backing off, the error is handed out without loading again
+        assertThrows(IllegalStateException.class, () -> cache.get("k", key -> {
+            loads.incrementAndGet();
+            return newValue();
+        }));
+        assertEquals(1, loads.get());
+        assertNull(cache.getIfPresent("k"));
+
+        Thread.sleep(150);
+        List<String> value = cache.get("k", key -> {
+            loads.incrementAndGet();
+            return newValue();
+        });
+        assertEquals(2, loads.get());
+        assertTrue(value.isEmpty());
+    }
+
+    @Test
+    void putAndRemove() throws Exception {
+        AsyncLoadingCache<String, List<String>> cache = new AsyncLoadingCache<>();
+        List<String> value = newValue();
+        cache.put("k", value);
+        assertSame(value, cache.getIfPresent("k"));
+        assertSame(value, cache.get("k", key -> fail("loaded a present key")));
+
+        cache.remove("k");
+        assertNull(cache.getIfPresent("k"));
+        cache.whenLoaded("k", v -> fail("wrote to a removed key"));
+    }
+
+    private interface Checked {
+        void run() throws Exception;
+    }
+
+    private static void assertDoesNotThrowChecked(Checked task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
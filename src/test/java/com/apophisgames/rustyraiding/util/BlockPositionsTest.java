@@ -0,0 +1,60 @@
+package com.apophisgames.rustyraiding.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockPositionsTest {
+
+    private static final int MAX_XZ = (1 << 25) - 1;
+    private static final int MIN_XZ = -(1 << 25);
+
+    private static void assertRoundTrip(int x, int y, int z) {
+        long packed = BlockPositions.pack(x, y, z);
+        assertEquals(x, BlockPositions.unpackX(packed), "x of " + x + "," + y + "," + z);
+        assertEquals(y, BlockPositions.unpackY(packed), "y of " + x + "," + y + "," + z);
+        assertEquals(z, BlockPositions.unpackZ(packed), "z of " + x + "," + y + "," + z);
+    }
+
+    @Test
+    void negativeCoordinatesRoundTrip() {
+        assertRoundTrip(-1, -1, -1);
+        assertRoundTrip(-1, 64, 0);
+        assertRoundTrip(0, 64, -1);
+        assertRoundTrip(-12345, -100, 6789);
+        assertRoundTrip(12345, 100, -6789);
+    }
+
+    @Test
+    void extremesRoundTrip() {
+        for (int x : new int[]{MIN_XZ, -1, 0, MAX_XZ}) {
+            for (int y : new int[]{BlockPositions.MIN_Y, -1, 0, BlockPositions.MAX_Y}) {
+                for (int z : new int[]{MIN_XZ, -1, 0, MAX_XZ}) {
+                    assertRoundTrip(x, y, z);
+                }
+            }
+        }
+    }
+
+    @Test
+    void neighboursAcrossZeroHaveDistinctKeys() {
+        Set<Long> keys = new HashSet<>();
+        for (int x = -2; x <= 1; x++) {
+            for (int y = -2; y <= 1; y++) {
+                for (int z = -2; z <= 1; z++) {
+                    assertTrue(keys.add(BlockPositions.pack(x, y, z)), "collision at " + x + "," + y + "," + z);
+                }
+            }
+        }
+    }
+
+    @Test
+    void originPacksToZero() {
+        // LongIntHashMap stores key 0 aside, the origin must still be a valid key
+        assertEquals(0L, BlockPositions.pack(0, 0, 0));
+        assertNotEquals(0L, BlockPositions.pack(0, -1, 0));
+    }
+}
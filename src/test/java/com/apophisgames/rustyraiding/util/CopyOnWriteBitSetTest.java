@@ -0,0 +1,64 @@
+package com.apophisgames.rustyraiding.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CopyOnWriteBitSetTest {
+
+    @Test
+    void addAndRemove() {
+        CopyOnWriteBitSet set = new CopyOnWriteBitSet();
+        assertFalse(set.contains(3));
+
+        assertTrue(set.add(3));
+        assertFalse(set.add(3));
+        assertTrue(set.contains(3));
+        assertEquals(1, set.size());
+
+        assertTrue(set.remove(3));
+        assertFalse(set.remove(3));
+        assertFalse(set.contains(3));
+        assertEquals(0, set.size());
+    }
+
+    @Test
+    void growsPastOneWord() {
+        CopyOnWriteBitSet set = new CopyOnWriteBitSet();
+        set.add(63);
+        set.add(64);
+        set.add(1000);
+
+        assertTrue(set.contains(63));
+        assertTrue(set.contains(64));
+        assertTrue(set.contains(1000));
+        assertFalse(set.contains(999));
+        // Bits past the last word are absent, not out of bounds
+        assertFalse(set.contains(100_000));
+        assertFalse(set.remove(100_000));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    void concurrentAddsAreAllKept() throws Exception {
+        CopyOnWriteBitSet set = new CopyOnWriteBitSet();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            threads.add(new Thread(() -> {
+                for (int i = offset; i < 4096; i += 4) {
+                    set.add(i);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(4096, set.size());
+    }
+}
@@ -0,0 +1,68 @@
+package com.apophisgames.rustyraiding.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CopyOnWriteIntSetTest {
+
+    @Test
+    void addAndRemove() {
+        CopyOnWriteIntSet set = new CopyOnWriteIntSet();
+        assertFalse(set.contains(3));
+
+        assertTrue(set.add(3));
+        assertFalse(set.add(3));
+        assertTrue(set.contains(3));
+        assertEquals(1, set.size());
+
+        assertTrue(set.remove(3));
+        assertFalse(set.remove(3));
+        assertFalse(set.contains(3));
+        assertEquals(0, set.size());
+    }
+
+    @Test
+    void keepsMembersInAnyOrder() {
+        CopyOnWriteIntSet set = new CopyOnWriteIntSet();
+        set.add(1_000_000);
+        set.add(5);
+        set.add(70_000);
+        set.add(0);
+
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(5));
+        assertTrue(set.contains(70_000));
+        assertTrue(set.contains(1_000_000));
+        assertFalse(set.contains(6));
+
+        assertTrue(set.remove(70_000));
+        assertTrue(set.contains(5));
+        assertTrue(set.contains(1_000_000));
+        assertFalse(set.contains(70_000));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    void concurrentAddsAreAllKept() throws Exception {
+        CopyOnWriteIntSet set = new CopyOnWriteIntSet();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            threads.add(new Thread(() -> {
+                for (int i = offset; i < 4096; i += 4) {
+                    set.add(i);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(4096, set.size());
+    }
+}
@@ -0,0 +1,122 @@
+package com.apophisgames.rustyraiding.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongIntHashMapTest {
+
+    private static Map<Long, Integer> entries(LongIntHashMap map) {
+        Map<Long, Integer> entries = new HashMap<>();
+        map.forEach((key, value) -> assertNull(entries.put(key, value), "key visited twice: " + key));
+        return entries;
+    }
+
+    @Test
+    void growsPastInitialCapacity() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        for (int i = 1; i <= 10_000; i++) {
+            map.put(i * 31L, i);
+        }
+
+        assertEquals(10_000, map.size());
+        for (int i = 1; i <= 10_000; i++) {
+            assertEquals(i, map.getOrDefault(i * 31L, -1));
+        }
+        assertEquals(-1, map.getOrDefault(7, -1));
+        assertEquals(10_000, entries(map).size());
+    }
+
+    @Test
+    void putOverwritesWithoutGrowing() {
+        LongIntHashMap map = new LongIntHashMap();
+        map.put(5, 1);
+        map.put(5, 2);
+
+        assertEquals(1, map.size());
+        assertEquals(2, map.getOrDefault(5, -1));
+    }
+
+    @Test
+    void zeroKeyIsStoredAside() {
+        LongIntHashMap map = new LongIntHashMap();
+        assertFalse(map.containsKey(0));
+        map.put(0, 7);
+        map.put(1, 8);
+
+        assertTrue(map.containsKey(0));
+        assertEquals(7, map.getOrDefault(0, -1));
+        assertEquals(2, map.size());
+        assertEquals(Map.of(0L, 7, 1L, 8), entries(map));
+
+        assertTrue(map.remove(0));
+        assertFalse(map.remove(0));
+        assertEquals(-1, map.getOrDefault(0, -1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void removalKeepsProbeChainsIntact() {
+        // Fill a small table densely so keys share probe chains, then remove every other key.
+        // Without the backward shift, keys past a removed slot would no longer be found.
+        LongIntHashMap map = new LongIntHashMap(64);
+        List<Long> keys = new ArrayList<>();
+        for (long key = 1; key <= 64; key++) {
+            map.put(key, (int) key);
+            keys.add(key);
+        }
+
+        for (int i = 0; i < keys.size(); i += 2) {
+            assertTrue(map.remove(keys.get(i)));
+        }
+
+        assertEquals(32, map.size());
+        for (int i = 0; i < keys.size(); i++) {
+            long key = keys.get(i);
+            assertEquals(i % 2 == 1, map.containsKey(key), "key " + key);
+        }
+        assertFalse(map.remove(keys.get(0)));
+    }
+
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        Random random = new Random(1234);
+        LongIntHashMap map = new LongIntHashMap();
+        Map<Long, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 200_000; i++) {
+            // A small key range keeps the table dense, with long chains and many removals
+            long key = random.nextInt(4096) - 2048;
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    int value = random.nextInt();
+                    map.put(key, value);
+                    expected.put(key, value);
+                }
+                case 1 -> assertEquals(expected.remove(key) != null, map.remove(key));
+                default -> assertEquals((int) expected.getOrDefault(key, -1), map.getOrDefault(key, -1));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, entries(map));
+    }
+
+    @Test
+    void clearEmptiesTheMap() {
+        LongIntHashMap map = new LongIntHashMap();
+        map.put(0, 1);
+        map.put(42, 2);
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(0));
+        assertFalse(map.containsKey(42));
+        assertTrue(entries(map).isEmpty());
+    }
+}
@@ -0,0 +1,118 @@
+package com.apophisgames.rustyraiding.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MortonCodeTest {
+
+    private static final int MAX_XZ = (1 << 25) - 1;
+    private static final int MIN_XZ = -(1 << 25);
+
+    private static boolean covered(long[] ranges, long key) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (key >= ranges[i] && key <= ranges[i + 1]) return true;
+        }
+        return false;
+    }
+
+    private static void assertWellFormed(long[] ranges) {
+        assertEquals(0, ranges.length % 2);
+        assertTrue(ranges.length / 2 <= MortonCode.MAX_RANGES, ranges.length / 2 + " ranges");
+        for (int i = 0; i < ranges.length; i += 2) {
+            assertTrue(ranges[i] <= ranges[i + 1], "range " + i / 2 + " is inverted");
+            // Sorted and disjoint, with a gap, otherwise the two would have been merged
+            if (i > 0) assertTrue(ranges[i - 1] + 1 < ranges[i], "range " + i / 2 + " overlaps or touches the previous");
+        }
+    }
+
+    /**
+     * Every block of a small box must be covered.
+     */
+    private static void assertCoversBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        long[] ranges = MortonCode.ranges(minX, minY, minZ, maxX, maxY, maxZ);
+        assertWellFormed(ranges);
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    assertTrue(covered(ranges, MortonCode.encode(x, y, z)), "missed " + x + "," + y + "," + z);
+                }
+            }
+        }
+    }
+
+    @Test
+    void encodeRoundTrips() {
+        int[] xz = {MIN_XZ, -4097, -1, 0, 1, 4096, MAX_XZ};
+        int[] ys = {BlockPositions.MIN_Y, -1, 0, 64, BlockPositions.MAX_Y};
+        for (int x : xz) {
+            for (int y : ys) {
+                for (int z : xz) {
+                    long key = MortonCode.encode(x, y, z);
+                    assertEquals(x, MortonCode.decodeX(key));
+                    assertEquals(y, MortonCode.decodeY(key));
+                    assertEquals(z, MortonCode.decodeZ(key));
+                }
+            }
+        }
+    }
+
+    @Test
+    void signedKeyOrderFollowsCoordinates() {
+        // Along a single axis, Z-order keeps coordinate order, across zero too
+        assertTrue(MortonCode.encode(-1, 0, 0) < MortonCode.encode(0, 0, 0));
+        assertTrue(MortonCode.encode(0, 0, -1) < MortonCode.encode(0, 0, 0));
+        assertTrue(MortonCode.encode(0, -1, 0) < MortonCode.encode(0, 0, 0));
+        assertTrue(MortonCode.encode(MIN_XZ, 0, 0) < MortonCode.encode(MAX_XZ, 0, 0));
+    }
+
+    @Test
+    void alignedCellIsOneExactRange() {
+        long[] ranges = MortonCode.ranges(0, 0, 0, 15, 15, 15);
+        assertEquals(2, ranges.length);
+        assertEquals(16 * 16 * 16, ranges[1] - ranges[0] + 1);
+    }
+
+    @Test
+    void coversBoxesAcrossZero() {
+        assertCoversBox(-3, -2, -5, 4, 3, 2);
+        assertCoversBox(-17, 60, 15, -1, 70, 33);
+        assertCoversBox(4095, -1, 4095, 4097, 1, 4097);
+    }
+
+    @Test
+    void coversRandomBoxes() {
+        Random random = new Random(99);
+        for (int i = 0; i < 200; i++) {
+            int minX = random.nextInt(20_000) - 10_000, minY = random.nextInt(400) - 200, minZ = random.nextInt(20_000) - 10_000;
+            assertCoversBox(minX, minY, minZ, minX + random.nextInt(12), minY + random.nextInt(12), minZ + random.nextInt(12));
+        }
+    }
+
+    @Test
+    void largeBoxStaysWithinRangeLimit() {
+        long[] ranges = MortonCode.ranges(-1000, -64, -1000, 1000, 320, 1000);
+        assertWellFormed(ranges);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            int x = random.nextInt(2001) - 1000, y = random.nextInt(385) - 64, z = random.nextInt(2001) - 1000;
+            assertTrue(covered(ranges, MortonCode.encode(x, y, z)), "missed " + x + "," + y + "," + z);
+        }
+    }
+
+    @Test
+    void boxesAreClampedToKeySpace() {
+        assertCoversBox(MAX_XZ - 1, BlockPositions.MAX_Y - 1, MAX_XZ - 1, MAX_XZ, BlockPositions.MAX_Y, MAX_XZ);
+        long[] clamped = MortonCode.ranges(Integer.MIN_VALUE, 0, 0, MIN_XZ + 1, 0, 0);
+        assertTrue(covered(clamped, MortonCode.encode(MIN_XZ, 0, 0)));
+    }
+
+    @Test
+    void emptyBoxHasNoRanges() {
+        assertEquals(0, MortonCode.ranges(5, 0, 0, 4, 0, 0).length);
+        assertEquals(0, MortonCode.ranges(0, BlockPositions.MAX_Y + 1, 0, 0, BlockPositions.MAX_Y + 10, 0).length);
+    }
+}
@@ -0,0 +1,86 @@
+package com.apophisgames.rustyraiding.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SerializedRepositoryTest {
+
+    interface Repository {
+        String threadName() throws Exception;
+
+        int fail() throws Exception;
+
+        default CompletableFuture<String> threadNameAsync() {
+            return DatabaseExecutor.inline(this::threadName);
+        }
+
+        @SerializedRepository.CallerThread
+        default String callerThreadName() {
+            return Thread.currentThread().getName();
+        }
+
+        void close();
+    }
+
+    private static class ThreadRecorder implements Repository {
+        @Override
+        public String threadName() throws Exception {
+            return Thread.currentThread().getName();
+        }
+
+        @Override
+        public int fail() throws Exception {
+            throw new SQLException("database is locked");
+        }
+
+        @Override
+        public void close() {
+            throw new IllegalStateException("already closed");
+        }
+    }
+
+    private final DatabaseExecutor io = new DatabaseExecutor("test-io");
+    private final Repository repository = SerializedRepository.wrap(Repository.class, new ThreadRecorder(), io);
+
+    @AfterEach
+    void close() {
+        io.close();
+    }
+
+    @Test
+    void syncAndAsyncCallsRunOnTheIoThread() throws Exception {
+        assertEquals("test-io", repository.threadName());
+        assertEquals("test-io", repository.threadNameAsync().get());
+    }
+
+    @Test
+    void callerThreadMethodsRunInline() {
+        assertEquals(Thread.currentThread().getName(), repository.callerThreadName());
+    }
+
+    @Test
+    void delegateExceptionsAreUnwrapped() {
+        SQLException sync = assertThrows(SQLException.class, repository::fail);
+        assertEquals("database is locked", sync.getMessage());
+
+        Repository failingAsync = SerializedRepository.wrap(Repository.class, new ThreadRecorder() {
+            @Override
+            public String threadName() throws Exception {
+                throw new SQLException("disk I/O error");
+            }
+        }, io);
+        ExecutionException async = assertThrows(ExecutionException.class, () -> failingAsync.threadNameAsync().get());
+        assertInstanceOf(SQLException.class, async.getCause());
+    }
+
+    @Test
+    void closeLogsInsteadOfThrowing() {
+        assertDoesNotThrow(repository::close);
+    }
+}
@@ -0,0 +1,195 @@
+package com.apophisgames.rustyraiding.zoneauthorizations;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LegacyAuthorizationMigrationTest {
+
+    private static final UUID STEVE = UUID.randomUUID();
+    private static final UUID ALICE = UUID.randomUUID();
+
+    /**
+     * Legacy rows by name, migrated rows by UUID.
+     */
+    private static final class LegacyRepository implements IAuthRepository {
+        final Map<String, List<String>> legacy = new HashMap<>();
+        final Map<UUID, List<String>> migrated = new HashMap<>();
+        int failuresLeft;
+
+        void addLegacy(String name, String... zoneIds) {
+            legacy.computeIfAbsent(name, k -> new ArrayList<>()).addAll(List.of(zoneIds));
+        }
+
+        @Override
+        public List<String> findLegacyPlayerNames() {
+            return new ArrayList<>(legacy.keySet());
+        }
+
+        @Override
+        public List<String> migrateLegacy(UUID playerUuid, String playerName) throws Exception {
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                throw new IllegalStateException("database is locked");
+            }
+            List<String> zoneIds = legacy.remove(playerName);
+            if (zoneIds == null) return List.of();
+            migrated.computeIfAbsent(playerUuid, k -> new ArrayList<>()).addAll(zoneIds);
+            return zoneIds;
+        }
+
+        @Override
+        public void initialize() {
+        }
+
+        @Override
+        public Map<String, List<ZoneAuthorization>> loadAll() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<ZoneAuthorization> findByZone(String zoneId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<String> findByPlayer(UUID playerUuid) {
+            return migrated.getOrDefault(playerUuid, List.of());
+        }
+
+        @Override
+        public boolean isAuthorized(String zoneId, int playerId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void save(ZoneAuthorization zoneAuthorization) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void delete(ZoneAuthorization zoneAuthorization) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void delete(String zoneId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final LegacyRepository repository = new LegacyRepository();
+    private final Queue<Runnable> background = new ArrayDeque<>();
+    private final Map<String, UUID> online = new HashMap<>();
+    private final AtomicInteger invalidations = new AtomicInteger();
+
+    private final LegacyAuthorizationMigration migration = new LegacyAuthorizationMigration(
+            repository, background::add, online::get, invalidations::incrementAndGet);
+
+    private void runBackground() {
+        Runnable task;
+        while ((task = background.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    void finishesAtOnceWithoutLegacyRows() {
+        migration.start();
+        assertFalse(migration.isFinished());
+        runBackground();
+
+        assertTrue(migration.isFinished());
+        migration.playerConnected(STEVE, "Steve");
+        assertTrue(background.isEmpty());
+    }
+
+    @Test
+    void migratesPlayersOnlineAtStartup() {
+        repository.addLegacy("alice", "base");
+        online.put("alice", ALICE);
+
+        migration.start();
+        runBackground();
+
+        assertEquals(List.of("base"), repository.findByPlayer(ALICE));
+        assertEquals(1, invalidations.get());
+        assertTrue(migration.isFinished());
+    }
+
+    @Test
+    void displayNamesAreNotMatched() {
+        repository.addLegacy("Steve the Builder", "base", "farm");
+        migration.start();
+        runBackground();
+
+        // Rows stored under a display name are never tied to whoever connects with another username
+        migration.playerConnected(STEVE, "steve");
+        runBackground();
+        assertTrue(repository.findByPlayer(STEVE).isEmpty());
+        assertEquals(List.of("base", "farm"), repository.legacy.get("Steve the Builder"));
+        assertFalse(migration.isFinished());
+    }
+
+    @Test
+    void checksPlayersConnectingWhileNamesLoad() {
+        repository.addLegacy("steve", "base");
+        migration.start();
+
+        // Connected before the startup load ran, and again, only queued once
+        migration.playerConnected(STEVE, "steve");
+        migration.playerConnected(STEVE, "steve");
+        assertEquals(2, background.size());
+
+        runBackground();
+        assertEquals(List.of("base"), repository.findByPlayer(STEVE));
+        assertTrue(migration.isFinished());
+    }
+
+    @Test
+    void offlineGrantMigratesWhenPlayerConnects() {
+        migration.start();
+        runBackground();
+        assertTrue(migration.isFinished());
+
+        repository.addLegacy("alice", "base");
+        migration.addPending("alice");
+        assertFalse(migration.isFinished());
+
+        migration.playerConnected(ALICE, "alice");
+        runBackground();
+        assertEquals(List.of("base"), repository.findByPlayer(ALICE));
+        assertTrue(migration.isFinished());
+    }
+
+    @Test
+    void failedMigrationRetriesOnNextConnect() {
+        repository.addLegacy("steve", "base");
+        repository.failuresLeft = 1;
+        migration.start();
+        runBackground();
+
+        migration.playerConnected(STEVE, "steve");
+        runBackground();
+        assertTrue(repository.findByPlayer(STEVE).isEmpty());
+        assertFalse(migration.isFinished());
+
+        migration.playerConnected(STEVE, "steve");
+        runBackground();
+        assertEquals(List.of("base"), repository.findByPlayer(STEVE));
+        assertTrue(migration.isFinished());
+    }
+}
@@ -0,0 +1,138 @@
+package com.apophisgames.rustyraiding.zones;
+
+import com.apophisgames.rustyraiding.reinforcedblocks.IReinforcedBlockRepository;
+import com.apophisgames.rustyraiding.reinforcedblocks.ReinforcedBlock;
+import com.apophisgames.rustyraiding.reinforcedblocks.SqliteReinforcedBlockRepository;
+import com.apophisgames.rustyraiding.util.PlayerIds;
+import com.apophisgames.rustyraiding.util.RaidingDatabase;
+import com.apophisgames.rustyraiding.util.SerializedRepository;
+import com.apophisgames.rustyraiding.util.WorldIds;
+import com.apophisgames.rustyraiding.zoneauthorizations.IAuthRepository;
+import com.apophisgames.rustyraiding.zoneauthorizations.SqliteZoneAuthorizationRepository;
+import com.apophisgames.rustyraiding.zoneauthorizations.ZoneAuthorization;
+import com.hypixel.hytale.math.vector.Vector3d;
+import com.hypixel.hytale.math.vector.Vector3i;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqliteZoneRepositoryTest {
+
+    private static final UUID PLAYER = UUID.randomUUID();
+
+    @TempDir
+    Path directory;
+
+    private RaidingDatabase database;
+    private IZoneRepository zones;
+    private IAuthRepository auths;
+    private IReinforcedBlockRepository blocks;
+
+    @BeforeEach
+    void open() throws Exception {
+        database = new RaidingDatabase(directory, RaidingDatabase.Profile.FAST);
+        auths = SerializedRepository.wrap(IAuthRepository.class, new SqliteZoneAuthorizationRepository(database), database.getExecutor());
+        zones = SerializedRepository.wrap(IZoneRepository.class, new SqliteZoneRepository(database), database.getExecutor());
+        blocks = SerializedRepository.wrap(IReinforcedBlockRepository.class, new SqliteReinforcedBlockRepository(database), database.getExecutor());
+        auths.initialize();
+        blocks.initialize();
+        zones.initialize();
+    }
+
+    @AfterEach
+    void close() {
+        database.close();
+    }
+
+    private static Zone zone(String name, String worldName, double min, double max) {
+        return Zone.create(name, worldName, new Vector3d(min, min, min), new Vector3d(max, max, max));
+    }
+
+    @Test
+    void deleteCascadesToAuthorizations() throws Exception {
+        Zone base = zone("base", "default", 0, 10);
+        zones.save(base);
+        auths.save(ZoneAuthorization.create(base.zoneName(), PLAYER, "player"));
+
+        zones.delete(base.internalId());
+
+        assertTrue(auths.findByZone(base.zoneName()).isEmpty());
+    }
+
+    @Test
+    void deleteKeepsAuthorizationsOfTheSameNameInAnotherWorld() throws Exception {
+        Zone spawn = zone("spawn", "default", 0, 10);
+        Zone otherSpawn = zone("spawn", "nether", 0, 10);
+        zones.save(spawn);
+        zones.save(otherSpawn);
+        auths.save(ZoneAuthorization.create("spawn", PLAYER, "player"));
+
+        zones.delete(spawn.internalId());
+        assertTrue(auths.isAuthorized("spawn", PlayerIds.of(PLAYER)));
+
+        zones.delete(otherSpawn.internalId());
+        assertFalse(auths.isAuthorized("spawn", PlayerIds.of(PLAYER)));
+    }
+
+    @Test
+    void deleteCascadesToReinforcedBlocksAcrossZero() throws Exception {
+        Zone base = zone("base", "default", -2.5, 2.5);
+        zones.save(base);
+        blocks.save(ReinforcedBlock.create("default", new Vector3i(-3, -3, -3), 5));
+        blocks.save(ReinforcedBlock.create("default", new Vector3i(0, 0, 0), 5));
+        blocks.save(ReinforcedBlock.create("default", new Vector3i(2, -1, 1), 5));
+        blocks.save(ReinforcedBlock.create("default", new Vector3i(3, 0, 0), 5));
+        blocks.save(ReinforcedBlock.create("nether", new Vector3i(0, 0, 0), 5));
+
+        zones.delete(base.internalId());
+
+        assertEquals(ReinforcedBlock.NOT_REINFORCED, blocks.findReinforcement(WorldIds.of("default"), -3, -3, -3));
+        assertEquals(ReinforcedBlock.NOT_REINFORCED, blocks.findReinforcement(WorldIds.of("default"), 0, 0, 0));
+        assertEquals(ReinforcedBlock.NOT_REINFORCED, blocks.findReinforcement(WorldIds.of("default"), 2, -1, 1));
+        assertEquals(5, blocks.findReinforcement(WorldIds.of("default"), 3, 0, 0));
+        assertEquals(5, blocks.findReinforcement(WorldIds.of("nether"), 0, 0, 0));
+    }
+
+    @Test
+    void zonesCanBeDeletedWithoutThePluginsFunctions() throws Exception {
+        Zone base = zone("base", "default", 0, 10);
+        zones.save(base);
+        auths.save(ZoneAuthorization.create(base.zoneName(), PLAYER, "player"));
+        blocks.save(ReinforcedBlock.create("default", new Vector3i(1, 1, 1), 5));
+
+        // A plain connection, like the sqlite3 shell, has none of the morton functions
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + directory.resolve("rustyraiding.db"));
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM zones WHERE zone_name = 'base'");
+        }
+        assertTrue(zones.findByName("default", "base").isEmpty());
+    }
+
+    @Test
+    void cachedLookupsOutsideResidentWorldsGoToStorage() throws Exception {
+        CachedZoneRepository cached = new CachedZoneRepository(zones);
+        Zone base = zone("base", "default", 0, 10);
+        cached.save(base);
+        assertEquals(base.internalId(), cached.findAt(WorldIds.of("default"), 5, 5, 5).internalId());
+
+        // The lookup did not load the world, so a zone stored behind the cache's back is found
+        Zone other = zone("other", "default", 20, 30);
+        zones.save(other);
+        assertEquals(other.internalId(), cached.findAt(WorldIds.of("default"), 25, 25, 25).internalId());
+        assertEquals(other.internalId(), cached.findByName("default", "other").orElseThrow().internalId());
+
+        // Once resident, lookups are answered from memory
+        cached.preloadWorld("default");
+        zones.delete(other.internalId());
+        assertEquals(other.internalId(), cached.findAt(WorldIds.of("default"), 25, 25, 25).internalId());
+    }
+}
@@ -0,0 +1,98 @@
+package com.apophisgames.rustyraiding.zones;
+
+import com.hypixel.hytale.math.vector.Vector3d;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZoneChunkIndexTest {
+
+    private static final String WORLD = "default";
+
+    private static Zone zone(String name, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        return Zone.create(name, WORLD, new Vector3d(minX, minY, minZ), new Vector3d(maxX, maxY, maxZ));
+    }
+
+    @Test
+    void findsBlocksInsideOnly() {
+        Zone zone = zone("base", 10, 0, 10, 20, 64, 20);
+        ZoneChunkIndex index = new ZoneChunkIndex(List.of(zone));
+
+        assertSame(zone, index.find(10, 0, 10));
+        assertSame(zone, index.find(19, 63, 19));
+        // Bounds are half-open
+        assertNull(index.find(20, 10, 15));
+        assertNull(index.find(15, 64, 15));
+        assertNull(index.find(9, 10, 15));
+        assertSame(zone, index.find(19.5, 10.0, 19.5));
+        assertNull(index.find(20.0, 10.0, 15.0));
+    }
+
+    @Test
+    void findsZonesAcrossChunkBordersAndZero() {
+        // Spans chunks -2..1 on both axes
+        Zone zone = zone("spawn", -40, 0, -40, 40, 100, 40);
+        ZoneChunkIndex index = new ZoneChunkIndex(List.of(zone));
+
+        for (int x = -40; x < 40; x += 7) {
+            for (int z = -40; z < 40; z += 7) {
+                assertSame(zone, index.find(x, 50, z), x + "," + z);
+            }
+        }
+        assertSame(zone, index.find(-0.5, 50.0, -0.5));
+        assertNull(index.find(-41, 50, 0));
+        assertNull(index.find(0, 50, 40));
+    }
+
+    @Test
+    void findsOversizedZones() {
+        // Far more chunk columns than the grid takes, checked directly instead
+        Zone huge = zone("admin", -100_000, 0, -100_000, 100_000, 256, 100_000);
+        Zone small = zone("base", 500, 0, 500, 510, 10, 510);
+        ZoneChunkIndex index = new ZoneChunkIndex(List.of(huge, small));
+
+        assertSame(huge, index.find(-99_999, 10, 99_999));
+        assertSame(small, index.find(505, 5, 505));
+        assertNull(index.find(200_000, 10, 0));
+    }
+
+    @Test
+    void putReplacesAndRemoveForgets() {
+        Zone zone = zone("base", 0, 0, 0, 10, 10, 10);
+        ZoneChunkIndex index = new ZoneChunkIndex(List.of());
+        assertNull(index.find(5, 5, 5));
+
+        index.put(zone);
+        assertSame(zone, index.find(5, 5, 5));
+
+        // Same id, moved far away, the old chunks no longer hold it
+        Zone moved = zone.withBounds(new Vector3d(1000, 0, 1000), new Vector3d(1010, 10, 1010));
+        index.put(moved);
+        assertNull(index.find(5, 5, 5));
+        assertSame(moved, index.find(1005, 5, 1005));
+
+        assertTrue(index.remove(zone.internalId()));
+        assertFalse(index.remove(zone.internalId()));
+        assertNull(index.find(1005, 5, 1005));
+    }
+
+    @Test
+    void manyZonesEachFoundInTheirOwnChunks() {
+        List<Zone> zones = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int x = (i % 25) * 40 - 500, z = (i / 25) * 40 - 400;
+            zones.add(zone("zone" + i, x, 0, z, x + 20, 50, z + 20));
+        }
+        ZoneChunkIndex index = new ZoneChunkIndex(zones);
+
+        for (Zone zone : zones) {
+            int x = (int) zone.min().x, z = (int) zone.min().z;
+            assertSame(zone, index.find(x, 0, z));
+            assertSame(zone, index.find(x + 19, 49, z + 19));
+            assertNull(index.find(x + 25, 10, z + 5));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.apophisgames.rustyraiding.zones;
+
+import com.hypixel.hytale.math.vector.Vector3d;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZoneRTreeTest {
+
+    private static final String WORLD = "default";
+
+    private static Zone zone(String name, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        return Zone.create(name, WORLD, new Vector3d(minX, minY, minZ), new Vector3d(maxX, maxY, maxZ));
+    }
+
+    /**
+     * Small cupboard zones scattered around, plus a few huge admin zones.
+     */
+    private static List<Zone> randomZones(Random random, int count) {
+        List<Zone> zones = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double size = i % 50 == 0 ? 2_000 : 10 + random.nextInt(30);
+            double x = random.nextInt(20_000) - 10_000, y = random.nextInt(200), z = random.nextInt(20_000) - 10_000;
+            zones.add(zone("zone" + i, x, y, z, x + size, y + size, z + size));
+        }
+        return zones;
+    }
+
+    private static boolean intersects(Zone zone, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        return zone.min().x <= maxX && zone.max().x >= minX
+            && zone.min().y <= maxY && zone.max().y >= minY
+            && zone.min().z <= maxZ && zone.max().z >= minZ;
+    }
+
+    private static Set<String> names(List<Zone> zones) {
+        Set<String> names = new HashSet<>();
+        for (Zone zone : zones) {
+            assertTrue(names.add(zone.zoneName()), "returned twice: " + zone.zoneName());
+        }
+        return names;
+    }
+
+    @Test
+    void emptyTreeFindsNothing() {
+        ZoneRTree tree = ZoneRTree.build(List.of());
+        assertEquals(0, tree.size());
+        assertTrue(tree.findIntersecting(-1e9, -1e9, -1e9, 1e9, 1e9, 1e9).isEmpty());
+        assertTrue(tree.findNearest(0, 0, 0, 5, 0).isEmpty());
+    }
+
+    @Test
+    void touchingBoxesIntersect() {
+        Zone zone = zone("a", 0, 0, 0, 10, 10, 10);
+        ZoneRTree tree = ZoneRTree.build(List.of(zone));
+
+        assertEquals(List.of(zone), tree.findIntersecting(10, 10, 10, 20, 20, 20));
+        assertTrue(tree.findIntersecting(10.5, 0, 0, 20, 10, 10).isEmpty());
+    }
+
+    @Test
+    void intersectingMatchesLinearScan() {
+        Random random = new Random(5);
+        List<Zone> zones = randomZones(random, 2_000);
+        ZoneRTree tree = ZoneRTree.build(zones);
+        assertEquals(zones.size(), tree.size());
+
+        for (int i = 0; i < 500; i++) {
+            double x = random.nextInt(22_000) - 11_000, y = random.nextInt(300) - 50, z = random.nextInt(22_000) - 11_000;
+            double size = random.nextInt(500);
+            Set<String> expected = new HashSet<>();
+            for (Zone zone : zones) {
+                if (intersects(zone, x, y, z, x + size, y + size, z + size)) expected.add(zone.zoneName());
+            }
+            assertEquals(expected, names(tree.findIntersecting(x, y, z, x + size, y + size, z + size)));
+        }
+    }
+
+    @Test
+    void nearestMatchesLinearScan() {
+        Random random = new Random(6);
+        List<Zone> zones = randomZones(random, 2_000);
+        ZoneRTree tree = ZoneRTree.build(zones);
+
+        for (int i = 0; i < 500; i++) {
+            double x = random.nextInt(22_000) - 11_000, y = random.nextInt(300) - 50, z = random.nextInt(22_000) - 11_000;
+            int k = 1 + random.nextInt(5);
+            double maxDistance = i % 2 == 0 ? 0 : 500;
+
+            List<Zone> nearest = tree.findNearest(x, y, z, k, maxDistance);
+            List<Double> distances = nearest.stream().map(zone -> zone.distanceSquaredTo(x, y, z)).toList();
+            List<Double> expected = zones.stream()
+                    .map(zone -> zone.distanceSquaredTo(x, y, z))
+                    .filter(distance -> maxDistance <= 0 || distance <= maxDistance * maxDistance)
+                    .sorted(Comparator.naturalOrder())
+                    .limit(k)
+                    .toList();
+            // Compare distances, ties may be broken either way
+            assertEquals(expected, distances);
+        }
+    }
+
+    @Test
+    void containingZoneIsNearest() {
+        Zone inside = zone("inside", 0, 0, 0, 10, 10, 10);
+        Zone beside = zone("beside", 11, 0, 0, 20, 10, 10);
+        ZoneRTree tree = ZoneRTree.build(List.of(beside, inside));
+
+        assertEquals(List.of(inside, beside), tree.findNearest(5, 5, 5, 2, 0));
+        assertEquals(List.of(inside), tree.findNearest(5, 5, 5, 2, 3));
+    }
+}